@@ -0,0 +1,103 @@
+package entitylocker.benchmarks;
+
+import entitylocker.DeadLockPolicy;
+import entitylocker.EntityLocker;
+import entitylocker.ReentrantEntityLockerImpl;
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of an entity acquisition while the acquiring threads already hold a growing number of entities.
+ * Deadlock detection only explores the threads reachable from a new wait, so the cost should not grow with the
+ * number of held entities.
+ * <p>
+ * Every thread first locks its own held entities in one batch, then repeatedly acquires one entity shared by all the
+ * threads. With one thread the acquisitions are uncontended, with more threads part of them wait and look for a cycle,
+ * or only publish their wait in background detection mode, or compare priority timestamps in wait-die mode, where the
+ * younger threads die instead of waiting and try again.
+ * <p>
+ * Arguments: number of threads (default 2), acquisitions per thread (default 1000000)
+ */
+public class DeadLockCheckBenchmark {
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int[] HELD_ENTITIES = {0, 1, 10, 100, 1000};
+    private static final String SHARED_ENTITY = "shared";
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int acquisitions = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+
+        System.out.printf("threads: %d, acquisitions per thread: %d, processors: %d%n",
+                threads, acquisitions, Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            for (int heldEntities : HELD_ENTITIES) {
+                long uncontendedNanos = run(1, heldEntities, acquisitions, DeadLockPolicy.abortRequester());
+                long contendedNanos = run(threads, heldEntities, acquisitions, DeadLockPolicy.abortRequester());
+                long backgroundNanos = run(threads, heldEntities, acquisitions, DeadLockPolicy.detectInBackground(100, TimeUnit.MILLISECONDS));
+                long waitDieNanos = run(threads, heldEntities, acquisitions, DeadLockPolicy.waitDie());
+
+                if (round == WARMUP_ROUNDS) {
+                    long threadAcquisitions = (long) threads * acquisitions;
+                    System.out.printf("held entities: %4d, 1 thread: %5d ns/op, %d threads: %5d ns/op, %d threads background detection: %5d ns/op, %d threads wait-die: %5d ns/op%n",
+                            heldEntities, uncontendedNanos / acquisitions, threads, contendedNanos / threadAcquisitions,
+                            threads, backgroundNanos / threadAcquisitions, threads, waitDieNanos / threadAcquisitions);
+                }
+            }
+        }
+    }
+
+    private static long run(int threads, int heldEntities, int acquisitions, DeadLockPolicy deadLockPolicy) throws InterruptedException {
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.withDeadLockPolicy(deadLockPolicy);
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        long[] counter = new long[1];
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            List<String> held = new ArrayList<>();
+            for (int i = 0; i < heldEntities; i++) {
+                held.add(t + "-" + i);
+            }
+
+            workers[t] = new Thread(() -> entityLocker.executeWithEntitiesExclusiveAccess(held, () -> {
+                ready.countDown();
+                awaitLatch(start);
+                for (int i = 0; i < acquisitions; i++) {
+                    acquireShared(entityLocker, counter);
+                }
+            }));
+            workers[t].start();
+        }
+
+        ready.await();
+        long t0 = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return System.nanoTime() - t0;
+    }
+
+    private static void acquireShared(EntityLocker<String> entityLocker, long[] counter) {
+        while (true) {
+            try {
+                entityLocker.executeWithEntityExclusiveAccess(SHARED_ENTITY, () -> counter[0]++);
+                return;
+            } catch (DeadLockPreventionException e) {
+                //the thread keeps the timestamp of its held entities, it dies until the older threads are done
+                Thread.yield();
+            }
+        }
+    }
+
+    private static void awaitLatch(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
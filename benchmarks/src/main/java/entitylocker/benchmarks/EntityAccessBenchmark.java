@@ -0,0 +1,107 @@
+package entitylocker.benchmarks;
+
+import entitylocker.EntityLocker;
+import entitylocker.ProtectedCode;
+import entitylocker.ReentrantEntityLockerImpl;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single entity acquisitions under three key distributions: a key of its own per thread (uncontended), one key
+ * shared by all the threads (contended) and a Zipfian distribution over {@link #KEYS} keys, each untimed, timed and
+ * nested reentrant.
+ * <p>
+ * Run through {@link JmhSuite} for several thread counts, or from the JMH jar with -t for a single one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityAccessBenchmark {
+    static final int KEYS = 10_000;
+    private static final int UNCONTENDED = 0;
+    private static final int SINGLE = 1;
+    private static final int ZIPFIAN = 2;
+
+    @Param({"uncontended", "single", "zipfian"})
+    public String keys;
+
+    private final AtomicInteger threadIndexes = new AtomicInteger(0);
+    private EntityLocker<Integer> entityLocker;
+    //boxed once, so drawing a key does not allocate
+    private Integer[] entityIds;
+    private ZipfianKeys zipfianKeys;
+    private int distribution;
+
+    @Setup
+    public void setUp() {
+        entityLocker = new ReentrantEntityLockerImpl<>();
+        entityIds = new Integer[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            entityIds[i] = i;
+        }
+        zipfianKeys = new ZipfianKeys(KEYS, 0.99);
+        distribution = "uncontended".equals(keys) ? UNCONTENDED : "single".equals(keys) ? SINGLE : ZIPFIAN;
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private int threadIndex;
+        private Integer entityId;
+        private long counter;
+        private ProtectedCode protectedCode;
+        private ProtectedCode nestedCode;
+
+        @Setup
+        public void setUp(EntityAccessBenchmark benchmark) {
+            threadIndex = benchmark.threadIndexes.getAndIncrement() % KEYS;
+            protectedCode = () -> counter++;
+            //reacquires the entity exclusively and shared while holding it
+            nestedCode = () -> benchmark.entityLocker.executeWithEntityExclusiveAccess(entityId,
+                    () -> benchmark.entityLocker.executeWithEntitySharedAccess(entityId, protectedCode));
+        }
+    }
+
+    @Benchmark
+    public long untimed(ThreadState threadState) {
+        entityLocker.executeWithEntityExclusiveAccess(nextEntityId(threadState), threadState.protectedCode);
+        return threadState.counter;
+    }
+
+    @Benchmark
+    public long timed(ThreadState threadState) throws InterruptedException {
+        entityLocker.executeWithEntityExclusiveAccess(nextEntityId(threadState), threadState.protectedCode, 1, TimeUnit.SECONDS);
+        return threadState.counter;
+    }
+
+    @Benchmark
+    public long nestedReentrant(ThreadState threadState) {
+        threadState.entityId = nextEntityId(threadState);
+        entityLocker.executeWithEntityExclusiveAccess(threadState.entityId, threadState.nestedCode);
+        return threadState.counter;
+    }
+
+    private Integer nextEntityId(ThreadState threadState) {
+        switch (distribution) {
+            case UNCONTENDED:
+                return entityIds[threadState.threadIndex];
+            case SINGLE:
+                return entityIds[0];
+            default:
+                return entityIds[zipfianKeys.next()];
+        }
+    }
+}
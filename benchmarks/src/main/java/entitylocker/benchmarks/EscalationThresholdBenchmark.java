@@ -0,0 +1,75 @@
+package entitylocker.benchmarks;
+
+import entitylocker.DeadLockPolicy;
+import entitylocker.EntityLocker;
+import entitylocker.EscalationPolicy;
+import entitylocker.ProtectedCode;
+import entitylocker.ReentrantEntityLockerImpl;
+import entitylocker.SpinPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Batch acquisitions of {@link #BATCH_SIZE} entities for several escalation thresholds.
+ * <p>
+ * Every thread locks a batch of its own key range, so the batches never conflict. Batches escalating to the global
+ * lock skip the entity locks but exclude each other, the lower the threshold the cheaper a single thread batch and
+ * the more the threads serialize.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EscalationThresholdBenchmark {
+    static final int BATCH_SIZE = 1000;
+
+    //0 never escalates
+    @Param({"0", "16", "500", "5000"})
+    public int threshold;
+
+    private final AtomicInteger threadIndexes = new AtomicInteger(0);
+    private EntityLocker<Integer> entityLocker;
+
+    @Setup
+    public void setUp() {
+        EscalationPolicy escalationPolicy = threshold == 0 ? EscalationPolicy.never() : EscalationPolicy.fixed(threshold);
+        entityLocker = new ReentrantEntityLockerImpl<>(escalationPolicy, SpinPolicy.park(), DeadLockPolicy.abortRequester());
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final List<Integer> batch = new ArrayList<>();
+        private long counter;
+        private ProtectedCode protectedCode;
+
+        @Setup
+        public void setUp(EscalationThresholdBenchmark benchmark) {
+            int firstKey = benchmark.threadIndexes.getAndIncrement() * BATCH_SIZE;
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                batch.add(firstKey + i);
+            }
+            protectedCode = () -> counter++;
+        }
+    }
+
+    @Benchmark
+    public long batchAccess(ThreadState threadState) {
+        entityLocker.executeWithEntitiesExclusiveAccess(threadState.batch, threadState.protectedCode);
+        return threadState.counter;
+    }
+}
@@ -0,0 +1,87 @@
+package entitylocker.benchmarks;
+
+import entitylocker.EntityLocker;
+import entitylocker.ProtectedCode;
+import entitylocker.ReentrantEntityLockerImpl;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Entity acquisitions on disjoint entities interleaved with global exclusive accesses.
+ * <p>
+ * Each group runs three threads accessing entities of their own and one thread taking the global lock, which waits
+ * for the entity holders and stops them while it runs. The entityAccessAlone benchmark gives the entity throughput
+ * without global accesses.
+ */
+@State(Scope.Group)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GlobalInterleavingBenchmark {
+
+    //cpu work of a global access, in Blackhole.consumeCPU tokens
+    @Param({"100", "10000"})
+    public long globalWork;
+
+    private final AtomicInteger threadIndexes = new AtomicInteger(0);
+    private EntityLocker<Integer> entityLocker;
+    private ProtectedCode globalCode;
+
+    @Setup
+    public void setUp() {
+        entityLocker = new ReentrantEntityLockerImpl<>();
+        globalCode = () -> Blackhole.consumeCPU(globalWork);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private Integer entityId;
+        private long counter;
+        private ProtectedCode protectedCode;
+
+        @Setup
+        public void setUp(GlobalInterleavingBenchmark benchmark) {
+            entityId = benchmark.threadIndexes.getAndIncrement();
+            protectedCode = () -> counter++;
+        }
+    }
+
+    @Benchmark
+    @Group("interleaved")
+    @GroupThreads(3)
+    public long entityAccess(ThreadState threadState) {
+        entityLocker.executeWithEntityExclusiveAccess(threadState.entityId, threadState.protectedCode);
+        return threadState.counter;
+    }
+
+    @Benchmark
+    @Group("interleaved")
+    @GroupThreads(1)
+    public void globalAccess() throws InterruptedException {
+        entityLocker.executeWithGlobalExclusiveAccess(globalCode);
+    }
+
+    @Benchmark
+    @Group("entityAccessAlone")
+    @GroupThreads(3)
+    public long entityAccessAlone(ThreadState threadState) {
+        entityLocker.executeWithEntityExclusiveAccess(threadState.entityId, threadState.protectedCode);
+        return threadState.counter;
+    }
+}
@@ -0,0 +1,96 @@
+package entitylocker.benchmarks;
+
+import entitylocker.EntityLocker;
+import entitylocker.ReentrantEntityLockerImpl;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Measures how the throughput of entity exclusive accesses on disjoint entities scales with the number of threads,
+ * every access takes the global lock in read mode. As a baseline it measures the read lock of a single shared
+ * {@link ReentrantReadWriteLock}, which all the readers update.
+ * <p>
+ * Arguments: max number of threads, measured in powers of two (default 64), duration of a run in ms (default 1000)
+ */
+public class GlobalReadScalingBenchmark {
+    private static final int WARMUP_ROUNDS = 1;
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        long durationMillis = args.length > 1 ? Long.parseLong(args[1]) : 1_000L;
+
+        System.out.printf("processors: %d, run duration: %d ms%n", Runtime.getRuntime().availableProcessors(), durationMillis);
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            boolean warmup = round < WARMUP_ROUNDS;
+            for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                EntityLocker<Integer> entityLocker = new ReentrantEntityLockerImpl<>();
+                ReentrantReadWriteLock sharedLock = new ReentrantReadWriteLock();
+
+                long lockerOps = run(threads, durationMillis, (threadIndex, counters) ->
+                        entityLocker.executeWithEntityExclusiveAccess(threadIndex, () -> counters[0]++));
+                long sharedLockOps = run(threads, durationMillis, (threadIndex, counters) -> {
+                    sharedLock.readLock().lock();
+                    try {
+                        counters[0]++;
+                    } finally {
+                        sharedLock.readLock().unlock();
+                    }
+                });
+
+                if (!warmup) {
+                    System.out.printf("threads: %3d, entity locker: %,13d ops/s, shared read lock: %,13d ops/s%n",
+                            threads, lockerOps * 1000L / durationMillis, sharedLockOps * 1000L / durationMillis);
+                }
+            }
+        }
+    }
+
+    private static long run(int threads, long durationMillis, Operation operation) throws InterruptedException {
+        long[] operations = new long[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long[] deadline = new long[1];
+
+        for (int t = 0; t < threads; t++) {
+            int threadIndex = t;
+            workers[t] = new Thread(() -> {
+                //padded per thread counter, the entities are disjoint so only the global lock is shared
+                long[] counters = new long[16];
+                awaitLatch(start);
+                long count = 0L;
+                while (System.nanoTime() - deadline[0] < 0L) {
+                    for (int i = 0; i < 64; i++) {
+                        operation.run(threadIndex, counters);
+                    }
+                    count += 64;
+                }
+                operations[threadIndex] = count;
+            });
+            workers[t].start();
+        }
+
+        deadline[0] = System.nanoTime() + durationMillis * 1_000_000L;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long total = 0L;
+        for (long count : operations) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static void awaitLatch(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Operation {
+        void run(int threadIndex, long[] counters);
+    }
+}
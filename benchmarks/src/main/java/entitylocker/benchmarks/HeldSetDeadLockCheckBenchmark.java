@@ -0,0 +1,109 @@
+package entitylocker.benchmarks;
+
+import entitylocker.DeadLockPolicy;
+import entitylocker.EntityLocker;
+import entitylocker.EscalationPolicy;
+import entitylocker.ProtectedCode;
+import entitylocker.ReentrantEntityLockerImpl;
+import entitylocker.SpinPolicy;
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH version of {@link DeadLockCheckBenchmark}: acquisitions of an entity shared by all the threads while each thread
+ * holds a growing number of entities of its own, for the deadlock policies.
+ * <p>
+ * An invocation locks the held entities once and acquires the shared entity {@link #ACQUISITIONS} times while holding
+ * them, the scores are per acquisition. Escalation is disabled so the held entities are really locked.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeldSetDeadLockCheckBenchmark {
+    static final int ACQUISITIONS = 1000;
+    private static final Integer SHARED_ENTITY = -1;
+
+    @Param({"0", "10", "100", "1000"})
+    public int heldEntities;
+
+    @Param({"abortRequester", "detectInBackground", "waitDie"})
+    public String deadLockPolicy;
+
+    private final AtomicInteger threadIndexes = new AtomicInteger(0);
+    private EntityLocker<Integer> entityLocker;
+
+    @Setup
+    public void setUp() {
+        entityLocker = new ReentrantEntityLockerImpl<>(EscalationPolicy.never(), SpinPolicy.park(), deadLockPolicy(deadLockPolicy));
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        private final List<Integer> held = new ArrayList<>();
+        private long counter;
+        private ProtectedCode protectedCode;
+        private ProtectedCode acquisitions;
+
+        @Setup
+        public void setUp(HeldSetDeadLockCheckBenchmark benchmark) {
+            int firstKey = benchmark.threadIndexes.getAndIncrement() * benchmark.heldEntities;
+            for (int i = 0; i < benchmark.heldEntities; i++) {
+                held.add(firstKey + i);
+            }
+            protectedCode = () -> counter++;
+            acquisitions = () -> {
+                for (int i = 0; i < ACQUISITIONS; i++) {
+                    acquireShared(benchmark.entityLocker, protectedCode);
+                }
+            };
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACQUISITIONS)
+    public long acquireWhileHolding(ThreadState threadState) {
+        entityLocker.executeWithEntitiesExclusiveAccess(threadState.held, threadState.acquisitions);
+        return threadState.counter;
+    }
+
+    private static void acquireShared(EntityLocker<Integer> entityLocker, ProtectedCode protectedCode) {
+        while (true) {
+            try {
+                entityLocker.executeWithEntityExclusiveAccess(SHARED_ENTITY, protectedCode);
+                return;
+            } catch (DeadLockPreventionException e) {
+                //a younger thread dies in wait-die, it keeps its timestamp and tries again
+                Thread.yield();
+            }
+        }
+    }
+
+    private static DeadLockPolicy deadLockPolicy(String name) {
+        switch (name) {
+            case "detectInBackground":
+                return DeadLockPolicy.detectInBackground(100, TimeUnit.MILLISECONDS);
+            case "waitDie":
+                return DeadLockPolicy.waitDie();
+            default:
+                return DeadLockPolicy.abortRequester();
+        }
+    }
+}
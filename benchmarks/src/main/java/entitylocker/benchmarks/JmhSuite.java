@@ -0,0 +1,37 @@
+package entitylocker.benchmarks;
+
+import java.util.Arrays;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks with the GC profiler once per thread count, writing the results of each thread count to
+ * target/jmh-&lt;threads&gt;-threads.csv. For the grouped benchmarks of {@link GlobalInterleavingBenchmark} the thread
+ * count is the number of groups.
+ * <p>
+ * Arguments: regular expression of the benchmarks to run (default all), comma separated thread counts (default 1,2,4,8)
+ */
+public class JmhSuite {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "entitylocker.benchmarks.(EntityAccess|GlobalInterleaving|EscalationThreshold|HeldSetDeadLockCheck|UncontendedAcquire)Benchmark";
+        int[] threadCounts = args.length > 1
+                ? Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1, 2, 4, 8};
+
+        for (int threads : threadCounts) {
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .resultFormat(ResultFormatType.CSV)
+                    .result("target/jmh-" + threads + "-threads.csv")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package entitylocker.benchmarks;
+
+import entitylocker.EntityLocker;
+import entitylocker.ReentrantEntityLockerImpl;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap used per held entity lock: the lock table entry and its map node, the lock itself and the
+ * wait-for graph edges of its holder.
+ * <p>
+ * One thread locks a batch of distinct entities and the used heap is sampled, after a full collection, before the
+ * batch and while it is held. The entity ids are created beforehand, so only the locker state is measured, including
+ * the arrays the batch uses to sort its entries. Run with a fixed heap and a serial collector for stable figures,
+ * e.g. -Xms1g -Xmx1g -XX:+UseSerialGC.
+ * <p>
+ * Arguments: number of held entities (default 200000)
+ */
+public class LockFootprintBenchmark {
+    private static final int WARMUP_ROUNDS = 1;
+
+    public static void main(String[] args) {
+        int entities = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < entities; i++) {
+            batch.add(i);
+        }
+
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            EntityLocker<Integer> entityLocker = new ReentrantEntityLockerImpl<>();
+            long before = usedHeap();
+            long[] held = new long[1];
+
+            entityLocker.executeWithEntitiesExclusiveAccess(batch, () -> held[0] = usedHeap());
+            if (round == WARMUP_ROUNDS) {
+                System.out.printf("held entities: %d, bytes per held lock: %d%n", entities, (held[0] - before) / entities);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
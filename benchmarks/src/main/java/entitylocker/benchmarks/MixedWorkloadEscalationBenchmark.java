@@ -0,0 +1,115 @@
+package entitylocker.benchmarks;
+
+import entitylocker.DeadLockPolicy;
+import entitylocker.EntityLocker;
+import entitylocker.EscalationPolicy;
+import entitylocker.ReentrantEntityLockerImpl;
+import entitylocker.SpinPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Compares escalation policies on a workload mixing one batch thread with short transactions.
+ * <p>
+ * The batch thread repeatedly locks a batch of entities of its own key range, the transaction threads lock one random
+ * entity of another key range at a time. The run alternates busy phases, where both kinds of threads work, and quiet
+ * phases, where only the batch thread works. A low fixed threshold escalates every batch and stops the transactions
+ * of the busy phases, a high one never escalates and makes the batches of the quiet phases lock every entity. The
+ * adaptive policy should keep the transaction throughput of the high threshold and the batch throughput of the low
+ * one.
+ * <p>
+ * Arguments: number of transaction threads (default 3), batch size (default 1000), phase duration in milliseconds
+ * (default 500)
+ */
+public class MixedWorkloadEscalationBenchmark {
+    private static final int WARMUP_ROUNDS = 1;
+    private static final int PHASES = 4;
+    private static final int TRANSACTION_KEYS = 100_000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int transactionThreads = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        long phaseMillis = args.length > 2 ? Long.parseLong(args[2]) : 500L;
+
+        System.out.printf("transaction threads: %d, batch size: %d, phase: %d ms, processors: %d%n",
+                transactionThreads, batchSize, phaseMillis, Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            boolean print = round == WARMUP_ROUNDS;
+            run("never", EscalationPolicy::never, transactionThreads, batchSize, phaseMillis, print);
+            run("fixed 16", () -> EscalationPolicy.fixed(16), transactionThreads, batchSize, phaseMillis, print);
+            run("fixed " + batchSize / 2, () -> EscalationPolicy.fixed(batchSize / 2), transactionThreads, batchSize, phaseMillis, print);
+            run("fixed " + 4 * batchSize, () -> EscalationPolicy.fixed(4 * batchSize), transactionThreads, batchSize, phaseMillis, print);
+            run("adaptive", () -> EscalationPolicy.adaptive(16, 4 * batchSize, 1_000_000L), transactionThreads, batchSize, phaseMillis, print);
+        }
+    }
+
+    private static void run(String name, Supplier<EscalationPolicy> policySupplier, int transactionThreads, int batchSize,
+                            long phaseMillis, boolean print) throws InterruptedException {
+        EscalationPolicy escalationPolicy = policySupplier.get();
+        EntityLocker<Integer> entityLocker = new ReentrantEntityLockerImpl<>(escalationPolicy, SpinPolicy.park(), DeadLockPolicy.abortRequester());
+        AtomicBoolean stopped = new AtomicBoolean(false);
+        AtomicBoolean busy = new AtomicBoolean(false);
+        LongAdder busyTransactions = new LongAdder();
+        LongAdder busyBatches = new LongAdder();
+        LongAdder quietBatches = new LongAdder();
+
+        List<Integer> batch = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(TRANSACTION_KEYS + i);
+        }
+
+        Thread batchThread = new Thread(() -> {
+            long[] counter = new long[1];
+            while (!stopped.get()) {
+                entityLocker.executeWithEntitiesExclusiveAccess(batch, () -> counter[0]++);
+                (busy.get() ? busyBatches : quietBatches).increment();
+            }
+        });
+        Thread[] transactionWorkers = new Thread[transactionThreads];
+        for (int t = 0; t < transactionThreads; t++) {
+            transactionWorkers[t] = new Thread(() -> {
+                long[] counter = new long[1];
+                while (!stopped.get()) {
+                    if (!busy.get()) {
+                        sleep(1);
+                        continue;
+                    }
+                    entityLocker.executeWithEntityExclusiveAccess(ThreadLocalRandom.current().nextInt(TRANSACTION_KEYS), () -> counter[0]++);
+                    busyTransactions.increment();
+                }
+            });
+            transactionWorkers[t].start();
+        }
+        batchThread.start();
+
+        for (int phase = 0; phase < PHASES; phase++) {
+            busy.set(phase % 2 == 0);
+            sleep(phaseMillis);
+        }
+        stopped.set(true);
+        batchThread.join();
+        for (Thread worker : transactionWorkers) {
+            worker.join();
+        }
+
+        if (print) {
+            double phaseSeconds = PHASES / 2 * phaseMillis / 1000.0;
+            System.out.printf("%-12s busy: %9.0f transactions/s, %8.0f batch entities/s; quiet: %8.0f batch entities/s; escalations: %d, deferred: %d%n",
+                    name, busyTransactions.sum() / phaseSeconds, busyBatches.sum() * batchSize / phaseSeconds,
+                    quietBatches.sum() * batchSize / phaseSeconds, escalationPolicy.getEscalations(), escalationPolicy.getDeferredEscalations());
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
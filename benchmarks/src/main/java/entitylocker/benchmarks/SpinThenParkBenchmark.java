@@ -0,0 +1,89 @@
+package entitylocker.benchmarks;
+
+import entitylocker.EntityLocker;
+import entitylocker.ReentrantEntityLockerImpl;
+import entitylocker.SpinPolicy;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the acquire latency of contended entities with short protected code, parking right away versus adaptive
+ * spinning. The latency is measured from the call to the start of the protected code.
+ * <p>
+ * Arguments: number of threads (default 4), number of entities (default 2), acquisitions per thread (default 200000)
+ */
+public class SpinThenParkBenchmark {
+    private static final int WARMUP_ROUNDS = 2;
+
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int entities = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int acquisitions = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+
+        System.out.printf("threads: %d, entities: %d, acquisitions per thread: %d, processors: %d%n",
+                threads, entities, acquisitions, Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round <= WARMUP_ROUNDS; round++) {
+            boolean warmup = round < WARMUP_ROUNDS;
+            report("park", warmup, run(ReentrantEntityLockerImpl.withSpinPolicy(SpinPolicy.park()), threads, entities, acquisitions));
+            report("adaptive spin", warmup, run(ReentrantEntityLockerImpl.withSpinPolicy(SpinPolicy.adaptive()), threads, entities, acquisitions));
+        }
+    }
+
+    private static long[] run(EntityLocker<Integer> entityLocker, int threads, int entities, int acquisitions) throws InterruptedException {
+        long[][] latencies = new long[threads][acquisitions];
+        long[] counters = new long[entities];
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            long[] threadLatencies = latencies[t];
+            workers[t] = new Thread(() -> {
+                long[] acquiredAt = new long[1];
+                awaitLatch(start);
+                for (int i = 0; i < acquisitions; i++) {
+                    int entityId = i % entities;
+                    long t0 = System.nanoTime();
+                    entityLocker.executeWithEntityExclusiveAccess(entityId, () -> {
+                        acquiredAt[0] = System.nanoTime();
+                        counters[entityId]++;
+                    });
+                    //the protected code is a few nanoseconds long, the time until it ran is the acquire latency
+                    threadLatencies[i] = acquiredAt[0] - t0;
+                }
+            });
+            workers[t].start();
+        }
+
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long[] all = new long[threads * acquisitions];
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(latencies[t], 0, all, t * acquisitions, acquisitions);
+        }
+        Arrays.sort(all);
+        return all;
+    }
+
+    private static void report(String policy, boolean warmup, long[] sortedLatencies) {
+        if (warmup) {
+            return;
+        }
+        System.out.printf("%-14s p50: %6d ns, p99: %8d ns, p99.9: %8d ns%n", policy,
+                percentile(sortedLatencies, 0.50), percentile(sortedLatencies, 0.99), percentile(sortedLatencies, 0.999));
+    }
+
+    private static long percentile(long[] sortedValues, double percentile) {
+        return sortedValues[(int) Math.min(sortedValues.length - 1, Math.round(percentile * (sortedValues.length - 1)))];
+    }
+
+    private static void awaitLatch(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
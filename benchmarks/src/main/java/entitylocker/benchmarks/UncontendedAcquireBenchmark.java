@@ -0,0 +1,93 @@
+package entitylocker.benchmarks;
+
+import entitylocker.EntityLocker;
+import entitylocker.LongEntityLocker;
+import entitylocker.ProtectedCode;
+import entitylocker.ReentrantEntityLockerImpl;
+import entitylocker.ReentrantLongEntityLockerImpl;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Allocation of an uncontended acquire and release, the entity being held by no other thread.
+ * <p>
+ * Run through main, the benchmarks run with the GC profiler and fail if any of them allocates more than
+ * {@link #MAX_BYTES_PER_OP} bytes per operation. They can also be run from the JMH jar:
+ * java -jar target/benchmarks.jar UncontendedAcquireBenchmark -prof gc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UncontendedAcquireBenchmark {
+    //tolerates the allocations of the JMH infrastructure spread over the operations
+    private static final double MAX_BYTES_PER_OP = 1.0;
+    private static final String ALLOCATION_METRIC = "gc.alloc.rate.norm";
+
+    private final EntityLocker<Integer> entityLocker = new ReentrantEntityLockerImpl<>();
+    private final LongEntityLocker longEntityLocker = new ReentrantLongEntityLockerImpl();
+    private final Integer entityId = 1000;
+    private long counter;
+    private ProtectedCode protectedCode;
+
+    @Setup
+    public void setUp() {
+        protectedCode = () -> counter++;
+    }
+
+    @Benchmark
+    public long exclusiveAccess() {
+        entityLocker.executeWithEntityExclusiveAccess(entityId, protectedCode);
+        return counter;
+    }
+
+    @Benchmark
+    public long sharedAccess() {
+        entityLocker.executeWithEntitySharedAccess(entityId, protectedCode);
+        return counter;
+    }
+
+    @Benchmark
+    public long longExclusiveAccess() {
+        longEntityLocker.executeWithEntityExclusiveAccess(1000L, protectedCode);
+        return counter;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(UncontendedAcquireBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        boolean allocates = false;
+        for (RunResult runResult : new Runner(options).run()) {
+            Result<?> allocation = runResult.getSecondaryResults().get(ALLOCATION_METRIC);
+            double bytesPerOp = allocation.getScore();
+            System.out.printf("%s: %.3f B/op%n", runResult.getParams().getBenchmark(), bytesPerOp);
+            allocates |= bytesPerOp > MAX_BYTES_PER_OP;
+        }
+
+        if (allocates) {
+            System.err.printf("uncontended acquisitions allocate more than %.1f B/op%n", MAX_BYTES_PER_OP);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package entitylocker.benchmarks;
+
+import entitylocker.EntityLocker;
+import entitylocker.ReentrantEntityLockerImpl;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs one virtual thread per lock acquisition against a {@link ReentrantEntityLockerImpl}.
+ * <p>
+ * Virtual threads need Java 21, they are created through reflection so the benchmarks keep compiling for Java 8.
+ * <p>
+ * Arguments: number of virtual threads (default 1000000), number of entities (default 1000)
+ */
+public class VirtualThreadsBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int entities = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+
+        ExecutorService virtualThreads;
+        try {
+            virtualThreads = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            System.out.println("Virtual threads are not available on Java " + System.getProperty("java.version"));
+            return;
+        }
+
+        EntityLocker<Integer> entityLocker = new ReentrantEntityLockerImpl<>();
+        long[] counters = new long[entities];
+        AtomicLong failures = new AtomicLong(0L);
+        Runtime runtime = Runtime.getRuntime();
+
+        System.gc();
+        long usedMemoryBefore = runtime.totalMemory() - runtime.freeMemory();
+        long t0 = System.nanoTime();
+
+        for (int i = 0; i < threads; i++) {
+            int entityId = i % entities;
+            virtualThreads.execute(() -> {
+                try {
+                    entityLocker.executeWithEntityExclusiveAccess(entityId, () -> counters[entityId]++);
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                }
+            });
+        }
+
+        long usedMemoryPeak = runtime.totalMemory() - runtime.freeMemory();
+        virtualThreads.shutdown();
+        virtualThreads.awaitTermination(10, TimeUnit.MINUTES);
+        long elapsedNanos = System.nanoTime() - t0;
+
+        long total = 0;
+        for (long counter : counters) {
+            total += counter;
+        }
+
+        System.out.printf("virtual threads: %d, entities: %d%n", threads, entities);
+        System.out.printf("elapsed: %d ms, throughput: %.0f acquisitions/s%n",
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), threads / (elapsedNanos / 1e9));
+        System.out.printf("heap used while submitting: %d MB%n", (usedMemoryPeak - usedMemoryBefore) >> 20);
+        System.out.printf("consistent: %b, failures: %d%n", total == threads, failures.get());
+    }
+}
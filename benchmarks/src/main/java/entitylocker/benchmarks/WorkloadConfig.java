@@ -0,0 +1,132 @@
+package entitylocker.benchmarks;
+
+import entitylocker.DeadLockPolicy;
+import entitylocker.EntityLocker;
+import entitylocker.EscalationPolicy;
+import entitylocker.ReentrantEntityLockerImpl;
+import entitylocker.SpinPolicy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Workload of the {@link WorkloadSimulator}, parsed from name=value arguments. Unknown names are rejected.
+ */
+final class WorkloadConfig {
+    private static final Map<String, Supplier<EntityLocker<Integer>>> LOCKERS = new HashMap<>();
+
+    static {
+        LOCKERS.put("default", ReentrantEntityLockerImpl::new);
+        LOCKERS.put("striped", () -> ReentrantEntityLockerImpl.striped(1024));
+        LOCKERS.put("adaptiveSpin", () -> ReentrantEntityLockerImpl.withSpinPolicy(SpinPolicy.adaptive()));
+        LOCKERS.put("adaptiveEscalation", () -> ReentrantEntityLockerImpl.withEscalationPolicy(EscalationPolicy.adaptive()));
+        LOCKERS.put("abortYoungest", () -> ReentrantEntityLockerImpl.withDeadLockPolicy(DeadLockPolicy.abortYoungest()));
+        LOCKERS.put("waitDie", () -> ReentrantEntityLockerImpl.withDeadLockPolicy(DeadLockPolicy.waitDie()));
+        LOCKERS.put("woundWait", () -> ReentrantEntityLockerImpl.withDeadLockPolicy(DeadLockPolicy.woundWait()));
+    }
+
+    static final String USAGE = "arguments, as name=value:\n"
+            + "  locker        " + String.join(", ", LOCKERS.keySet()) + " or the class name of an EntityLocker with a no-arg constructor (default)\n"
+            + "  keys          number of entities (10000)\n"
+            + "  zipf          skew of the key distribution, 0 for uniform (0.99)\n"
+            + "  reads         fraction of shared accesses (0.5)\n"
+            + "  holdMicros    busy time of the protected code (10)\n"
+            + "  nesting       entities locked nested by an operation (1)\n"
+            + "  globalRatio   fraction of operations taking the global lock (0)\n"
+            + "  threads       comma separated thread counts, one run each (8)\n"
+            + "  virtual       true to run the workers on virtual threads, Java 21 (false)\n"
+            + "  rate          scheduled operations per second of all the threads, 0 for a closed loop (10000)\n"
+            + "  warmup        warmup seconds, not recorded (10)\n"
+            + "  duration      measured seconds (60)\n"
+            + "  csv           file the runs are appended to (workload.csv)";
+
+    String locker = "default";
+    int keys = 10_000;
+    double zipf = 0.99;
+    double reads = 0.5;
+    long holdMicros = 10;
+    int nesting = 1;
+    double globalRatio = 0.0;
+    int[] threads = {8};
+    boolean virtual = false;
+    double rate = 10_000;
+    long warmupSeconds = 10;
+    long durationSeconds = 60;
+    String csv = "workload.csv";
+
+    static WorkloadConfig parse(String[] args) {
+        WorkloadConfig config = new WorkloadConfig();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("expected name=value: " + arg);
+            }
+            config.set(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+
+        if (config.keys < config.nesting) {
+            throw new IllegalArgumentException("nesting can not exceed the number of keys");
+        }
+        return config;
+    }
+
+    private void set(String name, String value) {
+        switch (name) {
+            case "locker":
+                locker = value;
+                break;
+            case "keys":
+                keys = Integer.parseInt(value);
+                break;
+            case "zipf":
+                zipf = Double.parseDouble(value);
+                break;
+            case "reads":
+                reads = Double.parseDouble(value);
+                break;
+            case "holdMicros":
+                holdMicros = Long.parseLong(value);
+                break;
+            case "nesting":
+                nesting = Integer.parseInt(value);
+                break;
+            case "globalRatio":
+                globalRatio = Double.parseDouble(value);
+                break;
+            case "threads":
+                threads = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                break;
+            case "virtual":
+                virtual = Boolean.parseBoolean(value);
+                break;
+            case "rate":
+                rate = Double.parseDouble(value);
+                break;
+            case "warmup":
+                warmupSeconds = Long.parseLong(value);
+                break;
+            case "duration":
+                durationSeconds = Long.parseLong(value);
+                break;
+            case "csv":
+                csv = value;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown argument: " + name);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    EntityLocker<Integer> createLocker() throws ReflectiveOperationException {
+        Supplier<EntityLocker<Integer>> supplier = LOCKERS.get(locker);
+        if (supplier != null) {
+            return supplier.get();
+        }
+        return (EntityLocker<Integer>) Class.forName(locker).getConstructor().newInstance();
+    }
+
+    boolean isOpenLoop() {
+        return rate > 0;
+    }
+}
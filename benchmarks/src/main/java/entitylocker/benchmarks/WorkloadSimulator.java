@@ -0,0 +1,294 @@
+package entitylocker.benchmarks;
+
+import entitylocker.EntityLocker;
+import entitylocker.ProtectedCode;
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Load generator driving an {@link EntityLocker} with a configurable workload for minutes at a time, see
+ * {@link WorkloadConfig#USAGE} for the parameters.
+ * <p>
+ * An operation draws its entities from a uniform or Zipfian distribution, takes them shared or exclusive, nested when
+ * it takes more than one, or takes the global lock instead, and busy spins for the critical section duration.
+ * <p>
+ * In open loop mode every worker runs a fixed schedule of operations at rate / threads per second. The acquire wait is
+ * measured from the scheduled start of the operation rather than from the call, so a stalled locker is charged for the
+ * operations it delayed instead of hiding them (coordinated omission). Operations still unstarted at the end of the
+ * run are recorded with the wait they reached. The service wait, from the call to the start of the protected code,
+ * is reported next to it. The hold time goes from the start of the protected code to the return of the outermost
+ * call, which includes releasing the locks. In closed loop mode (rate=0) the workers run back to back and both waits
+ * are the same.
+ * <p>
+ * Every run, one per thread count, prints throughput and p50/p99/p99.9/max of the three histograms and appends a line
+ * to the CSV file, so runs over several thread counts give the scaling curve of the workload.
+ */
+public class WorkloadSimulator {
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final String CSV_HEADER = "locker,threads,virtual,rate,keys,zipf,reads,holdMicros,nesting,globalRatio,"
+            + "throughput,completed,aborted,unstarted,"
+            + "wait_p50_us,wait_p99_us,wait_p999_us,wait_max_us,"
+            + "service_wait_p50_us,service_wait_p99_us,service_wait_p999_us,service_wait_max_us,"
+            + "hold_p50_us,hold_p99_us,hold_p999_us,hold_max_us";
+
+    private final WorkloadConfig config;
+    private final EntityLocker<Integer> entityLocker;
+    private final int threads;
+    //boxed once, so drawing a key does not allocate
+    private final Integer[] entityIds;
+    private final ZipfianKeys zipfianKeys;
+    private final Recorder waitRecorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Recorder serviceWaitRecorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final Recorder holdRecorder = new Recorder(SIGNIFICANT_DIGITS);
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    private final LongAdder unstarted = new LongAdder();
+    private long measureStart;
+    private long end;
+
+    private WorkloadSimulator(WorkloadConfig config, int threads) throws ReflectiveOperationException {
+        this.config = config;
+        this.entityLocker = config.createLocker();
+        this.threads = threads;
+        this.entityIds = new Integer[config.keys];
+        for (int i = 0; i < config.keys; i++) {
+            entityIds[i] = i;
+        }
+        this.zipfianKeys = config.zipf > 0 ? new ZipfianKeys(config.keys, config.zipf) : null;
+    }
+
+    public static void main(String[] args) throws Exception {
+        WorkloadConfig config;
+        try {
+            config = WorkloadConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(WorkloadConfig.USAGE);
+            System.exit(1);
+            return;
+        }
+
+        for (int threads : config.threads) {
+            new WorkloadSimulator(config, threads).run();
+        }
+    }
+
+    private void run() throws InterruptedException, IOException {
+        ExecutorService executor = config.virtual ? virtualThreadExecutor() : Executors.newFixedThreadPool(threads);
+        if (executor == null) {
+            System.out.println("Virtual threads are not available on Java " + System.getProperty("java.version"));
+            return;
+        }
+
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        measureStart = start + TimeUnit.SECONDS.toNanos(config.warmupSeconds);
+        end = measureStart + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+        long intervalNanos = config.isOpenLoop() ? (long) (threads * 1e9 / config.rate) : 0L;
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            //the schedules of the workers are staggered over one interval
+            long firstStart = start + intervalNanos * t / threads;
+            executor.execute(() -> {
+                try {
+                    new Worker().run(firstStart, intervalNanos);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        executor.shutdown();
+
+        report();
+    }
+
+    private void report() throws IOException {
+        Histogram wait = waitRecorder.getIntervalHistogram();
+        Histogram serviceWait = serviceWaitRecorder.getIntervalHistogram();
+        Histogram hold = holdRecorder.getIntervalHistogram();
+        double throughput = completed.sum() / (double) config.durationSeconds;
+
+        System.out.printf(Locale.ROOT, "locker: %s, threads: %d%s, rate: %s, keys: %d, zipf: %.2f, reads: %.2f, hold: %d us, nesting: %d, global ratio: %.4f%n",
+                config.locker, threads, config.virtual ? " virtual" : "", config.isOpenLoop() ? String.valueOf((long) config.rate) : "closed loop",
+                config.keys, config.zipf, config.reads, config.holdMicros, config.nesting, config.globalRatio);
+        System.out.printf(Locale.ROOT, "throughput: %.0f ops/s, completed: %d, aborted: %d, unstarted: %d%n",
+                throughput, completed.sum(), aborted.sum(), unstarted.sum());
+        printPercentiles("acquire wait", wait);
+        printPercentiles("service wait", serviceWait);
+        printPercentiles("hold time", hold);
+
+        File csvFile = new File(config.csv);
+        boolean header = !csvFile.exists() || csvFile.length() == 0;
+        try (PrintWriter writer = new PrintWriter(new FileWriter(csvFile, true))) {
+            if (header) {
+                writer.println(CSV_HEADER);
+            }
+            writer.printf(Locale.ROOT, "%s,%d,%b,%.0f,%d,%.2f,%.2f,%d,%d,%.4f,%.0f,%d,%d,%d,%s,%s,%s%n",
+                    config.locker, threads, config.virtual, config.rate, config.keys, config.zipf, config.reads,
+                    config.holdMicros, config.nesting, config.globalRatio, throughput, completed.sum(), aborted.sum(),
+                    unstarted.sum(), percentiles(wait), percentiles(serviceWait), percentiles(hold));
+        }
+    }
+
+    private static void printPercentiles(String name, Histogram histogram) {
+        System.out.printf(Locale.ROOT, "%-13s p50: %10.1f us, p99: %10.1f us, p99.9: %10.1f us, max: %10.1f us%n", name,
+                micros(histogram.getValueAtPercentile(50)), micros(histogram.getValueAtPercentile(99)),
+                micros(histogram.getValueAtPercentile(99.9)), micros(histogram.getMaxValue()));
+    }
+
+    private static String percentiles(Histogram histogram) {
+        return String.format(Locale.ROOT, "%.1f,%.1f,%.1f,%.1f",
+                micros(histogram.getValueAtPercentile(50)), micros(histogram.getValueAtPercentile(99)),
+                micros(histogram.getValueAtPercentile(99.9)), micros(histogram.getMaxValue()));
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+
+    /*
+     * Virtual threads need Java 21, they are created through reflection so the benchmarks keep compiling for Java 8
+     */
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs the operations of one thread, the protected code records the time it was entered in the worker
+     */
+    private final class Worker {
+        private final int[] keyIndexes = new int[config.nesting];
+        private final long holdNanos = TimeUnit.MICROSECONDS.toNanos(config.holdMicros);
+        private final ProtectedCode body = this::criticalSection;
+        private boolean shared;
+        private long enteredAt;
+
+        void run(long firstStart, long intervalNanos) {
+            long scheduled = firstStart;
+            while (true) {
+                long now = waitUntil(scheduled);
+                if (now >= end) {
+                    recordUnstarted(scheduled, intervalNanos, now);
+                    return;
+                }
+                if (intervalNanos == 0L) {
+                    scheduled = now;
+                }
+
+                try {
+                    operation();
+                    long returnedAt = System.nanoTime();
+                    if (scheduled >= measureStart) {
+                        waitRecorder.recordValue(enteredAt - scheduled);
+                        serviceWaitRecorder.recordValue(enteredAt - now);
+                        holdRecorder.recordValue(returnedAt - enteredAt);
+                        completed.increment();
+                    }
+                } catch (DeadLockPreventionException e) {
+                    if (scheduled >= measureStart) {
+                        aborted.increment();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                scheduled += intervalNanos;
+            }
+        }
+
+        private void operation() throws InterruptedException {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (config.globalRatio > 0 && random.nextDouble() < config.globalRatio) {
+                entityLocker.executeWithGlobalExclusiveAccess(body);
+                return;
+            }
+
+            shared = random.nextDouble() < config.reads;
+            drawKeys(random);
+            acquire(0);
+        }
+
+        private void acquire(int level) {
+            if (level == keyIndexes.length) {
+                criticalSection();
+                return;
+            }
+
+            Integer entityId = entityIds[keyIndexes[level]];
+            if (shared) {
+                entityLocker.executeWithEntitySharedAccess(entityId, () -> acquire(level + 1));
+            } else {
+                entityLocker.executeWithEntityExclusiveAccess(entityId, () -> acquire(level + 1));
+            }
+        }
+
+        private void criticalSection() {
+            enteredAt = System.nanoTime();
+            long until = enteredAt + holdNanos;
+            while (System.nanoTime() < until) {
+                //busy work of the critical section
+            }
+        }
+
+        /*
+         * Distinct keys for the nested acquisitions
+         */
+        private void drawKeys(ThreadLocalRandom random) {
+            for (int level = 0; level < keyIndexes.length; level++) {
+                int keyIndex;
+                boolean drawn;
+                do {
+                    keyIndex = zipfianKeys != null ? zipfianKeys.next() : random.nextInt(config.keys);
+                    drawn = false;
+                    for (int previous = 0; previous < level; previous++) {
+                        drawn |= keyIndexes[previous] == keyIndex;
+                    }
+                } while (drawn);
+                keyIndexes[level] = keyIndex;
+            }
+        }
+
+        /*
+         * Parks until the scheduled start in open loop mode, returns the current time
+         */
+        private long waitUntil(long scheduled) {
+            long now = System.nanoTime();
+            while (now < scheduled) {
+                LockSupport.parkNanos(scheduled - now);
+                now = System.nanoTime();
+            }
+            return now;
+        }
+
+        /*
+         * The operations scheduled before the end of the run and never started waited at least until now
+         */
+        private void recordUnstarted(long scheduled, long intervalNanos, long now) {
+            if (intervalNanos == 0L) {
+                return;
+            }
+            for (long start = Math.max(scheduled, measureStart); start < end; start += intervalNanos) {
+                waitRecorder.recordValue(now - start);
+                unstarted.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package entitylocker.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipfian distribution over the key indexes [0, keys), key i drawn with a probability proportional to 1 / (i + 1)^s.
+ * <p>
+ * The cumulative distribution is computed once and sampled by binary search, so drawing a key does not allocate.
+ */
+final class ZipfianKeys {
+    private final double[] cumulative;
+
+    /**
+     * @param keys     number of keys
+     * @param exponent skew of the distribution, 0.99 is the usual YCSB skew
+     */
+    ZipfianKeys(int keys, double exponent) {
+        cumulative = new double[keys];
+        double sum = 0.0;
+        for (int i = 0; i < keys; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < keys; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    int next() {
+        int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+    }
+}
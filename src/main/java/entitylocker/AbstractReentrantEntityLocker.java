@@ -0,0 +1,1499 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reentrant locking protocol shared by the entity lockers.
+ * <p>
+ * Works on {@link EntityLockEntry} instances instead of entity ids, so the same reentrancy, timeout, deadlock
+ * prevention, global lock and escalation semantics apply whatever lock table the subclass uses to map its entity ids
+ * to entries. Subclasses retain the entry of an entity in their lock table, call one of the executeWithEntryLock
+ * methods and release the entry afterwards.
+ * <p>
+ * A thread exceeding the escalation threshold is escalated to the global write lock, unless it may escalate to
+ * groups: the group of the next entity it accesses is then held exclusively, and the thread accesses the entities of
+ * an exclusively held group without locking them. Only the threads holding at most the allowed number of groups
+ * escalate to groups, the others fall back to the global lock.
+ */
+abstract class AbstractReentrantEntityLocker {
+    static final int NO_ESCALATION_VALUE = -1;
+    /**
+     * Version stripe of lockers that do not support optimistic reads
+     */
+    static final int NO_VERSION_STRIPE = -1;
+
+    private static final int NOT_ACQUIRED = -1;
+    private static final long MIN_RETRY_BACK_OFF_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_RETRY_BACK_OFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /*
+     * Every entity access holds a read lock of the global lock, which is biased towards readers so that accesses to
+     * different entities do not all update the same lock state
+     */
+    private final BiasedReadWriteLock globalLock = new BiasedReadWriteLock();
+    private final ThreadEntityGraph<LockEntry> threadEntityGraph = new ThreadEntityGraph<>();
+    //first entity held by the threads, kept out of the wait-for graph until they wait or hold another entity
+    private final ThreadHoldSlots holdSlots = new ThreadHoldSlots();
+
+    /*
+     * Escalation state of the threads currently escalated. Kept in a map holding only the escalated threads rather than
+     * in a ThreadLocal, so threads that only briefly use the locker, like virtual threads, leave no state behind
+     */
+    private final ConcurrentHashMap<Thread, LockEscalation> escalatedThreads = new ConcurrentHashMap<>();
+    /*
+     * Number of global read holds the escalated threads converted into write holds, given back on de-escalation
+     */
+    private final ConcurrentHashMap<Thread, Integer> escalatedReadHolds = new ConcurrentHashMap<>();
+    /*
+     * Priority transactions of the threads holding entities in the wait-die and wound-wait modes, and of the threads
+     * retrying an invocation in every mode
+     */
+    private final ConcurrentHashMap<Thread, PriorityTransaction> priorityTransactions = new ConcurrentHashMap<>();
+    /*
+     * Number of groups held by the threads holding at least one, only updated by the thread itself
+     */
+    private final ConcurrentHashMap<Thread, int[]> heldGroups = new ConcurrentHashMap<>();
+    private final AtomicLong priorityTimestamps = new AtomicLong(0L);
+    private final AtomicLong escalatingThreadsCount = new AtomicLong(0L);
+    private final AtomicLong globalWriteEpoch = new AtomicLong(0L);
+    private final EntityVersionStamps versionStamps = new EntityVersionStamps();
+    private final LockerMetrics metrics = new LockerMetrics();
+    private volatile HotKeyTracker hotKeyTracker;
+    /*
+     * Hand-off of the escalations to the global write lock waiters, kept apart from the global lock so a thread can
+     * finish its escalation without holding the global write lock
+     */
+    private final ReentrantLock escalationLock = new ReentrantLock();
+    private final Condition escalationsFinished = escalationLock.newCondition();
+
+    private final EscalationPolicy escalationPolicy;
+    private final int maxEscalatedGroups;
+    private final SpinPolicy spinPolicy;
+    private final DeadLockPolicy deadLockPolicy;
+
+    /**
+     * @param escalationPolicy   when a thread holding many entities is escalated
+     * @param maxEscalatedGroups number of groups a thread may hold and still escalate to groups rather than to the
+     *                           global lock, 0 to always escalate to the global lock
+     * @param spinPolicy         how threads wait for a contended entity
+     * @param deadLockPolicy     how deadlocks are broken or prevented
+     * @throws IllegalStateException if the policy is already used by another locker
+     */
+    AbstractReentrantEntityLocker(EscalationPolicy escalationPolicy, int maxEscalatedGroups, SpinPolicy spinPolicy, DeadLockPolicy deadLockPolicy) {
+        escalationPolicy.bind();
+        this.escalationPolicy = escalationPolicy;
+        this.maxEscalatedGroups = maxEscalatedGroups;
+        this.spinPolicy = spinPolicy;
+        this.deadLockPolicy = deadLockPolicy;
+
+        if (deadLockPolicy.detectsInBackground()) {
+            BackgroundDeadLockDetector.start(threadEntityGraph, deadLockPolicy);
+        }
+    }
+
+    AbstractReentrantEntityLocker(int escalationThreshold, SpinPolicy spinPolicy, DeadLockPolicy deadLockPolicy) {
+        this(EscalationPolicy.ofThreshold(escalationThreshold), 0, spinPolicy, deadLockPolicy);
+    }
+
+    AbstractReentrantEntityLocker(int escalationThreshold, SpinPolicy spinPolicy) {
+        this(escalationThreshold, spinPolicy, DeadLockPolicy.abortRequester());
+    }
+
+    AbstractReentrantEntityLocker(int escalationThreshold) {
+        this(escalationThreshold, SpinPolicy.park());
+    }
+
+    /**
+     * Executes the protected code with access to the entity of the given entry.
+     *
+     * @param entry         lock entry of the entity, retained by the caller
+     * @param lockMode      exclusive or shared access
+     * @param versionStripe version stripe of the entity, bumped by exclusive access, or {@link #NO_VERSION_STRIPE}
+     * @param protectedCode protected code to be executed
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks, or if
+     *                                     the current thread tries to upgrade a shared access to exclusive
+     */
+    final void executeWithEntryLock(LockEntry entry, LockMode lockMode, int versionStripe, ProtectedCode protectedCode) throws DeadLockPreventionException {
+        boolean entryLocked = acquireEntityLock(entry, lockMode);
+
+        runAndReleaseEntityLock(entry, lockMode, versionStripe, entryLocked, protectedCode);
+    }
+
+    /**
+     * Executes the protected code with access to the entity of the given entry, will time out if the thread
+     * did not acquire the lock within the specified waitLockTimeout
+     *
+     * @param entry           lock entry of the entity, retained by the caller
+     * @param lockMode        exclusive or shared access
+     * @param versionStripe   version stripe of the entity, bumped by exclusive access, or {@link #NO_VERSION_STRIPE}
+     * @param protectedCode   protected code to be executed
+     * @param waitLockTimeout max time to wait for the lock
+     * @param timeUnit        time unit
+     * @return true if the lock was acquired and the protected code executed, false otherwise
+     * @throws InterruptedException        if the current thread is interrupted
+     * @throws DeadLockPreventionException if the current thread tries to upgrade a shared access to exclusive
+     */
+    final boolean executeWithEntryLock(LockEntry entry, LockMode lockMode, int versionStripe, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        return executeWithEntryLock(entry, lockMode, versionStripe, timeUnit.toNanos(waitLockTimeout), remainingNanos -> {
+            protectedCode.run();
+            return true;
+        });
+    }
+
+    /**
+     * Executes the protected code with access to the entity of the given entry, holding its group in the matching
+     * intention mode first. The entity is not locked if the current thread holds the group exclusively.
+     *
+     * @param group         lock entry of the group of the entity, or null if the entity belongs to no group
+     * @param entry         lock entry of the entity, retained by the caller
+     * @param lockMode      exclusive or shared access
+     * @param versionStripe version stripe of the entity, bumped by exclusive access, or {@link #NO_VERSION_STRIPE}
+     * @param protectedCode protected code to be executed
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks, or if
+     *                                     the current thread tries to upgrade a shared access to exclusive
+     */
+    final void executeWithEntryLock(GroupLockEntry group, EntityLockEntry entry, LockMode lockMode, int versionStripe, ProtectedCode protectedCode) throws DeadLockPreventionException {
+        if (group == null) {
+            executeWithEntryLock(entry, lockMode, versionStripe, protectedCode);
+            return;
+        }
+
+        executeWithEntryLock(group, lockMode.intention(), NO_VERSION_STRIPE, () -> {
+            if (group.getHoldMode() == LockMode.EXCLUSIVE) {
+                protectedCode.run();
+            } else {
+                executeWithEntryLock(entry, lockMode, versionStripe, protectedCode);
+            }
+        });
+    }
+
+    /**
+     * Executes the protected code with access to the entity of the given entry, holding its group in the matching
+     * intention mode first, will time out if the thread did not acquire both locks within the specified
+     * waitLockTimeout
+     *
+     * @param group           lock entry of the group of the entity, or null if the entity belongs to no group
+     * @param entry           lock entry of the entity, retained by the caller
+     * @param lockMode        exclusive or shared access
+     * @param versionStripe   version stripe of the entity, bumped by exclusive access, or {@link #NO_VERSION_STRIPE}
+     * @param protectedCode   protected code to be executed
+     * @param waitLockTimeout max time to wait for the locks
+     * @param timeUnit        time unit
+     * @return true if the locks were acquired and the protected code executed, false otherwise
+     * @throws InterruptedException        if the current thread is interrupted
+     * @throws DeadLockPreventionException if the current thread tries to upgrade a shared access to exclusive
+     */
+    final boolean executeWithEntryLock(GroupLockEntry group, EntityLockEntry entry, LockMode lockMode, int versionStripe, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        if (group == null) {
+            return executeWithEntryLock(entry, lockMode, versionStripe, protectedCode, waitLockTimeout, timeUnit);
+        }
+
+        return executeWithEntryLock(group, lockMode.intention(), NO_VERSION_STRIPE, timeUnit.toNanos(waitLockTimeout), remainingNanos -> {
+            if (group.getHoldMode() == LockMode.EXCLUSIVE) {
+                protectedCode.run();
+                return true;
+            }
+            return executeWithEntryLock(entry, lockMode, versionStripe, protectedCode, remainingNanos, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    /**
+     * Executes the protected code with exclusive access to all the entities of the given entries.
+     * <p>
+     * If the current thread holds no entity yet, the entries are locked in their canonical order, which can not
+     * deadlock with other batches, so no deadlock check is done. If the batch makes the thread exceed the escalation
+     * threshold the thread is escalated in one step instead. Otherwise the entries are acquired one by one, in canonical
+     * order, with the same checks as a nested acquisition.
+     *
+     * @param entries        lock entries of the entities, retained by the caller
+     * @param versionStripes version stripes of the entities, bumped while the entities are held
+     * @param protectedCode  protected code to be executed
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks, or if
+     *                                     the current thread tries to upgrade a shared access to exclusive
+     */
+    final void executeWithEntryLocks(EntityLockEntry[] entries, int[] versionStripes, ProtectedCode protectedCode) throws DeadLockPreventionException {
+        EntityLockEntry[] orderedEntries = LockEntry.inCanonicalOrder(entries);
+        boolean[] entriesLocked = new boolean[orderedEntries.length];
+
+        int acquired = acquireEntityLocks(orderedEntries, entriesLocked);
+
+        runAndReleaseEntityLocks(orderedEntries, entriesLocked, acquired, versionStripes, protectedCode);
+    }
+
+    /**
+     * Executes the protected code with exclusive access to all the entities of the given entries, will time out if the
+     * thread did not acquire all the locks within the specified waitLockTimeout
+     *
+     * @param entries         lock entries of the entities, retained by the caller
+     * @param versionStripes  version stripes of the entities, bumped while the entities are held
+     * @param protectedCode   protected code to be executed
+     * @param waitLockTimeout max time to wait for all the locks
+     * @param timeUnit        time unit
+     * @return true if the locks were acquired and the protected code executed, false otherwise
+     * @throws InterruptedException        if the current thread is interrupted
+     * @throws DeadLockPreventionException if the current thread tries to upgrade a shared access to exclusive
+     * @see #executeWithEntryLocks(EntityLockEntry[], int[], ProtectedCode)
+     */
+    final boolean executeWithEntryLocks(EntityLockEntry[] entries, int[] versionStripes, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        EntityLockEntry[] orderedEntries = LockEntry.inCanonicalOrder(entries);
+        boolean[] entriesLocked = new boolean[orderedEntries.length];
+
+        int acquired = acquireEntityLocks(orderedEntries, entriesLocked, timeUnit.toNanos(waitLockTimeout));
+        if (acquired == NOT_ACQUIRED) {
+            return false;
+        }
+
+        runAndReleaseEntityLocks(orderedEntries, entriesLocked, acquired, versionStripes, protectedCode);
+        return true;
+    }
+
+    /**
+     * Executes the protected code with exclusive access to all the entities of the given entries, holding their groups
+     * in intention exclusive mode first, in canonical order. The entities of the groups the current thread holds
+     * exclusively are not locked. If the batch makes the thread exceed the escalation threshold and the thread may
+     * escalate to groups, all the groups are held exclusively instead of locking the entities.
+     *
+     * @param groups         lock entries of the groups of the entities, or null if the entities belong to no group
+     * @param entries        lock entries of the entities, retained by the caller
+     * @param versionStripes version stripes of the entities, bumped while the entities are held
+     * @param protectedCode  protected code to be executed
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks, or if
+     *                                     the current thread tries to upgrade a shared access to exclusive
+     * @see #executeWithEntryLocks(EntityLockEntry[], int[], ProtectedCode)
+     */
+    final void executeWithEntryLocks(GroupLockEntry[] groups, EntityLockEntry[] entries, int[] versionStripes, ProtectedCode protectedCode) throws DeadLockPreventionException {
+        if (groups == null) {
+            executeWithEntryLocks(entries, versionStripes, protectedCode);
+            return;
+        }
+
+        GroupLockEntry[] orderedGroups = LockEntry.inCanonicalOrder(groups);
+        executeWithGroupIntentions(orderedGroups, 0, () -> {
+            EntityLockEntry[] lockedEntries = outsideExclusiveGroups(groups, entries);
+            if (currentThreadWouldLockManyEntities(lockedEntries.length) && canEscalateToGroups(0)) {
+                onGroupEscalated();
+                executeWithGroupEscalation(orderedGroups, 0, protectedCode);
+            } else {
+                executeWithEntryLocks(lockedEntries, outsideExclusiveGroups(groups, versionStripes), protectedCode);
+            }
+        });
+    }
+
+    /**
+     * Timed version of {@link #executeWithEntryLocks(GroupLockEntry[], EntityLockEntry[], int[], ProtectedCode)}, the
+     * timeout covers the groups and the entities
+     *
+     * @param groups          lock entries of the groups of the entities, or null if the entities belong to no group
+     * @param entries         lock entries of the entities, retained by the caller
+     * @param versionStripes  version stripes of the entities, bumped while the entities are held
+     * @param protectedCode   protected code to be executed
+     * @param waitLockTimeout max time to wait for all the locks
+     * @param timeUnit        time unit
+     * @return true if the locks were acquired and the protected code executed, false otherwise
+     * @throws InterruptedException        if the current thread is interrupted
+     * @throws DeadLockPreventionException if the current thread tries to upgrade a shared access to exclusive
+     */
+    final boolean executeWithEntryLocks(GroupLockEntry[] groups, EntityLockEntry[] entries, int[] versionStripes, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        if (groups == null) {
+            return executeWithEntryLocks(entries, versionStripes, protectedCode, waitLockTimeout, timeUnit);
+        }
+
+        GroupLockEntry[] orderedGroups = LockEntry.inCanonicalOrder(groups);
+        return executeWithGroupIntentions(orderedGroups, 0, timeUnit.toNanos(waitLockTimeout), remainingNanos -> {
+            EntityLockEntry[] lockedEntries = outsideExclusiveGroups(groups, entries);
+            if (currentThreadWouldLockManyEntities(lockedEntries.length) && canEscalateToGroups(0)) {
+                onGroupEscalated();
+                return executeWithGroupEscalation(orderedGroups, 0, remainingNanos, escalatedNanos -> {
+                    protectedCode.run();
+                    return true;
+                });
+            }
+            return executeWithEntryLocks(lockedEntries, outsideExclusiveGroups(groups, versionStripes), protectedCode, remainingNanos, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    /**
+     * @return a new group entry, locked through the executeWithEntryLock methods like an entity entry
+     */
+    final GroupLockEntry newGroupLockEntry() {
+        return new GroupLockEntry(this::currentThreadHasEntityAccess);
+    }
+
+    /**
+     * @return number of lock entries of the lock table, a measure of the memory used by the locker
+     */
+    int getLockEntryCount() {
+        return 0;
+    }
+
+    /**
+     * @return number of threads holding or waiting for entities
+     */
+    final int getActiveThreads() {
+        return deadLockPolicy.usesPriorityTimestamps() ? priorityTransactions.size() : threadEntityGraph.getThreadCount() + holdSlots.getHolderCount();
+    }
+
+    /**
+     * @return estimate of the number of threads waiting for the global lock
+     */
+    final int getGlobalLockWaiters() {
+        return globalLock.getQueueLength();
+    }
+
+    /**
+     * @param hashCode hash code of the entity id
+     * @return version stripe of the entity
+     */
+    final int versionStripeOf(int hashCode) {
+        return versionStamps.stripeOf(hashCode);
+    }
+
+    /**
+     * Starts an optimistic read of an entity
+     *
+     * @param versionStripe version stripe of the entity
+     * @return a stamp, or {@link EntityVersionStamps#INVALID_STAMP} if some thread has exclusive access to an entity
+     * of the stripe
+     */
+    final long tryOptimisticEntityRead(int versionStripe) {
+        return versionStamps.tryOptimisticRead(versionStripe);
+    }
+
+    /**
+     * Starts an optimistic read, to be validated against global exclusive access
+     *
+     * @return a stamp, or {@link EntityVersionStamps#INVALID_STAMP} if some thread has global exclusive access
+     */
+    final long tryOptimisticGlobalRead() {
+        long epoch = globalWriteEpoch.get();
+        return globalLock.isWriteLocked() ? EntityVersionStamps.INVALID_STAMP : epoch;
+    }
+
+    /**
+     * @param versionStripe version stripe of the entity
+     * @param entityStamp   stamp returned by {@link #tryOptimisticEntityRead(int)}
+     * @param globalStamp   stamp returned by {@link #tryOptimisticGlobalRead()}
+     * @return true if no thread got exclusive access to the entity stripe or global exclusive access since the stamps
+     * were issued
+     */
+    final boolean validateOptimisticRead(int versionStripe, long entityStamp, long globalStamp) {
+        return globalStamp != EntityVersionStamps.INVALID_STAMP
+                && versionStamps.validate(versionStripe, entityStamp)
+                && !globalLock.isWriteLocked()
+                && globalWriteEpoch.get() == globalStamp;
+    }
+
+    /**
+     * @return contention metrics of this locker, disabled until {@link LockerMetrics#enable()} is called
+     */
+    public LockerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Installs a tracker sampling the contended acquisitions of this locker, see {@link HotKeyTracker}
+     *
+     * @param hotKeyTracker tracker, or null to stop tracking
+     * @throws IllegalStateException if the tracker was installed on another locker
+     */
+    public void setHotKeyTracker(HotKeyTracker hotKeyTracker) {
+        if (hotKeyTracker != null) {
+            hotKeyTracker.bind(this);
+        }
+        this.hotKeyTracker = hotKeyTracker;
+    }
+
+    /**
+     * @return the installed hot key tracker, or null
+     */
+    public HotKeyTracker getHotKeyTracker() {
+        return hotKeyTracker;
+    }
+
+    public void executeWithGlobalExclusiveAccess(ProtectedCode protectedCode) throws InterruptedException {
+        long waitStart = metrics.startTimer();
+        acquireGlobalLock();
+        metrics.onGlobalLocked(waitStart);
+
+        long holdStart = metrics.startTimer();
+        try {
+            protectedCode.run();
+        } finally {
+            metrics.onGlobalReleased(holdStart);
+            releaseGlobalLock();
+        }
+    }
+
+    public boolean executeWithGlobalExclusiveAccess(ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        long waitStart = metrics.startTimer();
+        if (!acquireGlobalLock(waitLockTimeout, timeUnit)) {
+            return false;
+        }
+        metrics.onGlobalLocked(waitStart);
+
+        long holdStart = metrics.startTimer();
+        try {
+            protectedCode.run();
+            return true;
+        } finally {
+            metrics.onGlobalReleased(holdStart);
+            releaseGlobalLock();
+        }
+    }
+
+    /*
+     * Every attempt runs as a new transaction with the timestamp of the first one, the transactions of the retried
+     * attempts also record aborts in the detection modes
+     */
+    public void executeWithDeadLockRetry(ProtectedCode protectedCode) throws DeadLockPreventionException {
+        Thread currentThread = Thread.currentThread();
+        if (priorityTransactions.containsKey(currentThread) || currentThreadHasEntityAccess()) {
+            protectedCode.run();
+            return;
+        }
+
+        long timestamp = priorityTimestamps.incrementAndGet();
+        long backOffNanos = MIN_RETRY_BACK_OFF_NANOS;
+        while (true) {
+            PriorityTransaction transaction = new PriorityTransaction(timestamp, true);
+            priorityTransactions.put(currentThread, transaction);
+
+            try {
+                protectedCode.run();
+                return;
+            } catch (DeadLockPreventionException e) {
+                if (!transaction.isAborted()) {
+                    throw e;
+                }
+            } finally {
+                priorityTransactions.remove(currentThread);
+            }
+
+            //lets the conflicting invocations finish before trying again
+            LockSupport.parkNanos(this, backOffNanos);
+            backOffNanos = Math.min(2 * backOffNanos, MAX_RETRY_BACK_OFF_NANOS);
+        }
+    }
+
+    private boolean runAndReleaseEntityLock(LockEntry entry, LockMode lockMode, int versionStripe, boolean entryLocked, ProtectedCode protectedCode) {
+        boolean bumpVersion = lockMode == LockMode.EXCLUSIVE && versionStripe != NO_VERSION_STRIPE;
+        if (bumpVersion) {
+            versionStamps.beginWrite(versionStripe);
+        }
+
+        long holdStart = startHoldTimer(entry);
+        try {
+            protectedCode.run();
+            return true;
+        } finally {
+            metrics.onEntityReleased(holdStart);
+            if (bumpVersion) {
+                versionStamps.endWrite(versionStripe);
+            }
+            releaseEntityLock(entry, lockMode, entryLocked);
+        }
+    }
+
+    /*
+     * Timed acquisition running code that acquires more locks within the remaining time
+     */
+    private boolean executeWithEntryLock(LockEntry entry, LockMode lockMode, int versionStripe, long timeoutNanos, TimedProtectedCode protectedCode) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        checkLockUpgrade(entry, lockMode);
+
+        boolean entryLocked = true;
+        boolean lockedManyEntities = currentThreadHasLockedManyEntities();
+        if (lockedManyEntities && canEscalateToGroup(entry)) {
+            if (!acquireEntityLock(entry, LockMode.EXCLUSIVE, timeoutNanos, TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+            onGroupEscalated();
+        } else if (lockedManyEntities) {
+            if (!escalateCurrentThreadWithTimeout(timeoutNanos, TimeUnit.NANOSECONDS, LockEscalation.MANY_ENTITIES)) {
+                return false;
+            }
+            entryLocked = false;
+        } else if (!acquireEntityLock(entry, lockMode, timeoutNanos, TimeUnit.NANOSECONDS)) {
+            //could not acquire lock
+            return false;
+        }
+
+        boolean bumpVersion = lockMode == LockMode.EXCLUSIVE && versionStripe != NO_VERSION_STRIPE;
+        if (bumpVersion) {
+            versionStamps.beginWrite(versionStripe);
+        }
+
+        long holdStart = startHoldTimer(entry);
+        try {
+            return protectedCode.run(getRemainingNanos(deadline, System.nanoTime()));
+        } finally {
+            metrics.onEntityReleased(holdStart);
+            if (bumpVersion) {
+                versionStamps.endWrite(versionStripe);
+            }
+            releaseEntityLock(entry, lockMode, entryLocked);
+        }
+    }
+
+    private void executeWithGroupIntentions(GroupLockEntry[] groups, int index, ProtectedCode protectedCode) {
+        if (index == groups.length) {
+            protectedCode.run();
+            return;
+        }
+
+        executeWithEntryLock(groups[index], LockMode.INTENTION_EXCLUSIVE, NO_VERSION_STRIPE,
+                () -> executeWithGroupIntentions(groups, index + 1, protectedCode));
+    }
+
+    private boolean executeWithGroupIntentions(GroupLockEntry[] groups, int index, long timeoutNanos, TimedProtectedCode protectedCode) throws InterruptedException {
+        if (index == groups.length) {
+            return protectedCode.run(timeoutNanos);
+        }
+
+        return executeWithEntryLock(groups[index], LockMode.INTENTION_EXCLUSIVE, NO_VERSION_STRIPE, timeoutNanos,
+                remainingNanos -> executeWithGroupIntentions(groups, index + 1, remainingNanos, protectedCode));
+    }
+
+    /*
+     * Holds the groups exclusively, in canonical order, upgrading the intention holds of the current thread
+     */
+    private void executeWithGroupEscalation(GroupLockEntry[] groups, int index, ProtectedCode protectedCode) {
+        if (index == groups.length) {
+            protectedCode.run();
+            return;
+        }
+
+        lockEntry(Thread.currentThread().getId(), groups[index], LockMode.EXCLUSIVE);
+        globalLock.lockRead();
+        try {
+            executeWithGroupEscalation(groups, index + 1, protectedCode);
+        } finally {
+            releaseEntityLock(groups[index], LockMode.EXCLUSIVE, true);
+        }
+    }
+
+    private boolean executeWithGroupEscalation(GroupLockEntry[] groups, int index, long timeoutNanos, TimedProtectedCode protectedCode) throws InterruptedException {
+        if (index == groups.length) {
+            return protectedCode.run(timeoutNanos);
+        }
+
+        long deadline = System.nanoTime() + timeoutNanos;
+        if (!acquireEntityLock(groups[index], LockMode.EXCLUSIVE, timeoutNanos, TimeUnit.NANOSECONDS)) {
+            return false;
+        }
+        try {
+            return executeWithGroupEscalation(groups, index + 1, getRemainingNanos(deadline, System.nanoTime()), protectedCode);
+        } finally {
+            releaseEntityLock(groups[index], LockMode.EXCLUSIVE, true);
+        }
+    }
+
+    /*
+     * Returns true if the entry was locked, false if the current thread was escalated to the global write lock instead.
+     * A group entry is locked exclusively if the current thread escalates to it
+     */
+    private boolean acquireEntityLock(LockEntry entry, LockMode lockMode) throws DeadLockPreventionException {
+        checkLockUpgrade(entry, lockMode);
+
+        if (currentThreadHasLockedManyEntities()) {
+            if (!canEscalateToGroup(entry)) {
+                escalateCurrentThreadLocks(LockEscalation.MANY_ENTITIES);
+                return false;
+            }
+            onGroupEscalated();
+            lockMode = LockMode.EXCLUSIVE;
+        }
+
+        lockEntry(Thread.currentThread().getId(), entry, lockMode);
+        globalLock.lockRead();
+        return true;
+    }
+
+    private boolean acquireEntityLock(LockEntry entry, LockMode lockMode, long timeoutLock, TimeUnit timeUnit) throws InterruptedException {
+        long t0 = System.nanoTime();
+
+        if (!tryLockEntry(entry, lockMode, timeUnit.toNanos(timeoutLock))) {
+            return false;
+        }
+
+        long elapsedNanos = System.nanoTime() - t0;
+        long remainingWaitingTime = getRemainingNanos(timeUnit.toNanos(timeoutLock), elapsedNanos);
+
+        if (!globalLock.tryLockRead(remainingWaitingTime, TimeUnit.NANOSECONDS)) {
+            unlockEntry(entry, lockMode);
+            metrics.onTimeout();
+            return false;
+        }
+
+        onEntryLocked(Thread.currentThread().getId(), entry, lockMode);
+        return true;
+    }
+
+    /*
+     * Returns the number of acquisitions to release: one per entry, or a single one if the thread was escalated
+     */
+    private int acquireEntityLocks(LockEntry[] entries, boolean[] entriesLocked) throws DeadLockPreventionException {
+        for (LockEntry entry : entries) {
+            checkLockUpgrade(entry, LockMode.EXCLUSIVE);
+        }
+
+        if (entries.length == 0) {
+            return 0;
+        }
+
+        if (currentThreadWouldLockManyEntities(entries.length)) {
+            escalateCurrentThreadLocks(LockEscalation.MANY_ENTITIES);
+            return 1;
+        }
+
+        if (!currentThreadHasEntityAccess()) {
+            lockInCanonicalOrder(entries, entriesLocked);
+            return entries.length;
+        }
+
+        //the thread already holds other entities, so the canonical order alone does not prevent deadlocks
+        int acquired = 0;
+        try {
+            for (; acquired < entries.length; acquired++) {
+                entriesLocked[acquired] = acquireEntityLock(entries[acquired], LockMode.EXCLUSIVE);
+            }
+        } catch (RuntimeException e) {
+            releaseEntityLocks(entries, entriesLocked, acquired);
+            throw e;
+        }
+
+        return acquired;
+    }
+
+    private int acquireEntityLocks(LockEntry[] entries, boolean[] entriesLocked, long timeoutNanos) throws InterruptedException {
+        for (LockEntry entry : entries) {
+            checkLockUpgrade(entry, LockMode.EXCLUSIVE);
+        }
+
+        if (entries.length == 0) {
+            return 0;
+        }
+
+        if (currentThreadWouldLockManyEntities(entries.length)) {
+            return escalateCurrentThreadWithTimeout(timeoutNanos, TimeUnit.NANOSECONDS, LockEscalation.MANY_ENTITIES) ? 1 : NOT_ACQUIRED;
+        }
+
+        if (!currentThreadHasEntityAccess()) {
+            return lockInCanonicalOrder(entries, entriesLocked, timeoutNanos) ? entries.length : NOT_ACQUIRED;
+        }
+
+        long deadline = System.nanoTime() + timeoutNanos;
+        int acquired = 0;
+        boolean timedOut = false;
+        try {
+            for (; acquired < entries.length && !timedOut; acquired++) {
+                long remainingNanos = getRemainingNanos(deadline, System.nanoTime());
+
+                if (currentThreadHasLockedManyEntities()) {
+                    timedOut = !escalateCurrentThreadWithTimeout(remainingNanos, TimeUnit.NANOSECONDS, LockEscalation.MANY_ENTITIES);
+                } else {
+                    entriesLocked[acquired] = acquireEntityLock(entries[acquired], LockMode.EXCLUSIVE, remainingNanos, TimeUnit.NANOSECONDS);
+                    timedOut = !entriesLocked[acquired];
+                }
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            releaseEntityLocks(entries, entriesLocked, acquired);
+            throw e;
+        }
+
+        if (timedOut) {
+            //the last attempt did not acquire anything
+            releaseEntityLocks(entries, entriesLocked, acquired - 1);
+            return NOT_ACQUIRED;
+        }
+
+        return acquired;
+    }
+
+    private void lockInCanonicalOrder(LockEntry[] entries, boolean[] entriesLocked) {
+        long threadId = Thread.currentThread().getId();
+        int locked = 0;
+
+        //batches can not deadlock with each other, but with a nested acquisition holding one of the entries they can
+        try {
+            for (; locked < entries.length; locked++) {
+                lockEntry(threadId, entries[locked], LockMode.EXCLUSIVE);
+                entriesLocked[locked] = true;
+            }
+        } catch (RuntimeException e) {
+            for (int i = locked - 1; i >= 0; i--) {
+                releaseEntityLock(threadId, entries[i], LockMode.EXCLUSIVE);
+                entriesLocked[i] = false;
+            }
+            throw e;
+        }
+
+        globalLock.lockRead(entries.length);
+    }
+
+    private boolean lockInCanonicalOrder(LockEntry[] entries, boolean[] entriesLocked, long timeoutNanos) throws InterruptedException {
+        long threadId = Thread.currentThread().getId();
+        long deadline = System.nanoTime() + timeoutNanos;
+        int locked = 0;
+        boolean globalReadLocked = false;
+        boolean acquiredAll = false;
+
+        try {
+            for (; locked < entries.length; locked++) {
+                if (!tryLockEntry(entries[locked], LockMode.EXCLUSIVE, getRemainingNanos(deadline, System.nanoTime()))) {
+                    return false;
+                }
+                onEntryLocked(threadId, entries[locked], LockMode.EXCLUSIVE);
+                entriesLocked[locked] = true;
+            }
+
+            globalReadLocked = globalLock.tryLockRead(entries.length, getRemainingNanos(deadline, System.nanoTime()), TimeUnit.NANOSECONDS);
+            if (!globalReadLocked) {
+                metrics.onTimeout();
+                return false;
+            }
+
+            acquiredAll = true;
+            return true;
+        } finally {
+            if (!acquiredAll) {
+                if (globalReadLocked) {
+                    globalLock.unlockRead(entries.length);
+                }
+                for (int i = locked - 1; i >= 0; i--) {
+                    releaseEntityLock(threadId, entries[i], LockMode.EXCLUSIVE);
+                    entriesLocked[i] = false;
+                }
+            }
+        }
+    }
+
+    private void runAndReleaseEntityLocks(LockEntry[] entries, boolean[] entriesLocked, int acquired, int[] versionStripes, ProtectedCode protectedCode) {
+        for (int versionStripe : versionStripes) {
+            versionStamps.beginWrite(versionStripe);
+        }
+
+        long holdStart = metrics.startTimer();
+        try {
+            protectedCode.run();
+        } finally {
+            metrics.onEntityReleased(holdStart);
+            for (int versionStripe : versionStripes) {
+                versionStamps.endWrite(versionStripe);
+            }
+            releaseEntityLocks(entries, entriesLocked, acquired);
+        }
+    }
+
+    /*
+     * Releases in reverse order the first acquired entries, every acquisition holds a global lock
+     */
+    private void releaseEntityLocks(LockEntry[] entries, boolean[] entriesLocked, int acquired) {
+        for (int i = acquired - 1; i >= 0; i--) {
+            releaseEntityLock(entries[i], LockMode.EXCLUSIVE, entriesLocked[i]);
+        }
+    }
+
+    /*
+     * A thread holding an entity in shared mode can not acquire it exclusively: it would wait for its own shared hold
+     * to be released. Downgrading from exclusive to shared is allowed.
+     */
+    private void checkLockUpgrade(LockEntry entry, LockMode lockMode) {
+        if (entry.isUpgradeBlocked(lockMode)) {
+            metrics.onDeadLockAbort();
+            throw new DeadLockPreventionException(entry instanceof GroupLockEntry
+                    ? "Group access can not be upgraded to " + lockMode + " access"
+                    : "Shared entity access can not be upgraded to exclusive access");
+        }
+    }
+
+    private void escalateCurrentThreadLocks(LockEscalation lockEscalation) {
+        if (currentThreadIsEscalated()) {
+            globalLock.lockWrite();
+            updateCurrentThreadEscalation(lockEscalation);
+            return;
+        }
+        //this count forces any write lock waiting while this read lock is escalated, see awaitEscalations
+        escalatingThreadsCount.incrementAndGet();
+
+        int readHolds = releaseAllReadLocks();
+
+        globalLock.lockWrite();
+        onGlobalWriteLockAcquired();
+
+        //If this Thread current protected code is a sub-protected code, parent protected code(s) are escalated as well
+        escalateParentProtectedCodes(readHolds);
+        escalatedReadHolds.put(Thread.currentThread(), readHolds);
+        escalatedThreads.put(Thread.currentThread(), lockEscalation);
+        finishEscalation();
+        onEscalated(lockEscalation);
+    }
+
+    private boolean escalateCurrentThreadWithTimeout(long waitTimeoutForGlobalLock, TimeUnit timeUnit, LockEscalation lockEscalation) throws InterruptedException {
+        if (currentThreadIsEscalated()) {
+            //an escalated thread owns the global write lock, this reentrant hold never blocks so needs no timeout
+            globalLock.lockWrite();
+            updateCurrentThreadEscalation(lockEscalation);
+            return true;
+        }
+
+        //this count forces any write lock waiting while this read lock is escalated, see awaitEscalations
+        escalatingThreadsCount.incrementAndGet();
+
+        int readHolds = releaseAllReadLocks();
+
+        boolean locked = globalLock.tryLockWrite(waitTimeoutForGlobalLock, timeUnit);
+        if (!locked) {
+            metrics.onTimeout();
+            /*
+             Escalation timed out so re-acquire previous lock level. Not timed as the enclosing protected codes of this
+             thread still run under these read holds, it can not give up on them. The escalation is not finished yet,
+             so a writer arriving meanwhile yields the global lock: this only waits for the current write lock owner
+             and the other escalating threads, not for the writers queued behind them
+             */
+            globalLock.lockRead(readHolds);
+            finishEscalation();
+            return false;
+        }
+        onGlobalWriteLockAcquired();
+
+        //If this Thread current protected code is a sub-protected code, parent protected code(s) are escalated as well
+        escalateParentProtectedCodes(readHolds);
+        escalatedReadHolds.put(Thread.currentThread(), readHolds);
+        escalatedThreads.put(Thread.currentThread(), lockEscalation);
+        finishEscalation();
+        onEscalated(lockEscalation);
+
+        return true;
+    }
+
+    private void releaseEntityLock(LockEntry entry, LockMode lockMode, boolean entryLocked) {
+        boolean shouldReleaseGlobalWriteLock = currentThreadLockIsEscalatedDueToManyEntityLock();
+        if (shouldReleaseGlobalWriteLock) {
+            //if was escalated, release write lock
+            globalLock.unlockWrite();
+
+            if (globalLock.getWriteHoldCount() == 0) {
+                escalatedReadHolds.remove(Thread.currentThread());
+                escalatedThreads.remove(Thread.currentThread());
+            }
+        } else {
+            globalLock.unlockRead();
+        }
+
+        if (entryLocked) {
+            //an escalated acquisition holds the global write lock only, the entry itself was never locked
+            releaseEntityLock(Thread.currentThread().getId(), entry, lockMode);
+        }
+    }
+
+    private void releaseEntityLock(long threadId, LockEntry entry, LockMode lockMode) {
+        if (unlockEntry(entry, lockMode) == 0) {
+            onEntryReleased(threadId, entry);
+        }
+    }
+
+    /*
+     * An entry available right now is locked without looking at the wait-for graph, only a thread about to wait
+     * publishes its wait edge and, unless a background detector does it, looks for the cycle it would close
+     */
+    private void lockEntry(long threadId, LockEntry entry, LockMode lockMode) throws DeadLockPreventionException {
+        if (deadLockPolicy.usesPriorityTimestamps()) {
+            lockEntryInPriorityOrder(entry, lockMode);
+            return;
+        }
+
+        boolean contended = !entry.tryLockUncontended(lockMode);
+        long waitStart = LockerMetrics.NOT_TIMED;
+        if (contended) {
+            waitStart = startWaitTimer();
+            publishSlotHold(threadId);
+            ThreadEntityGraph.WaitEdge<LockEntry> waitEdge = threadEntityGraph.addWaitEdge(threadId, entry, lockMode, Thread.currentThread());
+            try {
+                if (deadLockPolicy.detectsOnAcquire()) {
+                    breakDeadLock(threadId, entry, lockMode);
+                }
+                awaitEntry(entry, lockMode, waitEdge);
+            } catch (DeadLockPreventionException e) {
+                PriorityTransaction retriedTransaction = priorityTransactions.get(Thread.currentThread());
+                if (retriedTransaction != null) {
+                    retriedTransaction.setAborted();
+                }
+                metrics.onDeadLockAbort();
+                throw e;
+            } finally {
+                threadEntityGraph.removeWaitEdge(threadId);
+            }
+        }
+        spinPolicy.onLocked(entry, lockMode);
+        escalationPolicy.onEntityLocked(contended);
+        onEntityLocked(entry, contended, waitStart);
+        recordHold(threadId, entry, lockMode);
+    }
+
+    /*
+     * The first hold of an entity goes to the slot of the thread if it is free, any other hold to the wait-for graph.
+     * A second entity publishes the slot hold first, so a thread is either in its slot or in the graph. Slots are not
+     * used when victims are chosen by age, the age of a thread being the order it entered the graph
+     */
+    private void recordHold(long threadId, LockEntry entry, LockMode lockMode) {
+        boolean firstHold = entry.getHoldCount() == 1;
+        if (!deadLockPolicy.usesThreadAges()) {
+            if (firstHold ? holdSlots.tryHold(threadId, entry, lockMode) : holdSlots.tryHoldAgain(threadId, entry, lockMode)) {
+                if (firstHold) {
+                    onGroupHeld(entry);
+                }
+                return;
+            }
+            publishSlotHold(threadId);
+        }
+
+        if (threadEntityGraph.addHoldEdge(threadId, entry, lockMode)) {
+            onGroupHeld(entry);
+        }
+    }
+
+    /*
+     * Called before the current thread waits, a thread holding entities unknown to the graph could close a cycle
+     * nobody sees
+     */
+    private void publishSlotHold(long threadId) {
+        LockEntry slotEntry = holdSlots.getEntry(threadId);
+        if (slotEntry != null) {
+            threadEntityGraph.addHoldEdge(threadId, slotEntry, holdSlots.getMode(threadId));
+            holdSlots.release(threadId, slotEntry);
+        }
+    }
+
+    /*
+     * Wait-die and wound-wait. Every transaction holding or waiting for an entry is registered in it, and a conflict
+     * is resolved whenever a transaction starts waiting for an entry or takes an entry others wait for. A waiter sets
+     * its wait edge before reading the registered transactions and a new holder registers before reading the wait
+     * edges, so of two conflicting transactions at least one sees the other
+     */
+    private void lockEntryInPriorityOrder(LockEntry entry, LockMode lockMode) throws DeadLockPreventionException {
+        PriorityTransaction transaction = currentPriorityTransaction();
+        boolean firstHold = entry.getHoldCount() == 0;
+
+        if (entry.tryLockUncontended(lockMode)) {
+            spinPolicy.onLocked(entry, lockMode);
+            escalationPolicy.onEntityLocked(false);
+            metrics.onEntityLocked(false, LockerMetrics.NOT_TIMED);
+            if (firstHold) {
+                holdInPriorityOrder(entry, lockMode, transaction);
+            } else if (entry instanceof GroupLockEntry && lockMode != LockMode.INTENTION_SHARED) {
+                //possibly an upgrade, conflicting with waiters its previous hold did not conflict with
+                resolveConflictsAsHolder(entry, lockMode, transaction);
+            }
+            return;
+        }
+
+        long waitStart = startWaitTimer();
+        //only the upgrade of a group hold waits while holding the entry
+        if (firstHold) {
+            entry.addPriorityOwner(transaction);
+        }
+        ThreadEntityGraph.WaitEdge<LockEntry> waitEdge = new ThreadEntityGraph.WaitEdge<>(entry, lockMode, Thread.currentThread());
+        try {
+            if (!transaction.startWaiting(waitEdge) || !resolveConflictsAsWaiter(entry, transaction)) {
+                //wounded, or younger than a conflicting transaction in wait-die
+                waitEdge.tryAbort();
+            }
+            awaitEntry(entry, lockMode, waitEdge);
+        } catch (DeadLockPreventionException e) {
+            if (firstHold) {
+                entry.removePriorityOwner(transaction);
+            }
+            transaction.setAborted();
+            endPriorityTransactionIfDone(transaction);
+            metrics.onDeadLockAbort();
+            throw e;
+        } finally {
+            transaction.stopWaiting();
+        }
+
+        spinPolicy.onLocked(entry, lockMode);
+        escalationPolicy.onEntityLocked(true);
+        onEntityLocked(entry, true, waitStart);
+        if (firstHold) {
+            transaction.onEntityHeld();
+            onGroupHeld(entry);
+        }
+    }
+
+    /*
+     * Returns false if the waiter must die
+     */
+    private boolean resolveConflictsAsWaiter(LockEntry entry, PriorityTransaction waiter) {
+        boolean woundWait = deadLockPolicy.isWoundWait();
+
+        for (PriorityTransaction owner : entry.getPriorityOwners()) {
+            if (owner == waiter) {
+                continue;
+            }
+
+            if (woundWait && waiter.isOlderThan(owner)) {
+                owner.wound();
+            } else if (!woundWait && owner.isOlderThan(waiter)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * A transaction taking an entry without waiting may pass the transactions already waiting for it
+     */
+    private void holdInPriorityOrder(LockEntry entry, LockMode lockMode, PriorityTransaction holder) {
+        entry.addPriorityOwner(holder);
+        holder.onEntityHeld();
+        onGroupHeld(entry);
+        resolveConflictsAsHolder(entry, lockMode, holder);
+    }
+
+    private void resolveConflictsAsHolder(LockEntry entry, LockMode lockMode, PriorityTransaction holder) {
+        boolean woundWait = deadLockPolicy.isWoundWait();
+        for (PriorityTransaction owner : entry.getPriorityOwners()) {
+            ThreadEntityGraph.WaitEdge<LockEntry> waitEdge = owner.getWaitEdge();
+            if (owner == holder || waitEdge == null || waitEdge.getEntityId() != entry || !waitEdge.getLockMode().conflictsWith(lockMode)) {
+                continue;
+            }
+
+            if (woundWait && owner.isOlderThan(holder)) {
+                holder.wound();
+            } else if (!woundWait && holder.isOlderThan(owner)) {
+                waitEdge.tryAbort();
+            }
+        }
+    }
+
+    private PriorityTransaction currentPriorityTransaction() {
+        Thread currentThread = Thread.currentThread();
+        PriorityTransaction transaction = priorityTransactions.get(currentThread);
+
+        if (transaction == null) {
+            transaction = new PriorityTransaction(priorityTimestamps.incrementAndGet(), false);
+            priorityTransactions.put(currentThread, transaction);
+        }
+        return transaction;
+    }
+
+    /*
+     * A transaction ends with its last entity, unless its invocation is retried
+     */
+    private void endPriorityTransactionIfDone(PriorityTransaction transaction) {
+        if (transaction.getHeldEntities() == 0 && !transaction.isRetried()) {
+            priorityTransactions.remove(Thread.currentThread());
+        }
+    }
+
+    private void onEntryLocked(long threadId, LockEntry entry, LockMode lockMode) {
+        if (!deadLockPolicy.usesPriorityTimestamps()) {
+            recordHold(threadId, entry, lockMode);
+        } else if (entry.getHoldCount() == 1) {
+            holdInPriorityOrder(entry, lockMode, currentPriorityTransaction());
+        }
+    }
+
+    private void onEntryReleased(long threadId, LockEntry entry) {
+        onGroupReleased(entry);
+        if (!deadLockPolicy.usesPriorityTimestamps()) {
+            if (!holdSlots.release(threadId, entry)) {
+                threadEntityGraph.removeHoldEdge(threadId, entry);
+            }
+            return;
+        }
+
+        PriorityTransaction transaction = priorityTransactions.get(Thread.currentThread());
+        entry.removePriorityOwner(transaction);
+        transaction.onEntityReleased();
+        endPriorityTransactionIfDone(transaction);
+    }
+
+    private void onGroupHeld(LockEntry entry) {
+        if (entry instanceof GroupLockEntry) {
+            heldGroups.computeIfAbsent(Thread.currentThread(), t -> new int[1])[0]++;
+        }
+    }
+
+    private void onGroupReleased(LockEntry entry) {
+        if (entry instanceof GroupLockEntry) {
+            Thread currentThread = Thread.currentThread();
+            int[] count = heldGroups.get(currentThread);
+            if (count != null && --count[0] == 0) {
+                heldGroups.remove(currentThread);
+            }
+        }
+    }
+
+    /*
+     * A thread escalates to a group as long as it holds few groups, including the new one
+     */
+    private boolean canEscalateToGroup(LockEntry entry) {
+        return entry instanceof GroupLockEntry && canEscalateToGroups(entry.getHoldCount() == 0 ? 1 : 0);
+    }
+
+    private boolean canEscalateToGroups(int newGroups) {
+        if (maxEscalatedGroups == 0 || currentThreadLockIsEscalatedDueToManyEntityLock()) {
+            return false;
+        }
+
+        int[] count = heldGroups.get(Thread.currentThread());
+        return (count == null ? 0 : count[0]) + newGroups <= maxEscalatedGroups;
+    }
+
+    /*
+     * Entities of the groups held exclusively by the current thread are not locked, groups[i] is the group of
+     * entries[i]
+     */
+    private static EntityLockEntry[] outsideExclusiveGroups(GroupLockEntry[] groups, EntityLockEntry[] entries) {
+        EntityLockEntry[] lockedEntries = new EntityLockEntry[entries.length];
+        int count = 0;
+
+        for (int i = 0; i < entries.length; i++) {
+            if (groups[i].getHoldMode() != LockMode.EXCLUSIVE) {
+                lockedEntries[count++] = entries[i];
+            }
+        }
+        return count == entries.length ? entries : Arrays.copyOf(lockedEntries, count);
+    }
+
+    private static int[] outsideExclusiveGroups(GroupLockEntry[] groups, int[] versionStripes) {
+        int[] lockedStripes = new int[versionStripes.length];
+        int count = 0;
+
+        for (int i = 0; i < versionStripes.length; i++) {
+            if (groups[i].getHoldMode() != LockMode.EXCLUSIVE) {
+                lockedStripes[count++] = versionStripes[i];
+            }
+        }
+        return count == versionStripes.length ? versionStripes : Arrays.copyOf(lockedStripes, count);
+    }
+
+    private int currentThreadHeldEntities() {
+        if (!deadLockPolicy.usesPriorityTimestamps()) {
+            long threadId = Thread.currentThread().getId();
+            return threadEntityGraph.getHeldEntities(threadId).size() + (holdSlots.getEntry(threadId) == null ? 0 : 1);
+        }
+
+        PriorityTransaction transaction = priorityTransactions.get(Thread.currentThread());
+        return transaction == null ? 0 : transaction.getHeldEntities();
+    }
+
+    /*
+     * The wait edge is published before looking for a cycle, without a global lock: of the threads closing a cycle at
+     * the same time, the last one to publish sees the others. At worst several of them are aborted instead of one
+     */
+    private void breakDeadLock(long threadId, LockEntry entry, LockMode lockMode) {
+        long[] cycle = EntityDeadLockChecker.findCycle(threadEntityGraph, threadId, entry, lockMode);
+        if (cycle == null) {
+            return;
+        }
+
+        ThreadEntityGraph.WaitEdge<LockEntry> victimWaitEdge = threadEntityGraph.getWaitEdge(deadLockPolicy.selectVictim(threadEntityGraph, cycle));
+        if (victimWaitEdge != null) {
+            //fails if the victim stopped waiting meanwhile, which broke the cycle already
+            victimWaitEdge.tryAbort();
+        }
+    }
+
+    /*
+     * Waits for the entry until it is locked or the wait is aborted. Interrupts received while waiting are restored,
+     * except the one aborting the wait
+     */
+    private void awaitEntry(LockEntry entry, LockMode lockMode, ThreadEntityGraph.WaitEdge<LockEntry> waitEdge) {
+        boolean interrupted = false;
+        boolean locked = !waitEdge.isAborted() && spinPolicy.spinLock(entry, lockMode);
+
+        while (!locked && !waitEdge.isAborted()) {
+            try {
+                entry.lockInterruptibly(lockMode);
+                locked = true;
+            } catch (InterruptedException e) {
+                //an abort sets its state before interrupting, an interrupt seen while not aborted is not the abort one
+                interrupted |= !waitEdge.isAborted();
+            }
+        }
+
+        if (locked && !waitEdge.tryGrant()) {
+            //aborted while acquiring the entry
+            entry.unlock(lockMode);
+            locked = false;
+        }
+
+        if (!locked) {
+            waitEdge.clearAbortInterrupt();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (!locked) {
+            throw new DeadLockPreventionException();
+        }
+    }
+
+    private boolean tryLockEntry(LockEntry entry, LockMode lockMode, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+
+        boolean contended = !entry.tryLockUncontended(lockMode);
+        long waitStart = contended ? startWaitTimer() : LockerMetrics.NOT_TIMED;
+        if (contended && !spinPolicy.spinLock(entry, lockMode)
+                && !entry.tryLock(lockMode, getRemainingNanos(deadline, System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            metrics.onTimeout();
+            return false;
+        }
+        spinPolicy.onLocked(entry, lockMode);
+        escalationPolicy.onEntityLocked(contended);
+        onEntityLocked(entry, contended, waitStart);
+        return true;
+    }
+
+    /*
+     * Returns the number of holds of the entry the current thread still has
+     */
+    private int unlockEntry(LockEntry entry, LockMode lockMode) {
+        spinPolicy.onUnlocking(entry, lockMode);
+        return entry.unlock(lockMode);
+    }
+
+    private void acquireGlobalLock() throws InterruptedException {
+        if (currentThreadHasEntityAccess()) {
+            /*
+             If current thread already has entity access then it has a global read lock, temporarily escalate its global
+             read to write lock to ensure reentrancy, otherwise would deadlock as the global lock does not let to
+             upgrade from read to write lock. Every held read lock becomes a write lock in a single step.
+
+             De-escalation should happen when this current global write lock is unlocked
+             */
+            escalateCurrentThreadLocks(LockEscalation.TEMPORARY);
+            return;
+        }
+
+        globalLock.lockWrite();
+        while (mustYieldToEscalatingThreads()) {
+            globalLock.unlockWrite();
+            awaitEscalations();
+            globalLock.lockWrite();
+        }
+        onGlobalWriteLockAcquired();
+    }
+
+    private boolean acquireGlobalLock(long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        if (currentThreadHasEntityAccess()) {
+             /*
+             If current thread already has entity access then it has a global read lock, temporarily escalate its global
+             read to write lock to ensure reentrancy, otherwise would deadlock as the global lock does not let to
+             upgrade from read to write lock. Every held read lock becomes a write lock in a single step.
+
+             De-escalation should happen once this current global write lock is unlocked
+             */
+            return escalateCurrentThreadWithTimeout(waitLockTimeout, timeUnit, LockEscalation.TEMPORARY);
+        }
+
+        long startNanos = System.nanoTime();
+        long timeoutNanos = timeUnit.toNanos(waitLockTimeout);
+        boolean locked = globalLock.tryLockWrite(waitLockTimeout, timeUnit);
+        while (locked && mustYieldToEscalatingThreads()) {
+            globalLock.unlockWrite();
+            locked = awaitEscalations(getRemainingNanos(timeoutNanos, System.nanoTime() - startNanos))
+                    && globalLock.tryLockWrite(getRemainingNanos(timeoutNanos, System.nanoTime() - startNanos), TimeUnit.NANOSECONDS);
+        }
+        if (!locked) {
+            metrics.onTimeout();
+            return false;
+        }
+        onGlobalWriteLockAcquired();
+
+        return true;
+    }
+
+    private boolean currentThreadHasEntityAccess() {
+        return currentThreadHeldEntities() > 0;
+    }
+
+    private void releaseGlobalLock() {
+        globalLock.unlockWrite();
+
+        if (currentThreadLockIsEscalatedTemporarily()) {
+            //parent read locks may have been escalated to ensure reentrancy. (the global lock does not let upgrade of locks)
+            deEscalateToReadLock();
+        }
+    }
+
+    private boolean currentThreadHasLockedManyEntities() {
+        //a batch escalated in one step holds no associations, its nested accesses must stay escalated as well
+        return currentThreadWouldLockManyEntities(1);
+    }
+
+    private boolean currentThreadWouldLockManyEntities(int newEntities) {
+        return currentThreadLockIsEscalatedDueToManyEntityLock() || (escalationPolicy.escalates()
+                && escalationPolicy.shouldEscalate(currentThreadHeldEntities(), newEntities, this));
+    }
+
+    private void onEscalated(LockEscalation lockEscalation) {
+        metrics.onEscalated();
+        if (lockEscalation == LockEscalation.MANY_ENTITIES) {
+            escalationPolicy.onEscalated();
+        }
+    }
+
+    private void onGroupEscalated() {
+        escalationPolicy.onGroupEscalated();
+        metrics.onGroupEscalated();
+    }
+
+    /*
+     * Contended acquisitions are timed for the metrics and the hot key tracker, the uncontended ones never read the clock
+     */
+    private long startWaitTimer() {
+        return hotKeyTracker != null ? System.nanoTime() : metrics.startTimer();
+    }
+
+    private void onEntityLocked(LockEntry entry, boolean contended, long waitStart) {
+        metrics.onEntityLocked(contended, waitStart);
+
+        HotKeyTracker tracker = hotKeyTracker;
+        if (contended && tracker != null && waitStart != LockerMetrics.NOT_TIMED && entry instanceof EntityLockEntry) {
+            tracker.onContendedAcquisition((EntityLockEntry) entry, System.nanoTime() - waitStart);
+        }
+    }
+
+    /*
+     * Group holds are timed by the access to the entity they protect
+     */
+    private long startHoldTimer(LockEntry entry) {
+        return entry instanceof GroupLockEntry ? LockerMetrics.NOT_TIMED : metrics.startTimer();
+    }
+
+    private void updateCurrentThreadEscalation(LockEscalation newLockEscalation) {
+        boolean shouldOverride = currentThreadLockIsEscalatedTemporarily() && newLockEscalation == LockEscalation.MANY_ENTITIES;
+        if (shouldOverride) {
+            escalatedThreads.put(Thread.currentThread(), newLockEscalation);
+        }
+    }
+
+    /*
+     * Every global read hold of a parent protected code becomes a write hold, released by that protected code
+     */
+    private void escalateParentProtectedCodes(int readHolds) {
+        globalLock.lockWrite(readHolds);
+    }
+
+    /*
+     * Returns the number of released read holds, which is the number of entity holds of the current thread: a batch
+     * takes one per entity, nested and reentrant accesses one each
+     */
+    private int releaseAllReadLocks() {
+        int readHolds = globalLock.getReadHoldCount();
+        globalLock.unlockRead(readHolds);
+        return readHolds;
+    }
+
+    private boolean currentThreadLockIsEscalatedDueToManyEntityLock() {
+        return escalatedThreads.get(Thread.currentThread()) == LockEscalation.MANY_ENTITIES;
+    }
+
+    private boolean currentThreadLockIsEscalatedTemporarily() {
+        return escalatedThreads.get(Thread.currentThread()) == LockEscalation.TEMPORARY;
+    }
+
+    private boolean currentThreadIsEscalated() {
+        return currentThreadLockIsEscalatedDueToManyEntityLock() || currentThreadLockIsEscalatedTemporarily();
+    }
+
+    /*
+     * Nested global accesses keep their own write holds, only the converted ones become read holds again
+     */
+    private void deEscalateToReadLock() {
+        int readHolds = escalatedReadHolds.remove(Thread.currentThread());
+        globalLock.lockRead(readHolds);
+        globalLock.unlockWrite(readHolds);
+        escalatedThreads.remove(Thread.currentThread());
+    }
+
+    /*
+     * A new global write lock owner invalidates the optimistic reads that started before it
+     */
+    private void onGlobalWriteLockAcquired() {
+        if (globalLock.getWriteHoldCount() == 1) {
+            globalWriteEpoch.incrementAndGet();
+        }
+    }
+
+    private void finishEscalation() {
+        if (escalatingThreadsCount.decrementAndGet() == 0) {
+            escalationLock.lock();
+            try {
+                escalationsFinished.signalAll();
+            } finally {
+                escalationLock.unlock();
+            }
+        }
+    }
+
+    /*
+     * A new global write lock owner gives way to the threads escalating their read locks, they hold entities its
+     * protected code may access. A reentrant owner keeps the lock, the escalations wait for its outermost access
+     */
+    private boolean mustYieldToEscalatingThreads() {
+        return globalLock.getWriteHoldCount() == 1 && escalatingThreadsCount.get() > 0;
+    }
+
+    private void awaitEscalations() throws InterruptedException {
+        escalationLock.lock();
+        try {
+            while (escalatingThreadsCount.get() > 0) {
+                escalationsFinished.await();
+            }
+        } finally {
+            escalationLock.unlock();
+        }
+    }
+
+    /**
+     * @return false if the escalations did not finish within the timeout
+     */
+    private boolean awaitEscalations(long timeoutNanos) throws InterruptedException {
+        escalationLock.lock();
+        try {
+            while (escalatingThreadsCount.get() > 0) {
+                if (timeoutNanos <= 0) {
+                    return false;
+                }
+                timeoutNanos = escalationsFinished.awaitNanos(timeoutNanos);
+            }
+            return true;
+        } finally {
+            escalationLock.unlock();
+        }
+    }
+
+    /*
+     * Returns remaining or zero if negative
+     */
+    private long getRemainingNanos(long totalNanos, long subtractNanos) {
+        return Math.max(totalNanos - subtractNanos, 0);
+    }
+
+    /*
+     * Protected code of a timed acquisition, acquiring more locks within the time left
+     */
+    private interface TimedProtectedCode {
+        boolean run(long remainingNanos) throws InterruptedException;
+    }
+
+    /**
+     * Has information on whether current thread lock has been escalated or not
+     * And in case it is escalated, if it is a temporary escalation or was because of many entity lock acquisition
+     */
+    private enum LockEscalation {
+        MANY_ENTITIES, TEMPORARY
+    }
+}
\ No newline at end of file
@@ -0,0 +1,108 @@
+package entitylocker;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exclusive lock of a single entity for the {@link AsyncEntityLocker}, with the FIFO queue of the requests waiting
+ * for it.
+ * <p>
+ * Only accessed inside the atomic map operations of the lock table. The queue is removed from the table once the
+ * entity is unlocked with no request waiting.
+ * <p>
+ * The queue also records whether a thread is starting its waiters: a waiter handed the lock meanwhile is left to that
+ * thread, so a request released inside the start of the previous one does not start the next one recursively.
+ */
+class AsyncEntityLockQueue {
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private boolean locked;
+    private boolean starting;
+    private Waiter ready;
+
+    /**
+     * @param waiter request for the lock
+     * @return true if the lock was free and is now owned by the waiter, false if the waiter was queued
+     */
+    boolean lockOrEnqueue(Waiter waiter) {
+        if (!locked) {
+            locked = true;
+            return waiter.tryGrant();
+        }
+
+        waiters.addLast(waiter);
+        return false;
+    }
+
+    /**
+     * Hands the lock over to the oldest waiter still waiting, skipping the ones that timed out
+     *
+     * @return the waiter now owning the lock, or null if the lock is free
+     */
+    Waiter unlockOrHandOff() {
+        Waiter waiter;
+        while ((waiter = waiters.pollFirst()) != null) {
+            if (waiter.tryGrant()) {
+                return waiter;
+            }
+        }
+
+        locked = false;
+        return null;
+    }
+
+    /**
+     * @param next waiter handed the lock by {@link #unlockOrHandOff()}
+     * @return true if the caller must start the waiter then the ones returned by {@link #takeReady()}, false if the
+     * thread already starting the waiters of this queue starts it
+     */
+    boolean startOrDefer(Waiter next) {
+        if (starting) {
+            ready = next;
+            return false;
+        }
+
+        starting = true;
+        return true;
+    }
+
+    /**
+     * Called by the thread starting the waiters, once the previous start returned
+     *
+     * @return the waiter handed the lock meanwhile, or null if there is none and the caller stops starting
+     */
+    Waiter takeReady() {
+        Waiter next = ready;
+        ready = null;
+        if (next == null) {
+            starting = false;
+        }
+        return next;
+    }
+
+    /**
+     * A request waiting for the lock. It is granted the lock or cancelled, whichever happens first.
+     */
+    abstract static class Waiter {
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int CANCELLED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+
+        final boolean tryGrant() {
+            return state.compareAndSet(WAITING, GRANTED);
+        }
+
+        /**
+         * @return true if the waiter gave up before being granted the lock
+         */
+        final boolean tryCancel() {
+            return state.compareAndSet(WAITING, CANCELLED);
+        }
+
+        /**
+         * Runs the request once it owns the lock, it must release the lock when done
+         */
+        abstract void start();
+    }
+}
@@ -0,0 +1,45 @@
+package entitylocker;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Provides exclusive access to entities with primary keys of type T without blocking the calling thread.
+ * <p>
+ * Requests waiting for an entity are queued continuations, not parked threads: when the entity is released the lock
+ * is handed directly to the next queued request, whose protected code is then submitted to its executor.
+ * The lock is owned by the request, not by a thread, so access is not reentrant: a protected code requesting its own
+ * entity again waits for itself forever.
+ *
+ * @param <T> Entity id data type
+ */
+public interface AsyncEntityLocker<T> {
+
+    /**
+     * Executes the protected code with exclusive access to the entity once it is available.
+     *
+     * @param entityId The id of the entity
+     * @param protectedCode protected code to be executed, the entity is held until its stage completes
+     * @param executor executor running the protected code
+     * @param <R> type of the result
+     * @return stage completed with the result of the protected code, or exceptionally if the protected code failed
+     */
+    <R> CompletionStage<R> executeWithEntityExclusiveAccessAsync(T entityId, AsyncProtectedCode<R> protectedCode, Executor executor);
+
+    /**
+     * Executes the protected code with exclusive access to the entity, will time out if the request did not acquire
+     * the lock within the specified waitLockTimeout
+     *
+     * @param entityId Id of the entity
+     * @param protectedCode protected code to be executed, the entity is held until its stage completes
+     * @param executor executor running the protected code
+     * @param waitLockTimeout max time to wait for the lock
+     * @param timeUnit time unit
+     * @param <R> type of the result
+     * @return stage completed with the result of the protected code, or exceptionally with a {@link TimeoutException}
+     * if the lock was not acquired in time, in which case the protected code is never executed
+     */
+    <R> CompletionStage<R> executeWithEntityExclusiveAccessAsync(T entityId, AsyncProtectedCode<R> protectedCode, Executor executor, long waitLockTimeout, TimeUnit timeUnit);
+}
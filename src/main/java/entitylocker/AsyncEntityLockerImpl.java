@@ -0,0 +1,193 @@
+package entitylocker;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Implementation of {@link AsyncEntityLocker}.
+ * <p>
+ * Every locked entity has an {@link AsyncEntityLockQueue} in a concurrent hash map, created on demand and removed
+ * once the entity is unlocked with nobody waiting. Releasing an entity picks the next waiter inside the map operation
+ * and submits its protected code to its executor afterwards, so no thread ever waits for an entity.
+ * Timeouts are scheduled on a timeout scheduler and complete the waiting request exceptionally.
+ * <p>
+ * A direct executor runs the protected code of the next request inside the release of the previous one. A request
+ * handed the lock while the previous one starts is left in the entity queue and started in a loop by the release
+ * already starting, once the previous start returns, so the stack does not grow with the queue.
+ *
+ * @param <T>
+ */
+public class AsyncEntityLockerImpl<T> implements AsyncEntityLocker<T> {
+    private final ConcurrentHashMap<T, AsyncEntityLockQueue> entityLocks = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timeoutScheduler;
+
+    /**
+     * @param timeoutScheduler scheduler of the lock wait timeouts, only runs short tasks
+     */
+    public AsyncEntityLockerImpl(ScheduledExecutorService timeoutScheduler) {
+        this.timeoutScheduler = Objects.requireNonNull(timeoutScheduler);
+    }
+
+    /**
+     * Creates a locker scheduling its timeouts on a daemon thread shared by all the lockers
+     */
+    public AsyncEntityLockerImpl() {
+        this(DefaultScheduler.INSTANCE);
+    }
+
+    @Override
+    public <R> CompletionStage<R> executeWithEntityExclusiveAccessAsync(T entityId, AsyncProtectedCode<R> protectedCode, Executor executor) {
+        LockRequest<R> request = new LockRequest<>(entityId, protectedCode, executor);
+
+        if (lockOrEnqueue(request)) {
+            request.start();
+        }
+
+        return request.result;
+    }
+
+    @Override
+    public <R> CompletionStage<R> executeWithEntityExclusiveAccessAsync(T entityId, AsyncProtectedCode<R> protectedCode, Executor executor, long waitLockTimeout, TimeUnit timeUnit) {
+        LockRequest<R> request = new LockRequest<>(entityId, protectedCode, executor);
+
+        if (lockOrEnqueue(request)) {
+            request.start();
+        } else {
+            request.timeout = timeoutScheduler.schedule(request::cancelOnTimeout, waitLockTimeout, timeUnit);
+        }
+
+        return request.result;
+    }
+
+    /**
+     * @return number of entities currently locked
+     */
+    int size() {
+        return entityLocks.size();
+    }
+
+    private boolean lockOrEnqueue(LockRequest<?> request) {
+        boolean[] granted = new boolean[1];
+        entityLocks.compute(request.entityId, (eId, existingQueue) -> {
+            AsyncEntityLockQueue queue = existingQueue == null ? new AsyncEntityLockQueue() : existingQueue;
+            granted[0] = queue.lockOrEnqueue(request);
+            return queue;
+        });
+
+        return granted[0];
+    }
+
+    private void unlock(T entityId) {
+        AsyncEntityLockQueue[] startingQueue = new AsyncEntityLockQueue[1];
+        AsyncEntityLockQueue.Waiter[] next = new AsyncEntityLockQueue.Waiter[1];
+        entityLocks.computeIfPresent(entityId, (eId, queue) -> {
+            next[0] = queue.unlockOrHandOff();
+            if (next[0] == null) {
+                return null;
+            }
+
+            if (queue.startOrDefer(next[0])) {
+                startingQueue[0] = queue;
+            }
+            return queue;
+        });
+
+        if (startingQueue[0] != null) {
+            //the lock is already owned by the next request, it only has to be started
+            startHandedOff(entityId, startingQueue[0], next[0]);
+        }
+    }
+
+    /*
+     * A request handed the lock while the previous one starts, possibly inside its start, is taken from the queue once
+     * that start returns. The queue can not be removed meanwhile as the lock is owned by the ready request.
+     */
+    private void startHandedOff(T entityId, AsyncEntityLockQueue queue, AsyncEntityLockQueue.Waiter waiter) {
+        AsyncEntityLockQueue.Waiter[] next = new AsyncEntityLockQueue.Waiter[1];
+        for (AsyncEntityLockQueue.Waiter started = waiter; started != null; started = next[0]) {
+            started.start();
+
+            //a removed or replaced queue was unlocked, nothing is ready
+            next[0] = null;
+            entityLocks.computeIfPresent(entityId, (eId, current) -> {
+                if (current == queue) {
+                    next[0] = queue.takeReady();
+                }
+                return current;
+            });
+        }
+    }
+
+    private final class LockRequest<R> extends AsyncEntityLockQueue.Waiter {
+        private final T entityId;
+        private final AsyncProtectedCode<R> protectedCode;
+        private final Executor executor;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+        private volatile ScheduledFuture<?> timeout;
+
+        private LockRequest(T entityId, AsyncProtectedCode<R> protectedCode, Executor executor) {
+            this.entityId = entityId;
+            this.protectedCode = protectedCode;
+            this.executor = executor;
+        }
+
+        /*
+         * Called by the request owning the lock
+         */
+        @Override
+        void start() {
+            ScheduledFuture<?> pendingTimeout = timeout;
+            if (pendingTimeout != null) {
+                pendingTimeout.cancel(false);
+            }
+
+            if (result.isDone()) {
+                //cancelled by the caller while waiting
+                unlock(entityId);
+                return;
+            }
+
+            try {
+                executor.execute(this::run);
+            } catch (RuntimeException e) {
+                //rejected or failed by the executor, start() must not throw as the handed off requests would stall
+                unlock(entityId);
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void run() {
+            CompletionStage<R> stage;
+            try {
+                stage = Objects.requireNonNull(protectedCode.run(), "protected code returned a null stage");
+            } catch (Throwable e) {
+                unlock(entityId);
+                result.completeExceptionally(e);
+                return;
+            }
+
+            stage.whenComplete((value, failure) -> {
+                //released before completing, so the continuations of the caller do not delay the next request
+                unlock(entityId);
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(value);
+                }
+            });
+        }
+
+        private void cancelOnTimeout() {
+            if (tryCancel()) {
+                result.completeExceptionally(new TimeoutException("Entity lock was not acquired within the timeout"));
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package entitylocker;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Protected code executed by the {@link AsyncEntityLocker}. The entity stays locked until the returned stage completes,
+ * so the code may continue asynchronously without blocking a thread.
+ *
+ * @param <R> type of the result
+ */
+@FunctionalInterface
+public interface AsyncProtectedCode<R> {
+    /**
+     * Runs the protected code
+     *
+     * @return stage completing when the protected code is done with the entity
+     */
+    CompletionStage<R> run();
+}
@@ -0,0 +1,92 @@
+package entitylocker;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically scans the wait-for graph of a locker and breaks the cycles it finds, for lockers whose acquisitions
+ * only publish their wait edges, see {@link DeadLockPolicy#detectInBackground(long, TimeUnit)}.
+ * <p>
+ * All the lockers share a single daemon thread. The graph is only weakly referenced, the scan of a locker stops once
+ * the locker is garbage collected.
+ *
+ * @param <T> data type of the entity primary key
+ */
+class BackgroundDeadLockDetector<T> implements Runnable {
+    private final WeakReference<ThreadEntityGraph<T>> threadEntityGraph;
+    private final DeadLockPolicy deadLockPolicy;
+    private volatile ScheduledFuture<?> scan;
+
+    private BackgroundDeadLockDetector(ThreadEntityGraph<T> threadEntityGraph, DeadLockPolicy deadLockPolicy) {
+        this.threadEntityGraph = new WeakReference<>(threadEntityGraph);
+        this.deadLockPolicy = deadLockPolicy;
+    }
+
+    /**
+     * Starts scanning the graph every detection period of the policy
+     */
+    static <T> void start(ThreadEntityGraph<T> threadEntityGraph, DeadLockPolicy deadLockPolicy) {
+        BackgroundDeadLockDetector<T> detector = new BackgroundDeadLockDetector<>(threadEntityGraph, deadLockPolicy);
+        long periodNanos = deadLockPolicy.getDetectionPeriodNanos();
+
+        detector.scan = Scheduler.INSTANCE.scheduleWithFixedDelay(detector, periodNanos, periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Aborts a victim of every cycle of the graph
+     *
+     * @return number of aborted waits
+     */
+    static <T> int breakDeadLocks(ThreadEntityGraph<T> threadEntityGraph, DeadLockPolicy deadLockPolicy) {
+        int abortedWaits = 0;
+
+        for (long waitingThread : threadEntityGraph.getWaitingThreads()) {
+            ThreadEntityGraph.WaitEdge<T> waitEdge = threadEntityGraph.getWaitEdge(waitingThread);
+            if (waitEdge == null || waitEdge.isAborted()) {
+                continue;
+            }
+
+            long[] cycle = EntityDeadLockChecker.findCycle(threadEntityGraph, waitingThread, waitEdge.getEntityId(), waitEdge.getLockMode());
+            if (cycle == null) {
+                continue;
+            }
+
+            //aborted waits are ignored by the next searches, a cycle is only broken once
+            ThreadEntityGraph.WaitEdge<T> victimWaitEdge = threadEntityGraph.getWaitEdge(deadLockPolicy.selectVictim(threadEntityGraph, cycle));
+            if (victimWaitEdge != null && victimWaitEdge.tryAbort()) {
+                abortedWaits++;
+            }
+        }
+
+        return abortedWaits;
+    }
+
+    @Override
+    public void run() {
+        ThreadEntityGraph<T> graph = threadEntityGraph.get();
+
+        if (graph == null) {
+            scan.cancel(false);
+            return;
+        }
+
+        breakDeadLocks(graph, deadLockPolicy);
+    }
+
+    private static final class Scheduler {
+        private static final ScheduledExecutorService INSTANCE = createScheduler();
+
+        private static ScheduledExecutorService createScheduler() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "entity-locker-deadlock-detector");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+}
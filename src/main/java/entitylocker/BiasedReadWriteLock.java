@@ -0,0 +1,445 @@
+package entitylocker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.AbstractQueuedLongSynchronizer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reentrant read write lock whose readers do not share a single state word, used as the global lock of the lockers.
+ * <p>
+ * Based on BRAVO: while the lock is read biased, a reader publishes itself in a slot of a visible readers table chosen
+ * by its thread id, every slot on its own cache line, and does not touch the underlying synchronizer.
+ * A slot holds the owner thread id and its number of read holds, so reentrant reads only update the slot of their
+ * thread. Readers finding their slot taken by another thread, or the bias revoked, fall back to the underlying lock.
+ * <p>
+ * A writer locks the underlying lock, which stops the slow readers, then revokes the bias and waits for the visible
+ * readers to leave. Revoking is expensive, so the bias is only restored by a slow reader once a time proportional to
+ * the last revocation has passed, which keeps write heavy phases on the underlying lock.
+ * <p>
+ * Read holds of a thread are interchangeable, a release empties the slot of the thread before releasing underlying
+ * read holds. The underlying synchronizer counts reader threads rather than read holds, and keeps the write holds of
+ * its owner as a single number, so any number of holds is taken or released at once: escalating a thread holding
+ * thousands of entities converts its read holds into write holds in constant time. The write owner may take read
+ * holds, which it keeps once it releases the write lock, but a reader can not take the write lock.
+ */
+class BiasedReadWriteLock {
+    private static final int SLOT_STRIDE = 16;
+    private static final int HOLD_BITS = 20;
+    private static final long MAX_SLOT_HOLDS = (1L << HOLD_BITS) - 1;
+    private static final long INHIBIT_FACTOR = 9L;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Sync sync = new Sync();
+    private final AtomicLongArray visibleReaders;
+    private final int slotShift;
+    private final int slots;
+
+    private volatile boolean readBias = true;
+    private volatile long inhibitUntilNanos;
+    private volatile Thread revokingWriter;
+
+    /**
+     * @param minSlots minimum number of visible reader slots, rounded up to the next power of two
+     */
+    BiasedReadWriteLock(int minSlots) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(minSlots, 2) - 1);
+        this.slots = 1 << bits;
+        this.slotShift = 64 - bits;
+        this.visibleReaders = new AtomicLongArray(slots * SLOT_STRIDE);
+    }
+
+    /**
+     * Creates a lock with four visible reader slots per available processor
+     */
+    BiasedReadWriteLock() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    void lockRead() {
+        lockRead(1);
+    }
+
+    /**
+     * Takes several read holds at once
+     *
+     * @param holds number of read holds, may be 0
+     */
+    void lockRead(int holds) {
+        if (holds == 0 || tryLockVisibleReader(holds)) {
+            return;
+        }
+
+        sync.acquireRead(holds);
+        restoreReadBias();
+    }
+
+    boolean tryLockRead(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        return tryLockRead(1, timeout, timeUnit);
+    }
+
+    /**
+     * Takes several read holds at once, or none if the lock was not acquired within the timeout
+     *
+     * @param holds number of read holds, may be 0
+     */
+    boolean tryLockRead(int holds, long timeout, TimeUnit timeUnit) throws InterruptedException {
+        if (holds == 0 || tryLockVisibleReader(holds)) {
+            return true;
+        }
+
+        if (!sync.tryAcquireRead(holds, timeUnit.toNanos(timeout))) {
+            return false;
+        }
+        restoreReadBias();
+        return true;
+    }
+
+    void unlockRead() {
+        unlockRead(1);
+    }
+
+    /**
+     * Releases several read holds of the current thread at once
+     *
+     * @param holds number of read holds, may be 0
+     * @throws IllegalMonitorStateException if the current thread holds fewer read holds
+     */
+    void unlockRead(int holds) {
+        int remainingHolds = holds - unlockVisibleReader(holds);
+        if (remainingHolds > 0) {
+            sync.releaseRead(remainingHolds);
+        }
+    }
+
+    void lockWrite() {
+        lockWrite(1);
+    }
+
+    /**
+     * Takes several write holds at once
+     *
+     * @param holds number of write holds, may be 0
+     */
+    void lockWrite(int holds) {
+        if (holds == 0) {
+            return;
+        }
+
+        sync.acquire(holds);
+        revokeReadBias(false, 0L);
+    }
+
+    boolean tryLockWrite(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+
+        if (!sync.tryAcquireNanos(1, timeUnit.toNanos(timeout))) {
+            return false;
+        }
+
+        if (!revokeReadBias(true, deadline)) {
+            sync.release(1);
+            return false;
+        }
+        return true;
+    }
+
+    void unlockWrite() {
+        unlockWrite(1);
+    }
+
+    /**
+     * Releases several write holds of the current thread at once
+     *
+     * @param holds number of write holds, may be 0
+     * @throws IllegalMonitorStateException if the current thread does not hold the write lock
+     */
+    void unlockWrite(int holds) {
+        if (holds > 0) {
+            sync.release(holds);
+        }
+    }
+
+    /**
+     * @return number of read holds of the current thread, visible and underlying
+     */
+    int getReadHoldCount() {
+        long threadId = Thread.currentThread().getId();
+        long slot = visibleReaders.get(slotIndex(threadId));
+        int visibleHolds = slot >>> HOLD_BITS == threadId ? (int) (slot & MAX_SLOT_HOLDS) : 0;
+        return visibleHolds + sync.getReadHoldCount();
+    }
+
+    int getWriteHoldCount() {
+        return sync.getWriteHoldCount();
+    }
+
+    boolean isWriteLocked() {
+        return sync.isWriteLocked();
+    }
+
+    /**
+     * @return estimate of the number of threads waiting for the underlying lock
+     */
+    int getQueueLength() {
+        return sync.getQueueLength();
+    }
+
+    /**
+     * @return true if the read bias is on, visible for tests
+     */
+    boolean isReadBiased() {
+        return readBias;
+    }
+
+    private boolean tryLockVisibleReader(int holds) {
+        long threadId = Thread.currentThread().getId();
+        int index = slotIndex(threadId);
+        long slot = visibleReaders.get(index);
+
+        //a reentrant read of the slot owner, a revoking writer waits for its holds anyway
+        if (slot >>> HOLD_BITS == threadId) {
+            if ((slot & MAX_SLOT_HOLDS) + holds > MAX_SLOT_HOLDS) {
+                return false;
+            }
+            visibleReaders.set(index, slot + holds);
+            return true;
+        }
+
+        if (!readBias || slot != 0L || holds > MAX_SLOT_HOLDS) {
+            return false;
+        }
+
+        if (!visibleReaders.compareAndSet(index, 0L, threadId << HOLD_BITS | holds)) {
+            return false;
+        }
+
+        if (readBias) {
+            return true;
+        }
+
+        //revoked between the bias check and the publication, the writer may be waiting for this slot
+        visibleReaders.set(index, 0L);
+        wakeUpRevokingWriter();
+        return false;
+    }
+
+    /*
+     * Returns the number of holds released from the slot of the current thread
+     */
+    private int unlockVisibleReader(int holds) {
+        long threadId = Thread.currentThread().getId();
+        int index = slotIndex(threadId);
+        long slot = visibleReaders.get(index);
+
+        if (holds == 0 || slot >>> HOLD_BITS != threadId) {
+            return 0;
+        }
+
+        int visibleHolds = (int) (slot & MAX_SLOT_HOLDS);
+        int released = Math.min(holds, visibleHolds);
+        visibleReaders.set(index, released == visibleHolds ? 0L : slot - released);
+        if (!readBias) {
+            wakeUpRevokingWriter();
+        }
+        return released;
+    }
+
+    /*
+     * Called by the write lock owner only. Returns false if the visible readers did not leave before the deadline
+     */
+    private boolean revokeReadBias(boolean timed, long deadline) {
+        if (!readBias) {
+            //no visible reader can enter while the bias is off
+            return true;
+        }
+
+        long t0 = System.nanoTime();
+        boolean interrupted = false;
+        revokingWriter = Thread.currentThread();
+        readBias = false;
+
+        try {
+            for (int slot = 0; slot < slots; slot++) {
+                while (visibleReaders.get(slot * SLOT_STRIDE) != 0L) {
+                    long parkNanos = timed ? Math.min(deadline - System.nanoTime(), MAX_PARK_NANOS) : MAX_PARK_NANOS;
+                    if (parkNanos <= 0L) {
+                        return false;
+                    }
+
+                    LockSupport.parkNanos(this, parkNanos);
+                    //an interrupt would make park return immediately, it is restored once the readers left
+                    interrupted |= Thread.interrupted();
+                }
+            }
+        } finally {
+            revokingWriter = null;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        long now = System.nanoTime();
+        inhibitUntilNanos = now + INHIBIT_FACTOR * (now - t0);
+        return true;
+    }
+
+    /*
+     * Called while holding a read lock of the underlying lock, so no writer can be revoking the bias meanwhile
+     */
+    private void restoreReadBias() {
+        if (!readBias && !sync.isWriteLocked() && System.nanoTime() - inhibitUntilNanos >= 0L) {
+            readBias = true;
+        }
+    }
+
+    private void wakeUpRevokingWriter() {
+        Thread writer = revokingWriter;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private int slotIndex(long threadId) {
+        return (int) ((threadId * 0x9E3779B97F4A7C15L) >>> slotShift) * SLOT_STRIDE;
+    }
+
+    /**
+     * Underlying read write synchronizer. The state holds the number of reader threads in its high half and the number
+     * of write holds in its low half. The read holds of every reader thread are counted aside, only its first hold and
+     * its last release update the state. New readers wait behind queued threads, so writers are not starved.
+     */
+    private static final class Sync extends AbstractQueuedLongSynchronizer {
+        private static final long READER_UNIT = 1L << 32;
+        private static final long WRITE_MASK = READER_UNIT - 1;
+
+        /*
+         * Read holds of the threads reading through the synchronizer, each updated by its own thread only
+         */
+        private final ConcurrentHashMap<Thread, int[]> readHolds = new ConcurrentHashMap<>();
+
+        void acquireRead(int holds) {
+            Thread currentThread = Thread.currentThread();
+            int[] count = readHolds.get(currentThread);
+
+            if (count != null) {
+                count[0] += holds;
+                return;
+            }
+            acquireShared(1);
+            readHolds.put(currentThread, new int[]{holds});
+        }
+
+        boolean tryAcquireRead(int holds, long timeoutNanos) throws InterruptedException {
+            Thread currentThread = Thread.currentThread();
+            int[] count = readHolds.get(currentThread);
+
+            if (count != null) {
+                count[0] += holds;
+                return true;
+            }
+            if (!tryAcquireSharedNanos(1, timeoutNanos)) {
+                return false;
+            }
+            readHolds.put(currentThread, new int[]{holds});
+            return true;
+        }
+
+        void releaseRead(int holds) {
+            Thread currentThread = Thread.currentThread();
+            int[] count = readHolds.get(currentThread);
+
+            if (count == null || count[0] < holds) {
+                throw new IllegalMonitorStateException();
+            }
+            count[0] -= holds;
+            if (count[0] == 0) {
+                readHolds.remove(currentThread);
+                releaseShared(1);
+            }
+        }
+
+        int getReadHoldCount() {
+            int[] count = readHolds.get(Thread.currentThread());
+            return count == null ? 0 : count[0];
+        }
+
+        int getWriteHoldCount() {
+            return getExclusiveOwnerThread() == Thread.currentThread() ? (int) (getState() & WRITE_MASK) : 0;
+        }
+
+        boolean isWriteLocked() {
+            return (getState() & WRITE_MASK) != 0;
+        }
+
+        @Override
+        protected long tryAcquireShared(long unused) {
+            Thread currentThread = Thread.currentThread();
+
+            while (true) {
+                long state = getState();
+                boolean blocked = (state & WRITE_MASK) != 0 ? getExclusiveOwnerThread() != currentThread : hasQueuedPredecessors();
+                if (blocked) {
+                    return -1;
+                }
+                if (compareAndSetState(state, state + READER_UNIT)) {
+                    return 1;
+                }
+            }
+        }
+
+        @Override
+        protected boolean tryReleaseShared(long unused) {
+            while (true) {
+                long state = getState();
+                long newState = state - READER_UNIT;
+                if (compareAndSetState(state, newState)) {
+                    return newState == 0L;
+                }
+            }
+        }
+
+        /*
+         * Takes one write hold, or all the holds given back by lockWrite(int)
+         */
+        @Override
+        protected boolean tryAcquire(long holds) {
+            long state = getState();
+
+            if (state != 0L) {
+                if ((state & WRITE_MASK) == 0L || getExclusiveOwnerThread() != Thread.currentThread()) {
+                    return false;
+                }
+                setState(state + holds);
+                return true;
+            }
+
+            if (!compareAndSetState(0L, holds)) {
+                return false;
+            }
+            setExclusiveOwnerThread(Thread.currentThread());
+            return true;
+        }
+
+        @Override
+        protected boolean tryRelease(long holds) {
+            if (getExclusiveOwnerThread() != Thread.currentThread()) {
+                throw new IllegalMonitorStateException();
+            }
+
+            long state = getState() - holds;
+            boolean free = (state & WRITE_MASK) == 0L;
+            if (free) {
+                setExclusiveOwnerThread(null);
+            }
+            setState(state);
+            return free;
+        }
+
+        @Override
+        protected boolean isHeldExclusively() {
+            return getExclusiveOwnerThread() == Thread.currentThread();
+        }
+    }
+}
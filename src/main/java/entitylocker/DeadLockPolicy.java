@@ -0,0 +1,145 @@
+package entitylocker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How a locker breaks or prevents deadlocks.
+ * <p>
+ * A thread about to wait for an entity looks for a cycle in the wait-for graph closed by its wait. Threads acquiring an
+ * available entity do not wait and are not checked. When a cycle is found one thread of the cycle, the victim, fails
+ * with {@link entitylocker.exceptions.DeadLockPreventionException} and releases what its protected code held, the
+ * others keep waiting. By default the victim is the thread closing the cycle.
+ * <p>
+ * Looking for a cycle costs every waiting acquisition, even though deadlocks are rare. In background mode the
+ * acquisitions only publish their wait edges and a background thread scans the whole graph periodically, deadlocked
+ * threads wait until the next scan.
+ * <p>
+ * The wait-die and wound-wait modes maintain no wait-for graph at all. Every protected code invocation gets a priority
+ * timestamp when it locks its first entity, older invocations have priority, and a thread only ever waits for
+ * threads of lower priority, or only for threads of higher priority, so no cycle can form. Conflicts are resolved
+ * against the threads holding or waiting for the entity, which may abort more invocations than a cycle search would.
+ * Aborted invocations can be run again with their first timestamp, see
+ * {@link ReentrantEntityLockerImpl#executeWithDeadLockRetry(ProtectedCode)}.
+ */
+public final class DeadLockPolicy {
+    private static final int DETECT_ON_ACQUIRE = 0;
+    private static final int DETECT_IN_BACKGROUND = 1;
+    private static final int WAIT_DIE = 2;
+    private static final int WOUND_WAIT = 3;
+
+    private static final DeadLockPolicy ABORT_REQUESTER = new DeadLockPolicy(DETECT_ON_ACQUIRE, false, 0L);
+    private static final DeadLockPolicy ABORT_YOUNGEST = new DeadLockPolicy(DETECT_ON_ACQUIRE, true, 0L);
+    private static final DeadLockPolicy WAIT_DIE_POLICY = new DeadLockPolicy(WAIT_DIE, false, 0L);
+    private static final DeadLockPolicy WOUND_WAIT_POLICY = new DeadLockPolicy(WOUND_WAIT, false, 0L);
+
+    private final int mode;
+    private final boolean abortYoungest;
+    private final long detectionPeriodNanos;
+
+    private DeadLockPolicy(int mode, boolean abortYoungest, long detectionPeriodNanos) {
+        this.mode = mode;
+        this.abortYoungest = abortYoungest;
+        this.detectionPeriodNanos = detectionPeriodNanos;
+    }
+
+    /**
+     * @return policy failing the thread whose wait closes the cycle, the cheapest as no other thread is woken up
+     */
+    public static DeadLockPolicy abortRequester() {
+        return ABORT_REQUESTER;
+    }
+
+    /**
+     * @return policy failing the thread of the cycle that started using the locker last, which usually has the least
+     * work to redo, so long running protected codes are not starved by short ones
+     */
+    public static DeadLockPolicy abortYoungest() {
+        return ABORT_YOUNGEST;
+    }
+
+    /**
+     * @param detectionPeriod time between two scans of the wait-for graph
+     * @param timeUnit        time unit
+     * @return policy detecting deadlocks in the background, failing the youngest thread of every cycle
+     */
+    public static DeadLockPolicy detectInBackground(long detectionPeriod, TimeUnit timeUnit) {
+        if (detectionPeriod <= 0) {
+            throw new IllegalArgumentException("Detection period must be positive");
+        }
+        return new DeadLockPolicy(DETECT_IN_BACKGROUND, true, timeUnit.toNanos(detectionPeriod));
+    }
+
+    /**
+     * @return prevention policy where an older invocation waits for a younger one, while a younger invocation fails
+     * right away instead of waiting for an older one
+     */
+    public static DeadLockPolicy waitDie() {
+        return WAIT_DIE_POLICY;
+    }
+
+    /**
+     * @return prevention policy where an older invocation wounds the younger ones it would wait for, failing them as soon
+     * as they wait for an entity, while a younger invocation waits for an older one
+     */
+    public static DeadLockPolicy woundWait() {
+        return WOUND_WAIT_POLICY;
+    }
+
+    /**
+     * @return true if the waiting acquisitions look for a cycle themselves
+     */
+    boolean detectsOnAcquire() {
+        return mode == DETECT_ON_ACQUIRE;
+    }
+
+    /**
+     * @return true if a background thread looks for cycles
+     */
+    boolean detectsInBackground() {
+        return mode == DETECT_IN_BACKGROUND;
+    }
+
+    /**
+     * @return true for wait-die and wound-wait, which do not use the wait-for graph
+     */
+    boolean usesPriorityTimestamps() {
+        return mode == WAIT_DIE || mode == WOUND_WAIT;
+    }
+
+    /**
+     * @return true if the victim of a cycle is chosen by the order the threads entered the wait-for graph
+     */
+    boolean usesThreadAges() {
+        return abortYoungest;
+    }
+
+    boolean isWoundWait() {
+        return mode == WOUND_WAIT;
+    }
+
+    long getDetectionPeriodNanos() {
+        return detectionPeriodNanos;
+    }
+
+    /**
+     * @param threadEntityGraph wait-for graph
+     * @param cycle             ids of the threads of the cycle, starting with the thread closing it
+     * @return id of the thread to fail
+     */
+    long selectVictim(ThreadEntityGraph<?> threadEntityGraph, long[] cycle) {
+        long victim = cycle[0];
+        if (!abortYoungest) {
+            return victim;
+        }
+
+        long victimAge = threadEntityGraph.getAge(victim);
+        for (int i = 1; i < cycle.length; i++) {
+            long age = threadEntityGraph.getAge(cycle[i]);
+            if (age > victimAge) {
+                victim = cycle[i];
+                victimAge = age;
+            }
+        }
+        return victim;
+    }
+}
@@ -0,0 +1,26 @@
+package entitylocker;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * Daemon scheduler shared by the lockers and executors created without a scheduler of their own, only runs short
+ * tasks
+ */
+final class DefaultScheduler {
+    static final ScheduledExecutorService INSTANCE = createScheduler();
+
+    private DefaultScheduler() {
+    }
+
+    private static ScheduledExecutorService createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "entity-locker-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //timeouts are usually cancelled because the lock was granted, do not keep them in the queue
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
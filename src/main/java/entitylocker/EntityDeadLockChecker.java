@@ -5,15 +5,25 @@ import java.util.HashSet;
 import java.util.Set;
 
 /**
- * Util class to check for possible deadlocks in the {@link EntityLocker}
+ * Util class to check for deadlocks in the {@link EntityLocker}.
+ * <p>
+ * A deadlock is a cycle in the wait-for graph: the acquiring thread waits for an entity held by a thread, waiting for
+ * an entity held by another thread, and so on until an entity held by the acquiring thread. Only the threads
+ * reachable from the new wait are explored, so the cost does not depend on the size of the graph nor on the number
+ * of entities held by the acquiring thread. The search gives up after {@link #MAX_VISITED_THREADS} threads.
  */
 class EntityDeadLockChecker {
+    /**
+     * Max number of threads explored by a search, a search exceeding it reports a deadlock
+     */
+    static final int MAX_VISITED_THREADS = 1024;
+
     private EntityDeadLockChecker() {
 
     }
 
     /**
-     * Checks for possible deadlocks
+     * Checks for deadlocks of an exclusive acquisition
      *
      * @param threadEntityGraph {@link ThreadEntityGraph}
      * @param acquiringThread   acquiringThread
@@ -26,29 +36,127 @@ class EntityDeadLockChecker {
             long acquiringThread,
             T entityIdToAcquire
     ) throws DeadLockPreventionException {
-        Set<T> entitiesLockedByCurrentThread = threadEntityGraph.getAssociatedEntities(acquiringThread);
+        checkForDeadLock(threadEntityGraph, acquiringThread, entityIdToAcquire, LockMode.EXCLUSIVE);
+    }
+
+    /**
+     * Checks for deadlocks, the acquiring thread being the victim
+     *
+     * @param threadEntityGraph {@link ThreadEntityGraph}
+     * @param acquiringThread   acquiringThread
+     * @param entityIdToAcquire id of the entity the thread is trying to acquire a lock to
+     * @param lockMode          mode in which the thread is trying to acquire the lock
+     * @param <T>               data type of the entity id
+     * @throws DeadLockPreventionException in case a deadlock is detected
+     * @see #findCycle(ThreadEntityGraph, long, Object, LockMode)
+     */
+    static <T> void checkForDeadLock(
+            ThreadEntityGraph<T> threadEntityGraph,
+            long acquiringThread,
+            T entityIdToAcquire,
+            LockMode lockMode
+    ) throws DeadLockPreventionException {
+        if (findCycle(threadEntityGraph, acquiringThread, entityIdToAcquire, lockMode) != null) {
+            throw new DeadLockPreventionException();
+        }
+    }
+
+    /**
+     * Looks for a cycle closed by the acquiring thread waiting for an entity.
+     * <p>
+     * Shared holders do not block each other: a holder is only waited for if its mode conflicts with the mode of the
+     * waiter. The acquiring thread may already hold the entity, a reentrant acquisition does not wait for itself.
+     *
+     * @param threadEntityGraph {@link ThreadEntityGraph}
+     * @param acquiringThread   acquiringThread
+     * @param entityIdToAcquire id of the entity the thread is trying to acquire a lock to
+     * @param lockMode          mode in which the thread is trying to acquire the lock
+     * @param <T>               data type of the entity id
+     * @return ids of the threads of the cycle starting with the acquiring thread, the acquiring thread alone if the
+     * search exceeded {@link #MAX_VISITED_THREADS}, or null if there is no cycle
+     */
+    static <T> long[] findCycle(
+            ThreadEntityGraph<T> threadEntityGraph,
+            long acquiringThread,
+            T entityIdToAcquire,
+            LockMode lockMode
+    ) {
+        if (threadEntityGraph.getHeldEntities(acquiringThread).isEmpty()) {
+            //holds nothing, nobody can be waiting for it
+            return null;
+        }
+
+        Search<T> search = new Search<>(threadEntityGraph, acquiringThread);
+        int cycleLength = search.waitFor(entityIdToAcquire, lockMode, acquiringThread, 1);
+
+        if (cycleLength == Search.NO_CYCLE) {
+            return null;
+        }
+
+        return cycleLength == Search.EXCEEDED ? new long[]{acquiringThread} : search.cycle;
+    }
 
-        if (entitiesLockedByCurrentThread.isEmpty()) {
-            return;
+    /*
+     * Depth first search following the wait edges. The cycle is recorded while unwinding, deepest thread last
+     */
+    private static class Search<T> {
+        private static final int NO_CYCLE = 0;
+        private static final int EXCEEDED = -1;
+
+        private final ThreadEntityGraph<T> threadEntityGraph;
+        private final long acquiringThread;
+        private final Set<Long> visitedThreads = new HashSet<>();
+        private long[] cycle;
+
+        private Search(ThreadEntityGraph<T> threadEntityGraph, long acquiringThread) {
+            this.threadEntityGraph = threadEntityGraph;
+            this.acquiringThread = acquiringThread;
         }
 
-        Set<Long> visitedThreads = new HashSet<>();
-        visitedThreads.add(acquiringThread);
+        /*
+         * Returns the length of the cycle found through the holders of the entity, NO_CYCLE or EXCEEDED
+         */
+        private int waitFor(T entityId, LockMode lockMode, long waitingThread, int depth) {
+            for (long holder : threadEntityGraph.getHolders(entityId)) {
+                if (holder == waitingThread || !lockMode.conflictsWith(threadEntityGraph.getHoldMode(holder, entityId))) {
+                    continue;
+                }
 
-        Set<Long> threadsAssociatedWithEntity = threadEntityGraph.getAssociatedThreads(entityIdToAcquire);
+                int cycleLength = visit(holder, depth);
+                if (cycleLength == EXCEEDED) {
+                    return EXCEEDED;
+                }
 
-        for (Long thread : threadsAssociatedWithEntity) {
-            if (visitedThreads.contains(thread)) {
-                continue;
+                if (cycleLength != NO_CYCLE) {
+                    cycle[depth - 1] = waitingThread;
+                    return cycleLength;
+                }
             }
 
-            boolean threadIsDeadLocked = threadEntityGraph.getAssociatedEntities(thread)
-                    .stream()
-                    .anyMatch(entitiesLockedByCurrentThread::contains);
+            return NO_CYCLE;
+        }
+
+        private int visit(long thread, int depth) {
+            if (thread == acquiringThread) {
+                cycle = new long[depth];
+                return depth;
+            }
 
-            if (threadIsDeadLocked) {
-                throw new DeadLockPreventionException();
+            if (!visitedThreads.add(thread)) {
+                //already explored, it does not lead back to the acquiring thread
+                return NO_CYCLE;
             }
+
+            if (visitedThreads.size() > MAX_VISITED_THREADS) {
+                return EXCEEDED;
+            }
+
+            ThreadEntityGraph.WaitEdge<T> waitEdge = threadEntityGraph.getWaitEdge(thread);
+            if (waitEdge == null || waitEdge.isAborted()) {
+                return NO_CYCLE;
+            }
+
+            return waitFor(waitEdge.getEntityId(), waitEdge.getLockMode(), thread, depth + 1);
         }
     }
 
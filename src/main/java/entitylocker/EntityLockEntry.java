@@ -0,0 +1,420 @@
+package entitylocker;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+
+/**
+ * Lock of a single entity stored in the lock table, held either exclusively by one thread or shared by many.
+ * <p>
+ * The entry is its own synchronizer: the owner, the exclusive hold count, the number of sharing threads and the queue
+ * of waiting threads are fields of the entry, so an uncontended acquisition or release is a single compare and set on
+ * the entry found in the lock table. The state holds the number of sharing threads in its high half and the exclusive
+ * holds in its low half. The shared holds of the first sharing thread are kept inline, those of other concurrent
+ * sharing threads in a map created on demand. As with a {@code ReentrantReadWriteLock}, the exclusive owner may take
+ * shared holds, but a sharing thread can not take the entry exclusively. The holders of the entry in the wait-for
+ * graph are kept in the entry as well.
+ * <p>
+ * The entry is reference counted by the threads holding or waiting for it, so the lock table can remove it as soon
+ * as nobody uses it. The reference count is only updated inside the atomic map operations of the lock table, while
+ * waiting for the lock always happens outside of the map.
+ * <p>
+ * Every entry gets a unique sequence number when created, giving a total order among the live entries: locking
+ * several entries in that order can not deadlock.
+ */
+class EntityLockEntry extends AbstractQueuedSynchronizer implements LockEntry {
+    private static final int SHARED_SHIFT = 16;
+    private static final int SHARED_UNIT = 1 << SHARED_SHIFT;
+    private static final int MAX_COUNT = SHARED_UNIT - 1;
+    private static final int EXCLUSIVE_MASK = SHARED_UNIT - 1;
+
+    private static final AtomicLong SEQUENCE = new AtomicLong(0L);
+    //marks the entries of long entity ids, kept unboxed in longEntityId
+    private static final Object LONG_ENTITY_ID = new Object();
+    private static final AtomicReferenceFieldUpdater<EntityLockEntry, PriorityTransaction[]> PRIORITY_OWNERS =
+            AtomicReferenceFieldUpdater.newUpdater(EntityLockEntry.class, PriorityTransaction[].class, "priorityOwners");
+    private static final AtomicReferenceFieldUpdater<EntityLockEntry, long[]> HOLDERS =
+            AtomicReferenceFieldUpdater.newUpdater(EntityLockEntry.class, long[].class, "holders");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<EntityLockEntry, ConcurrentHashMap> OTHER_SHARERS =
+            AtomicReferenceFieldUpdater.newUpdater(EntityLockEntry.class, ConcurrentHashMap.class, "otherSharers");
+
+    private final long sequence = SEQUENCE.incrementAndGet();
+
+    //id of the entity, set by the lock table when the entry is taken for an entity, only read by the hot key tracker
+    private Object entityId;
+    private long longEntityId;
+
+    //guarded by the lock table map operations
+    private int references;
+
+    //written by the exclusive holder only, read without synchronization by the spinning threads
+    private long lockedAtNanos;
+    private int holdNanosEstimate;
+
+    /*
+     * Thread whose shared hold made the sharing threads count go from 0 to 1, and its shared holds. Only written by
+     * that thread, which publishes and clears them before updating the state
+     */
+    private Thread firstSharer;
+    private int firstSharerHolds;
+    //shared holds of the other sharing threads, each only updated by its own thread
+    private volatile ConcurrentHashMap<Thread, int[]> otherSharers;
+
+    //ids of the threads holding the entry in the wait-for graph, replaced by compare and set
+    private volatile long[] holders = NO_HOLDERS;
+
+    //transactions holding or waiting for the entry in the wait-die and wound-wait modes, replaced by compare and set
+    private volatile PriorityTransaction[] priorityOwners = PriorityTransaction.NONE;
+
+    /**
+     * Registers a new holder or waiter of this entry
+     */
+    void retain() {
+        references++;
+    }
+
+    /**
+     * Unregisters a holder or waiter of this entry
+     *
+     * @return true if the entry is not used anymore and can be removed from the lock table
+     */
+    boolean release() {
+        return --references == 0;
+    }
+
+    void setEntityId(Object entityId) {
+        this.entityId = entityId;
+    }
+
+    void setEntityId(long entityId) {
+        this.longEntityId = entityId;
+        this.entityId = LONG_ENTITY_ID;
+    }
+
+    /**
+     * @return id of the entity of this entry, boxed for long ids, or null for group and striped entries
+     */
+    Object getEntityId() {
+        Object id = entityId;
+        return id == LONG_ENTITY_ID ? Long.valueOf(longEntityId) : id;
+    }
+
+    @Override
+    public void lock(LockMode lockMode) {
+        if (lockMode == LockMode.EXCLUSIVE) {
+            acquire(1);
+        } else if (!tryLockReentrantShared()) {
+            acquireShared(1);
+        }
+    }
+
+    @Override
+    public void lockInterruptibly(LockMode lockMode) throws InterruptedException {
+        if (lockMode == LockMode.EXCLUSIVE) {
+            acquireInterruptibly(1);
+        } else if (!tryLockReentrantShared()) {
+            acquireSharedInterruptibly(1);
+        }
+    }
+
+    @Override
+    public boolean tryLock(LockMode lockMode, long timeout, TimeUnit timeUnit) throws InterruptedException {
+        if (lockMode == LockMode.EXCLUSIVE) {
+            return tryAcquireNanos(1, timeUnit.toNanos(timeout));
+        }
+
+        return tryLockReentrantShared() || tryAcquireSharedNanos(1, timeUnit.toNanos(timeout));
+    }
+
+    @Override
+    public int unlock(LockMode lockMode) {
+        if (lockMode == LockMode.EXCLUSIVE) {
+            release(1);
+        } else if (releaseSharedHold()) {
+            releaseShared(1);
+        }
+        return getHoldCount();
+    }
+
+    /**
+     * Locks the entry only if it is available right now, even if other threads are waiting for it
+     */
+    @Override
+    public boolean tryLock(LockMode lockMode) {
+        if (lockMode == LockMode.EXCLUSIVE) {
+            return tryAcquire(1);
+        }
+
+        return tryLockReentrantShared() || tryAcquireSharedHold(false);
+    }
+
+    /**
+     * Locks the entry only if it is available right now and, in shared mode, no thread is waiting for it, so a stream
+     * of readers can not starve a waiting writer. Reentrant shared holds do not wait for the waiting threads.
+     */
+    @Override
+    public boolean tryLockUncontended(LockMode lockMode) {
+        if (lockMode == LockMode.EXCLUSIVE) {
+            return tryAcquire(1);
+        }
+
+        return tryLockReentrantShared() || (!hasQueuedThreads() && tryAcquireSharedHold(false));
+    }
+
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public long[] getHolders() {
+        return holders;
+    }
+
+    @Override
+    public boolean compareAndSetHolders(long[] expected, long[] holders) {
+        return HOLDERS.compareAndSet(this, expected, holders);
+    }
+
+    @Override
+    public PriorityTransaction[] getPriorityOwners() {
+        return priorityOwners;
+    }
+
+    @Override
+    public void addPriorityOwner(PriorityTransaction transaction) {
+        PriorityTransaction[] owners;
+        do {
+            owners = priorityOwners;
+        } while (!PRIORITY_OWNERS.compareAndSet(this, owners, PriorityTransaction.withOwner(owners, transaction)));
+    }
+
+    @Override
+    public void removePriorityOwner(PriorityTransaction transaction) {
+        PriorityTransaction[] owners;
+        PriorityTransaction[] newOwners;
+        do {
+            owners = priorityOwners;
+            newOwners = PriorityTransaction.withoutOwner(owners, transaction);
+        } while (newOwners != owners && !PRIORITY_OWNERS.compareAndSet(this, owners, newOwners));
+    }
+
+    @Override
+    public int getHoldNanosEstimate() {
+        return holdNanosEstimate;
+    }
+
+    @Override
+    public void onExclusiveLocked() {
+        if (getExclusiveHoldCount() == 1) {
+            lockedAtNanos = System.nanoTime();
+        }
+    }
+
+    /*
+     * Only the outermost hold is measured, weight of the new sample is 1/4
+     */
+    @Override
+    public void onExclusiveUnlocking() {
+        if (getExclusiveHoldCount() == 1) {
+            long holdNanos = Math.min(System.nanoTime() - lockedAtNanos, Integer.MAX_VALUE);
+            holdNanosEstimate += (int) ((holdNanos - holdNanosEstimate) >> 2);
+        }
+    }
+
+    void lock() {
+        lock(LockMode.EXCLUSIVE);
+    }
+
+    boolean tryLock(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        return tryLock(LockMode.EXCLUSIVE, timeout, timeUnit);
+    }
+
+    int unlock() {
+        return unlock(LockMode.EXCLUSIVE);
+    }
+
+    /**
+     * @return true if the current thread holds this entry in shared mode only, so it can not upgrade to exclusive
+     */
+    boolean isOnlySharedByCurrentThread() {
+        return getSharedHoldCount() > 0 && getExclusiveOwnerThread() != Thread.currentThread();
+    }
+
+    @Override
+    public boolean isUpgradeBlocked(LockMode lockMode) {
+        return lockMode == LockMode.EXCLUSIVE && isOnlySharedByCurrentThread();
+    }
+
+    /**
+     * @return the number of exclusive and shared holds of this entry by the current thread
+     */
+    @Override
+    public int getHoldCount() {
+        return getExclusiveHoldCount() + getSharedHoldCount();
+    }
+
+    @Override
+    protected final boolean tryAcquire(int acquires) {
+        Thread currentThread = Thread.currentThread();
+        int state = getState();
+
+        if (state != 0) {
+            //shared holders, possibly the current thread, or another exclusive owner
+            if ((state & EXCLUSIVE_MASK) == 0 || getExclusiveOwnerThread() != currentThread) {
+                return false;
+            }
+            if ((state & EXCLUSIVE_MASK) + acquires > MAX_COUNT) {
+                throw new Error("Maximum lock count exceeded");
+            }
+            setState(state + acquires);
+            return true;
+        }
+
+        if (!compareAndSetState(0, acquires)) {
+            return false;
+        }
+        setExclusiveOwnerThread(currentThread);
+        return true;
+    }
+
+    @Override
+    protected final boolean tryRelease(int releases) {
+        if (getExclusiveOwnerThread() != Thread.currentThread()) {
+            throw new IllegalMonitorStateException();
+        }
+
+        int state = getState() - releases;
+        boolean free = (state & EXCLUSIVE_MASK) == 0;
+        if (free) {
+            setExclusiveOwnerThread(null);
+        }
+        setState(state);
+        return free;
+    }
+
+    /*
+     * Only the first shared hold of a thread comes here, a new sharing thread does not pass the queued threads
+     */
+    @Override
+    protected final int tryAcquireShared(int acquires) {
+        return tryAcquireSharedHold(true) ? 1 : -1;
+    }
+
+    @Override
+    protected final boolean tryReleaseShared(int releases) {
+        while (true) {
+            int state = getState();
+            int newState = state - SHARED_UNIT;
+            if (compareAndSetState(state, newState)) {
+                return newState == 0;
+            }
+        }
+    }
+
+    @Override
+    protected final boolean isHeldExclusively() {
+        return getExclusiveOwnerThread() == Thread.currentThread();
+    }
+
+    private int getExclusiveHoldCount() {
+        return getExclusiveOwnerThread() == Thread.currentThread() ? getState() & EXCLUSIVE_MASK : 0;
+    }
+
+    private int getSharedHoldCount() {
+        Thread currentThread = Thread.currentThread();
+        if (firstSharer == currentThread) {
+            return firstSharerHolds;
+        }
+
+        ConcurrentHashMap<Thread, int[]> sharers = otherSharers;
+        int[] holds = sharers == null ? null : sharers.get(currentThread);
+        return holds == null ? 0 : holds[0];
+    }
+
+    /*
+     * A thread sharing the entry already only counts its new hold
+     */
+    private boolean tryLockReentrantShared() {
+        Thread currentThread = Thread.currentThread();
+        if (firstSharer == currentThread) {
+            firstSharerHolds++;
+            return true;
+        }
+
+        ConcurrentHashMap<Thread, int[]> sharers = otherSharers;
+        int[] holds = sharers == null ? null : sharers.get(currentThread);
+        if (holds == null) {
+            return false;
+        }
+        holds[0]++;
+        return true;
+    }
+
+    private boolean tryAcquireSharedHold(boolean respectQueue) {
+        Thread currentThread = Thread.currentThread();
+
+        while (true) {
+            int state = getState();
+            if ((state & EXCLUSIVE_MASK) != 0) {
+                if (getExclusiveOwnerThread() != currentThread) {
+                    return false;
+                }
+            } else if (respectQueue && hasQueuedPredecessors()) {
+                return false;
+            }
+            if (state >>> SHARED_SHIFT == MAX_COUNT) {
+                throw new Error("Maximum lock count exceeded");
+            }
+
+            if (compareAndSetState(state, state + SHARED_UNIT)) {
+                if (state >>> SHARED_SHIFT == 0) {
+                    firstSharer = currentThread;
+                    firstSharerHolds = 1;
+                } else {
+                    sharers().put(currentThread, new int[]{1});
+                }
+                return true;
+            }
+        }
+    }
+
+    /*
+     * Returns true if it was the last shared hold of the current thread
+     */
+    private boolean releaseSharedHold() {
+        Thread currentThread = Thread.currentThread();
+        if (firstSharer == currentThread) {
+            if (--firstSharerHolds == 0) {
+                firstSharer = null;
+                return true;
+            }
+            return false;
+        }
+
+        ConcurrentHashMap<Thread, int[]> sharers = otherSharers;
+        int[] holds = sharers == null ? null : sharers.get(currentThread);
+        if (holds == null) {
+            throw new IllegalMonitorStateException();
+        }
+        if (--holds[0] == 0) {
+            sharers.remove(currentThread);
+            return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ConcurrentHashMap<Thread, int[]> sharers() {
+        ConcurrentHashMap<Thread, int[]> sharers = otherSharers;
+        if (sharers == null) {
+            OTHER_SHARERS.compareAndSet(this, null, new ConcurrentHashMap<Thread, int[]>());
+            sharers = otherSharers;
+        }
+        return sharers;
+    }
+}
@@ -0,0 +1,35 @@
+package entitylocker;
+
+/**
+ * Maps entity ids to the {@link EntityLockEntry} protecting them
+ *
+ * @param <T> data type of the entity id
+ */
+interface EntityLockTable<T> {
+
+    /**
+     * Retains the lock entry of the entity. Every call must be paired with a call to {@link #releaseEntry(Object)}
+     * once the entry is not used anymore.
+     *
+     * @param entityId Id of the entity
+     * @return lock entry of the entity
+     */
+    EntityLockEntry retainEntry(T entityId);
+
+    /**
+     * Releases a previously retained lock entry
+     *
+     * @param entityId Id of the entity
+     */
+    void releaseEntry(T entityId);
+
+    /**
+     * @return number of lock entries currently present in the table
+     */
+    int size();
+
+    /**
+     * @return mode in which shared accesses lock the entries of this table
+     */
+    LockMode sharedAccessMode();
+}
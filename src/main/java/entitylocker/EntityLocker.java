@@ -1,10 +1,11 @@
 package entitylocker;
 
 import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.Collection;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Provides exclusive access to entities with primary keys of type T
+ * Provides exclusive or shared access to entities with primary keys of type T
  *
  * @param <T> Entity id data type
  */
@@ -15,7 +16,8 @@ public interface EntityLocker<T> {
      *
      * @param entityId The id of the entity
      * @param protectedCode protected code to be executed
-     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks, or if
+     * the current thread only has shared access to the entity
      */
     void executeWithEntityExclusiveAccess(T entityId, ProtectedCode protectedCode) throws DeadLockPreventionException;
 
@@ -32,6 +34,86 @@ public interface EntityLocker<T> {
      */
     boolean executeWithEntityExclusiveAccess(T entityId, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException;
 
+    /**
+     * Executes the protected code with exclusive access to all the given entities.
+     * <p>
+     * The entity locks are acquired in a deterministic total order, so concurrent multi entity acquisitions can not
+     * deadlock each other. The entities count towards lock escalation all at once.
+     *
+     * @param entityIds ids of the entities, duplicates are ignored
+     * @param protectedCode protected code to be executed
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks, which
+     * may only happen if the current thread already has access to other entities
+     */
+    void executeWithEntitiesExclusiveAccess(Collection<T> entityIds, ProtectedCode protectedCode) throws DeadLockPreventionException;
+
+    /**
+     * Executes the protected code with exclusive access to all the given entities, will time out if the thread did not
+     * acquire all the locks within the specified waitLockTimeout
+     *
+     * @param entityIds ids of the entities, duplicates are ignored
+     * @param protectedCode protected code to be executed
+     * @param waitLockTimeout max time to wait for all the locks
+     * @param timeUnit time unit
+     * @return true if the locks were acquired and the protected code executed, false otherwise
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    boolean executeWithEntitiesExclusiveAccess(Collection<T> entityIds, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException;
+
+    /**
+     * Executes the protected code with shared access to the entity: other threads may run shared protected code on
+     * the same entity concurrently, but no thread has exclusive access to it meanwhile.
+     * <p>
+     * A thread with exclusive access may also take shared access to the same entity, while a thread with only shared
+     * access can not take exclusive access to it.
+     *
+     * @param entityId The id of the entity
+     * @param protectedCode protected code to be executed
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks
+     */
+    void executeWithEntitySharedAccess(T entityId, ProtectedCode protectedCode) throws DeadLockPreventionException;
+
+    /**
+     * Executes the protected code with shared access to the entity, will time out if the thread did not acquire
+     * the lock within the specified waitLockTimeout
+     *
+     * @param entityId Id of the entity
+     * @param protectedCode protected code to be executed
+     * @param waitLockTimeout max time to wait for the lock
+     * @param timeUnit time unit
+     * @return true if the lock was acquired and the protected code executed, false otherwise
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    boolean executeWithEntitySharedAccess(T entityId, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException;
+
+    /**
+     * Reads the entity without acquiring any lock: the read code runs right away and its result is returned if no
+     * thread had exclusive access to the entity, or global exclusive access, meanwhile. Otherwise the read code is
+     * executed again with shared access to the entity.
+     *
+     * @param entityId Id of the entity
+     * @param readCode side effect free read code, see {@link OptimisticReadCode}
+     * @param <R> type of the value read
+     * @return value read
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks while
+     * falling back to shared access
+     */
+    <R> R executeWithOptimisticRead(T entityId, OptimisticReadCode<R> readCode) throws DeadLockPreventionException;
+
+    /**
+     * Executes the protected code, executing it again as long as it fails because the locker aborted it to break or
+     * prevent a deadlock. In the wait-die and wound-wait modes every execution keeps the priority timestamp of the
+     * first one, so the invocation eventually becomes the oldest one and can not starve, see {@link DeadLockPolicy}.
+     * <p>
+     * Nested in another protected code it is executed once: retrying it would keep the entities of the outer protected
+     * code locked.
+     *
+     * @param protectedCode protected code to be executed, it must be safe to execute again after a partial execution
+     * @throws DeadLockPreventionException if the thread tries to upgrade a shared access to exclusive access, or if
+     * the nested protected code is aborted
+     */
+    void executeWithDeadLockRetry(ProtectedCode protectedCode) throws DeadLockPreventionException;
+
     /**
      * Executes the protected code with global exclusive access.
      *
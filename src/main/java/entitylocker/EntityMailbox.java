@@ -0,0 +1,75 @@
+package entitylocker;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free queue of the tasks submitted for one entity by the {@link EntitySerialExecutor}.
+ * <p>
+ * The pending count decides who drains the mailbox: the submitter moving it from 0 to 1 schedules the drain, and the
+ * drain stops when it moves it back to 0, so at most one drain runs at a time. An empty mailbox is closed before
+ * being removed from the executor, a closed mailbox rejects new tasks and the submitter retries with a new one.
+ *
+ * @param <E> type of the tasks
+ */
+class EntityMailbox<E> {
+    static final int REJECTED = -1;
+    static final int DRAIN_RUNNING = 0;
+    static final int DRAIN_REQUIRED = 1;
+
+    private static final int CLOSED = -1;
+
+    private final ConcurrentLinkedQueue<E> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger(0);
+
+    /**
+     * @param task task to enqueue
+     * @return {@link #DRAIN_REQUIRED} if the mailbox was idle and must be drained by the caller,
+     * {@link #DRAIN_RUNNING} if a drain will run the task, or {@link #REJECTED} if the mailbox is closed and the task
+     * was not enqueued
+     */
+    int offer(E task) {
+        int previous;
+        do {
+            previous = pending.get();
+            if (previous == CLOSED) {
+                return REJECTED;
+            }
+        } while (!pending.compareAndSet(previous, previous + 1));
+
+        tasks.offer(task);
+        return previous == 0 ? DRAIN_REQUIRED : DRAIN_RUNNING;
+    }
+
+    /**
+     * Only called by the drain, while tasks are pending
+     *
+     * @return the next task
+     */
+    E take() {
+        E task;
+        while ((task = tasks.poll()) == null) {
+            //counted but not enqueued yet, the submitter is between the two steps of offer
+            Thread.yield();
+        }
+        return task;
+    }
+
+    /**
+     * Only called by the drain once a task is done
+     *
+     * @return true if more tasks are pending, false if the drain must stop
+     */
+    boolean completeTask() {
+        return pending.decrementAndGet() != 0;
+    }
+
+    /**
+     * Only called by the drain after it stopped
+     *
+     * @return true if the mailbox was closed, false if a new task arrived meanwhile and its submitter drains it
+     */
+    boolean tryClose() {
+        return pending.compareAndSet(0, CLOSED);
+    }
+}
@@ -0,0 +1,26 @@
+package entitylocker;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Runs tasks on entities with primary keys of type T one at a time per entity, without making any thread wait for
+ * another task of the same entity.
+ * <p>
+ * Tasks of an entity are queued in the mailbox of the entity and run in submission order. Tasks of different entities
+ * run concurrently.
+ *
+ * @param <T> Entity id data type
+ */
+public interface EntitySerialExecutor<T> {
+
+    /**
+     * Submits a task to the mailbox of the entity
+     *
+     * @param entityId The id of the entity
+     * @param task task to run with exclusive access to the entity
+     * @param <R> type of the result
+     * @return stage completed with the result of the task, or exceptionally if the task failed or could not be run
+     */
+    <R> CompletionStage<R> submit(T entityId, Callable<R> task);
+}
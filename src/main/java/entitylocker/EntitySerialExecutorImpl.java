@@ -0,0 +1,191 @@
+package entitylocker;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implementation of {@link EntitySerialExecutor} draining the entity mailboxes on a shared executor.
+ * <p>
+ * Every task runs with exclusive access to its entity through the given {@link EntityLocker}, so the tasks also
+ * exclude the protected code of the entity run directly on the locker, and a global exclusive access pauses all the
+ * mailboxes. A drain never waits for a lock: while such protected code holds the entity or the global lock, the drain
+ * keeps its task at the head of the mailbox and retries it after a growing delay on the retry scheduler, so a global
+ * exclusive access does not park a thread of the executor per mailbox. A drain runs a bounded batch of tasks before
+ * giving its thread back to the executor, so a busy entity does not starve the others. Mailboxes are removed once
+ * empty.
+ *
+ * @param <T>
+ */
+public class EntitySerialExecutorImpl<T> implements EntitySerialExecutor<T> {
+    private static final int DRAIN_BATCH_SIZE = 64;
+    private static final long MIN_RETRY_DELAY_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final ConcurrentHashMap<T, EntityMailbox<MailboxTask<?>>> mailboxes = new ConcurrentHashMap<>();
+    private final EntityLocker<T> entityLocker;
+    private final Executor executor;
+    private final ScheduledExecutorService retryScheduler;
+
+    /**
+     * @param entityLocker   locker giving the tasks exclusive access to their entity
+     * @param executor       executor draining the mailboxes
+     * @param retryScheduler scheduler of the drains retrying a locked entity, only runs short tasks
+     */
+    public EntitySerialExecutorImpl(EntityLocker<T> entityLocker, Executor executor, ScheduledExecutorService retryScheduler) {
+        this.entityLocker = Objects.requireNonNull(entityLocker);
+        this.executor = Objects.requireNonNull(executor);
+        this.retryScheduler = Objects.requireNonNull(retryScheduler);
+    }
+
+    /**
+     * Creates an executor scheduling its retries on a daemon thread shared by all the lockers
+     *
+     * @param entityLocker locker giving the tasks exclusive access to their entity
+     * @param executor     executor draining the mailboxes
+     */
+    public EntitySerialExecutorImpl(EntityLocker<T> entityLocker, Executor executor) {
+        this(entityLocker, executor, DefaultScheduler.INSTANCE);
+    }
+
+    @Override
+    public <R> CompletionStage<R> submit(T entityId, Callable<R> task) {
+        MailboxTask<R> mailboxTask = new MailboxTask<>(task);
+
+        while (true) {
+            EntityMailbox<MailboxTask<?>> mailbox = mailboxes.computeIfAbsent(entityId, eId -> new EntityMailbox<>());
+            int offered = mailbox.offer(mailboxTask);
+
+            if (offered == EntityMailbox.REJECTED) {
+                //closed by its last drain, which may not have removed it yet
+                mailboxes.remove(entityId, mailbox);
+                continue;
+            }
+
+            if (offered == EntityMailbox.DRAIN_REQUIRED) {
+                scheduleDrain(entityId, mailbox);
+            }
+            return mailboxTask.result;
+        }
+    }
+
+    /**
+     * @return number of mailboxes with pending tasks
+     */
+    int size() {
+        return mailboxes.size();
+    }
+
+    private void scheduleDrain(T entityId, EntityMailbox<MailboxTask<?>> mailbox) {
+        scheduleDrain(entityId, mailbox, null, 0);
+    }
+
+    /**
+     * @param blocked task taken from the mailbox but not run yet because its entity was locked, null if none
+     * @param retries number of times the blocked task found its entity locked
+     */
+    private void scheduleDrain(T entityId, EntityMailbox<MailboxTask<?>> mailbox, MailboxTask<?> blocked, int retries) {
+        try {
+            executor.execute(() -> drain(entityId, mailbox, blocked, retries));
+        } catch (RejectedExecutionException e) {
+            rejectAll(entityId, mailbox, blocked, e);
+        }
+    }
+
+    private void drain(T entityId, EntityMailbox<MailboxTask<?>> mailbox, MailboxTask<?> blocked, int retries) {
+        MailboxTask<?> task = blocked != null ? blocked : mailbox.take();
+
+        for (int i = 0; i < DRAIN_BATCH_SIZE; i++) {
+            if (i > 0) {
+                task = mailbox.take();
+            }
+
+            if (!tryRun(entityId, task)) {
+                scheduleRetry(entityId, mailbox, task, i == 0 ? retries + 1 : 1);
+                return;
+            }
+
+            if (!mailbox.completeTask()) {
+                close(entityId, mailbox);
+                return;
+            }
+        }
+
+        //tasks are still pending, continue later
+        scheduleDrain(entityId, mailbox);
+    }
+
+    /**
+     * @return false if the entity or the global lock is held, the task did not run
+     */
+    private boolean tryRun(T entityId, MailboxTask<?> task) {
+        try {
+            return entityLocker.executeWithEntityExclusiveAccess(entityId, task::run, 0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            //the executor is shutting down
+            Thread.currentThread().interrupt();
+            task.fail(e);
+        } catch (RuntimeException e) {
+            task.fail(e);
+        }
+        return true;
+    }
+
+    private void scheduleRetry(T entityId, EntityMailbox<MailboxTask<?>> mailbox, MailboxTask<?> blocked, int retries) {
+        long delayNanos = Math.min(MIN_RETRY_DELAY_NANOS << Math.min(retries - 1, 16), MAX_RETRY_DELAY_NANOS);
+        try {
+            retryScheduler.schedule(() -> scheduleDrain(entityId, mailbox, blocked, retries), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            rejectAll(entityId, mailbox, blocked, e);
+        }
+    }
+
+    private void rejectAll(T entityId, EntityMailbox<MailboxTask<?>> mailbox, MailboxTask<?> blocked, RejectedExecutionException e) {
+        if (blocked != null) {
+            blocked.fail(e);
+            if (!mailbox.completeTask()) {
+                close(entityId, mailbox);
+                return;
+            }
+        }
+
+        do {
+            mailbox.take().fail(e);
+        } while (mailbox.completeTask());
+
+        close(entityId, mailbox);
+    }
+
+    private void close(T entityId, EntityMailbox<MailboxTask<?>> mailbox) {
+        if (mailbox.tryClose()) {
+            mailboxes.remove(entityId, mailbox);
+        }
+    }
+
+    private static final class MailboxTask<R> {
+        private final Callable<R> task;
+        private final CompletableFuture<R> result = new CompletableFuture<>();
+
+        private MailboxTask(Callable<R> task) {
+            this.task = task;
+        }
+
+        private void run() {
+            try {
+                result.complete(task.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void fail(Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package entitylocker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Version stamps of the entities, used to validate optimistic reads.
+ * <p>
+ * Entities are mapped by hash to a fixed number of stripes, each stripe being a counter alone in its cache line.
+ * The low bits of a stripe count the writers currently holding an entity of the stripe and the high bits count the
+ * completed writes, so an optimistic read is valid if no writer was active when it started and the stamp did not
+ * change when it ended. Entities sharing a stripe only cause unnecessary fallbacks to a real lock.
+ */
+class EntityVersionStamps {
+    static final long INVALID_STAMP = -1L;
+
+    private static final int DEFAULT_STRIPES = 256;
+    //8 longs fill a 64 bytes cache line, so readers of one stripe are not disturbed by writers of the neighbour ones
+    private static final int PADDING_SHIFT = 3;
+    private static final long WRITER = 1L;
+    private static final long VERSION = 1L << 20;
+    private static final long WRITERS_MASK = VERSION - 1;
+
+    /*
+     * StampedLock.validate issues a load fence before checking its stamp: validating a never written stamp orders the
+     * reads of the optimistic code before the re-read of the version stamp, also on Java 8
+     */
+    private static final StampedLock LOAD_FENCE = new StampedLock();
+    private static final long LOAD_FENCE_STAMP = LOAD_FENCE.tryOptimisticRead();
+
+    private final AtomicLongArray stamps = new AtomicLongArray(DEFAULT_STRIPES << PADDING_SHIFT);
+
+    /**
+     * @param hashCode hash code of the entity id
+     * @return stripe of the entity
+     */
+    int stripeOf(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (DEFAULT_STRIPES - 1);
+    }
+
+    /**
+     * Marks a writer of the stripe as active, readers fall back to a lock until {@link #endWrite(int)}
+     *
+     * @param stripe stripe of the entity
+     */
+    void beginWrite(int stripe) {
+        stamps.getAndAdd(stripe << PADDING_SHIFT, WRITER);
+    }
+
+    /**
+     * Marks a writer of the stripe as finished, invalidating the reads that started before
+     *
+     * @param stripe stripe of the entity
+     */
+    void endWrite(int stripe) {
+        stamps.getAndAdd(stripe << PADDING_SHIFT, VERSION - WRITER);
+    }
+
+    /**
+     * @param stripe stripe of the entity
+     * @return stamp to validate later, or {@link #INVALID_STAMP} if a writer is active
+     */
+    long tryOptimisticRead(int stripe) {
+        long stamp = stamps.get(stripe << PADDING_SHIFT);
+        return (stamp & WRITERS_MASK) == 0 ? stamp : INVALID_STAMP;
+    }
+
+    /**
+     * @param stripe stripe of the entity
+     * @param stamp  stamp returned by {@link #tryOptimisticRead(int)}
+     * @return true if no write happened on the stripe since the stamp was issued
+     */
+    boolean validate(int stripe, long stamp) {
+        LOAD_FENCE.validate(LOAD_FENCE_STAMP);
+        return stamp != INVALID_STAMP && stamps.get(stripe << PADDING_SHIFT) == stamp;
+    }
+}
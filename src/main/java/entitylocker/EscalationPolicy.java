@@ -0,0 +1,273 @@
+package entitylocker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * When a thread holding many entities is escalated to a coarser lock, a group or the global lock.
+ * <p>
+ * A fixed threshold is a trade-off: too low and batch threads stop every other thread, too high and they lock every
+ * entity one by one, filling the lock table. The adaptive policy moves its threshold between a minimum and a maximum
+ * from live signals, refreshed every 10 milliseconds:
+ * <ul>
+ * <li>no other thread holding entities or starting accesses during the last period: nobody to block, the threshold
+ * drops to the minimum</li>
+ * <li>otherwise the threshold is lowered as the lock table approaches its entry budget, or as more acquisitions have
+ * to wait, as fine grained locks then give little concurrency anyway</li>
+ * <li>while threads wait for the global lock, escalations below the maximum are deferred rather than queued behind
+ * them</li>
+ * </ul>
+ * A thread above the maximum is always escalated. The decisions of the policy are exposed as metrics, so a policy
+ * instance belongs to a single locker: passing it to a second locker throws an {@link IllegalStateException}. The
+ * policy never escalating keeps no state and is shared.
+ */
+public final class EscalationPolicy {
+    private static final long REFRESH_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int DEFAULT_MIN_THRESHOLD = 64;
+    private static final int DEFAULT_MAX_THRESHOLD = 4096;
+    private static final long DEFAULT_MAX_LOCK_ENTRIES = 1_000_000L;
+    private static final EscalationPolicy NEVER = new EscalationPolicy(Integer.MAX_VALUE, Integer.MAX_VALUE, 0L, false);
+
+    private final int minThreshold;
+    private final int maxThreshold;
+    private final long maxLockEntries;
+    private final boolean adaptive;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final LongAdder escalations = new LongAdder();
+    private final LongAdder groupEscalations = new LongAdder();
+    private final LongAdder deferredEscalations = new LongAdder();
+    private final AtomicBoolean bound = new AtomicBoolean(false);
+    private final AtomicLong nextRefreshNanos = new AtomicLong(System.nanoTime());
+    /*
+     * One bit per thread id modulo 64 for the threads that started an access during the current period, so threads
+     * only running short protected codes are seen even if they hold nothing when the threshold is refreshed
+     */
+    private final AtomicLong recentThreads = new AtomicLong(0L);
+    private final AtomicReference<ContentionSample> contention = new AtomicReference<>(new ContentionSample(0L, 0L, 0.0));
+
+    private volatile int threshold;
+
+    private EscalationPolicy(int minThreshold, int maxThreshold, long maxLockEntries, boolean adaptive) {
+        this.minThreshold = minThreshold;
+        this.maxThreshold = maxThreshold;
+        this.maxLockEntries = maxLockEntries;
+        this.adaptive = adaptive;
+        this.threshold = maxThreshold;
+    }
+
+    /**
+     * @return policy never escalating
+     */
+    public static EscalationPolicy never() {
+        return NEVER;
+    }
+
+    /**
+     * @param threshold number of locked entities above which the thread lock is escalated
+     * @return policy escalating at a fixed threshold
+     */
+    public static EscalationPolicy fixed(int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Threshold must be positive");
+        }
+        return new EscalationPolicy(threshold, threshold, 0L, false);
+    }
+
+    /**
+     * @return adaptive policy escalating between 64 and 4096 locked entities, with a budget of one million lock entries
+     */
+    public static EscalationPolicy adaptive() {
+        return adaptive(DEFAULT_MIN_THRESHOLD, DEFAULT_MAX_THRESHOLD, DEFAULT_MAX_LOCK_ENTRIES);
+    }
+
+    /**
+     * @param minThreshold   number of locked entities below which a thread is never escalated
+     * @param maxThreshold   number of locked entities above which a thread is always escalated
+     * @param maxLockEntries number of lock entries of the locker at which the threshold reaches its minimum
+     * @return adaptive policy
+     */
+    public static EscalationPolicy adaptive(int minThreshold, int maxThreshold, long maxLockEntries) {
+        if (minThreshold <= 0 || maxThreshold < minThreshold) {
+            throw new IllegalArgumentException("Thresholds must be positive and ordered");
+        }
+        if (maxLockEntries <= 0) {
+            throw new IllegalArgumentException("Max lock entries must be positive");
+        }
+        return new EscalationPolicy(minThreshold, maxThreshold, maxLockEntries, true);
+    }
+
+    /**
+     * Maps the int threshold of the locker constructors
+     */
+    static EscalationPolicy ofThreshold(int escalationThreshold) {
+        return escalationThreshold == AbstractReentrantEntityLocker.NO_ESCALATION_VALUE
+                ? NEVER : new EscalationPolicy(escalationThreshold, escalationThreshold, 0L, false);
+    }
+
+    /**
+     * @return number of threads escalated to the global lock
+     */
+    public long getEscalations() {
+        return escalations.sum();
+    }
+
+    /**
+     * @return number of groups a thread escalated to
+     */
+    public long getGroupEscalations() {
+        return groupEscalations.sum();
+    }
+
+    /**
+     * @return number of acquisitions above the threshold that were not escalated because of global lock waiters
+     */
+    public long getDeferredEscalations() {
+        return deferredEscalations.sum();
+    }
+
+    /**
+     * @return current number of locked entities above which a thread is escalated
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return recent fraction of the entity acquisitions that had to wait, 0 for a fixed policy
+     */
+    public double getContentionRate() {
+        return contention.get().rate;
+    }
+
+    /**
+     * Binds the policy to the locker being created
+     *
+     * @throws IllegalStateException if the policy is already used by another locker
+     */
+    void bind() {
+        if (this != NEVER && !bound.compareAndSet(false, true)) {
+            throw new IllegalStateException("Escalation policy is already used by another locker");
+        }
+    }
+
+    /**
+     * @return false if the policy never escalates, so the held entities need not be counted
+     */
+    boolean escalates() {
+        return this != NEVER;
+    }
+
+    /**
+     * @param heldEntities number of entities the current thread holds
+     * @param newEntities  number of entities the current thread is about to lock
+     * @param locker       locker of the thread, providing the live signals
+     * @return true if the current thread must be escalated before the acquisition
+     */
+    boolean shouldEscalate(int heldEntities, int newEntities, AbstractReentrantEntityLocker locker) {
+        if (adaptive && heldEntities == 0) {
+            onAccessStarted();
+        }
+
+        int entities = heldEntities + newEntities;
+        if (entities <= minThreshold) {
+            return false;
+        }
+        if (entities > maxThreshold) {
+            return true;
+        }
+
+        refreshIfDue(locker);
+        if (entities <= threshold) {
+            return false;
+        }
+        if (locker.getGlobalLockWaiters() > 0) {
+            deferredEscalations.increment();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Called once the current thread locked an entity
+     *
+     * @param contended true if the thread had to wait for the entity
+     */
+    void onEntityLocked(boolean contended) {
+        if (adaptive) {
+            acquisitions.increment();
+            if (contended) {
+                contendedAcquisitions.increment();
+            }
+        }
+    }
+
+    void onEscalated() {
+        escalations.increment();
+    }
+
+    void onGroupEscalated() {
+        groupEscalations.increment();
+    }
+
+    private void onAccessStarted() {
+        long threadBit = 1L << (Thread.currentThread().getId() & 63);
+        if ((recentThreads.get() & threadBit) == 0) {
+            recentThreads.getAndAccumulate(threadBit, (bits, bit) -> bits | bit);
+        }
+    }
+
+    /*
+     * A single thread refreshes the threshold per period, the others keep using the current one
+     */
+    private void refreshIfDue(AbstractReentrantEntityLocker locker) {
+        long now = System.nanoTime();
+        long nextRefresh = nextRefreshNanos.get();
+        if (!adaptive || now - nextRefresh < 0 || !nextRefreshNanos.compareAndSet(nextRefresh, now + REFRESH_PERIOD_NANOS)) {
+            return;
+        }
+
+        //a slow refresh may overlap the next one, the sample is replaced as a whole and the newest one wins
+        ContentionSample previous = contention.get();
+        ContentionSample sample = previous.next(acquisitions.sum(), contendedAcquisitions.sum());
+        contention.compareAndSet(previous, sample);
+
+        int activeThreads = Math.max(Long.bitCount(recentThreads.getAndSet(0L)), locker.getActiveThreads());
+        if (activeThreads <= 1) {
+            threshold = minThreshold;
+            return;
+        }
+
+        double memoryPressure = Math.min(1.0, locker.getLockEntryCount() / (double) maxLockEntries);
+        threshold = maxThreshold - (int) ((maxThreshold - minThreshold) * Math.max(memoryPressure, sample.rate));
+    }
+
+    /*
+     * Acquisition counts at a refresh and the contention rate derived from them, published together
+     */
+    private static final class ContentionSample {
+        private final long acquisitions;
+        private final long contendedAcquisitions;
+        private final double rate;
+
+        private ContentionSample(long acquisitions, long contendedAcquisitions, double rate) {
+            this.acquisitions = acquisitions;
+            this.contendedAcquisitions = contendedAcquisitions;
+            this.rate = rate;
+        }
+
+        private ContentionSample next(long currentAcquisitions, long currentContendedAcquisitions) {
+            long newAcquisitions = currentAcquisitions - acquisitions;
+            if (newAcquisitions <= 0) {
+                return this;
+            }
+
+            double periodRate = (double) (currentContendedAcquisitions - contendedAcquisitions) / newAcquisitions;
+            return new ContentionSample(currentAcquisitions, currentContendedAcquisitions, (rate + Math.min(1.0, periodRate)) / 2);
+        }
+    }
+}
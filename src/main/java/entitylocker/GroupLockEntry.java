@@ -0,0 +1,369 @@
+package entitylocker;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Lock of a group of entities, held in any {@link LockMode}: {@link LockMode#EXCLUSIVE} or {@link LockMode#SHARED}
+ * by the group accesses, and in the intention modes by the accesses to entities of the group.
+ * <p>
+ * The entry is locked through the same protocol as the entity entries, so the wait-for graph, the deadlock policies
+ * and the escalation treat groups like entities. A thread holds the group in a single mode covering all its holds,
+ * only an intention shared hold can be upgraded to intention exclusive.
+ * <p>
+ * A thread holding nothing queues behind the waiting threads of conflicting modes, so a stream of entity accesses does
+ * not starve a group access. A thread already holding entities only waits for the holders of conflicting modes: its
+ * waits stay visible in the wait-for graph, which does not know about the queue.
+ */
+class GroupLockEntry implements LockEntry {
+    private static final LockMode[] MODES = LockMode.values();
+    private static final AtomicLong SEQUENCE = new AtomicLong(0L);
+    private static final AtomicReferenceFieldUpdater<GroupLockEntry, PriorityTransaction[]> PRIORITY_OWNERS =
+            AtomicReferenceFieldUpdater.newUpdater(GroupLockEntry.class, PriorityTransaction[].class, "priorityOwners");
+    private static final AtomicReferenceFieldUpdater<GroupLockEntry, long[]> HOLDERS =
+            AtomicReferenceFieldUpdater.newUpdater(GroupLockEntry.class, long[].class, "holders");
+
+    private final long sequence = SEQUENCE.incrementAndGet();
+
+    private final ReentrantLock monitor = new ReentrantLock();
+    private final Condition released = monitor.newCondition();
+    private final BooleanSupplier currentThreadHoldsLocks;
+
+    //number of threads holding the group in each mode, guarded by the monitor
+    private final int[] holdersByMode = new int[MODES.length];
+    //threads holding nothing waiting for the group, in arrival order, guarded by the monitor
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    //updated under the monitor, read by the owners without it
+    private final ConcurrentHashMap<Thread, Hold> holds = new ConcurrentHashMap<>();
+
+    //incremented when the group is exclusively locked and unlocked, odd while locked
+    private volatile long exclusiveEpoch;
+
+    //ids of the threads holding the group in the wait-for graph, replaced by compare and set
+    private volatile long[] holders = NO_HOLDERS;
+
+    //transactions holding or waiting for the group in the wait-die and wound-wait modes, replaced by compare and set
+    private volatile PriorityTransaction[] priorityOwners = PriorityTransaction.NONE;
+
+    /**
+     * @param currentThreadHoldsLocks tells whether the current thread holds other entities or groups of the locker
+     */
+    GroupLockEntry(BooleanSupplier currentThreadHoldsLocks) {
+        this.currentThreadHoldsLocks = currentThreadHoldsLocks;
+    }
+
+    @Override
+    public void lock(LockMode lockMode) {
+        Thread currentThread = Thread.currentThread();
+        boolean queued = respectsQueue(currentThread);
+
+        monitor.lock();
+        try {
+            if (tryAcquire(currentThread, lockMode, queued, null)) {
+                return;
+            }
+
+            Waiter waiter = enqueue(lockMode, queued);
+            try {
+                while (!tryAcquire(currentThread, lockMode, queued, waiter)) {
+                    released.awaitUninterruptibly();
+                }
+            } finally {
+                dequeue(waiter);
+            }
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    @Override
+    public void lockInterruptibly(LockMode lockMode) throws InterruptedException {
+        Thread currentThread = Thread.currentThread();
+        boolean queued = respectsQueue(currentThread);
+
+        monitor.lockInterruptibly();
+        try {
+            if (tryAcquire(currentThread, lockMode, queued, null)) {
+                return;
+            }
+
+            Waiter waiter = enqueue(lockMode, queued);
+            try {
+                while (!tryAcquire(currentThread, lockMode, queued, waiter)) {
+                    released.await();
+                }
+            } finally {
+                dequeue(waiter);
+            }
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryLock(LockMode lockMode, long timeout, TimeUnit timeUnit) throws InterruptedException {
+        Thread currentThread = Thread.currentThread();
+        boolean queued = respectsQueue(currentThread);
+        long remainingNanos = timeUnit.toNanos(timeout);
+
+        monitor.lockInterruptibly();
+        try {
+            if (tryAcquire(currentThread, lockMode, queued, null)) {
+                return true;
+            }
+
+            Waiter waiter = enqueue(lockMode, queued);
+            try {
+                while (!tryAcquire(currentThread, lockMode, queued, waiter)) {
+                    if (remainingNanos <= 0L) {
+                        return false;
+                    }
+                    remainingNanos = released.awaitNanos(remainingNanos);
+                }
+                return true;
+            } finally {
+                dequeue(waiter);
+            }
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    /**
+     * Locks the group only if it is available right now, a thread holding nothing does not pass the waiting threads
+     */
+    @Override
+    public boolean tryLock(LockMode lockMode) {
+        Thread currentThread = Thread.currentThread();
+        boolean queued = respectsQueue(currentThread);
+
+        monitor.lock();
+        try {
+            return tryAcquire(currentThread, lockMode, queued, null);
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    @Override
+    public boolean tryLockUncontended(LockMode lockMode) {
+        return tryLock(lockMode);
+    }
+
+    /**
+     * Releases one hold of the current thread, whatever its mode
+     */
+    @Override
+    public int unlock(LockMode lockMode) {
+        Thread currentThread = Thread.currentThread();
+
+        monitor.lock();
+        try {
+            Hold hold = holds.get(currentThread);
+            if (hold == null) {
+                throw new IllegalMonitorStateException();
+            }
+
+            if (--hold.count == 0) {
+                holds.remove(currentThread);
+                holdersByMode[hold.mode.ordinal()]--;
+                if (hold.mode == LockMode.EXCLUSIVE) {
+                    exclusiveEpoch++;
+                }
+                released.signalAll();
+            }
+            return hold.count;
+        } finally {
+            monitor.unlock();
+        }
+    }
+
+    /**
+     * Only an intention shared hold may be upgraded, to intention exclusive
+     */
+    @Override
+    public boolean isUpgradeBlocked(LockMode lockMode) {
+        LockMode heldMode = getHoldMode();
+        return heldMode != null && !heldMode.covers(lockMode)
+                && !(heldMode == LockMode.INTENTION_SHARED && lockMode == LockMode.INTENTION_EXCLUSIVE);
+    }
+
+    @Override
+    public int getHoldCount() {
+        Hold hold = holds.get(Thread.currentThread());
+        return hold == null ? 0 : hold.count;
+    }
+
+    @Override
+    public PriorityTransaction[] getPriorityOwners() {
+        return priorityOwners;
+    }
+
+    @Override
+    public void addPriorityOwner(PriorityTransaction transaction) {
+        PriorityTransaction[] owners;
+        do {
+            owners = priorityOwners;
+        } while (!PRIORITY_OWNERS.compareAndSet(this, owners, PriorityTransaction.withOwner(owners, transaction)));
+    }
+
+    @Override
+    public void removePriorityOwner(PriorityTransaction transaction) {
+        PriorityTransaction[] owners;
+        PriorityTransaction[] newOwners;
+        do {
+            owners = priorityOwners;
+            newOwners = PriorityTransaction.withoutOwner(owners, transaction);
+        } while (newOwners != owners && !PRIORITY_OWNERS.compareAndSet(this, owners, newOwners));
+    }
+
+    /**
+     * Group holds are not measured, a thread waiting for a group spins for the minimum time only
+     */
+    @Override
+    public int getHoldNanosEstimate() {
+        return 0;
+    }
+
+    @Override
+    public void onExclusiveLocked() {
+    }
+
+    @Override
+    public void onExclusiveUnlocking() {
+    }
+
+    @Override
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public long[] getHolders() {
+        return holders;
+    }
+
+    @Override
+    public boolean compareAndSetHolders(long[] expected, long[] holders) {
+        return HOLDERS.compareAndSet(this, expected, holders);
+    }
+
+    /**
+     * @return mode in which the current thread holds the group, or null
+     */
+    LockMode getHoldMode() {
+        Hold hold = holds.get(Thread.currentThread());
+        return hold == null ? null : hold.mode;
+    }
+
+    /**
+     * Starts an optimistic read of an entity of the group
+     *
+     * @return a stamp, or {@link EntityVersionStamps#INVALID_STAMP} if some thread has exclusive access to the group
+     */
+    long tryOptimisticRead() {
+        long epoch = exclusiveEpoch;
+        return (epoch & 1L) == 0L ? epoch : EntityVersionStamps.INVALID_STAMP;
+    }
+
+    /**
+     * @param stamp stamp returned by {@link #tryOptimisticRead()}
+     * @return true if no thread got exclusive access to the group since the stamp was issued
+     */
+    boolean validate(long stamp) {
+        return exclusiveEpoch == stamp;
+    }
+
+    /*
+     * Only the threads holding nothing respect the queue
+     */
+    private boolean respectsQueue(Thread thread) {
+        return !holds.containsKey(thread) && !currentThreadHoldsLocks.getAsBoolean();
+    }
+
+    /*
+     * Called under the monitor. A queued thread may not pass the conflicting waiters that arrived before it
+     */
+    private boolean tryAcquire(Thread thread, LockMode lockMode, boolean queued, Waiter self) {
+        Hold hold = holds.get(thread);
+        LockMode mode = hold == null ? lockMode : hold.mode.combine(lockMode);
+
+        for (LockMode heldMode : MODES) {
+            int otherHolders = holdersByMode[heldMode.ordinal()] - (hold != null && hold.mode == heldMode ? 1 : 0);
+            if (otherHolders > 0 && mode.conflictsWith(heldMode)) {
+                return false;
+            }
+        }
+
+        if (queued) {
+            for (Waiter waiter : queue) {
+                if (waiter == self) {
+                    break;
+                }
+                if (lockMode.conflictsWith(waiter.mode)) {
+                    return false;
+                }
+            }
+        }
+
+        if (hold == null) {
+            holds.put(thread, new Hold(mode));
+            holdersByMode[mode.ordinal()]++;
+            if (mode == LockMode.EXCLUSIVE) {
+                exclusiveEpoch++;
+            }
+            return true;
+        }
+
+        if (hold.mode != mode) {
+            holdersByMode[hold.mode.ordinal()]--;
+            holdersByMode[mode.ordinal()]++;
+            hold.mode = mode;
+        }
+        hold.count++;
+        return true;
+    }
+
+    private Waiter enqueue(LockMode lockMode, boolean queued) {
+        if (!queued) {
+            return null;
+        }
+
+        Waiter waiter = new Waiter(lockMode);
+        queue.addLast(waiter);
+        return waiter;
+    }
+
+    /*
+     * A leaving waiter may have been blocking the threads queued behind it
+     */
+    private void dequeue(Waiter waiter) {
+        if (waiter != null) {
+            queue.remove(waiter);
+            released.signalAll();
+        }
+    }
+
+    private static class Hold {
+        private LockMode mode;
+        private int count = 1;
+
+        private Hold(LockMode mode) {
+            this.mode = mode;
+        }
+    }
+
+    private static class Waiter {
+        private final LockMode mode;
+
+        private Waiter(LockMode mode) {
+            this.mode = mode;
+        }
+    }
+}
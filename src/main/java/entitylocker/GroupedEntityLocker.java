@@ -0,0 +1,70 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EntityLocker} whose entities belong to groups, such as the tenant or the table of the entity, with access to
+ * a whole group between entity access and global access.
+ * <p>
+ * Locks form a hierarchy: global, group, entity. An entity access holds its group in an intention mode, so a group
+ * access only waits for the threads using entities of that group, and only blocks them, while global exclusive access
+ * still blocks everything. Within its protected code an exclusive group access may access any entity, a shared group
+ * access may read the entities of its group and access the entities of other groups. A thread holding entities of a
+ * group can not take access to the group itself.
+ *
+ * @param <T> Entity id data type
+ * @param <G> Group id data type
+ */
+public interface GroupedEntityLocker<T, G> extends EntityLocker<T> {
+
+    /**
+     * Executes the protected code with exclusive access to the group: no other thread accesses an entity of the group
+     * meanwhile.
+     *
+     * @param group         id of the group
+     * @param protectedCode protected code to be executed
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks, or if
+     * the current thread holds entities of the group or shared access to it
+     */
+    void executeWithGroupExclusiveAccess(G group, ProtectedCode protectedCode) throws DeadLockPreventionException;
+
+    /**
+     * Executes the protected code with exclusive access to the group, will time out if the thread did not acquire
+     * the lock within the specified waitLockTimeout
+     *
+     * @param group           id of the group
+     * @param protectedCode   protected code to be executed
+     * @param waitLockTimeout max time to wait for the lock
+     * @param timeUnit        time unit
+     * @return true if the lock was acquired and the protected code executed, false otherwise
+     * @throws InterruptedException        if the current thread is interrupted
+     * @throws DeadLockPreventionException if the current thread holds entities of the group or shared access to it
+     */
+    boolean executeWithGroupExclusiveAccess(G group, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException;
+
+    /**
+     * Executes the protected code with shared access to the group: other threads may read entities of the group, or
+     * share access to the group, but not access entities of the group exclusively.
+     *
+     * @param group         id of the group
+     * @param protectedCode protected code to be executed
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks, or if
+     * the current thread holds entities of the group
+     */
+    void executeWithGroupSharedAccess(G group, ProtectedCode protectedCode) throws DeadLockPreventionException;
+
+    /**
+     * Executes the protected code with shared access to the group, will time out if the thread did not acquire
+     * the lock within the specified waitLockTimeout
+     *
+     * @param group           id of the group
+     * @param protectedCode   protected code to be executed
+     * @param waitLockTimeout max time to wait for the lock
+     * @param timeUnit        time unit
+     * @return true if the lock was acquired and the protected code executed, false otherwise
+     * @throws InterruptedException        if the current thread is interrupted
+     * @throws DeadLockPreventionException if the current thread holds entities of the group
+     */
+    boolean executeWithGroupSharedAccess(G group, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException;
+}
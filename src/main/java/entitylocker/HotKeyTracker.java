@@ -0,0 +1,145 @@
+package entitylocker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Finds the entities threads wait for the most, the hot keys, by sampling the contended acquisitions of a locker.
+ * <p>
+ * A sampled acquisition that had to wait adds its entity to two Space-Saving summaries, one by number of waits and one
+ * by total wait time. Each summary monitors a fixed number of entities, so the memory used does not depend on the
+ * number of entities, and an entity is reported once its share of the waits exceeds 1 / capacity. Uncontended
+ * acquisitions never reach the tracker, sampled ones take its lock. The reported counts and times are estimates scaled
+ * by the sampling rate, over-estimated by at most their error.
+ * <p>
+ * Entities are identified by the ids the locker was called with, long ids of the long and int lockers are boxed as
+ * {@link Long}. Group locks and striped locks are not tracked. A tracker is installed on a single locker with
+ * setHotKeyTracker, installing it on another locker throws an {@link IllegalStateException}.
+ */
+public final class HotKeyTracker {
+    private final int sampleEvery;
+    private final SpaceSavingSummary byWaitCount;
+    private final SpaceSavingSummary byWaitTime;
+    private final AtomicReference<AbstractReentrantEntityLocker> locker = new AtomicReference<>();
+
+    private HotKeyTracker(int capacity, int sampleEvery) {
+        this.sampleEvery = sampleEvery;
+        this.byWaitCount = new SpaceSavingSummary(capacity);
+        this.byWaitTime = new SpaceSavingSummary(capacity);
+    }
+
+    /**
+     * @param capacity    number of entities monitored by each summary, the more the better the estimates of the
+     *                    smaller hot keys
+     * @param sampleEvery one contended acquisition out of sampleEvery is recorded, on average, 1 to record them all
+     * @return a tracker to install on a locker
+     */
+    public static HotKeyTracker create(int capacity, int sampleEvery) {
+        if (capacity <= 0 || sampleEvery <= 0) {
+            throw new IllegalArgumentException("Capacity and sampling rate must be positive");
+        }
+        return new HotKeyTracker(capacity, sampleEvery);
+    }
+
+    /**
+     * @param k number of hot keys
+     * @return up to k entities with the most waits, most waited first
+     */
+    public synchronized List<HotKey> getTopByWaitCount(int k) {
+        List<HotKey> hotKeys = new ArrayList<>();
+        for (SpaceSavingSummary.Estimate estimate : byWaitCount.top(k)) {
+            hotKeys.add(new HotKey(estimate.key, sampleEvery * estimate.count, sampleEvery * byWaitTime.getCount(estimate.key),
+                    sampleEvery * estimate.error));
+        }
+        return Collections.unmodifiableList(hotKeys);
+    }
+
+    /**
+     * @param k number of hot keys
+     * @return up to k entities with the longest total wait time, longest first
+     */
+    public synchronized List<HotKey> getTopByWaitTime(int k) {
+        List<HotKey> hotKeys = new ArrayList<>();
+        for (SpaceSavingSummary.Estimate estimate : byWaitTime.top(k)) {
+            hotKeys.add(new HotKey(estimate.key, sampleEvery * byWaitCount.getCount(estimate.key), sampleEvery * estimate.count,
+                    sampleEvery * estimate.error));
+        }
+        return Collections.unmodifiableList(hotKeys);
+    }
+
+    public synchronized void reset() {
+        byWaitCount.clear();
+        byWaitTime.clear();
+    }
+
+    /**
+     * Binds the tracker to the locker installing it, installing it again on the same locker is allowed
+     *
+     * @throws IllegalStateException if the tracker was installed on another locker
+     */
+    void bind(AbstractReentrantEntityLocker owner) {
+        if (!locker.compareAndSet(null, owner) && locker.get() != owner) {
+            throw new IllegalStateException("Hot key tracker is already installed on another locker");
+        }
+    }
+
+    /**
+     * Called by the locker once a contended acquisition got its entry
+     */
+    void onContendedAcquisition(EntityLockEntry entry, long waitNanos) {
+        if (sampleEvery > 1 && ThreadLocalRandom.current().nextInt(sampleEvery) != 0) {
+            return;
+        }
+
+        Object entityId = entry.getEntityId();
+        if (entityId == null) {
+            return;
+        }
+        synchronized (this) {
+            byWaitCount.add(entityId, 1L);
+            byWaitTime.add(entityId, Math.max(waitNanos, 0L));
+        }
+    }
+
+    /**
+     * Estimated waits of an entity. The wait count or time the entity was ranked by is over-estimated by at most the
+     * error, the other one is the estimate of the other summary, 0 if it does not monitor the entity
+     */
+    public static final class HotKey {
+        private final Object entityId;
+        private final long waitCount;
+        private final long waitNanos;
+        private final long error;
+
+        private HotKey(Object entityId, long waitCount, long waitNanos, long error) {
+            this.entityId = entityId;
+            this.waitCount = waitCount;
+            this.waitNanos = waitNanos;
+            this.error = error;
+        }
+
+        public Object getEntityId() {
+            return entityId;
+        }
+
+        public long getWaitCount() {
+            return waitCount;
+        }
+
+        public long getWaitNanos() {
+            return waitNanos;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return entityId + ": waits=" + waitCount + ", waitNanos=" + waitNanos + ", error=" + error;
+        }
+    }
+}
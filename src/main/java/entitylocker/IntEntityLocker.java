@@ -0,0 +1,64 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides exclusive access to entities with primitive int primary keys, without boxing the entity ids.
+ * <p>
+ * Same semantics as {@link EntityLocker}
+ */
+public interface IntEntityLocker {
+
+    /**
+     * Executes the protected code with exclusive access to the entity.
+     *
+     * @param entityId The id of the entity
+     * @param protectedCode protected code to be executed
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks
+     */
+    void executeWithEntityExclusiveAccess(int entityId, ProtectedCode protectedCode) throws DeadLockPreventionException;
+
+    /**
+     * Executed protected code with exclusive access to the entity, will time out if the thread did not acquire
+     * the lock within the specified waitLockTimeout
+     *
+     * @param entityId Id of the entity
+     * @param protectedCode protected code to be executed
+     * @param waitLockTimeout max time to wait for the lock
+     * @param timeUnit time unit
+     * @return true if the lock was acquired and the protected code executed, false otherwise
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    boolean executeWithEntityExclusiveAccess(int entityId, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException;
+
+    /**
+     * Executes the protected code again as long as the locker aborts it to break or prevent a deadlock, see
+     * {@link EntityLocker#executeWithDeadLockRetry(ProtectedCode)}.
+     *
+     * @param protectedCode protected code to be executed, it must be safe to execute again after a partial execution
+     * @throws DeadLockPreventionException if the nested protected code is aborted
+     */
+    void executeWithDeadLockRetry(ProtectedCode protectedCode) throws DeadLockPreventionException;
+
+    /**
+     * Executes the protected code with global exclusive access.
+     *
+     * @param protectedCode protected code to be executed
+     * @throws DeadLockPreventionException in case of possible deadlock detection detected in the internal locks
+     * @throws InterruptedException if thread was interrupted
+     */
+    void executeWithGlobalExclusiveAccess(ProtectedCode protectedCode) throws InterruptedException;
+
+    /**
+     * Executed protected code with global exclusive access, will time out if the thread did not acquire
+     * the locked within the specified waitLockTimeout
+     *
+     * @param protectedCode protected code to be executed
+     * @param waitLockTimeout max time to wait for the lock
+     * @param timeUnit time unit
+     * @return true if the lock was acquired and the protected code executed, false otherwise
+     * @throws InterruptedException if the current thread is interrupted
+     */
+    boolean executeWithGlobalExclusiveAccess(ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException;
+}
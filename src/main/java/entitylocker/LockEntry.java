@@ -0,0 +1,98 @@
+package entitylocker;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock of an entity or of a group of entities, as locked by the protocol of {@link AbstractReentrantEntityLocker}.
+ * <p>
+ * The wait-for graph, the deadlock policies, the spin policy and the escalation only see this interface, so each kind
+ * of entry keeps its own synchronization: {@link EntityLockEntry} is its own queued synchronizer, while
+ * {@link GroupLockEntry} guards the holds of every mode with a monitor.
+ * <p>
+ * Every entry gets a sequence number when created, increasing among the entries of the same kind: locking several
+ * entries of a kind in that order can not deadlock.
+ */
+interface LockEntry extends ThreadEntityGraph.HolderArray {
+
+    void lock(LockMode lockMode);
+
+    void lockInterruptibly(LockMode lockMode) throws InterruptedException;
+
+    boolean tryLock(LockMode lockMode, long timeout, TimeUnit timeUnit) throws InterruptedException;
+
+    /**
+     * Locks the entry only if it is available right now
+     */
+    boolean tryLock(LockMode lockMode);
+
+    /**
+     * Locks the entry only if it is available right now and no thread would be passed, so a stream of acquisitions can
+     * not starve a waiting thread
+     */
+    boolean tryLockUncontended(LockMode lockMode);
+
+    /**
+     * Releases one hold of the current thread
+     *
+     * @return the number of holds the current thread still has, in any mode
+     */
+    int unlock(LockMode lockMode);
+
+    /**
+     * @param lockMode mode the current thread is about to acquire
+     * @return true if the current thread holds this entry in a mode it can not upgrade to the given mode, it would wait
+     * for its own hold
+     */
+    boolean isUpgradeBlocked(LockMode lockMode);
+
+    /**
+     * @return the number of holds of this entry by the current thread, in any mode
+     */
+    int getHoldCount();
+
+    /**
+     * @return transactions holding or waiting for this entry, must not be modified
+     */
+    PriorityTransaction[] getPriorityOwners();
+
+    void addPriorityOwner(PriorityTransaction transaction);
+
+    void removePriorityOwner(PriorityTransaction transaction);
+
+    /**
+     * @return moving average of the exclusive hold time of this entry in nanoseconds, 0 if not measured
+     */
+    int getHoldNanosEstimate();
+
+    /**
+     * Called by the spin policy once the current thread locked the entry exclusively
+     */
+    void onExclusiveLocked();
+
+    /**
+     * Called by the spin policy before the current thread unlocks an exclusive hold
+     */
+    void onExclusiveUnlocking();
+
+    long getSequence();
+
+    /**
+     * @param entries entries of the same kind to lock together, may contain the same entry more than once
+     * @return the distinct entries sorted in canonical lock order
+     */
+    static <E extends LockEntry> E[] inCanonicalOrder(E[] entries) {
+        E[] ordered = entries.clone();
+        Arrays.sort(ordered, Comparator.comparingLong(LockEntry::getSequence));
+
+        int distinct = 0;
+        for (E entry : ordered) {
+            if (distinct == 0 || ordered[distinct - 1] != entry) {
+                ordered[distinct++] = entry;
+            }
+        }
+
+        return distinct == ordered.length ? ordered : Arrays.copyOf(ordered, distinct);
+    }
+}
@@ -0,0 +1,68 @@
+package entitylocker;
+
+/**
+ * Mode in which a thread holds or waits for an entity lock.
+ * <p>
+ * Groups of entities are also locked in the intention modes: a thread accessing an entity first holds its group in
+ * the intention mode matching its entity access, so group accesses only wait for the threads using entities of the
+ * group.
+ */
+enum LockMode {
+    /**
+     * Only one thread at a time may hold the entity
+     */
+    EXCLUSIVE,
+    /**
+     * Many threads may hold the entity at the same time, as long as no thread holds it exclusively
+     */
+    SHARED,
+    /**
+     * Held on a group by the threads with shared access to entities of the group
+     */
+    INTENTION_SHARED,
+    /**
+     * Held on a group by the threads with exclusive access to entities of the group
+     */
+    INTENTION_EXCLUSIVE;
+
+    /**
+     * @param other mode of another thread on the same entity
+     * @return true if a thread in this mode and a thread in the other mode can not hold the entity at the same time
+     */
+    boolean conflictsWith(LockMode other) {
+        if (this == EXCLUSIVE || other == EXCLUSIVE) {
+            return true;
+        }
+
+        //shared and intention exclusive are the only other conflicting pair
+        return (this == SHARED && other == INTENTION_EXCLUSIVE) || (this == INTENTION_EXCLUSIVE && other == SHARED);
+    }
+
+    /**
+     * @param other mode of another hold by the same thread
+     * @return true if holding this mode grants everything the other mode grants
+     */
+    boolean covers(LockMode other) {
+        return this == other || this == EXCLUSIVE || other == INTENTION_SHARED;
+    }
+
+    /**
+     * @param other mode of another hold by the same thread
+     * @return the weakest mode covering both modes
+     */
+    LockMode combine(LockMode other) {
+        if (covers(other)) {
+            return this;
+        }
+
+        //shared with intention exclusive is approximated by exclusive
+        return other.covers(this) ? other : EXCLUSIVE;
+    }
+
+    /**
+     * @return intention mode to hold on the group of an entity accessed in this mode
+     */
+    LockMode intention() {
+        return this == SHARED || this == INTENTION_SHARED ? INTENTION_SHARED : INTENTION_EXCLUSIVE;
+    }
+}
@@ -0,0 +1,316 @@
+package entitylocker;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contention metrics of a locker: how many acquisitions had to wait and for how long, how long the protected code
+ * held its locks, how often threads were escalated or failed with a {@link entitylocker.exceptions.DeadLockPreventionException},
+ * and how long global exclusive accesses waited and stopped the other threads.
+ * <p>
+ * Counters are {@link LongAdder}s and times are recorded in lock-free logarithmic histograms, in nanoseconds, so
+ * recording does not serialize the threads. Metrics are disabled by default: a disabled instance reads no clock and
+ * records nothing, the locker only checks the enabled flag. They can be enabled and disabled at any time, and read
+ * with {@link #snapshot()}.
+ */
+public final class LockerMetrics {
+    /**
+     * Start time of an interval that is not measured
+     */
+    static final long NOT_TIMED = 0L;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder escalations = new LongAdder();
+    private final LongAdder groupEscalations = new LongAdder();
+    private final LongAdder deadLockAborts = new LongAdder();
+    private final LogHistogram waitTimes = new LogHistogram();
+    private final LogHistogram holdTimes = new LogHistogram();
+    private final LogHistogram globalWaitTimes = new LogHistogram();
+    private final LogHistogram globalHoldTimes = new LogHistogram();
+
+    private volatile boolean enabled;
+
+    LockerMetrics() {
+    }
+
+    public void enable() {
+        enabled = true;
+    }
+
+    public void disable() {
+        enabled = false;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Clears the recorded metrics, concurrent recordings may survive the reset
+     */
+    public void reset() {
+        acquisitions.reset();
+        contendedAcquisitions.reset();
+        timeouts.reset();
+        escalations.reset();
+        groupEscalations.reset();
+        deadLockAborts.reset();
+        waitTimes.reset();
+        holdTimes.reset();
+        globalWaitTimes.reset();
+        globalHoldTimes.reset();
+    }
+
+    /**
+     * @return the metrics recorded so far, not atomic with respect to concurrent recordings
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(acquisitions.sum(), contendedAcquisitions.sum(), timeouts.sum(), escalations.sum(),
+                groupEscalations.sum(), deadLockAborts.sum(), waitTimes.snapshot(), holdTimes.snapshot(),
+                globalWaitTimes.snapshot(), globalHoldTimes.snapshot());
+    }
+
+    /**
+     * @return start time of an interval, or {@link #NOT_TIMED} if the metrics are disabled
+     */
+    long startTimer() {
+        return enabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /**
+     * @param waitStart start of the wait of a contended acquisition, {@link #NOT_TIMED} for an uncontended one
+     */
+    void onEntityLocked(boolean contended, long waitStart) {
+        if (!enabled) {
+            return;
+        }
+
+        acquisitions.increment();
+        if (contended) {
+            contendedAcquisitions.increment();
+            if (waitStart != NOT_TIMED) {
+                waitTimes.record(System.nanoTime() - waitStart);
+            }
+        }
+    }
+
+    void onEntityReleased(long holdStart) {
+        if (holdStart != NOT_TIMED && enabled) {
+            holdTimes.record(System.nanoTime() - holdStart);
+        }
+    }
+
+    void onGlobalLocked(long waitStart) {
+        if (waitStart != NOT_TIMED && enabled) {
+            globalWaitTimes.record(System.nanoTime() - waitStart);
+        }
+    }
+
+    void onGlobalReleased(long holdStart) {
+        if (holdStart != NOT_TIMED && enabled) {
+            globalHoldTimes.record(System.nanoTime() - holdStart);
+        }
+    }
+
+    void onTimeout() {
+        if (enabled) {
+            timeouts.increment();
+        }
+    }
+
+    void onEscalated() {
+        if (enabled) {
+            escalations.increment();
+        }
+    }
+
+    void onGroupEscalated() {
+        if (enabled) {
+            groupEscalations.increment();
+        }
+    }
+
+    void onDeadLockAbort() {
+        if (enabled) {
+            deadLockAborts.increment();
+        }
+    }
+
+    /**
+     * Metrics of a locker at the time of {@link LockerMetrics#snapshot()}
+     */
+    public static final class Snapshot {
+        private final long acquisitions;
+        private final long contendedAcquisitions;
+        private final long timeouts;
+        private final long escalations;
+        private final long groupEscalations;
+        private final long deadLockAborts;
+        private final HistogramSnapshot waitTimes;
+        private final HistogramSnapshot holdTimes;
+        private final HistogramSnapshot globalWaitTimes;
+        private final HistogramSnapshot globalHoldTimes;
+
+        private Snapshot(long acquisitions, long contendedAcquisitions, long timeouts, long escalations, long groupEscalations,
+                         long deadLockAborts, HistogramSnapshot waitTimes, HistogramSnapshot holdTimes,
+                         HistogramSnapshot globalWaitTimes, HistogramSnapshot globalHoldTimes) {
+            this.acquisitions = acquisitions;
+            this.contendedAcquisitions = contendedAcquisitions;
+            this.timeouts = timeouts;
+            this.escalations = escalations;
+            this.groupEscalations = groupEscalations;
+            this.deadLockAborts = deadLockAborts;
+            this.waitTimes = waitTimes;
+            this.holdTimes = holdTimes;
+            this.globalWaitTimes = globalWaitTimes;
+            this.globalHoldTimes = globalHoldTimes;
+        }
+
+        /**
+         * @return number of entity and group locks acquired
+         */
+        public long getAcquisitions() {
+            return acquisitions;
+        }
+
+        /**
+         * @return number of acquisitions that found the lock taken and waited for it
+         */
+        public long getContendedAcquisitions() {
+            return contendedAcquisitions;
+        }
+
+        /**
+         * @return number of timed accesses, to entities or global, that timed out
+         */
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        /**
+         * @return number of times a thread was escalated to the global write lock, because it held many entities or
+         * took global exclusive access while holding entities
+         */
+        public long getEscalations() {
+            return escalations;
+        }
+
+        /**
+         * @return number of times a thread escalated to groups instead of the global lock
+         */
+        public long getGroupEscalations() {
+            return groupEscalations;
+        }
+
+        /**
+         * @return number of accesses failed with a DeadLockPreventionException
+         */
+        public long getDeadLockAborts() {
+            return deadLockAborts;
+        }
+
+        /**
+         * @return wait times of the contended acquisitions
+         */
+        public HistogramSnapshot getWaitTimes() {
+            return waitTimes;
+        }
+
+        /**
+         * @return run times of the protected code of entity accesses, during which their locks are held
+         */
+        public HistogramSnapshot getHoldTimes() {
+            return holdTimes;
+        }
+
+        /**
+         * @return wait times of global exclusive accesses
+         */
+        public HistogramSnapshot getGlobalWaitTimes() {
+            return globalWaitTimes;
+        }
+
+        /**
+         * @return run times of the protected code of global exclusive accesses, during which every other access waits
+         */
+        public HistogramSnapshot getGlobalHoldTimes() {
+            return globalHoldTimes;
+        }
+
+        @Override
+        public String toString() {
+            return "acquisitions=" + acquisitions + ", contendedAcquisitions=" + contendedAcquisitions
+                    + ", timeouts=" + timeouts + ", escalations=" + escalations + ", groupEscalations=" + groupEscalations
+                    + ", deadLockAborts=" + deadLockAborts + ", waitTimes={" + waitTimes + "}, holdTimes={" + holdTimes
+                    + "}, globalWaitTimes={" + globalWaitTimes + "}, globalHoldTimes={" + globalHoldTimes + "}";
+        }
+    }
+
+    /**
+     * Times recorded in a histogram, in nanoseconds. Percentiles are the upper bound of the bucket holding them,
+     * within 12.5% of the recorded time
+     */
+    public static final class HistogramSnapshot {
+        private final long[] bucketCounts;
+        private final long count;
+        private final long totalNanos;
+        private final long maxNanos;
+
+        HistogramSnapshot(long[] bucketCounts, long totalNanos, long maxNanos) {
+            long count = 0;
+            for (long bucketCount : bucketCounts) {
+                count += bucketCount;
+            }
+            this.bucketCounts = bucketCounts;
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getMaxNanos() {
+            return maxNanos;
+        }
+
+        public double getMeanNanos() {
+            return count == 0 ? 0.0 : (double) totalNanos / count;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return time below which the given percentage of the recorded times fall, 0 if none was recorded
+         */
+        public long getPercentileNanos(double percentile) {
+            if (percentile < 0.0 || percentile > 100.0) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100");
+            }
+            if (count == 0) {
+                return 0L;
+            }
+
+            long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int bucket = 0; bucket < bucketCounts.length; bucket++) {
+                seen += bucketCounts[bucket];
+                if (seen >= rank) {
+                    return Math.min(LogHistogram.bucketUpperBound(bucket), maxNanos);
+                }
+            }
+            return maxNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + ", mean=" + (long) getMeanNanos() + "ns, p50=" + getPercentileNanos(50)
+                    + "ns, p99=" + getPercentileNanos(99) + "ns, p99.9=" + getPercentileNanos(99.9) + "ns, max=" + maxNanos + "ns";
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package entitylocker;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non negative values with logarithmic buckets.
+ * <p>
+ * Every power of two range is split in {@link #SUB_BUCKETS} linear buckets, so a bucket spans at most 1/8 of its
+ * values and a percentile read from the buckets is within 12.5% of the recorded value, from nanoseconds to centuries.
+ * Recording increments one bucket and the sum, and updates the maximum only when it grows. Reads are not atomic with
+ * respect to concurrent recordings, a snapshot taken while values are recorded may miss the latest ones.
+ */
+final class LogHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong(0L);
+
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts.incrementAndGet(bucketOf(value));
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    LockerMetrics.HistogramSnapshot snapshot() {
+        long[] bucketCounts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            bucketCounts[i] = counts.get(i);
+        }
+        return new LockerMetrics.HistogramSnapshot(bucketCounts, sum.sum(), max.get());
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0L);
+        }
+        sum.reset();
+        max.set(0L);
+    }
+
+    /*
+     * Values below SUB_BUCKETS have a bucket each, the others are bucketed by their highest bit and the next
+     * SUB_BUCKET_BITS bits
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int highestBit = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (highestBit - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (highestBit - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /*
+     * Greatest value of the bucket
+     */
+    static long bucketUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,195 @@
+package entitylocker;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock table for primitive long entity ids.
+ * <p>
+ * Open addressing hash table split in segments, each segment keeps the ids in a long array so no id is ever boxed.
+ * Like {@link ReentrantEntityLock} entries are reference counted, a segment is only locked for the short lookup and
+ * update of the reference count, never while waiting for an entity lock. Removed entries are pooled by their segment
+ * and reused for the next entity, so steady state lock traffic does not allocate.
+ */
+class LongEntityLockTable {
+    private static final int SEGMENTS = 64;
+    private static final int SEGMENT_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS);
+    private static final int SEGMENT_INITIAL_CAPACITY = 16;
+    private static final int SEGMENT_POOL_SIZE = 8;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    LongEntityLockTable() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Retains the lock entry of the entity, creating it if absent. Every call must be paired with a call to
+     * {@link #releaseEntry(long)} once the entry is not used anymore.
+     *
+     * @param entityId Id of the entity
+     * @return lock entry of the entity
+     */
+    EntityLockEntry retainEntry(long entityId) {
+        int hash = spread(entityId);
+        return segmentFor(hash).retainEntry(entityId, hash);
+    }
+
+    /**
+     * Releases a previously retained lock entry, removing it from the table when no thread holds or waits for it
+     *
+     * @param entityId Id of the entity
+     */
+    void releaseEntry(long entityId) {
+        int hash = spread(entityId);
+        segmentFor(hash).releaseEntry(entityId, hash);
+    }
+
+    /**
+     * @return number of entities currently present in the lock table
+     */
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> SEGMENT_SHIFT];
+    }
+
+    /*
+     * Fibonacci hashing, the high bits select the segment and the low bits the slot within the segment
+     */
+    private static int spread(long entityId) {
+        long h = entityId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Linear probing table guarded by its own lock. A null entry marks an empty slot.
+     */
+    private static final class Segment extends ReentrantLock {
+        private long[] keys = new long[SEGMENT_INITIAL_CAPACITY];
+        private EntityLockEntry[] entries = new EntityLockEntry[SEGMENT_INITIAL_CAPACITY];
+        private final EntityLockEntry[] pool = new EntityLockEntry[SEGMENT_POOL_SIZE];
+        private int pooled;
+        private int size;
+
+        EntityLockEntry retainEntry(long key, int hash) {
+            lock();
+            try {
+                int slot = indexOf(key, hash);
+                EntityLockEntry entry = entries[slot];
+
+                if (entry == null) {
+                    if (pooled > 0) {
+                        entry = pool[--pooled];
+                        pool[pooled] = null;
+                    } else {
+                        entry = new EntityLockEntry();
+                    }
+
+                    entry.setEntityId(key);
+                    keys[slot] = key;
+                    entries[slot] = entry;
+
+                    if (++size > entries.length * 3 / 4) {
+                        resize();
+                    }
+                }
+
+                entry.retain();
+                return entry;
+            } finally {
+                unlock();
+            }
+        }
+
+        void releaseEntry(long key, int hash) {
+            lock();
+            try {
+                int slot = indexOf(key, hash);
+                EntityLockEntry entry = entries[slot];
+
+                if (entry == null || !entry.release()) {
+                    return;
+                }
+
+                removeAt(slot);
+                if (pooled < pool.length) {
+                    pool[pooled++] = entry;
+                }
+            } finally {
+                unlock();
+            }
+        }
+
+        int size() {
+            lock();
+            try {
+                return size;
+            } finally {
+                unlock();
+            }
+        }
+
+        /*
+         * Returns the slot holding the key, or the empty slot where it should be inserted
+         */
+        private int indexOf(long key, int hash) {
+            int mask = entries.length - 1;
+            int slot = hash & mask;
+
+            while (entries[slot] != null && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+
+            return slot;
+        }
+
+        /*
+         * Backward shift deletion, keeps the probe sequences of the following keys without tombstones
+         */
+        private void removeAt(int slot) {
+            int mask = entries.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+
+            while (entries[next] != null) {
+                int home = spread(keys[next]) & mask;
+
+                //move the entry into the hole if its home slot is not cyclically within (hole, next]
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    entries[hole] = entries[next];
+                    hole = next;
+                }
+
+                next = (next + 1) & mask;
+            }
+
+            entries[hole] = null;
+            size--;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            EntityLockEntry[] oldEntries = entries;
+
+            keys = new long[oldKeys.length << 1];
+            entries = new EntityLockEntry[oldEntries.length << 1];
+
+            for (int i = 0; i < oldEntries.length; i++) {
+                if (oldEntries[i] != null) {
+                    int slot = indexOf(oldKeys[i], spread(oldKeys[i]));
+                    keys[slot] = oldKeys[i];
+                    entries[slot] = oldEntries[i];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package entitylocker;
+
+/**
+ * Read only code executed by {@link EntityLocker#executeWithOptimisticRead(Object, OptimisticReadCode)} without
+ * acquiring any lock.
+ * <p>
+ * The code may observe the entity while a writer is modifying it, so it must not have side effects, must tolerate
+ * inconsistent values and may be executed a second time under a shared lock.
+ *
+ * @param <R> type of the value read
+ */
+@FunctionalInterface
+public interface OptimisticReadCode<R> {
+    /**
+     * Reads the entity
+     *
+     * @return value read
+     */
+    R read();
+}
@@ -0,0 +1,130 @@
+package entitylocker;
+
+import java.util.Arrays;
+
+/**
+ * Protected code invocation of a thread in the wait-die and wound-wait modes, see {@link DeadLockPolicy#waitDie()}.
+ * <p>
+ * A transaction starts with the first entity its thread locks and ends once the thread holds no entity anymore,
+ * unless it is retried: a retried invocation keeps the timestamp of its first attempt, so it eventually becomes the
+ * oldest one and can not starve. The lower the timestamp the older, and the higher the priority, of the transaction.
+ * <p>
+ * Only the thread of the transaction updates it, except other threads wounding it.
+ */
+class PriorityTransaction {
+    static final PriorityTransaction[] NONE = new PriorityTransaction[0];
+
+    private final long timestamp;
+    private final boolean retried;
+
+    private int heldEntities;
+    private boolean aborted;
+    private volatile boolean wounded;
+    private volatile ThreadEntityGraph.WaitEdge<LockEntry> waitEdge;
+
+    /**
+     * @param timestamp priority timestamp
+     * @param retried   true for an attempt of a retried invocation, which lasts until the invocation returns rather than
+     *                  until the thread holds no entity
+     */
+    PriorityTransaction(long timestamp, boolean retried) {
+        this.timestamp = timestamp;
+        this.retried = retried;
+    }
+
+    long getTimestamp() {
+        return timestamp;
+    }
+
+    boolean isRetried() {
+        return retried;
+    }
+
+    boolean isOlderThan(PriorityTransaction other) {
+        return timestamp < other.timestamp;
+    }
+
+    /**
+     * @return number of distinct entities held by the thread
+     */
+    int getHeldEntities() {
+        return heldEntities;
+    }
+
+    void onEntityHeld() {
+        heldEntities++;
+    }
+
+    /**
+     * @return true if the thread does not hold any entity anymore
+     */
+    boolean onEntityReleased() {
+        return --heldEntities == 0;
+    }
+
+    /**
+     * @return true if the transaction failed to break a possible deadlock
+     */
+    boolean isAborted() {
+        return aborted;
+    }
+
+    void setAborted() {
+        aborted = true;
+    }
+
+    /**
+     * Starts waiting for an entity
+     *
+     * @return false if the transaction was wounded and must abort instead of waiting
+     */
+    boolean startWaiting(ThreadEntityGraph.WaitEdge<LockEntry> waitEdge) {
+        this.waitEdge = waitEdge;
+        //the wounding thread sets the flag before reading the wait edge, one of them sees the other
+        return !wounded;
+    }
+
+    ThreadEntityGraph.WaitEdge<LockEntry> getWaitEdge() {
+        return waitEdge;
+    }
+
+    void stopWaiting() {
+        waitEdge = null;
+    }
+
+    /**
+     * Wounds the transaction by an older one: its current wait, if any, is aborted, and so is any later wait
+     */
+    void wound() {
+        wounded = true;
+
+        ThreadEntityGraph.WaitEdge<LockEntry> currentWaitEdge = waitEdge;
+        if (currentWaitEdge != null) {
+            currentWaitEdge.tryAbort();
+        }
+    }
+
+    /**
+     * @return a copy of the owners of an entry with the transaction added
+     */
+    static PriorityTransaction[] withOwner(PriorityTransaction[] owners, PriorityTransaction transaction) {
+        PriorityTransaction[] newOwners = Arrays.copyOf(owners, owners.length + 1);
+        newOwners[owners.length] = transaction;
+        return newOwners;
+    }
+
+    /**
+     * @return a copy of the owners of an entry without the transaction, or the owners themselves if it is not one of them
+     */
+    static PriorityTransaction[] withoutOwner(PriorityTransaction[] owners, PriorityTransaction transaction) {
+        int index = Arrays.asList(owners).indexOf(transaction);
+        if (index < 0) {
+            return owners;
+        }
+
+        PriorityTransaction[] newOwners = owners.length == 1 ? NONE : new PriorityTransaction[owners.length - 1];
+        System.arraycopy(owners, 0, newOwners, 0, index);
+        System.arraycopy(owners, index + 1, newOwners, index, newOwners.length - index);
+        return newOwners;
+    }
+}
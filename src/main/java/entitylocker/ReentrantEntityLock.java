@@ -1,103 +1,200 @@
 package entitylocker;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Wrapper of a concurrent hash map, has the locks acquired at entity level
+ * Lock table of the lockers with object entity ids, has the locks acquired at entity level
+ * <p>
+ * Open addressing hash table split in segments, like {@link LongEntityLockTable} with object keys. Looking up or
+ * creating the lock of an entity is a short step under the lock of its segment, threads never wait for an entity lock
+ * while holding it, so a contended entity does not stall other entities of its segment.
+ * Entries are reference counted and removed from the table once no thread holds or waits for them. Removed entries
+ * are pooled by their segment and reused for the next entity, so steady state lock traffic does not allocate.
  *
  * @param <T> data type of the entity id
  */
-class ReentrantEntityLock<T> {
-    private final Map<T, ReentrantLock> entityLocks = new ConcurrentHashMap<>();
+class ReentrantEntityLock<T> implements EntityLockTable<T> {
+    private static final int SEGMENTS = 64;
+    private static final int SEGMENT_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENTS);
+    private static final int SEGMENT_INITIAL_CAPACITY = 16;
+    private static final int SEGMENT_POOL_SIZE = 8;
 
-    /**
-     * Locks the entity
-     *
-     * @param entityId Id of the entity
-     */
-    void lock(T entityId) {
-        acquireLockAndUpdateMapAtomically(entityId);
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    ReentrantEntityLock() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
     }
 
     /**
-     * Tries to acquire the lock at the entity, will time out if the thread did not acquire
-     * the lock within the specified waitLockTimeout
-     *
-     * @param entityId        Id of the entity
-     * @param waitLockTimeout max time to wait for the lock
-     * @param timeUnit        time unit
-     * @return true if the lock was acquired and the protected code executed, false otherwise
+     * Retains the lock entry of the entity, creating it if absent
      */
-    boolean tryLock(T entityId, long waitLockTimeout, TimeUnit timeUnit) {
-        return acquireLockAndUpdateMapAtomically(entityId, waitLockTimeout, timeUnit);
+    @Override
+    public EntityLockEntry retainEntry(T entityId) {
+        int hash = spread(entityId.hashCode());
+        return segmentFor(hash).retainEntry(entityId, hash);
     }
 
     /**
-     * @param entityId id of the entity
-     * @return the number of holds in this lock by the current thread
+     * Releases a previously retained lock entry, removing it from the table when no thread holds or waits for it
      */
-    int getHoldCount(T entityId) {
-        ReentrantLock entityLock = entityLocks.get(entityId);
+    @Override
+    public void releaseEntry(T entityId) {
+        int hash = spread(entityId.hashCode());
+        segmentFor(hash).releaseEntry(entityId, hash);
+    }
 
-        if (entityLock == null) {
-            return 0;
+    @Override
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
         }
+        return size;
+    }
+
+    @Override
+    public LockMode sharedAccessMode() {
+        return LockMode.SHARED;
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> SEGMENT_SHIFT];
+    }
 
-        return entityLock.getHoldCount();
+    /*
+     * Fibonacci hashing of the hash code, the high bits select the segment and the low bits the slot within the segment
+     */
+    private static int spread(int hashCode) {
+        int h = hashCode * 0x9E3779B9;
+        return h ^ (h >>> 16);
     }
 
     /**
-     * Releases the lock on the entity
-     * @param entityId id of the entity
+     * Linear probing table guarded by its own lock. A null entry marks an empty slot.
      */
-    void unlock(T entityId) {
-        ReentrantLock entityLock = entityLocks.get(entityId);
+    private static final class Segment extends ReentrantLock {
+        private Object[] keys = new Object[SEGMENT_INITIAL_CAPACITY];
+        private EntityLockEntry[] entries = new EntityLockEntry[SEGMENT_INITIAL_CAPACITY];
+        private final EntityLockEntry[] pool = new EntityLockEntry[SEGMENT_POOL_SIZE];
+        private int pooled;
+        private int size;
+
+        EntityLockEntry retainEntry(Object key, int hash) {
+            lock();
+            try {
+                int slot = indexOf(key, hash);
+                EntityLockEntry entry = entries[slot];
+
+                if (entry == null) {
+                    if (pooled > 0) {
+                        entry = pool[--pooled];
+                        pool[pooled] = null;
+                    } else {
+                        entry = new EntityLockEntry();
+                    }
+
+                    entry.setEntityId(key);
+                    keys[slot] = key;
+                    entries[slot] = entry;
+
+                    if (++size > entries.length * 3 / 4) {
+                        resize();
+                    }
+                }
 
-        if (entityLock == null) {
-            return;
+                entry.retain();
+                return entry;
+            } finally {
+                unlock();
+            }
         }
 
-        entityLock.unlock();
+        void releaseEntry(Object key, int hash) {
+            lock();
+            try {
+                int slot = indexOf(key, hash);
+                EntityLockEntry entry = entries[slot];
+
+                if (entry == null || !entry.release()) {
+                    return;
+                }
 
-        if (!entityLock.hasQueuedThreads() && entityLock.getHoldCount() == 0) {
-            entityLocks.remove(entityId);
+                removeAt(slot);
+                entry.setEntityId(null);
+                if (pooled < pool.length) {
+                    pool[pooled++] = entry;
+                }
+            } finally {
+                unlock();
+            }
         }
-    }
 
-    private void acquireLockAndUpdateMapAtomically(T entityId) {
-        entityLocks.compute(entityId, (eId, existingLock) -> {
-            if (existingLock == null) {
-                ReentrantLock newLock = new ReentrantLock();
-                newLock.lock();
-                return newLock;
+        int size() {
+            lock();
+            try {
+                return size;
+            } finally {
+                unlock();
             }
+        }
 
-            existingLock.lock();
+        /*
+         * Returns the slot holding the key, or the empty slot where it should be inserted
+         */
+        private int indexOf(Object key, int hash) {
+            int mask = entries.length - 1;
+            int slot = hash & mask;
 
-            return existingLock;
-        });
-    }
+            while (entries[slot] != null && !key.equals(keys[slot])) {
+                slot = (slot + 1) & mask;
+            }
 
-    private boolean acquireLockAndUpdateMapAtomically(T entityId, long timeout, TimeUnit timeUnit) {
-        ReentrantLock newOrExistingLock = entityLocks.compute(entityId, (eId, existingLock) -> {
-            try {
-                if (existingLock == null) {
-                    ReentrantLock newLock = new ReentrantLock();
-                    newLock.tryLock(timeout, timeUnit);
-                    return newLock;
-                }
+            return slot;
+        }
 
-                existingLock.tryLock(timeout, timeUnit);
+        /*
+         * Backward shift deletion, keeps the probe sequences of the following keys without tombstones. The key of the
+         * emptied slot is cleared, so the table does not retain the entity ids
+         */
+        private void removeAt(int slot) {
+            int mask = entries.length - 1;
+            int hole = slot;
+            int next = (hole + 1) & mask;
+
+            while (entries[next] != null) {
+                int home = spread(keys[next].hashCode()) & mask;
+
+                //move the entry into the hole if its home slot is not cyclically within (hole, next]
+                if (((next - home) & mask) >= ((next - hole) & mask)) {
+                    keys[hole] = keys[next];
+                    entries[hole] = entries[next];
+                    hole = next;
+                }
 
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+                next = (next + 1) & mask;
             }
-            return existingLock;
-        });
 
-        return newOrExistingLock != null && newOrExistingLock.isHeldByCurrentThread();
+            keys[hole] = null;
+            entries[hole] = null;
+            size--;
+        }
+
+        private void resize() {
+            Object[] oldKeys = keys;
+            EntityLockEntry[] oldEntries = entries;
+
+            keys = new Object[oldKeys.length << 1];
+            entries = new EntityLockEntry[oldEntries.length << 1];
+
+            for (int i = 0; i < oldEntries.length; i++) {
+                if (oldEntries[i] != null) {
+                    int slot = indexOf(oldKeys[i], spread(oldKeys[i].hashCode()));
+                    keys[slot] = oldKeys[i];
+                    entries[slot] = oldEntries[i];
+                }
+            }
+        }
     }
-}
\ No newline at end of file
+}
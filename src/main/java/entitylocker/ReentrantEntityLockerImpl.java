@@ -1,335 +1,303 @@
 package entitylocker;
 
 import entitylocker.exceptions.DeadLockPreventionException;
-import java.util.Optional;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.IntStream;
+import java.util.function.Function;
 
 /**
  * Reentrant implementation of {@link EntityLocker}.
+ * <p>
+ * By default every entity gets its own lock, created on demand and removed once unused. In striped mode a fixed
+ * number of locks is shared by all the entities, see {@link #striped(int)}.
  *
  * @param <T>
  */
-public class ReentrantEntityLockerImpl<T> implements EntityLocker<T> {
-    private static final int NO_ESCALATION_VALUE = -1;
-
-    private final ReentrantEntityLock<T> entityLock = new ReentrantEntityLock<>();
-    private final ReentrantReadWriteLock globalLock = new ReentrantReadWriteLock();
-    private final ReentrantReadWriteLock.WriteLock globalWriteLock = globalLock.writeLock();
-    private final ReentrantReadWriteLock.ReadLock globalReadLock = globalLock.readLock();
-    private final ThreadEntityGraph<T> threadEntityGraph = new ThreadEntityGraph<>();
-
-    private final ThreadLocal<LockEscalation> currentThreadLockEscalation = ThreadLocal.withInitial(() -> null);
-    private final AtomicLong escalatingThreadsCount = new AtomicLong(0L);
-    private final Condition escalatingThreadsCondition = globalWriteLock.newCondition();
-
-    private final int escalationThreshold;
+public class ReentrantEntityLockerImpl<T> extends AbstractReentrantEntityLocker implements EntityLocker<T> {
+    private final EntityLockTable<T> entityLock;
 
     public ReentrantEntityLockerImpl(int escalationThreshold) {
-        this.escalationThreshold = escalationThreshold;
+        super(escalationThreshold);
+        this.entityLock = new ReentrantEntityLock<>();
     }
 
     public ReentrantEntityLockerImpl() {
         this(NO_ESCALATION_VALUE);
     }
 
-    @Override
-    public void executeWithEntityExclusiveAccess(T entityId, ProtectedCode protectedCode) throws DeadLockPreventionException {
-        acquireEntityLock(entityId);
-
-        try {
-            protectedCode.run();
-        } finally {
-            releaseEntityLock(entityId);
-        }
+    /**
+     * @param escalationThreshold number of locked entities above which the thread lock is escalated to the global lock
+     * @param spinPolicy          how threads wait for a contended entity, see {@link SpinPolicy#adaptive()}
+     */
+    public ReentrantEntityLockerImpl(int escalationThreshold, SpinPolicy spinPolicy) {
+        super(escalationThreshold, spinPolicy);
+        this.entityLock = new ReentrantEntityLock<>();
     }
 
-    @Override
-    public boolean executeWithEntityExclusiveAccess(T entityId, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
-        if (!acquireEntityLock(entityId, waitLockTimeout, timeUnit)) {
-            //could not acquire lock
-            return false;
-        }
-
-        try {
-            protectedCode.run();
-            return true;
-        } finally {
-            releaseEntityLock(entityId);
-        }
+    /**
+     * @param escalationThreshold number of locked entities above which the thread lock is escalated to the global lock
+     * @param spinPolicy          how threads wait for a contended entity, see {@link SpinPolicy#adaptive()}
+     * @param deadLockPolicy      how detected deadlocks are broken, see {@link DeadLockPolicy#abortYoungest()}
+     */
+    public ReentrantEntityLockerImpl(int escalationThreshold, SpinPolicy spinPolicy, DeadLockPolicy deadLockPolicy) {
+        super(escalationThreshold, spinPolicy, deadLockPolicy);
+        this.entityLock = new ReentrantEntityLock<>();
     }
 
-    @Override
-    public void executeWithGlobalExclusiveAccess(ProtectedCode protectedCode) throws InterruptedException {
-        acquireGlobalLock();
-
-        try {
-            protectedCode.run();
-        } finally {
-            releaseGlobalLock();
-        }
+    /**
+     * @param escalationPolicy when the thread lock is escalated to the global lock, see {@link EscalationPolicy#adaptive()}
+     * @param spinPolicy       how threads wait for a contended entity, see {@link SpinPolicy#adaptive()}
+     * @param deadLockPolicy   how detected deadlocks are broken, see {@link DeadLockPolicy#abortYoungest()}
+     * @throws IllegalStateException if the policy is already used by another locker
+     */
+    public ReentrantEntityLockerImpl(EscalationPolicy escalationPolicy, SpinPolicy spinPolicy, DeadLockPolicy deadLockPolicy) {
+        this(escalationPolicy, 0, spinPolicy, deadLockPolicy);
     }
 
-    @Override
-    public boolean executeWithGlobalExclusiveAccess(ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
-        if (!acquireGlobalLock(waitLockTimeout, timeUnit)) {
-            return false;
-        }
-
-        try {
-            protectedCode.run();
-            return true;
-        } finally {
-            releaseGlobalLock();
-        }
+    /**
+     * @param escalationPolicy   when the thread lock is escalated
+     * @param maxEscalatedGroups number of groups a thread may hold and still escalate to groups rather than to the
+     *                           global lock
+     * @param spinPolicy         how threads wait for a contended entity
+     * @param deadLockPolicy     how detected deadlocks are broken
+     */
+    ReentrantEntityLockerImpl(EscalationPolicy escalationPolicy, int maxEscalatedGroups, SpinPolicy spinPolicy, DeadLockPolicy deadLockPolicy) {
+        super(escalationPolicy, maxEscalatedGroups, spinPolicy, deadLockPolicy);
+        this.entityLock = new ReentrantEntityLock<>();
     }
 
-    private void acquireEntityLock(T entityId) throws DeadLockPreventionException {
-        if (currentThreadHasLockedManyEntities()) {
-            escalateCurrentThreadLocks(LockEscalation.MANY_ENTITIES);
-            return;
-        }
-
-        checkForDeadLockAndUpdateGraph(Thread.currentThread().getId(), entityId);
-
-        entityLock.lock(entityId);
-        globalReadLock.lock();
+    /**
+     * Creates a striped locker: entity ids are mapped by hash to a fixed number of locks, giving constant memory and
+     * no allocation per lock acquisition, at the cost of entities in the same stripe excluding each other.
+     * Escalation counts locked stripes rather than entities. Shared accesses lock their stripe exclusively, so they
+     * exclude each other as well, and a thread accessing an entity may access any other entity of the same stripe.
+     *
+     * @param escalationThreshold number of locked stripes above which the thread lock is escalated to the global lock
+     * @param lockStripes         number of lock stripes, rounded up to the next power of two
+     */
+    public ReentrantEntityLockerImpl(int escalationThreshold, int lockStripes) {
+        super(escalationThreshold);
+        this.entityLock = new StripedEntityLock<>(lockStripes);
     }
 
-    private synchronized void checkForDeadLockAndUpdateGraph(long currentThreadId, T entityId) {
-        EntityDeadLockChecker.checkForDeadLock(threadEntityGraph, currentThreadId, entityId);
-        threadEntityGraph.addThreadEntityAssociation(currentThreadId, entityId);
+    /**
+     * @param lockStripes number of lock stripes, rounded up to the next power of two
+     * @param <T>         data type of the entity id
+     * @return a striped locker without lock escalation
+     * @see #ReentrantEntityLockerImpl(int, int)
+     */
+    public static <T> ReentrantEntityLockerImpl<T> striped(int lockStripes) {
+        return new ReentrantEntityLockerImpl<>(NO_ESCALATION_VALUE, lockStripes);
     }
 
-    private boolean acquireEntityLock(T entityId, long timeoutLock, TimeUnit timeUnit) throws InterruptedException {
-        if (currentThreadHasLockedManyEntities()) {
-            return escalateCurrentThreadWithTimeout(timeoutLock, timeUnit, LockEscalation.MANY_ENTITIES);
-        }
-
-        long t0 = System.nanoTime();
-
-        boolean locked = entityLock.tryLock(entityId, timeoutLock, timeUnit);
-
-        if (!locked) {
-            return false;
-        }
-
-        long elapsedNanos = System.nanoTime() - t0;
-        long remainingWaitingTime = getRemainingNanos(timeUnit.toNanos(timeoutLock), elapsedNanos);
-
-        locked = globalReadLock.tryLock(remainingWaitingTime, TimeUnit.NANOSECONDS);
-
-        if (locked) {
-            threadEntityGraph.addThreadEntityAssociation(Thread.currentThread().getId(), entityId);
-        }
-
-        return locked;
+    /**
+     * @param spinPolicy how threads wait for a contended entity
+     * @param <T>        data type of the entity id
+     * @return a locker without lock escalation
+     * @see #ReentrantEntityLockerImpl(int, SpinPolicy)
+     */
+    public static <T> ReentrantEntityLockerImpl<T> withSpinPolicy(SpinPolicy spinPolicy) {
+        return new ReentrantEntityLockerImpl<>(NO_ESCALATION_VALUE, spinPolicy);
     }
 
-    private void escalateCurrentThreadLocks(LockEscalation lockEscalation) {
-        if (currentThreadIsEscalated()) {
-            globalWriteLock.lock();
-            updateCurrentThreadEscalation(lockEscalation);
-            return;
-        }
-        //used by escalatingThreadsCondition this count forces any write lock waiting while this read lock is escalated
-        escalatingThreadsCount.incrementAndGet();
-
-        releaseAllReadLocks();
-
-        globalWriteLock.lock();
-
-        //If this Thread current protected code is a sub-protected code, parent protected code(s) are escalated as well
-        escalateParentProtectedCodes();
-        currentThreadLockEscalation.set(lockEscalation);
-        finishEscalation();
+    /**
+     * @param deadLockPolicy how detected deadlocks are broken
+     * @param <T>            data type of the entity id
+     * @return a locker without lock escalation
+     * @see #ReentrantEntityLockerImpl(int, SpinPolicy, DeadLockPolicy)
+     */
+    public static <T> ReentrantEntityLockerImpl<T> withDeadLockPolicy(DeadLockPolicy deadLockPolicy) {
+        return new ReentrantEntityLockerImpl<>(NO_ESCALATION_VALUE, SpinPolicy.park(), deadLockPolicy);
     }
 
-    private boolean escalateCurrentThreadWithTimeout(long waitTimeoutForGlobalLock, TimeUnit timeUnit, LockEscalation lockEscalation) throws InterruptedException {
-        if (currentThreadIsEscalated()) {
-            globalWriteLock.lock();
-            updateCurrentThreadEscalation(lockEscalation);
-            return true;
-        }
-
-        //used by escalatingThreadsCondition this count forces any write lock waiting while this read lock is escalated
-        escalatingThreadsCount.incrementAndGet();
-
-        releaseAllReadLocks();
-
-        boolean locked = globalWriteLock.tryLock(waitTimeoutForGlobalLock, timeUnit);
-        if (!locked) {
-            //escalation timed out so re-acquire previous lock level
-            reAcquireAllReadLocks();
-            finishEscalation();
-            return false;
-        }
-
-        //If this Thread current protected code is a sub-protected code, parent protected code(s) are escalated as well
-        escalateParentProtectedCodes();
-        currentThreadLockEscalation.set(lockEscalation);
-        finishEscalation();
-
-        return true;
+    /**
+     * @param escalationPolicy when the thread lock is escalated to the global lock
+     * @param <T>              data type of the entity id
+     * @return a locker escalating according to the policy
+     * @throws IllegalStateException if the policy is already used by another locker
+     * @see #ReentrantEntityLockerImpl(EscalationPolicy, SpinPolicy, DeadLockPolicy)
+     */
+    public static <T> ReentrantEntityLockerImpl<T> withEscalationPolicy(EscalationPolicy escalationPolicy) {
+        return new ReentrantEntityLockerImpl<>(escalationPolicy, SpinPolicy.park(), DeadLockPolicy.abortRequester());
     }
 
-    private void releaseEntityLock(T entityId) {
-        boolean shouldReleaseGlobalWriteLock = currentThreadLockIsEscalatedDueToManyEntityLock();
-        if (shouldReleaseGlobalWriteLock) {
-            //if was escalated, release write lock
-            globalWriteLock.unlock();
+    /**
+     * @param groupFunction maps an entity id to the id of its group, see {@link GroupedEntityLocker}
+     * @param <T>           data type of the entity id
+     * @param <G>           data type of the group id
+     * @return a grouped locker without lock escalation
+     * @see ReentrantGroupedEntityLockerImpl#ReentrantGroupedEntityLockerImpl(Function)
+     */
+    public static <T, G> ReentrantGroupedEntityLockerImpl<T, G> grouped(Function<? super T, ? extends G> groupFunction) {
+        return new ReentrantGroupedEntityLockerImpl<>(groupFunction);
+    }
 
-            if (globalWriteLock.getHoldCount() == 0) {
-                currentThreadLockEscalation.remove();
-            }
-        } else {
-            globalReadLock.unlock();
+    /**
+     * Creates a locker partitioning the entities by hash, escalating to partitions before the global lock.
+     *
+     * @param partitions             number of partitions, rounded up to the next power of two
+     * @param escalationThreshold    number of locked entities and partitions above which the thread lock is escalated
+     * @param maxEscalatedPartitions number of partitions a thread may hold and still escalate to partitions rather
+     *                               than to the global lock
+     * @param <T>                    data type of the entity id
+     * @return a grouped locker whose groups are the partitions
+     * @see ReentrantGroupedEntityLockerImpl#ReentrantGroupedEntityLockerImpl(Function, int, int, SpinPolicy, DeadLockPolicy)
+     */
+    public static <T> ReentrantGroupedEntityLockerImpl<T, Integer> hashPartitioned(int partitions, int escalationThreshold, int maxEscalatedPartitions) {
+        if (partitions <= 0) {
+            throw new IllegalArgumentException("Partitions must be positive");
         }
-
-        releaseEntityLock(Thread.currentThread().getId(), entityId);
+        int mask = partitions == 1 ? 0 : (Integer.highestOneBit(partitions - 1) << 1) - 1;
+        return new ReentrantGroupedEntityLockerImpl<>(entityId -> {
+            int hashCode = entityId.hashCode();
+            return (hashCode ^ (hashCode >>> 16)) & mask;
+        }, escalationThreshold, maxEscalatedPartitions, SpinPolicy.park(), DeadLockPolicy.abortRequester());
     }
 
-    private void releaseEntityLock(long threadId, T entityId) {
-        entityLock.unlock(entityId);
-        if (entityLock.getHoldCount(entityId) == 0) {
-            threadEntityGraph.removeThreadEntityAssociation(threadId, entityId);
-        }
+    @Override
+    public void executeWithEntityExclusiveAccess(T entityId, ProtectedCode protectedCode) throws DeadLockPreventionException {
+        executeWithEntityAccess(entityId, LockMode.EXCLUSIVE, protectedCode);
     }
 
-    private void acquireGlobalLock() throws InterruptedException {
-        if (currentThreadHasEntityAccess()) {
-            /*
-             If current thread already has entity access then it has a global read lock, temporarily escalate its global
-             read to write lock to ensure reentrancy, otherwise would deadlock as ReentrantReadWriteLock does not let to
-             upgrade from read to write lock.
-
-             De-escalation should happen when this current global write lock is unlocked
-             */
-            escalateCurrentThreadLocks(LockEscalation.TEMPORARY);
-            return;
-        }
+    @Override
+    public boolean executeWithEntityExclusiveAccess(T entityId, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        return executeWithEntityAccess(entityId, LockMode.EXCLUSIVE, protectedCode, waitLockTimeout, timeUnit);
+    }
 
-        globalWriteLock.lock();
-        while (escalatingThreadsCount.get() > 0) {
-            escalatingThreadsCondition.await();
-        }
+    @Override
+    public void executeWithEntitySharedAccess(T entityId, ProtectedCode protectedCode) throws DeadLockPreventionException {
+        executeWithEntityAccess(entityId, entityLock.sharedAccessMode(), protectedCode);
     }
 
-    private boolean acquireGlobalLock(long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
-        if (currentThreadHasEntityAccess()) {
-             /*
-             If current thread already has entity access then it has a global read lock, temporarily escalate its global
-             read to write lock to ensure reentrancy, otherwise would deadlock as ReentrantReadWriteLock does not let to
-             upgrade from read to write lock.
+    @Override
+    public boolean executeWithEntitySharedAccess(T entityId, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        return executeWithEntityAccess(entityId, entityLock.sharedAccessMode(), protectedCode, waitLockTimeout, timeUnit);
+    }
 
-             De-escalation should happen once this current global write lock is unlocked
-             */
-            return escalateCurrentThreadWithTimeout(waitLockTimeout, timeUnit, LockEscalation.TEMPORARY);
-        }
+    @Override
+    public void executeWithEntitiesExclusiveAccess(Collection<T> entityIds, ProtectedCode protectedCode) throws DeadLockPreventionException {
+        List<T> entityIdsSnapshot = new ArrayList<>(entityIds);
+        EntityLockEntry[] entries = new EntityLockEntry[entityIdsSnapshot.size()];
+        int[] versionStripes = new int[entries.length];
+        GroupLockEntry[] groups = groupEntriesOf(entityIdsSnapshot);
+        int retained = 0;
 
-        boolean locked = globalWriteLock.tryLock(waitLockTimeout, timeUnit);
-        if (!locked) {
-            return false;
-        }
+        try {
+            for (; retained < entries.length; retained++) {
+                T entityId = entityIdsSnapshot.get(retained);
+                entries[retained] = entityLock.retainEntry(entityId);
+                versionStripes[retained] = versionStripeOf(entityId.hashCode());
+            }
 
-        while (escalatingThreadsCount.get() > 0) {
-            escalatingThreadsCondition.await();
+            executeWithEntryLocks(groups, entries, versionStripes, protectedCode);
+        } finally {
+            releaseEntries(entityIdsSnapshot, retained);
         }
-
-        return true;
     }
 
-    private boolean currentThreadHasEntityAccess() {
-        return !threadEntityGraph.getAssociatedEntities(Thread.currentThread().getId()).isEmpty();
-    }
+    @Override
+    public boolean executeWithEntitiesExclusiveAccess(Collection<T> entityIds, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        List<T> entityIdsSnapshot = new ArrayList<>(entityIds);
+        EntityLockEntry[] entries = new EntityLockEntry[entityIdsSnapshot.size()];
+        int[] versionStripes = new int[entries.length];
+        GroupLockEntry[] groups = groupEntriesOf(entityIdsSnapshot);
+        int retained = 0;
 
-    private void releaseGlobalLock() {
-        globalWriteLock.unlock();
+        try {
+            for (; retained < entries.length; retained++) {
+                T entityId = entityIdsSnapshot.get(retained);
+                entries[retained] = entityLock.retainEntry(entityId);
+                versionStripes[retained] = versionStripeOf(entityId.hashCode());
+            }
 
-        if (currentThreadLockIsEscalatedTemporarily()) {
-            //parent read locks may have been escalated to ensure reentrancy. (ReentrantReadWrite lock does not let upgrade of locks)
-            deEscalateToReadLock();
+            return executeWithEntryLocks(groups, entries, versionStripes, protectedCode, waitLockTimeout, timeUnit);
+        } finally {
+            releaseEntries(entityIdsSnapshot, retained);
         }
     }
 
-    private boolean currentThreadHasLockedManyEntities() {
-        long currentThreadId = Thread.currentThread().getId();
-        return escalationThreshold != NO_ESCALATION_VALUE
-                && threadEntityGraph.getAssociatedEntities(currentThreadId).size() > (escalationThreshold - 1);
-    }
-
-    private void updateCurrentThreadEscalation(LockEscalation newLockEscalation) {
-        boolean shouldOverride = currentThreadLockIsEscalatedTemporarily() && newLockEscalation == LockEscalation.MANY_ENTITIES;
-        if (shouldOverride) {
-            currentThreadLockEscalation.set(newLockEscalation);
+    @Override
+    public <R> R executeWithOptimisticRead(T entityId, OptimisticReadCode<R> readCode) throws DeadLockPreventionException {
+        int versionStripe = versionStripeOf(entityId.hashCode());
+        GroupLockEntry group = groupEntryOf(entityId);
+        long globalStamp = tryOptimisticGlobalRead();
+        long groupStamp = group == null ? 0L : group.tryOptimisticRead();
+        long entityStamp = tryOptimisticEntityRead(versionStripe);
+
+        if (globalStamp != EntityVersionStamps.INVALID_STAMP && groupStamp != EntityVersionStamps.INVALID_STAMP
+                && entityStamp != EntityVersionStamps.INVALID_STAMP) {
+            try {
+                R value = readCode.read();
+                if (validateOptimisticRead(versionStripe, entityStamp, globalStamp) && (group == null || group.validate(groupStamp))) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                //an inconsistent read may fail, the failure only counts if nothing was written meanwhile
+                if (validateOptimisticRead(versionStripe, entityStamp, globalStamp) && (group == null || group.validate(groupStamp))) {
+                    throw e;
+                }
+            }
         }
-    }
 
-    private void escalateParentProtectedCodes() {
-        int holdingEntities = threadEntityGraph.getAssociatedEntities(Thread.currentThread().getId()).size();
-        IntStream.range(0, holdingEntities).forEach(i -> globalWriteLock.lock());
-    }
+        //a writer interleaved, read again with shared access
+        Object[] value = new Object[1];
+        executeWithEntityAccess(entityId, entityLock.sharedAccessMode(), () -> value[0] = readCode.read());
 
-    private void releaseAllReadLocks() {
-        long currentThread = Thread.currentThread().getId();
-        IntStream.range(0, threadEntityGraph.getAssociatedEntities(currentThread).size())
-                .forEach(i -> globalReadLock.unlock());
+        @SuppressWarnings("unchecked")
+        R lockedValue = (R) value[0];
+        return lockedValue;
     }
 
-    private void releaseAllWriteLocks() {
-        long currentThread = Thread.currentThread().getId();
-        IntStream.range(0, threadEntityGraph.getAssociatedEntities(currentThread).size())
-                .forEach(i -> globalWriteLock.unlock());
-    }
+    private void executeWithEntityAccess(T entityId, LockMode lockMode, ProtectedCode protectedCode) {
+        EntityLockEntry entry = entityLock.retainEntry(entityId);
 
-    private void reAcquireAllReadLocks() {
-        long currentThread = Thread.currentThread().getId();
-        IntStream.range(0, threadEntityGraph.getAssociatedEntities(currentThread).size())
-                .forEach(i -> globalReadLock.lock());
+        try {
+            executeWithEntryLock(groupEntryOf(entityId), entry, lockMode, versionStripeOf(entityId.hashCode()), protectedCode);
+        } finally {
+            entityLock.releaseEntry(entityId);
+        }
     }
 
-    private boolean currentThreadLockIsEscalatedDueToManyEntityLock() {
-        return Optional.ofNullable(currentThreadLockEscalation.get())
-                .map(l -> l == LockEscalation.MANY_ENTITIES)
-                .orElse(Boolean.FALSE);
-    }
+    private boolean executeWithEntityAccess(T entityId, LockMode lockMode, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        EntityLockEntry entry = entityLock.retainEntry(entityId);
 
-    private boolean currentThreadLockIsEscalatedTemporarily() {
-        return Optional.ofNullable(currentThreadLockEscalation.get())
-                .map(l -> l == LockEscalation.TEMPORARY)
-                .orElse(Boolean.FALSE);
+        try {
+            return executeWithEntryLock(groupEntryOf(entityId), entry, lockMode, versionStripeOf(entityId.hashCode()), protectedCode, waitLockTimeout, timeUnit);
+        } finally {
+            entityLock.releaseEntry(entityId);
+        }
     }
 
-    private boolean currentThreadIsEscalated() {
-        return currentThreadLockIsEscalatedDueToManyEntityLock() || currentThreadLockIsEscalatedTemporarily();
+    @Override
+    int getLockEntryCount() {
+        return entityLock.size();
     }
 
-    private void deEscalateToReadLock() {
-        reAcquireAllReadLocks();
-        releaseAllWriteLocks();
-        currentThreadLockEscalation.remove();
+    /**
+     * @param entityId id of the entity
+     * @return lock entry of the group of the entity, or null if the locker does not group entities
+     */
+    GroupLockEntry groupEntryOf(T entityId) {
+        return null;
     }
 
-    private void finishEscalation() {
-        escalatingThreadsCount.decrementAndGet();
-        escalatingThreadsCondition.signalAll();
-    }
+    private GroupLockEntry[] groupEntriesOf(List<T> entityIds) {
+        GroupLockEntry[] groups = new GroupLockEntry[entityIds.size()];
 
-    /*
-     * Returns remaining or zero if negative
-     */
-    private long getRemainingNanos(long totalNanos, long subtractNanos) {
-        return Math.max(totalNanos - subtractNanos, 0);
+        for (int i = 0; i < groups.length; i++) {
+            groups[i] = groupEntryOf(entityIds.get(i));
+            if (groups[i] == null) {
+                return null;
+            }
+        }
+        return groups;
     }
 
-    /**
-     * Has information on whether current thread lock has been escalated or not
-     * And in case it is escalated, if it is a temporary escalation or was because of many entity lock acquisition
-     */
-    private enum LockEscalation {
-        MANY_ENTITIES, TEMPORARY
+    private void releaseEntries(List<T> entityIds, int retained) {
+        for (int i = 0; i < retained; i++) {
+            entityLock.releaseEntry(entityIds.get(i));
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Reentrant implementation of {@link GroupedEntityLocker}.
+ * <p>
+ * Every entity gets its own lock like in {@link ReentrantEntityLockerImpl}, every group gets a lock created on first
+ * use and kept for the lifetime of the locker: groups are meant to be few, like tenants or tables.
+ *
+ * @param <T> data type of the entity id
+ * @param <G> data type of the group id
+ */
+public class ReentrantGroupedEntityLockerImpl<T, G> extends ReentrantEntityLockerImpl<T> implements GroupedEntityLocker<T, G> {
+    private final Function<? super T, ? extends G> groupFunction;
+    private final ConcurrentHashMap<G, GroupLockEntry> groupLocks = new ConcurrentHashMap<>();
+
+    /**
+     * @param groupFunction maps an entity id to the id of its group, must always return the same group for an entity
+     */
+    public ReentrantGroupedEntityLockerImpl(Function<? super T, ? extends G> groupFunction) {
+        this(groupFunction, NO_ESCALATION_VALUE, SpinPolicy.park(), DeadLockPolicy.abortRequester());
+    }
+
+    /**
+     * @param groupFunction       maps an entity id to the id of its group, must always return the same group for an
+     *                            entity
+     * @param escalationThreshold number of locked entities and groups above which the thread lock is escalated to the
+     *                            global lock
+     * @param spinPolicy          how threads wait for a contended entity, see {@link SpinPolicy#adaptive()}
+     * @param deadLockPolicy      how detected deadlocks are broken, see {@link DeadLockPolicy#abortYoungest()}
+     */
+    public ReentrantGroupedEntityLockerImpl(Function<? super T, ? extends G> groupFunction, int escalationThreshold, SpinPolicy spinPolicy, DeadLockPolicy deadLockPolicy) {
+        this(groupFunction, escalationThreshold, 0, spinPolicy, deadLockPolicy);
+    }
+
+    /**
+     * Creates a locker escalating to groups: a thread exceeding the escalation threshold holds the groups of the
+     * entities it accesses next exclusively, and only escalates to the global lock once it holds more than
+     * maxEscalatedGroups groups. With a hash or range group function, groups act as partitions of the entities.
+     *
+     * @param groupFunction       maps an entity id to the id of its group, must always return the same group for an
+     *                            entity
+     * @param escalationThreshold number of locked entities and groups above which the thread lock is escalated
+     * @param maxEscalatedGroups  number of groups a thread may hold and still escalate to groups rather than to the
+     *                            global lock
+     * @param spinPolicy          how threads wait for a contended entity, see {@link SpinPolicy#adaptive()}
+     * @param deadLockPolicy      how detected deadlocks are broken, see {@link DeadLockPolicy#abortYoungest()}
+     */
+    public ReentrantGroupedEntityLockerImpl(Function<? super T, ? extends G> groupFunction, int escalationThreshold, int maxEscalatedGroups, SpinPolicy spinPolicy, DeadLockPolicy deadLockPolicy) {
+        this(groupFunction, EscalationPolicy.ofThreshold(escalationThreshold), maxEscalatedGroups, spinPolicy, deadLockPolicy);
+    }
+
+    /**
+     * @param groupFunction      maps an entity id to the id of its group, must always return the same group for an
+     *                           entity
+     * @param escalationPolicy   when the thread lock is escalated, see {@link EscalationPolicy#adaptive()}
+     * @param maxEscalatedGroups number of groups a thread may hold and still escalate to groups rather than to the
+     *                           global lock
+     * @param spinPolicy         how threads wait for a contended entity, see {@link SpinPolicy#adaptive()}
+     * @param deadLockPolicy     how detected deadlocks are broken, see {@link DeadLockPolicy#abortYoungest()}
+     * @throws IllegalStateException if the policy is already used by another locker
+     * @see #ReentrantGroupedEntityLockerImpl(Function, int, int, SpinPolicy, DeadLockPolicy)
+     */
+    public ReentrantGroupedEntityLockerImpl(Function<? super T, ? extends G> groupFunction, EscalationPolicy escalationPolicy, int maxEscalatedGroups, SpinPolicy spinPolicy, DeadLockPolicy deadLockPolicy) {
+        super(escalationPolicy, maxEscalatedGroups, spinPolicy, deadLockPolicy);
+        if (maxEscalatedGroups < 0) {
+            throw new IllegalArgumentException("Max escalated groups must not be negative");
+        }
+        this.groupFunction = groupFunction;
+    }
+
+    @Override
+    public void executeWithGroupExclusiveAccess(G group, ProtectedCode protectedCode) throws DeadLockPreventionException {
+        executeWithEntryLock(groupLockOf(group), LockMode.EXCLUSIVE, NO_VERSION_STRIPE, protectedCode);
+    }
+
+    @Override
+    public boolean executeWithGroupExclusiveAccess(G group, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        return executeWithEntryLock(groupLockOf(group), LockMode.EXCLUSIVE, NO_VERSION_STRIPE, protectedCode, waitLockTimeout, timeUnit);
+    }
+
+    @Override
+    public void executeWithGroupSharedAccess(G group, ProtectedCode protectedCode) throws DeadLockPreventionException {
+        executeWithEntryLock(groupLockOf(group), LockMode.SHARED, NO_VERSION_STRIPE, protectedCode);
+    }
+
+    @Override
+    public boolean executeWithGroupSharedAccess(G group, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        return executeWithEntryLock(groupLockOf(group), LockMode.SHARED, NO_VERSION_STRIPE, protectedCode, waitLockTimeout, timeUnit);
+    }
+
+    @Override
+    GroupLockEntry groupEntryOf(T entityId) {
+        return groupLockOf(groupFunction.apply(entityId));
+    }
+
+    private GroupLockEntry groupLockOf(G group) {
+        GroupLockEntry groupLock = groupLocks.get(group);
+        return groupLock != null ? groupLock : groupLocks.computeIfAbsent(group, g -> newGroupLockEntry());
+    }
+}
@@ -0,0 +1,54 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reentrant implementation of {@link IntEntityLocker}, int ids are widened into a {@link LongEntityLockTable}.
+ */
+public class ReentrantIntEntityLockerImpl extends AbstractReentrantEntityLocker implements IntEntityLocker {
+    private final LongEntityLockTable entityLock = new LongEntityLockTable();
+
+    public ReentrantIntEntityLockerImpl(int escalationThreshold) {
+        super(escalationThreshold);
+    }
+
+    public ReentrantIntEntityLockerImpl() {
+        this(NO_ESCALATION_VALUE);
+    }
+
+    /**
+     * @param escalationPolicy when the thread lock is escalated to the global lock, see {@link EscalationPolicy#adaptive()}
+     * @throws IllegalStateException if the policy is already used by another locker
+     */
+    public ReentrantIntEntityLockerImpl(EscalationPolicy escalationPolicy) {
+        super(escalationPolicy, 0, SpinPolicy.park(), DeadLockPolicy.abortRequester());
+    }
+
+    @Override
+    int getLockEntryCount() {
+        return entityLock.size();
+    }
+
+    @Override
+    public void executeWithEntityExclusiveAccess(int entityId, ProtectedCode protectedCode) throws DeadLockPreventionException {
+        EntityLockEntry entry = entityLock.retainEntry(entityId);
+
+        try {
+            executeWithEntryLock(entry, LockMode.EXCLUSIVE, NO_VERSION_STRIPE, protectedCode);
+        } finally {
+            entityLock.releaseEntry(entityId);
+        }
+    }
+
+    @Override
+    public boolean executeWithEntityExclusiveAccess(int entityId, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        EntityLockEntry entry = entityLock.retainEntry(entityId);
+
+        try {
+            return executeWithEntryLock(entry, LockMode.EXCLUSIVE, NO_VERSION_STRIPE, protectedCode, waitLockTimeout, timeUnit);
+        } finally {
+            entityLock.releaseEntry(entityId);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reentrant implementation of {@link LongEntityLocker}, backed by a {@link LongEntityLockTable}.
+ */
+public class ReentrantLongEntityLockerImpl extends AbstractReentrantEntityLocker implements LongEntityLocker {
+    private final LongEntityLockTable entityLock = new LongEntityLockTable();
+
+    public ReentrantLongEntityLockerImpl(int escalationThreshold) {
+        super(escalationThreshold);
+    }
+
+    public ReentrantLongEntityLockerImpl() {
+        this(NO_ESCALATION_VALUE);
+    }
+
+    /**
+     * @param escalationPolicy when the thread lock is escalated to the global lock, see {@link EscalationPolicy#adaptive()}
+     * @throws IllegalStateException if the policy is already used by another locker
+     */
+    public ReentrantLongEntityLockerImpl(EscalationPolicy escalationPolicy) {
+        super(escalationPolicy, 0, SpinPolicy.park(), DeadLockPolicy.abortRequester());
+    }
+
+    @Override
+    int getLockEntryCount() {
+        return entityLock.size();
+    }
+
+    @Override
+    public void executeWithEntityExclusiveAccess(long entityId, ProtectedCode protectedCode) throws DeadLockPreventionException {
+        EntityLockEntry entry = entityLock.retainEntry(entityId);
+
+        try {
+            executeWithEntryLock(entry, LockMode.EXCLUSIVE, NO_VERSION_STRIPE, protectedCode);
+        } finally {
+            entityLock.releaseEntry(entityId);
+        }
+    }
+
+    @Override
+    public boolean executeWithEntityExclusiveAccess(long entityId, ProtectedCode protectedCode, long waitLockTimeout, TimeUnit timeUnit) throws InterruptedException {
+        EntityLockEntry entry = entityLock.retainEntry(entityId);
+
+        try {
+            return executeWithEntryLock(entry, LockMode.EXCLUSIVE, NO_VERSION_STRIPE, protectedCode, waitLockTimeout, timeUnit);
+        } finally {
+            entityLock.releaseEntry(entityId);
+        }
+    }
+}
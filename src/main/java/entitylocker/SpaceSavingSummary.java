@@ -0,0 +1,145 @@
+package entitylocker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving summary of the heaviest keys of a weighted stream, in memory bounded by its capacity.
+ * <p>
+ * Every monitored key has a counter. A new key takes over the counter with the smallest count when all are used,
+ * inheriting that count as its error. The counts of the monitored keys are over-estimates by at most their error,
+ * and any key whose weight exceeds total weight / capacity is monitored. The counters are kept in a min-heap on their
+ * count, so an update costs O(log capacity). Not thread-safe.
+ */
+final class SpaceSavingSummary {
+    private final Map<Object, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+
+    SpaceSavingSummary(int capacity) {
+        this.counters = new HashMap<>(2 * capacity);
+        this.heap = new Counter[capacity];
+    }
+
+    void add(Object key, long weight) {
+        Counter counter = counters.get(key);
+        if (counter != null) {
+            counter.count += weight;
+            siftDown(counter.heapIndex);
+            return;
+        }
+
+        if (size < heap.length) {
+            counter = new Counter(key, size);
+            counter.count = weight;
+            heap[size++] = counter;
+            counters.put(key, counter);
+            siftUp(counter.heapIndex);
+            return;
+        }
+
+        //evicts the smallest counter, the new key inherits its count as error
+        counter = heap[0];
+        counters.remove(counter.key);
+        counter.key = key;
+        counter.error = counter.count;
+        counter.count += weight;
+        counters.put(key, counter);
+        siftDown(0);
+    }
+
+    /**
+     * @return count of the key, 0 if it is not monitored
+     */
+    long getCount(Object key) {
+        Counter counter = counters.get(key);
+        return counter == null ? 0L : counter.count;
+    }
+
+    /**
+     * @return up to k monitored keys, greatest count first
+     */
+    List<Estimate> top(int k) {
+        Counter[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, (c1, c2) -> Long.compare(c2.count, c1.count));
+
+        List<Estimate> top = new ArrayList<>(Math.min(k, size));
+        for (int i = 0; i < Math.min(k, size); i++) {
+            top.add(new Estimate(sorted[i].key, sorted[i].count, sorted[i].error));
+        }
+        return top;
+    }
+
+    void clear() {
+        counters.clear();
+        Arrays.fill(heap, null);
+        size = 0;
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (counter.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter counter, int index) {
+        heap[index] = counter;
+        counter.heapIndex = index;
+    }
+
+    private static final class Counter {
+        private Object key;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        private Counter(Object key, int heapIndex) {
+            this.key = key;
+            this.heapIndex = heapIndex;
+        }
+    }
+
+    /**
+     * Count of a monitored key, over-estimated by at most its error
+     */
+    static final class Estimate {
+        final Object key;
+        final long count;
+        final long error;
+
+        private Estimate(Object key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+    }
+}
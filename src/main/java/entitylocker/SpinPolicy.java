@@ -0,0 +1,122 @@
+package entitylocker;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How a thread waits for a contended entity lock.
+ * <p>
+ * By default it parks right away. Parking and unparking costs several microseconds, much more than a protected code
+ * running for a fraction of a microsecond, so the adaptive policy first spins for about twice the time the entity is
+ * usually held before parking. The hold time of every entity is a moving average of its exclusive holds, entities
+ * usually held longer than the maximum spin time are parked for without spinning. On a single processor the holder
+ * can not make progress while the waiter spins, so the adaptive policy parks right away there as well.
+ */
+public final class SpinPolicy {
+    private static final SpinPolicy PARK = new SpinPolicy(0L);
+    private static final long DEFAULT_MAX_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+    private static final long MIN_SPIN_NANOS = 500L;
+    private static final int SPINS_BETWEEN_CLOCK_READS = 16;
+    private static final MethodHandle ON_SPIN_WAIT = findOnSpinWait();
+    private static final boolean MULTIPROCESSOR = Runtime.getRuntime().availableProcessors() > 1;
+
+    private final long maxSpinNanos;
+
+    SpinPolicy(long maxSpinNanos) {
+        this.maxSpinNanos = maxSpinNanos;
+    }
+
+    /**
+     * @return policy parking the waiting threads without spinning
+     */
+    public static SpinPolicy park() {
+        return PARK;
+    }
+
+    /**
+     * @return adaptive policy spinning at most 20 microseconds, or the parking policy on a single processor
+     */
+    public static SpinPolicy adaptive() {
+        return MULTIPROCESSOR ? new SpinPolicy(DEFAULT_MAX_SPIN_NANOS) : PARK;
+    }
+
+    /**
+     * @param maxSpinTime max time to spin before parking
+     * @param timeUnit    time unit
+     * @return adaptive policy spinning at most maxSpinTime, or the parking policy on a single processor
+     */
+    public static SpinPolicy adaptive(long maxSpinTime, TimeUnit timeUnit) {
+        if (maxSpinTime <= 0) {
+            throw new IllegalArgumentException("Max spin time must be positive");
+        }
+        return MULTIPROCESSOR ? new SpinPolicy(timeUnit.toNanos(maxSpinTime)) : PARK;
+    }
+
+    /**
+     * Spins while the entry is held by another thread, for the time the holder is expected to release it
+     *
+     * @return true if the entry was locked while spinning, false if the caller must park
+     */
+    boolean spinLock(LockEntry entry, LockMode lockMode) {
+        if (maxSpinNanos == 0L) {
+            return false;
+        }
+
+        int holdNanosEstimate = entry.getHoldNanosEstimate();
+        if (holdNanosEstimate > maxSpinNanos) {
+            return false;
+        }
+
+        long deadline = System.nanoTime() + Math.min(maxSpinNanos, Math.max(MIN_SPIN_NANOS, 2L * holdNanosEstimate));
+        int spins = 0;
+        do {
+            if (entry.tryLock(lockMode)) {
+                return true;
+            }
+            onSpinWait();
+        } while (++spins % SPINS_BETWEEN_CLOCK_READS != 0 || System.nanoTime() < deadline);
+
+        return false;
+    }
+
+    /**
+     * Called once the entry is locked by the current thread
+     */
+    void onLocked(LockEntry entry, LockMode lockMode) {
+        if (maxSpinNanos != 0L && lockMode == LockMode.EXCLUSIVE) {
+            entry.onExclusiveLocked();
+        }
+    }
+
+    /**
+     * Called before the current thread unlocks the entry
+     */
+    void onUnlocking(LockEntry entry, LockMode lockMode) {
+        if (maxSpinNanos != 0L && lockMode == LockMode.EXCLUSIVE) {
+            entry.onExclusiveUnlocking();
+        }
+    }
+
+    /*
+     * Thread.onSpinWait is only available from Java 9, this library targets Java 8
+     */
+    private static void onSpinWait() {
+        if (ON_SPIN_WAIT != null) {
+            try {
+                ON_SPIN_WAIT.invokeExact();
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static MethodHandle findOnSpinWait() {
+        try {
+            return MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package entitylocker;
+
+/**
+ * Fixed size lock table, each entity id is mapped to one of a power of two number of lock stripes by a spread of
+ * its hash code.
+ * <p>
+ * Memory is constant whatever the number of distinct entity ids and retaining or releasing an entry never allocates.
+ * The trade-off is that entities whose ids fall into the same stripe exclude each other: the stripe lock is reentrant,
+ * so a thread locking two colliding ids simply holds its stripe twice, and deadlock detection and escalation work on
+ * stripes rather than on ids. Shared accesses lock their stripe exclusively too: a thread holding a stripe for one id
+ * can lock any other id of the stripe in any mode, rather than upgrading a shared hold of the stripe.
+ *
+ * @param <T> data type of the entity id
+ */
+class StripedEntityLock<T> implements EntityLockTable<T> {
+    private static final int MAXIMUM_STRIPES = 1 << 30;
+
+    private final EntityLockEntry[] stripes;
+    private final int mask;
+
+    /**
+     * @param lockStripes number of stripes, rounded up to the next power of two
+     */
+    StripedEntityLock(int lockStripes) {
+        if (lockStripes <= 0) {
+            throw new IllegalArgumentException("Number of lock stripes must be positive: " + lockStripes);
+        }
+
+        int size = lockStripes >= MAXIMUM_STRIPES ? MAXIMUM_STRIPES : Integer.highestOneBit(lockStripes - 1) << 1;
+        size = Math.max(size, 1);
+
+        stripes = new EntityLockEntry[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new EntityLockEntry();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Stripes are never removed, no reference counting is needed
+     */
+    @Override
+    public EntityLockEntry retainEntry(T entityId) {
+        return stripes[spread(entityId.hashCode()) & mask];
+    }
+
+    @Override
+    public void releaseEntry(T entityId) {
+        //stripes are never removed
+    }
+
+    @Override
+    public int size() {
+        return stripes.length;
+    }
+
+    @Override
+    public LockMode sharedAccessMode() {
+        return LockMode.EXCLUSIVE;
+    }
+
+    /*
+     * Murmur3 finalizer, spreads the entropy of the hash code into the low bits selecting the stripe
+     */
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -1,84 +1,363 @@
 package entitylocker;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Represents a graph, where each node is an entity id or a thread id.
+ * Wait-for graph of the threads and the entities they hold or wait for.
  * <p>
- * Each thread can be related to multiple entities and each entity with multiple threads.
+ * A thread holds any number of entities, each in {@link LockMode#EXCLUSIVE} or {@link LockMode#SHARED} mode, and
+ * waits for at most one entity at a time. Threads holding nothing and waiting for nothing are not in the graph.
  * <p>
- * The goal is to save what threads are waiting to acquire or has a lock to a specific entity.
+ * The graph has no global lock. Every thread keeps its own node, only updated by that thread, and the holders of an
+ * entity are an immutable array replaced by compare and set, so updates of unrelated entities proceed in parallel.
+ * Readers see each node and array in a consistent state, but not a snapshot of the whole graph. Entities implementing
+ * {@link HolderArray} keep their holders array themselves rather than in a map of the graph.
  *
  * @param <T> data type of the entity primary key
  */
 class ThreadEntityGraph<T> {
-    private final Map<T, Set<Long>> entityThreads = new HashMap<>();
-    private final Map<Long, Set<T>> threadEntities = new HashMap<>();
+    private static final long[] NO_THREADS = new long[0];
+    private static final AtomicLong NODE_SEQUENCE = new AtomicLong(0L);
+
+    private final ConcurrentHashMap<T, long[]> entityHolders = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, ThreadNode<T>> threadNodes = new ConcurrentHashMap<>();
 
     /**
      * @param threadId id of the thread
-     * @return associated entities of a thread
+     * @return entities held by a thread
      */
-    Set<T> getAssociatedEntities(long threadId) {
-        return threadEntities.getOrDefault(threadId, Collections.emptySet());
+    Set<T> getHeldEntities(long threadId) {
+        ThreadNode<T> node = threadNodes.get(threadId);
+        return node == null ? Collections.emptySet() : node.heldEntities.keySet();
     }
 
     /**
      * @param entityId id of the entity
-     * @return associated threads of an entity
+     * @return ids of the threads holding an entity, must not be modified
+     */
+    long[] getHolders(T entityId) {
+        if (entityId instanceof HolderArray) {
+            return ((HolderArray) entityId).getHolders();
+        }
+        return entityHolders.getOrDefault(entityId, NO_THREADS);
+    }
+
+    /**
+     * @param threadId id of the thread
+     * @param entityId id of an entity held by the thread
+     * @return mode of the hold, an exclusive hold is never downgraded by a nested shared one
      */
-    Set<Long> getAssociatedThreads(T entityId) {
-        return entityThreads.getOrDefault(entityId, Collections.emptySet());
+    LockMode getHoldMode(long threadId, T entityId) {
+        ThreadNode<T> node = threadNodes.get(threadId);
+        LockMode lockMode = node == null ? null : node.heldEntities.get(entityId);
+        return lockMode == null ? LockMode.EXCLUSIVE : lockMode;
     }
 
     /**
-     * Associates a thread with an entity
+     * @param threadId id of the thread
+     * @return the entity the thread waits for, or null
+     */
+    WaitEdge<T> getWaitEdge(long threadId) {
+        ThreadNode<T> node = threadNodes.get(threadId);
+        return node == null ? null : node.waitEdge;
+    }
+
+    /**
+     * @return ids of the threads waiting for an entity
+     */
+    long[] getWaitingThreads() {
+        long[] waitingThreads = new long[8];
+        int count = 0;
+
+        for (Map.Entry<Long, ThreadNode<T>> threadNode : threadNodes.entrySet()) {
+            if (threadNode.getValue().waitEdge != null) {
+                if (count == waitingThreads.length) {
+                    waitingThreads = Arrays.copyOf(waitingThreads, 2 * count);
+                }
+                waitingThreads[count++] = threadNode.getKey();
+            }
+        }
+
+        return Arrays.copyOf(waitingThreads, count);
+    }
+
+    /**
+     * @return number of threads holding or waiting for entities
+     */
+    int getThreadCount() {
+        return threadNodes.size();
+    }
+
+    /**
+     * @param threadId id of the thread
+     * @return order in which the threads entered the graph, the greater the younger, or -1 if the thread is not in it
+     */
+    long getAge(long threadId) {
+        ThreadNode<T> node = threadNodes.get(threadId);
+        return node == null ? -1L : node.sequence;
+    }
+
+    /**
+     * Records that a thread holds an entity in exclusive mode
      *
      * @param threadId Id of the thread
      * @param entityId Id of the entity
+     * @return true if the thread did not hold the entity yet
      */
-    synchronized void addThreadEntityAssociation(long threadId, T entityId) {
-        entityThreads.computeIfAbsent(entityId, eId -> new HashSet<>())
-                .add(threadId);
+    boolean addHoldEdge(long threadId, T entityId) {
+        return addHoldEdge(threadId, entityId, LockMode.EXCLUSIVE);
+    }
 
-        threadEntities.computeIfAbsent(threadId, tId -> new HashSet<>())
-                .add(entityId);
+    /**
+     * Records that a thread holds an entity. Must be called by the thread itself. A thread holding the entity already
+     * keeps the mode covering both holds.
+     *
+     * @param threadId Id of the thread
+     * @param entityId Id of the entity
+     * @param lockMode mode in which the thread holds the entity
+     * @return true if the thread did not hold the entity yet
+     */
+    boolean addHoldEdge(long threadId, T entityId, LockMode lockMode) {
+        ThreadNode<T> node = nodeOf(threadId);
+        LockMode heldMode = node.heldEntities.putIfAbsent(entityId, lockMode);
+
+        if (heldMode == null) {
+            addEntityHolder(entityId, threadId);
+            return true;
+        }
+
+        if (!heldMode.covers(lockMode)) {
+            node.heldEntities.put(entityId, heldMode.combine(lockMode));
+        }
+        return false;
     }
 
     /**
-     * Removes the association between the entity and thread holding it
+     * Removes the hold of an entity by a thread. Must be called by the thread itself.
      *
+     * @param threadId Id of the thread
      * @param entityId Id of the entity
      */
-    synchronized void removeThreadEntityAssociation(long threadId, T entityId) {
-        if (!entityThreads.containsKey(entityId)) {
+    void removeHoldEdge(long threadId, T entityId) {
+        ThreadNode<T> node = threadNodes.get(threadId);
+
+        if (node == null || node.heldEntities.remove(entityId) == null) {
             return;
         }
 
-        if (!threadEntities.containsKey(threadId)) {
-            return;
+        removeNodeIfUnused(threadId, node);
+        removeEntityHolder(entityId, threadId);
+    }
+
+    /**
+     * Records that a thread waits for an entity. Must be called by the thread itself, which must not wait for another
+     * entity already.
+     *
+     * @param threadId Id of the thread
+     * @param entityId Id of the entity
+     * @param lockMode mode in which the thread waits for the entity
+     * @param waiter   the waiting thread, interrupted if it is aborted while waiting, or null
+     * @return the wait edge
+     */
+    WaitEdge<T> addWaitEdge(long threadId, T entityId, LockMode lockMode, Thread waiter) {
+        WaitEdge<T> waitEdge = new WaitEdge<>(entityId, lockMode, waiter);
+        nodeOf(threadId).waitEdge = waitEdge;
+        return waitEdge;
+    }
+
+    /**
+     * Removes the wait edge of a thread. Must be called by the thread itself.
+     *
+     * @param threadId Id of the thread
+     */
+    void removeWaitEdge(long threadId) {
+        ThreadNode<T> node = threadNodes.get(threadId);
+
+        if (node != null) {
+            node.waitEdge = null;
+            removeNodeIfUnused(threadId, node);
+        }
+    }
+
+    private ThreadNode<T> nodeOf(long threadId) {
+        return threadNodes.computeIfAbsent(threadId, tId -> new ThreadNode<>(NODE_SEQUENCE.incrementAndGet()));
+    }
+
+    /*
+     * Only the thread itself updates its node, it can not be refilled meanwhile
+     */
+    private void removeNodeIfUnused(long threadId, ThreadNode<T> node) {
+        if (node.waitEdge == null && node.heldEntities.isEmpty()) {
+            threadNodes.remove(threadId, node);
+        }
+    }
+
+    private void addEntityHolder(T entityId, long threadId) {
+        while (true) {
+            long[] threads = getHolders(entityId);
+            long[] newThreads = new long[threads.length + 1];
+            System.arraycopy(threads, 0, newThreads, 0, threads.length);
+            newThreads[threads.length] = threadId;
+
+            if (replaceHolders(entityId, threads, newThreads)) {
+                return;
+            }
+        }
+    }
+
+    private void removeEntityHolder(T entityId, long threadId) {
+        while (true) {
+            long[] threads = getHolders(entityId);
+            int index = indexOf(threads, threadId);
+
+            if (index < 0) {
+                return;
+            }
+
+            long[] newThreads = threads.length == 1 ? NO_THREADS : new long[threads.length - 1];
+            System.arraycopy(threads, 0, newThreads, 0, index);
+            System.arraycopy(threads, index + 1, newThreads, index, newThreads.length - index);
+
+            if (replaceHolders(entityId, threads, newThreads)) {
+                return;
+            }
+        }
+    }
+
+    /*
+     * Arrays are compared by identity, the replace fails if another thread updated the entity meanwhile. An entity
+     * without holders has no map entry
+     */
+    private boolean replaceHolders(T entityId, long[] threads, long[] newThreads) {
+        if (entityId instanceof HolderArray) {
+            return ((HolderArray) entityId).compareAndSetHolders(threads, newThreads);
+        }
+        if (threads.length == 0) {
+            return entityHolders.putIfAbsent(entityId, newThreads) == null;
+        }
+        if (newThreads.length == 0) {
+            return entityHolders.remove(entityId, threads);
+        }
+        return entityHolders.replace(entityId, threads, newThreads);
+    }
+
+    private static int indexOf(long[] threads, long threadId) {
+        for (int i = 0; i < threads.length; i++) {
+            if (threads[i] == threadId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class ThreadNode<T> {
+        private final long sequence;
+        private final ConcurrentHashMap<T, LockMode> heldEntities = new ConcurrentHashMap<>();
+        private volatile WaitEdge<T> waitEdge;
+
+        private ThreadNode(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Entity storing the ids of the threads holding it, saving a map entry of the graph per held entity
+     */
+    interface HolderArray {
+        long[] NO_HOLDERS = NO_THREADS;
+
+        /**
+         * @return ids of the holding threads, {@link #NO_HOLDERS} if none, must not be modified
+         */
+        long[] getHolders();
+
+        /**
+         * @return true if the holders were the expected array, compared by identity, and were replaced
+         */
+        boolean compareAndSetHolders(long[] expected, long[] holders);
+    }
+
+    /**
+     * Entity a thread waits for. The wait ends either granted by the waiter once it got the entity, or aborted, by the
+     * waiter itself or by another thread choosing it as the victim of a deadlock.
+     *
+     * @param <T> data type of the entity primary key
+     */
+    static class WaitEdge<T> {
+        private static final int WAITING = 0;
+        private static final int GRANTED = 1;
+        private static final int ABORTED = 2;
+
+        private final T entityId;
+        private final LockMode lockMode;
+        private final Thread waiter;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        private volatile boolean waiterInterrupted;
+        private volatile boolean abortCompleted;
+
+        WaitEdge(T entityId, LockMode lockMode, Thread waiter) {
+            this.entityId = entityId;
+            this.lockMode = lockMode;
+            this.waiter = waiter;
         }
 
-        Set<Long> threads = Optional.ofNullable(entityThreads.get(entityId))
-                .orElseGet(Collections::emptySet);
+        T getEntityId() {
+            return entityId;
+        }
 
-        Set<T> entities = Optional.ofNullable(threadEntities.get(threadId))
-                .orElseGet(Collections::emptySet);
+        LockMode getLockMode() {
+            return lockMode;
+        }
+
+        boolean isAborted() {
+            return state.get() == ABORTED;
+        }
 
-        threads.remove(threadId);
-        entities.remove(entityId);
+        /**
+         * Called by the waiter once it got the entity
+         *
+         * @return false if the wait was aborted meanwhile, the waiter must release the entity
+         */
+        boolean tryGrant() {
+            return state.compareAndSet(WAITING, GRANTED);
+        }
+
+        /**
+         * Aborts the wait, interrupting the waiter if it is another thread
+         *
+         * @return false if the wait was already granted or aborted
+         */
+        boolean tryAbort() {
+            if (!state.compareAndSet(WAITING, ABORTED)) {
+                return false;
+            }
 
-        if (threads.isEmpty()) {
-            entityThreads.remove(entityId);
+            if (waiter != null && waiter != Thread.currentThread()) {
+                waiterInterrupted = true;
+                waiter.interrupt();
+            }
+            abortCompleted = true;
+            return true;
         }
 
-        if (entities.isEmpty()) {
-            threadEntities.remove(threadId);
+        /**
+         * Called by the aborted waiter, clears the interrupt sent by the aborting thread so it does not leak to the
+         * caller. A caller interrupt arriving at the same time is cleared as well.
+         */
+        void clearAbortInterrupt() {
+            while (!abortCompleted) {
+                Thread.yield();
+            }
+
+            if (waiterInterrupted) {
+                Thread.interrupted();
+            }
         }
     }
-}
\ No newline at end of file
+}
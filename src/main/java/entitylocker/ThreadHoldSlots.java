@@ -0,0 +1,128 @@
+package entitylocker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * One entity hold per thread kept out of the wait-for graph.
+ * <p>
+ * Recording a hold in the {@link ThreadEntityGraph} allocates the node of the thread and the map entries of the hold,
+ * which for a thread holding a single entity is most of the cost of an uncontended acquisition. A thread waiting for
+ * nothing can not be part of a deadlock, so the first entity a thread holds is only recorded in a slot chosen by its
+ * thread id, and must be published in the graph before the thread waits for another entity. A thread finding its
+ * slot taken by another thread records its holds in the graph directly.
+ * <p>
+ * A slot is claimed and freed by compare and set of its owner thread id, its entry and mode are only accessed by
+ * the owner. Every slot is on its own cache line.
+ */
+class ThreadHoldSlots {
+    private static final int SLOT_STRIDE = 16;
+    private static final long FREE = 0L;
+
+    private final AtomicLongArray owners;
+    private final LockEntry[] entries;
+    private final LockMode[] modes;
+    private final int slotShift;
+    private final int slots;
+
+    /**
+     * @param minSlots minimum number of slots, rounded up to the next power of two
+     */
+    ThreadHoldSlots(int minSlots) {
+        int bits = 32 - Integer.numberOfLeadingZeros(Math.max(minSlots, 2) - 1);
+        this.slots = 1 << bits;
+        this.slotShift = 64 - bits;
+        this.owners = new AtomicLongArray(slots * SLOT_STRIDE);
+        this.entries = new LockEntry[slots * SLOT_STRIDE];
+        this.modes = new LockMode[slots * SLOT_STRIDE];
+    }
+
+    /**
+     * Creates four slots per available processor
+     */
+    ThreadHoldSlots() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Records the first hold of an entry by the current thread in its slot
+     *
+     * @return false if the slot is taken, by the current thread or another one, the hold must go to the graph
+     */
+    boolean tryHold(long threadId, LockEntry entry, LockMode lockMode) {
+        int index = slotIndex(threadId);
+        if (owners.get(index) != FREE || !owners.compareAndSet(index, FREE, threadId)) {
+            return false;
+        }
+
+        entries[index] = entry;
+        modes[index] = lockMode;
+        return true;
+    }
+
+    /**
+     * Records a reentrant hold of the entry in the slot of the current thread, keeping the mode covering both holds
+     *
+     * @return false if the entry is not held through the slot
+     */
+    boolean tryHoldAgain(long threadId, LockEntry entry, LockMode lockMode) {
+        int index = slotIndex(threadId);
+        if (owners.get(index) != threadId || entries[index] != entry) {
+            return false;
+        }
+
+        if (!modes[index].covers(lockMode)) {
+            modes[index] = modes[index].combine(lockMode);
+        }
+        return true;
+    }
+
+    /**
+     * Frees the slot of the current thread if it holds the entry
+     *
+     * @return false if the entry is not held through the slot
+     */
+    boolean release(long threadId, LockEntry entry) {
+        int index = slotIndex(threadId);
+        if (owners.get(index) != threadId || entries[index] != entry) {
+            return false;
+        }
+
+        entries[index] = null;
+        modes[index] = null;
+        owners.set(index, FREE);
+        return true;
+    }
+
+    /**
+     * @return entry held through the slot of the current thread, or null
+     */
+    LockEntry getEntry(long threadId) {
+        int index = slotIndex(threadId);
+        return owners.get(index) == threadId ? entries[index] : null;
+    }
+
+    /**
+     * @return mode of the hold of the slot of the current thread, or null
+     */
+    LockMode getMode(long threadId) {
+        int index = slotIndex(threadId);
+        return owners.get(index) == threadId ? modes[index] : null;
+    }
+
+    /**
+     * @return number of threads holding an entry through their slot, an estimate while slots change
+     */
+    int getHolderCount() {
+        int holders = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            if (owners.get(slot * SLOT_STRIDE) != FREE) {
+                holders++;
+            }
+        }
+        return holders;
+    }
+
+    private int slotIndex(long threadId) {
+        return (int) ((threadId * 0x9E3779B97F4A7C15L) >>> slotShift) * SLOT_STRIDE;
+    }
+}
@@ -4,4 +4,8 @@ public class DeadLockPreventionException extends RuntimeException {
     public DeadLockPreventionException() {
         super("Possible deadlock detected");
     }
+
+    public DeadLockPreventionException(String message) {
+        super(message);
+    }
 }
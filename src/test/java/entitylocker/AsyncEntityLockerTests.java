@@ -0,0 +1,174 @@
+package entitylocker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncEntityLockerTests {
+    private AsyncEntityLockerImpl<String> entityLocker;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setup() {
+        entityLocker = new AsyncEntityLockerImpl<>();
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccessAsync_concurrentRequests_shouldRunOneAtATime() throws Exception {
+        int requests = 500;
+        int[] counter = new int[1];
+        AtomicInteger inside = new AtomicInteger(0);
+        AtomicBoolean overlapped = new AtomicBoolean(false);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+        for (int i = 0; i < requests; i++) {
+            results.add(entityLocker.executeWithEntityExclusiveAccessAsync("id", () -> {
+                if (inside.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+                //the entity is held until the asynchronous part completes
+                return CompletableFuture.supplyAsync(() -> {
+                    int value = ++counter[0];
+                    inside.decrementAndGet();
+                    return value;
+                }, executor);
+            }, executor).toCompletableFuture());
+        }
+
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        assertFalse(overlapped.get());
+        assertEquals(requests, counter[0]);
+        assertEquals(0, entityLocker.size());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccessAsync_waitingRequests_shouldNotBlockThreads() throws Exception {
+        ExecutorService singleThread = Executors.newSingleThreadExecutor();
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        AtomicInteger executed = new AtomicInteger(0);
+
+        try {
+            entityLocker.executeWithEntityExclusiveAccessAsync("id", () -> release, singleThread);
+            List<CompletableFuture<Integer>> waiters = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                waiters.add(entityLocker.executeWithEntityExclusiveAccessAsync("id",
+                        () -> CompletableFuture.completedFuture(executed.incrementAndGet()), singleThread).toCompletableFuture());
+            }
+
+            //the only thread of the executor is still available while 100 requests wait
+            assertTrue(CompletableFuture.supplyAsync(() -> true, singleThread).get(5, TimeUnit.SECONDS));
+            assertEquals(0, executed.get());
+
+            release.complete(null);
+            for (int i = 0; i < waiters.size(); i++) {
+                //handed over in request order
+                assertEquals(i + 1, waiters.get(i).get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            singleThread.shutdownNow();
+        }
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccessAsync_withTimeoutSetting_shouldCompleteExceptionally() throws Exception {
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        AtomicBoolean timedOutCodeExecuted = new AtomicBoolean(false);
+
+        entityLocker.executeWithEntityExclusiveAccessAsync("id", () -> release, executor);
+        CompletableFuture<Void> timedOut = entityLocker.<Void>executeWithEntityExclusiveAccessAsync("id", () -> {
+            timedOutCodeExecuted.set(true);
+            return CompletableFuture.completedFuture(null);
+        }, executor, 10, TimeUnit.MILLISECONDS).toCompletableFuture();
+        CompletionStage<String> next = entityLocker.executeWithEntityExclusiveAccessAsync("id",
+                () -> CompletableFuture.completedFuture("next"), executor, 5, TimeUnit.SECONDS);
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> timedOut.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(TimeoutException.class, exception.getCause());
+
+        release.complete(null);
+
+        //the timed out request is skipped, the lock goes to the next one
+        assertEquals("next", next.toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertFalse(timedOutCodeExecuted.get());
+        assertEquals(0, entityLocker.size());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccessAsync_failingProtectedCode_shouldReleaseEntity() throws Exception {
+        CompletableFuture<Object> thrown = entityLocker.executeWithEntityExclusiveAccessAsync("id", () -> {
+            throw new IllegalStateException("failure");
+        }, executor).toCompletableFuture();
+        CompletableFuture<Object> failedStage = entityLocker.executeWithEntityExclusiveAccessAsync("id", () -> {
+            CompletableFuture<Object> stage = new CompletableFuture<>();
+            stage.completeExceptionally(new IllegalArgumentException("failure"));
+            return stage;
+        }, executor).toCompletableFuture();
+
+        assertInstanceOf(IllegalStateException.class, assertThrows(ExecutionException.class, () -> thrown.get(5, TimeUnit.SECONDS)).getCause());
+        assertInstanceOf(IllegalArgumentException.class, assertThrows(ExecutionException.class, () -> failedStage.get(5, TimeUnit.SECONDS)).getCause());
+
+        assertEquals("value", entityLocker.executeWithEntityExclusiveAccessAsync("id",
+                () -> CompletableFuture.completedFuture("value"), executor, 1, TimeUnit.SECONDS).toCompletableFuture().get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccessAsync_differentEntities_shouldRunConcurrently() throws Exception {
+        CompletableFuture<Void> release = new CompletableFuture<>();
+
+        CompletableFuture<Void> first = entityLocker.executeWithEntityExclusiveAccessAsync("id1", () -> release, executor).toCompletableFuture();
+        String second = entityLocker.executeWithEntityExclusiveAccessAsync("id2",
+                () -> CompletableFuture.completedFuture("second"), executor).toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertEquals("second", second);
+        assertFalse(first.isDone());
+
+        release.complete(null);
+        first.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccessAsync_directExecutorLongQueue_shouldNotRecursePerRequest() throws Exception {
+        int requests = 100_000;
+        CompletableFuture<Void> release = new CompletableFuture<>();
+        int[] counter = new int[1];
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+        CompletableFuture<Void> first = entityLocker.executeWithEntityExclusiveAccessAsync("id", () -> release, Runnable::run).toCompletableFuture();
+        for (int i = 0; i < requests; i++) {
+            results.add(entityLocker.executeWithEntityExclusiveAccessAsync("id",
+                    () -> CompletableFuture.completedFuture(++counter[0]), Runnable::run).toCompletableFuture());
+        }
+
+        //every queued request runs inside this release
+        release.complete(null);
+
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(requests, (int) results.get(requests - 1).get(5, TimeUnit.SECONDS));
+        assertEquals(requests, counter[0]);
+        assertEquals(0, entityLocker.size());
+    }
+}
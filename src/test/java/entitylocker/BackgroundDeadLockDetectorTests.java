@@ -0,0 +1,70 @@
+package entitylocker;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.countDeadLock;
+import static entitylocker.TestSupport.lockBoth;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BackgroundDeadLockDetectorTests {
+
+    @Test
+    void breakDeadLocks_cycleOfThreeThreads_shouldAbortYoungestWaitOnce() {
+        /*
+           T1 -----> [A] ------> waiting for 'B'
+           T2 -----> [B] ------> waiting for 'C'
+           T3 -----> [C] ------> waiting for 'A'
+           T4 ------------------> waiting for 'A'
+         */
+        ThreadEntityGraph<String> threadEntityGraph = new ThreadEntityGraph<>();
+        DeadLockPolicy deadLockPolicy = DeadLockPolicy.detectInBackground(1, TimeUnit.SECONDS);
+
+        threadEntityGraph.addHoldEdge(1, "A");
+        threadEntityGraph.addHoldEdge(2, "B");
+        threadEntityGraph.addHoldEdge(3, "C");
+        ThreadEntityGraph.WaitEdge<String> t1Wait = threadEntityGraph.addWaitEdge(1, "B", LockMode.EXCLUSIVE, null);
+        ThreadEntityGraph.WaitEdge<String> t2Wait = threadEntityGraph.addWaitEdge(2, "C", LockMode.EXCLUSIVE, null);
+        ThreadEntityGraph.WaitEdge<String> t3Wait = threadEntityGraph.addWaitEdge(3, "A", LockMode.EXCLUSIVE, null);
+        ThreadEntityGraph.WaitEdge<String> t4Wait = threadEntityGraph.addWaitEdge(4, "A", LockMode.EXCLUSIVE, null);
+
+        assertEquals(1, BackgroundDeadLockDetector.breakDeadLocks(threadEntityGraph, deadLockPolicy));
+        assertFalse(t1Wait.isAborted());
+        assertFalse(t2Wait.isAborted());
+        assertTrue(t3Wait.isAborted());
+        assertFalse(t4Wait.isAborted());
+
+        assertEquals(0, BackgroundDeadLockDetector.breakDeadLocks(threadEntityGraph, deadLockPolicy));
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_deadLockedThreads_shouldBeBrokenByBackgroundDetector() throws InterruptedException {
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.withDeadLockPolicy(DeadLockPolicy.detectInBackground(10, TimeUnit.MILLISECONDS));
+        CountDownLatch bothHolding = new CountDownLatch(2);
+        AtomicInteger deadLocks = new AtomicInteger(0);
+        AtomicInteger completed = new AtomicInteger(0);
+
+        Thread thread1 = new Thread(() -> countDeadLock(deadLocks, () -> lockBoth(entityLocker, "A", "B", bothHolding, completed)));
+        Thread thread2 = new Thread(() -> countDeadLock(deadLocks, () -> lockBoth(entityLocker, "B", "A", bothHolding, completed)));
+        thread1.start();
+        thread2.start();
+
+        thread1.join(TimeUnit.SECONDS.toMillis(10));
+        thread2.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertFalse(thread1.isAlive());
+        assertFalse(thread2.isAlive());
+        assertEquals(1, deadLocks.get());
+        assertEquals(1, completed.get());
+    }
+
+    @Test
+    void detectInBackground_nonPositivePeriod_shouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> DeadLockPolicy.detectInBackground(0, TimeUnit.MILLISECONDS));
+    }
+}
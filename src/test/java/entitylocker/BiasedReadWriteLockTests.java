@@ -0,0 +1,194 @@
+package entitylocker;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.awaitLatch;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BiasedReadWriteLockTests {
+
+    @Test
+    void lockWrite_whileVisibleReaderHoldsLock_shouldWaitForReader() throws InterruptedException {
+        BiasedReadWriteLock lock = new BiasedReadWriteLock();
+        CountDownLatch readLocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean readerInside = new AtomicBoolean(false);
+        AtomicBoolean writerOverlapped = new AtomicBoolean(false);
+
+        assertTrue(lock.isReadBiased());
+        Thread reader = new Thread(() -> {
+            lock.lockRead();
+            readerInside.set(true);
+            readLocked.countDown();
+            awaitLatch(release);
+            readerInside.set(false);
+            lock.unlockRead();
+        });
+        reader.start();
+        readLocked.await();
+
+        Thread writer = new Thread(() -> {
+            lock.lockWrite();
+            writerOverlapped.set(readerInside.get());
+            lock.unlockWrite();
+        });
+        writer.start();
+
+        writer.join(50);
+        assertTrue(writer.isAlive());
+        assertFalse(lock.isReadBiased());
+
+        release.countDown();
+        reader.join();
+        writer.join();
+
+        assertFalse(writerOverlapped.get());
+    }
+
+    @Test
+    void tryLockWrite_whileVisibleReaderHoldsLock_shouldTimeoutAndReleaseWriteLock() throws InterruptedException {
+        BiasedReadWriteLock lock = new BiasedReadWriteLock();
+        CountDownLatch readLocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread reader = new Thread(() -> {
+            lock.lockRead();
+            readLocked.countDown();
+            awaitLatch(release);
+            lock.unlockRead();
+        });
+        reader.start();
+        readLocked.await();
+
+        assertFalse(lock.tryLockWrite(10, TimeUnit.MILLISECONDS));
+        assertFalse(lock.isWriteLocked());
+
+        release.countDown();
+        reader.join();
+
+        assertTrue(lock.tryLockWrite(10, TimeUnit.MILLISECONDS));
+        lock.unlockWrite();
+    }
+
+    @Test
+    void lockRead_reentrantAndDowngradedHolds_shouldAllBeReleased() throws InterruptedException {
+        BiasedReadWriteLock lock = new BiasedReadWriteLock();
+
+        lock.lockRead();
+        lock.lockRead();
+        assertTrue(lock.tryLockRead(0, TimeUnit.NANOSECONDS));
+        lock.unlockRead();
+        lock.unlockRead();
+        lock.unlockRead();
+
+        lock.lockWrite();
+        //read holds taken by the writer go to the underlying lock
+        lock.lockRead();
+        lock.unlockWrite();
+        assertFalse(lock.isWriteLocked());
+        lock.unlockRead();
+
+        Thread writer = new Thread(() -> {
+            lock.lockWrite();
+            lock.unlockWrite();
+        });
+        writer.start();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(writer.isAlive());
+    }
+
+    @Test
+    void lockWrite_concurrentReadersAndWriters_writersShouldBeExclusive() throws InterruptedException {
+        BiasedReadWriteLock lock = new BiasedReadWriteLock(2);
+        AtomicInteger readers = new AtomicInteger(0);
+        AtomicBoolean exclusionViolated = new AtomicBoolean(false);
+        int[] written = new int[1];
+        Thread[] threads = new Thread[6];
+
+        for (int t = 0; t < threads.length; t++) {
+            boolean isWriter = t < 2;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    if (isWriter && i % 100 == 0) {
+                        lock.lockWrite();
+                        if (readers.get() != 0) {
+                            exclusionViolated.set(true);
+                        }
+                        written[0]++;
+                        lock.unlockWrite();
+                    } else {
+                        lock.lockRead();
+                        readers.incrementAndGet();
+                        readers.decrementAndGet();
+                        lock.unlockRead();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(exclusionViolated.get());
+        assertEquals(2 * 200, written[0]);
+    }
+
+    @Test
+    void lockWrite_bulkHolds_shouldConvertReadHoldsAtOnce() throws InterruptedException {
+        BiasedReadWriteLock lock = new BiasedReadWriteLock();
+        int holds = 100_000;
+
+        lock.lockRead(holds);
+        assertEquals(holds, lock.getReadHoldCount());
+
+        lock.unlockRead(holds);
+        lock.lockWrite();
+        lock.lockWrite(holds);
+        assertEquals(holds + 1, lock.getWriteHoldCount());
+
+        lock.lockRead(holds);
+        lock.unlockWrite(holds + 1);
+        assertFalse(lock.isWriteLocked());
+        assertEquals(holds, lock.getReadHoldCount());
+        lock.unlockRead(holds);
+        assertEquals(0, lock.getReadHoldCount());
+
+        Thread writer = new Thread(() -> {
+            lock.lockWrite();
+            lock.unlockWrite();
+        });
+        writer.start();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(writer.isAlive());
+    }
+
+    @Test
+    void lockRead_reentrantVisibleReaderWhileWriterRevokes_shouldNotWaitForWriter() throws InterruptedException {
+        BiasedReadWriteLock lock = new BiasedReadWriteLock();
+        lock.lockRead();
+
+        Thread writer = new Thread(() -> {
+            lock.lockWrite();
+            lock.unlockWrite();
+        });
+        writer.start();
+        while (lock.isReadBiased()) {
+            Thread.sleep(1);
+        }
+
+        //the writer waits for the slot of the current thread, a reentrant read must not queue behind it
+        assertTrue(lock.tryLockRead(100, TimeUnit.MILLISECONDS));
+        lock.unlockRead();
+        lock.unlockRead();
+
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(writer.isAlive());
+    }
+}
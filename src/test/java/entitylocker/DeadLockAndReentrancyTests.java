@@ -9,13 +9,14 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static entitylocker.TestSupport.NO_OP;
+import static entitylocker.TestSupport.awaitLatch;
+import static entitylocker.TestSupport.executeWithGlobalExclusiveAccess;
+import static entitylocker.TestSupport.sleep;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class DeadLockAndReentrancyTests {
-    private static final ProtectedCode NO_OP = () -> {
-    };
-
     private EntityLocker<String> entityLocker;
 
     @BeforeEach
@@ -54,8 +55,8 @@ class DeadLockAndReentrancyTests {
     void executeWithGlobalExclusiveAccess_withNestedCallOnSingleThread_shouldBeReentrant() {
         AtomicBoolean value = new AtomicBoolean(false);
 
-        executeWithGlobalExclusiveAccess(() -> {
-            executeWithGlobalExclusiveAccess(() -> {
+        executeWithGlobalExclusiveAccess(entityLocker, () -> {
+            executeWithGlobalExclusiveAccess(entityLocker, () -> {
                 value.set(true);
             });
         });
@@ -83,7 +84,7 @@ class DeadLockAndReentrancyTests {
     void executeWithGlobalAndEntityExclusiveAccess_withNestedCallOnSingleThread_shouldBeReentrant() {
         AtomicBoolean value = new AtomicBoolean(false);
 
-        executeWithGlobalExclusiveAccess(() -> {
+        executeWithGlobalExclusiveAccess(entityLocker, () -> {
             entityLocker.executeWithEntityExclusiveAccess("1", () -> {
                 value.set(true);
             });
@@ -113,7 +114,7 @@ class DeadLockAndReentrancyTests {
         AtomicBoolean value = new AtomicBoolean(false);
 
         entityLocker.executeWithEntityExclusiveAccess("1", () -> {
-            executeWithGlobalExclusiveAccess(() -> value.set(true));
+            executeWithGlobalExclusiveAccess(entityLocker, () -> value.set(true));
         });
 
         assertTrue(value.get());
@@ -176,29 +177,54 @@ class DeadLockAndReentrancyTests {
         }
     }
 
-    private void awaitLatch(CountDownLatch latch) {
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            e.printStackTrace();
+    @Test
+    void executeWithEntityExclusiveAccess_abortYoungestPolicy_shouldAbortYoungestThreadOfCycle() throws InterruptedException {
+        EntityLocker<String> youngestAbortingLocker = ReentrantEntityLockerImpl.withDeadLockPolicy(DeadLockPolicy.abortYoungest());
+        CountDownLatch[] holding = {new CountDownLatch(1), new CountDownLatch(1), new CountDownLatch(1)};
+        CountDownLatch[] proceed = {new CountDownLatch(1), new CountDownLatch(1), new CountDownLatch(1)};
+        AtomicBoolean[] aboutToWait = {new AtomicBoolean(false), new AtomicBoolean(false), new AtomicBoolean(false)};
+        AtomicInteger[] outcomes = {new AtomicInteger(0), new AtomicInteger(0), new AtomicInteger(0)};
+        String[] held = {"A", "B", "C"};
+        String[] wanted = {"B", "C", "A"};
+        Thread[] threads = new Thread[3];
+
+        for (int t = 0; t < threads.length; t++) {
+            int i = t;
+            threads[t] = new Thread(() -> youngestAbortingLocker.executeWithEntityExclusiveAccess(held[i], () -> {
+                holding[i].countDown();
+                awaitLatch(proceed[i]);
+                aboutToWait[i].set(true);
+                try {
+                    youngestAbortingLocker.executeWithEntityExclusiveAccess(wanted[i], () -> outcomes[i].set(1));
+                } catch (DeadLockPreventionException e) {
+                    outcomes[i].set(Thread.currentThread().isInterrupted() ? 3 : 2);
+                }
+            }));
         }
-    }
 
-    private void executeWithGlobalExclusiveAccess(ProtectedCode protectedCode) {
-        try {
-            entityLocker.executeWithGlobalExclusiveAccess(protectedCode);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        //T3 is the oldest, T2 the youngest
+        for (int t : new int[]{2, 0, 1}) {
+            threads[t].start();
+            holding[t].await();
         }
-    }
 
-    private void sleep(long millis) {
-        try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+        //T2 waits for C, T3 for A, then T1 closes the cycle waiting for B
+        for (int t : new int[]{1, 2, 0}) {
+            proceed[t].countDown();
+            while (!aboutToWait[t].get() || (t != 0 && threads[t].getState() != Thread.State.WAITING)) {
+                Thread.sleep(1);
+            }
         }
+
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+            Assertions.assertFalse(thread.isAlive());
+        }
+
+        assertEquals(1, outcomes[0].get());
+        //aborted without the interrupt used to wake it up
+        assertEquals(2, outcomes[1].get());
+        assertEquals(1, outcomes[2].get());
     }
 
 }
@@ -14,7 +14,7 @@ class EntityDeadLockCheckerTests {
          */
         ThreadEntityGraph<String> threadEntityGraph = new ThreadEntityGraph<>();
 
-        threadEntityGraph.addThreadEntityAssociation(1, "A");
+        threadEntityGraph.addHoldEdge(1, "A");
         Assertions.assertDoesNotThrow(() -> EntityDeadLockChecker.checkForDeadLock(threadEntityGraph, 1, "A"));
     }
 
@@ -26,9 +26,9 @@ class EntityDeadLockCheckerTests {
          */
         ThreadEntityGraph<String> threadEntityGraph = new ThreadEntityGraph<>();
 
-        threadEntityGraph.addThreadEntityAssociation(1, "C");
-        threadEntityGraph.addThreadEntityAssociation(2, "A");
-        threadEntityGraph.addThreadEntityAssociation(2, "B");
+        threadEntityGraph.addHoldEdge(1, "C");
+        threadEntityGraph.addHoldEdge(2, "A");
+        threadEntityGraph.addHoldEdge(2, "B");
 
         Assertions.assertDoesNotThrow(
                 () -> EntityDeadLockChecker.checkForDeadLock(threadEntityGraph, 1, "A")
@@ -38,14 +38,14 @@ class EntityDeadLockCheckerTests {
     @Test
     void checkDeadLock_T2DeadLockedByT1_shouldPreventDeadLock() {
         /*
-           T1 -----> [A] ------> [B]
+           T1 -----> [A] ------> waiting for 'B'
            T2 -----> [B] -----------> acquiring 'A'
          */
         ThreadEntityGraph<String> threadEntityGraph = new ThreadEntityGraph<>();
 
-        threadEntityGraph.addThreadEntityAssociation(1, "A");
-        threadEntityGraph.addThreadEntityAssociation(1, "B");
-        threadEntityGraph.addThreadEntityAssociation(2, "B");
+        threadEntityGraph.addHoldEdge(1, "A");
+        threadEntityGraph.addWaitEdge(1, "B", LockMode.EXCLUSIVE, null);
+        threadEntityGraph.addHoldEdge(2, "B");
         Assertions.assertThrows(
                 DeadLockPreventionException.class,
                 () -> EntityDeadLockChecker.checkForDeadLock(threadEntityGraph, 2, "A")
@@ -55,24 +55,167 @@ class EntityDeadLockCheckerTests {
     @Test
     void checkT3DeadLockedByT1_shouldPreventDeadLock() {
         /*
-           T1 -----> [A] ------> [C]
-           T2 -----> [B] -----------> [A]
+           T1 -----> [A] ------> waiting for 'C'
+           T2 -----> [B] -----------> waiting for 'A'
            T3 -----> [C] -----------------> acquiring 'A'
          */
         ThreadEntityGraph<String> threadEntityGraph = new ThreadEntityGraph<>();
 
-        threadEntityGraph.addThreadEntityAssociation(1, "A");
-        threadEntityGraph.addThreadEntityAssociation(1, "C");
-        threadEntityGraph.addThreadEntityAssociation(2, "B");
-        threadEntityGraph.addThreadEntityAssociation(2, "A");
+        threadEntityGraph.addHoldEdge(1, "A");
+        threadEntityGraph.addWaitEdge(1, "C", LockMode.EXCLUSIVE, null);
+        threadEntityGraph.addHoldEdge(2, "B");
+        threadEntityGraph.addWaitEdge(2, "A", LockMode.EXCLUSIVE, null);
 
         Assertions.assertDoesNotThrow(() -> EntityDeadLockChecker.checkForDeadLock(threadEntityGraph, 3, "C"));
 
-        threadEntityGraph.addThreadEntityAssociation(3, "C");
+        threadEntityGraph.addHoldEdge(3, "C");
 
         Assertions.assertThrows(
                 DeadLockPreventionException.class,
                 () -> EntityDeadLockChecker.checkForDeadLock(threadEntityGraph, 3, "A")
         );
     }
+
+    @Test
+    void checkDeadLock_T2AndT1SharingEntities_shouldNotPreventDeadLock() {
+        /*
+           T1 -----> [A] (shared) ------> acquiring 'B' shared
+           T2 -----> [B] (shared) ------> waiting for [A] (shared)
+         */
+        ThreadEntityGraph<String> threadEntityGraph = new ThreadEntityGraph<>();
+
+        threadEntityGraph.addHoldEdge(1, "A", LockMode.SHARED);
+        threadEntityGraph.addHoldEdge(2, "B", LockMode.SHARED);
+        threadEntityGraph.addWaitEdge(2, "A", LockMode.SHARED, null);
+
+        Assertions.assertDoesNotThrow(
+                () -> EntityDeadLockChecker.checkForDeadLock(threadEntityGraph, 1, "B", LockMode.SHARED)
+        );
+    }
+
+    @Test
+    void checkDeadLock_T2WaitingExclusivelyForSharedEntity_shouldPreventDeadLock() {
+        /*
+           T1 -----> [A] (shared) ------> acquiring 'B' shared
+           T2 -----> [B] (exclusive) ---> waiting for [A] (exclusive)
+         */
+        ThreadEntityGraph<String> threadEntityGraph = new ThreadEntityGraph<>();
+
+        threadEntityGraph.addHoldEdge(1, "A", LockMode.SHARED);
+        threadEntityGraph.addHoldEdge(2, "B");
+        threadEntityGraph.addWaitEdge(2, "A", LockMode.EXCLUSIVE, null);
+
+        Assertions.assertThrows(
+                DeadLockPreventionException.class,
+                () -> EntityDeadLockChecker.checkForDeadLock(threadEntityGraph, 1, "B", LockMode.SHARED)
+        );
+    }
+
+    @Test
+    void checkDeadLock_T1ReacquiringWhileT2WaitsForSameEntity_shouldNotPreventDeadLock() {
+        /*
+           T1 -----> [A] ------> acquiring 'A' again
+           T2 ------------------> waiting for 'A'
+         */
+        ThreadEntityGraph<String> threadEntityGraph = new ThreadEntityGraph<>();
+
+        threadEntityGraph.addHoldEdge(1, "A");
+        threadEntityGraph.addWaitEdge(2, "A", LockMode.EXCLUSIVE, null);
+
+        Assertions.assertDoesNotThrow(() -> EntityDeadLockChecker.checkForDeadLock(threadEntityGraph, 1, "A"));
+    }
+
+    @Test
+    void checkDeadLock_plainWaiterOfHeldEntity_shouldNotPreventDeadLock() {
+        /*
+           T1 -----> [A] ------> acquiring 'B'
+           T2 -----> [B] ------> waiting for 'C'
+           T3 ------------------> waiting for 'A'
+         */
+        ThreadEntityGraph<String> threadEntityGraph = new ThreadEntityGraph<>();
+
+        threadEntityGraph.addHoldEdge(1, "A");
+        threadEntityGraph.addHoldEdge(2, "B");
+        threadEntityGraph.addWaitEdge(2, "C", LockMode.EXCLUSIVE, null);
+        threadEntityGraph.addWaitEdge(3, "A", LockMode.EXCLUSIVE, null);
+
+        Assertions.assertDoesNotThrow(() -> EntityDeadLockChecker.checkForDeadLock(threadEntityGraph, 1, "B"));
+    }
+
+    @Test
+    void findCycle_fourThreadCycle_shouldReturnThreadsOfCycle() {
+        /*
+           T1 -----> [A] ------> acquiring 'B'
+           T2 -----> [B] ------> waiting for 'C'
+           T3 -----> [C] ------> waiting for 'D'
+           T4 -----> [D] ------> waiting for 'A'
+         */
+        ThreadEntityGraph<String> threadEntityGraph = new ThreadEntityGraph<>();
+
+        threadEntityGraph.addHoldEdge(1, "A");
+        threadEntityGraph.addHoldEdge(2, "B");
+        threadEntityGraph.addWaitEdge(2, "C", LockMode.EXCLUSIVE, null);
+        threadEntityGraph.addHoldEdge(3, "C");
+        threadEntityGraph.addWaitEdge(3, "D", LockMode.EXCLUSIVE, null);
+        threadEntityGraph.addHoldEdge(4, "D");
+
+        Assertions.assertNull(EntityDeadLockChecker.findCycle(threadEntityGraph, 1, "B", LockMode.EXCLUSIVE));
+
+        threadEntityGraph.addWaitEdge(4, "A", LockMode.EXCLUSIVE, null);
+
+        Assertions.assertArrayEquals(
+                new long[]{1, 2, 3, 4},
+                EntityDeadLockChecker.findCycle(threadEntityGraph, 1, "B", LockMode.EXCLUSIVE)
+        );
+    }
+
+    @Test
+    void selectVictim_abortYoungest_shouldSelectLastThreadEnteringTheGraph() {
+        ThreadEntityGraph<String> threadEntityGraph = new ThreadEntityGraph<>();
+
+        threadEntityGraph.addHoldEdge(2, "B");
+        threadEntityGraph.addHoldEdge(3, "C");
+        threadEntityGraph.addHoldEdge(1, "A");
+        long[] cycle = {1, 2, 3};
+
+        Assertions.assertEquals(1, DeadLockPolicy.abortRequester().selectVictim(threadEntityGraph, cycle));
+        Assertions.assertEquals(1, DeadLockPolicy.abortYoungest().selectVictim(threadEntityGraph, cycle));
+
+        threadEntityGraph.removeHoldEdge(3, "C");
+        threadEntityGraph.addHoldEdge(3, "C");
+
+        Assertions.assertEquals(3, DeadLockPolicy.abortYoungest().selectVictim(threadEntityGraph, cycle));
+    }
+
+    @Test
+    void removeHoldEdge_concurrentThreads_shouldLeaveNoEdges() throws InterruptedException {
+        ThreadEntityGraph<Integer> threadEntityGraph = new ThreadEntityGraph<>();
+        Thread[] threads = new Thread[4];
+
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                long threadId = Thread.currentThread().getId();
+                for (int i = 0; i < 10_000; i++) {
+                    threadEntityGraph.addHoldEdge(threadId, i % 8);
+                    threadEntityGraph.addWaitEdge(threadId, (i + 1) % 8, LockMode.SHARED, null);
+                    threadEntityGraph.removeWaitEdge(threadId);
+                    threadEntityGraph.addHoldEdge(threadId, (i + 1) % 8, LockMode.SHARED);
+                    threadEntityGraph.removeHoldEdge(threadId, i % 8);
+                    threadEntityGraph.removeHoldEdge(threadId, (i + 1) % 8);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int entityId = 0; entityId < 8; entityId++) {
+            Assertions.assertEquals(0, threadEntityGraph.getHolders(entityId).length);
+        }
+        for (Thread thread : threads) {
+            Assertions.assertTrue(threadEntityGraph.getHeldEntities(thread.getId()).isEmpty());
+            Assertions.assertEquals(-1L, threadEntityGraph.getAge(thread.getId()));
+        }
+    }
 }
@@ -0,0 +1,102 @@
+package entitylocker;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.awaitLatch;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EntityLockEntryTests {
+
+    @Test
+    void unlock_reentrantAndDowngradedHolds_shouldReturnRemainingHolds() {
+        EntityLockEntry entry = new EntityLockEntry();
+
+        entry.lock(LockMode.EXCLUSIVE);
+        entry.lock(LockMode.EXCLUSIVE);
+        //the exclusive owner may also share the entry
+        entry.lock(LockMode.SHARED);
+        assertEquals(3, entry.getHoldCount());
+        assertFalse(entry.isOnlySharedByCurrentThread());
+
+        assertEquals(2, entry.unlock(LockMode.EXCLUSIVE));
+        assertEquals(1, entry.unlock(LockMode.EXCLUSIVE));
+        assertTrue(entry.isOnlySharedByCurrentThread());
+        assertTrue(entry.isUpgradeBlocked(LockMode.EXCLUSIVE));
+        assertEquals(0, entry.unlock(LockMode.SHARED));
+
+        assertThrows(IllegalMonitorStateException.class, () -> entry.unlock(LockMode.EXCLUSIVE));
+        assertThrows(IllegalMonitorStateException.class, () -> entry.unlock(LockMode.SHARED));
+    }
+
+    @Test
+    void lock_sharedByManyThreads_shouldExcludeExclusiveUntilAllReleased() throws InterruptedException {
+        EntityLockEntry entry = new EntityLockEntry();
+        int sharers = 4;
+        CountDownLatch allSharing = new CountDownLatch(sharers);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger holdCounts = new AtomicInteger(0);
+        Thread[] threads = new Thread[sharers];
+
+        for (int t = 0; t < sharers; t++) {
+            threads[t] = new Thread(() -> {
+                entry.lock(LockMode.SHARED);
+                entry.lock(LockMode.SHARED);
+                holdCounts.addAndGet(entry.getHoldCount());
+                allSharing.countDown();
+                awaitLatch(release);
+                entry.unlock(LockMode.SHARED);
+                entry.unlock(LockMode.SHARED);
+            });
+            threads[t].start();
+        }
+        allSharing.await();
+
+        assertEquals(2 * sharers, holdCounts.get());
+        assertEquals(0, entry.getHoldCount());
+        assertFalse(entry.tryLock(LockMode.EXCLUSIVE, 10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(entry.tryLock(LockMode.EXCLUSIVE, 10, TimeUnit.MILLISECONDS));
+        assertEquals(0, entry.unlock(LockMode.EXCLUSIVE));
+    }
+
+    @Test
+    void tryLockUncontended_sharedWhileExclusiveWaiterQueued_shouldNotPassTheWaiter() throws InterruptedException {
+        EntityLockEntry entry = new EntityLockEntry();
+        AtomicBoolean writerLocked = new AtomicBoolean(false);
+
+        entry.lock(LockMode.SHARED);
+        Thread writer = new Thread(() -> {
+            entry.lock(LockMode.EXCLUSIVE);
+            writerLocked.set(true);
+            entry.unlock(LockMode.EXCLUSIVE);
+        });
+        writer.start();
+        while (!entry.hasQueuedThreads()) {
+            Thread.sleep(1);
+        }
+
+        AtomicBoolean readerLocked = new AtomicBoolean(true);
+        Thread reader = new Thread(() -> readerLocked.set(entry.tryLockUncontended(LockMode.SHARED)));
+        reader.start();
+        reader.join();
+        assertFalse(readerLocked.get());
+        //a reentrant shared hold does not wait for the queued writer
+        assertTrue(entry.tryLockUncontended(LockMode.SHARED));
+
+        entry.unlock(LockMode.SHARED);
+        entry.unlock(LockMode.SHARED);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        assertTrue(writerLocked.get());
+    }
+}
@@ -0,0 +1,173 @@
+package entitylocker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.awaitLatch;
+import static entitylocker.TestSupport.executeWithGlobalExclusiveAccess;
+import static entitylocker.TestSupport.join;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EntitySerialExecutorTests {
+    private EntityLocker<Integer> entityLocker;
+    private ExecutorService pool;
+    private EntitySerialExecutorImpl<Integer> serialExecutor;
+
+    @BeforeEach
+    void setup() {
+        entityLocker = new ReentrantEntityLockerImpl<>();
+        pool = Executors.newFixedThreadPool(4);
+        serialExecutor = new EntitySerialExecutorImpl<>(entityLocker, pool);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void submit_tasksOfSameEntity_shouldRunOneAtATimeInOrder() throws Exception {
+        int entities = 8;
+        int tasksPerEntity = 2_000;
+        AtomicInteger[] running = new AtomicInteger[entities];
+        List<List<Integer>> executionOrder = new ArrayList<>();
+        AtomicBoolean overlapped = new AtomicBoolean(false);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+        for (int entityId = 0; entityId < entities; entityId++) {
+            running[entityId] = new AtomicInteger(0);
+            executionOrder.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < tasksPerEntity; i++) {
+            for (int entityId = 0; entityId < entities; entityId++) {
+                int id = entityId;
+                int sequence = i;
+                results.add(serialExecutor.submit(id, () -> {
+                    if (running[id].incrementAndGet() > 1) {
+                        overlapped.set(true);
+                    }
+                    executionOrder.get(id).add(sequence);
+                    running[id].decrementAndGet();
+                    return sequence;
+                }).toCompletableFuture());
+            }
+        }
+
+        CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        assertFalse(overlapped.get());
+        for (List<Integer> order : executionOrder) {
+            assertEquals(tasksPerEntity, order.size());
+            for (int i = 0; i < tasksPerEntity; i++) {
+                assertEquals(i, order.get(i));
+            }
+        }
+        assertMailboxesReclaimed();
+    }
+
+    @Test
+    void submit_duringGlobalExclusiveAccess_shouldWaitForGlobalLockRelease() throws Exception {
+        CountDownLatch globalLocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread globalHolder = new Thread(() -> {
+            try {
+                entityLocker.executeWithGlobalExclusiveAccess(() -> {
+                    globalLocked.countDown();
+                    awaitLatch(release);
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        globalHolder.start();
+        globalLocked.await();
+
+        CompletableFuture<String> result = serialExecutor.submit(1, () -> "done").toCompletableFuture();
+        Thread.sleep(50);
+        assertFalse(result.isDone());
+
+        release.countDown();
+        assertEquals("done", result.get(5, TimeUnit.SECONDS));
+        globalHolder.join();
+    }
+
+    @Test
+    void submit_moreMailboxesThanThreadsDuringGlobalExclusiveAccess_shouldNotBlockExecutorThreads() throws Exception {
+        CountDownLatch globalLocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+
+        Thread globalHolder = new Thread(() -> executeWithGlobalExclusiveAccess(entityLocker, () -> {
+            globalLocked.countDown();
+            awaitLatch(release);
+        }));
+        globalHolder.start();
+        globalLocked.await();
+
+        for (int entityId = 0; entityId < 16; entityId++) {
+            int id = entityId;
+            results.add(serialExecutor.submit(id, () -> id).toCompletableFuture());
+        }
+
+        //the drains retry later instead of parking the 4 threads of the pool
+        assertEquals("free", pool.submit(() -> "free").get(5, TimeUnit.SECONDS));
+        assertFalse(results.stream().anyMatch(CompletableFuture::isDone));
+
+        release.countDown();
+        for (int entityId = 0; entityId < 16; entityId++) {
+            assertEquals(entityId, results.get(entityId).get(5, TimeUnit.SECONDS));
+        }
+        join(globalHolder);
+        assertMailboxesReclaimed();
+    }
+
+    @Test
+    void submit_failingTask_shouldCompleteExceptionallyAndRunNextTasks() throws Exception {
+        CompletableFuture<Object> failed = serialExecutor.submit(1, () -> {
+            throw new IllegalStateException("failure");
+        }).toCompletableFuture();
+        CompletableFuture<String> next = serialExecutor.submit(1, () -> "next").toCompletableFuture();
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, exception.getCause());
+        assertEquals("next", next.get(5, TimeUnit.SECONDS));
+        assertMailboxesReclaimed();
+    }
+
+    @Test
+    void submit_rejectedByExecutor_shouldCompleteExceptionally() throws Exception {
+        pool.shutdown();
+
+        CompletableFuture<String> rejected = serialExecutor.submit(1, () -> "never").toCompletableFuture();
+
+        ExecutionException exception = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, exception.getCause());
+        assertEquals(0, serialExecutor.size());
+    }
+
+    private void assertMailboxesReclaimed() throws InterruptedException {
+        //the last drain closes the mailbox right after completing the last task
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (serialExecutor.size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(0, serialExecutor.size());
+    }
+}
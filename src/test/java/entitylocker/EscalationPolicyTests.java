@@ -0,0 +1,129 @@
+package entitylocker;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.sleep;
+import static entitylocker.TestSupport.tryEntityAccess;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EscalationPolicyTests {
+    @Test
+    void fixed_thresholdExceeded_shouldCountEscalation() {
+        EscalationPolicy escalationPolicy = EscalationPolicy.fixed(2);
+        EntityLocker<Integer> entityLocker = ReentrantEntityLockerImpl.withEscalationPolicy(escalationPolicy);
+
+        lockNested(entityLocker, 3);
+
+        assertEquals(1, escalationPolicy.getEscalations());
+    }
+
+    @Test
+    void fixed_nonPositiveThreshold_shouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> EscalationPolicy.fixed(0));
+    }
+
+    @Test
+    void withEscalationPolicy_policyOfAnotherLocker_shouldThrow() {
+        EscalationPolicy escalationPolicy = EscalationPolicy.fixed(2);
+        ReentrantEntityLockerImpl.withEscalationPolicy(escalationPolicy);
+
+        assertThrows(IllegalStateException.class, () -> ReentrantEntityLockerImpl.withEscalationPolicy(escalationPolicy));
+        assertThrows(IllegalStateException.class, () -> new ReentrantIntEntityLockerImpl(escalationPolicy));
+
+        //the never escalating policy keeps no state
+        ReentrantEntityLockerImpl.withEscalationPolicy(EscalationPolicy.never());
+        ReentrantEntityLockerImpl.withEscalationPolicy(EscalationPolicy.never());
+    }
+
+    @Test
+    void adaptive_noOtherActiveThread_shouldEscalateAtMinThreshold() {
+        EscalationPolicy escalationPolicy = EscalationPolicy.adaptive(2, 100, 1_000_000L);
+        EntityLocker<Integer> entityLocker = ReentrantEntityLockerImpl.withEscalationPolicy(escalationPolicy);
+
+        lockNested(entityLocker, 3);
+
+        assertEquals(1, escalationPolicy.getEscalations());
+        assertEquals(2, escalationPolicy.getThreshold());
+    }
+
+    @Test
+    void adaptive_otherActiveThread_shouldNotEscalateBelowThreshold() throws InterruptedException {
+        EscalationPolicy escalationPolicy = EscalationPolicy.adaptive(2, 100, 1_000_000L);
+        EntityLocker<Integer> entityLocker = ReentrantEntityLockerImpl.withEscalationPolicy(escalationPolicy);
+
+        whileOtherThreadHolds(entityLocker, Arrays.asList(-1), () -> lockNested(entityLocker, 3));
+
+        assertEquals(0, escalationPolicy.getEscalations());
+        assertEquals(100, escalationPolicy.getThreshold());
+    }
+
+    @Test
+    void adaptive_aboveMaxThreshold_shouldAlwaysEscalate() throws InterruptedException {
+        EscalationPolicy escalationPolicy = EscalationPolicy.adaptive(2, 3, 1_000_000L);
+        EntityLocker<Integer> entityLocker = ReentrantEntityLockerImpl.withEscalationPolicy(escalationPolicy);
+
+        whileOtherThreadHolds(entityLocker, Arrays.asList(-1), () -> lockNested(entityLocker, 4));
+
+        assertEquals(1, escalationPolicy.getEscalations());
+    }
+
+    @Test
+    void adaptive_lockTableOverBudget_shouldEscalateAtMinThreshold() throws InterruptedException {
+        EscalationPolicy escalationPolicy = EscalationPolicy.adaptive(2, 100, 3L);
+        EntityLocker<Integer> entityLocker = ReentrantEntityLockerImpl.withEscalationPolicy(escalationPolicy);
+
+        //the entries of '-1', '0' and '1' fill the budget
+        whileOtherThreadHolds(entityLocker, Arrays.asList(-1), () -> lockNested(entityLocker, 3));
+
+        assertEquals(1, escalationPolicy.getEscalations());
+        assertEquals(2, escalationPolicy.getThreshold());
+    }
+
+    @Test
+    void adaptive_contendedTimedAccess_shouldCountInContentionRate() throws InterruptedException {
+        EscalationPolicy escalationPolicy = EscalationPolicy.adaptive(2, 100, 1_000_000L);
+        EntityLocker<Integer> entityLocker = ReentrantEntityLockerImpl.withEscalationPolicy(escalationPolicy);
+
+        //the other thread holds '-1' for 200 milliseconds, the timed accesses wait for it longer than a refresh period
+        whileOtherThreadHolds(entityLocker, Arrays.asList(-1),
+                () -> assertTrue(tryEntityAccess(entityLocker, -1) || tryEntityAccess(entityLocker, -1)));
+        lockNested(entityLocker, 3);
+
+        assertTrue(escalationPolicy.getContentionRate() > 0);
+    }
+
+    private void lockNested(EntityLocker<Integer> entityLocker, int entities) {
+        lockNested(entityLocker, 0, entities);
+    }
+
+    private void lockNested(EntityLocker<Integer> entityLocker, int entityId, int entities) {
+        if (entityId < entities) {
+            entityLocker.executeWithEntityExclusiveAccess(entityId, () -> lockNested(entityLocker, entityId + 1, entities));
+        }
+    }
+
+    /*
+     * The other thread releases its entities after a while, so the current thread may escalate meanwhile
+     */
+    private void whileOtherThreadHolds(EntityLocker<Integer> entityLocker, List<Integer> entityIds, ProtectedCode protectedCode) throws InterruptedException {
+        CountDownLatch holding = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> entityLocker.executeWithEntitiesExclusiveAccess(entityIds, () -> {
+            holding.countDown();
+            sleep(200);
+        }));
+        holder.start();
+        holding.await();
+
+        protectedCode.run();
+        holder.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(holder.isAlive());
+    }
+}
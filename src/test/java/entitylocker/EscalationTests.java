@@ -1,15 +1,19 @@
 package entitylocker;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
-class EscalationTests {
+import static entitylocker.TestSupport.NO_OP;
+import static entitylocker.TestSupport.executeWithGlobalExclusiveAccess;
 
-    private static final ProtectedCode NO_OP = () -> {
-    };
+class EscalationTests {
 
     @Test
     void executeWithEntityLock_multipleDistinctEntityLocksWithinSameThread_entityLockLevelShouldEscalate() throws InterruptedException {
@@ -93,7 +97,7 @@ class EscalationTests {
             executeWithEntityLockAndWithLockTimeout(entityLocker, 1,
                     () -> executeWithEntityLockAndWithLockTimeout(entityLocker, 2,
                             () -> executeWithEntityLockAndWithLockTimeout(entityLocker, 3,
-                                    () -> executeWithGlobalLock(entityLocker, slowTask(latch)))
+                                    () -> executeWithGlobalExclusiveAccess(entityLocker, slowTask(latch)))
                     )
             );
         };
@@ -130,7 +134,7 @@ class EscalationTests {
             entityLocker.executeWithEntityExclusiveAccess( 1,
                     () -> {
                         entityLocker.executeWithEntityExclusiveAccess( 2,
-                                () -> executeWithGlobalLock(entityLocker,
+                                () -> executeWithGlobalExclusiveAccess(entityLocker,
                                         () -> entityLocker.executeWithEntityExclusiveAccess(3, () -> {}))
                         );
 
@@ -162,6 +166,81 @@ class EscalationTests {
         Assertions.assertFalse(acquiredLock.get());
     }
 
+    @Test
+    void executeWithGlobalLock_nestedInLargeBatch_shouldDeEscalateToEntityLocks() throws InterruptedException {
+        EntityLocker<Integer> entityLocker = new ReentrantEntityLockerImpl<>();
+        List<Integer> batch = IntStream.range(0, 50_000).boxed().collect(Collectors.toList());
+        AtomicBoolean otherEntityAccessed = new AtomicBoolean(false);
+
+        entityLocker.executeWithEntitiesExclusiveAccess(batch, () -> {
+            executeWithGlobalExclusiveAccess(entityLocker, () -> executeWithGlobalExclusiveAccess(entityLocker, NO_OP));
+
+            //the batch holds its entities only once the global accesses ended
+            Thread thread = new Thread(() -> {
+                try {
+                    otherEntityAccessed.set(entityLocker.executeWithEntityExclusiveAccess(-1, NO_OP, 1, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        Assertions.assertTrue(otherEntityAccessed.get());
+        Assertions.assertTrue(entityLocker.executeWithGlobalExclusiveAccess(NO_OP, 1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void executeWithEntitiesLockTimeout_escalationTimesOut_shouldReturnFalseAndRestoreReadHolds() throws InterruptedException {
+        EntityLocker<String> entityLocker = new ReentrantEntityLockerImpl<>(2);
+        CountDownLatch otherLocked = new CountDownLatch(1);
+        CountDownLatch releaseOther = new CountDownLatch(1);
+
+        //the global read lock held by this thread makes the escalation time out
+        Thread otherThread = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess("z", () -> {
+            otherLocked.countDown();
+            try {
+                releaseOther.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        otherThread.start();
+        otherLocked.await();
+
+        AtomicBoolean batchLocked = new AtomicBoolean(true);
+        AtomicBoolean globalLockedByOtherThread = new AtomicBoolean(true);
+        entityLocker.executeWithEntityExclusiveAccess("x", () -> {
+            try {
+                batchLocked.set(entityLocker.executeWithEntitiesExclusiveAccess(Arrays.asList("a", "b", "c"), NO_OP, 50, TimeUnit.MILLISECONDS));
+                releaseOther.countDown();
+                otherThread.join();
+
+                //'x' holds the global read lock again
+                Thread globalLockThread = new Thread(() -> {
+                    try {
+                        globalLockedByOtherThread.set(entityLocker.executeWithGlobalExclusiveAccess(NO_OP, 50, TimeUnit.MILLISECONDS));
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+                globalLockThread.start();
+                globalLockThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        Assertions.assertFalse(batchLocked.get());
+        Assertions.assertFalse(globalLockedByOtherThread.get());
+        Assertions.assertTrue(entityLocker.executeWithGlobalExclusiveAccess(NO_OP, 1, TimeUnit.SECONDS));
+    }
+
     private ProtectedCode slowTask(CountDownLatch latch) {
         return () -> {
             try {
@@ -173,14 +252,6 @@ class EscalationTests {
         };
     }
 
-    private void executeWithGlobalLock(EntityLocker<Integer> entityLocker, ProtectedCode protectedCode) {
-        try {
-            entityLocker.executeWithGlobalExclusiveAccess(protectedCode);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
     private void executeWithEntityLockAndWithLockTimeout(EntityLocker<Integer> entityLocker, int entityId, ProtectedCode protectedCode) {
         try {
             entityLocker.executeWithEntityExclusiveAccess(entityId, protectedCode, 5, TimeUnit.MILLISECONDS);
@@ -0,0 +1,189 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.NO_OP;
+import static entitylocker.TestSupport.awaitLatch;
+import static entitylocker.TestSupport.countDeadLock;
+import static entitylocker.TestSupport.join;
+import static entitylocker.TestSupport.runInOtherThread;
+import static entitylocker.TestSupport.sleep;
+import static entitylocker.TestSupport.tryEntityAccess;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupLockTests {
+    private GroupedEntityLocker<String, String> entityLocker;
+
+    @BeforeEach
+    void setup() {
+        //entity ids are "tenant:key"
+        entityLocker = ReentrantEntityLockerImpl.grouped(entityId -> entityId.substring(0, entityId.indexOf(':')));
+    }
+
+    @Test
+    void executeWithGroupExclusiveAccess_shouldOnlyBlockEntitiesOfTheGroup() throws InterruptedException {
+        AtomicBoolean sameGroupAccessed = new AtomicBoolean(true);
+        AtomicBoolean otherGroupAccessed = new AtomicBoolean(false);
+
+        entityLocker.executeWithGroupExclusiveAccess("t1", () -> runInOtherThread(() -> {
+            sameGroupAccessed.set(tryEntityAccess(entityLocker, "t1:a"));
+            otherGroupAccessed.set(tryEntityAccess(entityLocker, "t2:a"));
+        }));
+
+        assertFalse(sameGroupAccessed.get());
+        assertTrue(otherGroupAccessed.get());
+    }
+
+    @Test
+    void executeWithGroupExclusiveAccess_entityOfGroupHeld_shouldWaitForIt() throws InterruptedException {
+        AtomicBoolean groupAccessed = new AtomicBoolean(true);
+
+        entityLocker.executeWithEntityExclusiveAccess("t1:a", () -> runInOtherThread(() -> {
+            try {
+                groupAccessed.set(entityLocker.executeWithGroupExclusiveAccess("t1", NO_OP, 100, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        assertFalse(groupAccessed.get());
+        assertTrue(entityLocker.executeWithGroupExclusiveAccess("t1", NO_OP, 1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void executeWithGroupSharedAccess_shouldLetEntitiesOfTheGroupBeReadOnly() throws InterruptedException {
+        AtomicBoolean read = new AtomicBoolean(false);
+        AtomicBoolean written = new AtomicBoolean(true);
+        AtomicBoolean groupShared = new AtomicBoolean(false);
+
+        entityLocker.executeWithGroupSharedAccess("t1", () -> runInOtherThread(() -> {
+            try {
+                read.set(entityLocker.executeWithEntitySharedAccess("t1:a", NO_OP, 100, TimeUnit.MILLISECONDS));
+                written.set(entityLocker.executeWithEntityExclusiveAccess("t1:a", NO_OP, 100, TimeUnit.MILLISECONDS));
+                groupShared.set(entityLocker.executeWithGroupSharedAccess("t1", NO_OP, 100, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        assertTrue(read.get());
+        assertFalse(written.get());
+        assertTrue(groupShared.get());
+    }
+
+    @Test
+    void executeWithGroupExclusiveAccess_nestedEntityAccesses_shouldBeReentrant() {
+        AtomicInteger accesses = new AtomicInteger(0);
+
+        entityLocker.executeWithGroupExclusiveAccess("t1", () -> entityLocker.executeWithEntitiesExclusiveAccess(
+                Arrays.asList("t1:a", "t1:b", "t2:a"),
+                () -> entityLocker.executeWithEntitySharedAccess("t1:a", accesses::incrementAndGet)));
+
+        assertEquals(1, accesses.get());
+    }
+
+    @Test
+    void executeWithGroupExclusiveAccess_entityOfGroupHeldByCurrentThread_shouldNotBeUpgraded() {
+        AtomicBoolean groupAccessed = new AtomicBoolean(false);
+
+        entityLocker.executeWithEntitySharedAccess("t1:a", () -> {
+            assertThrows(DeadLockPreventionException.class, () -> entityLocker.executeWithGroupExclusiveAccess("t1", () -> groupAccessed.set(true)));
+            assertThrows(DeadLockPreventionException.class, () -> entityLocker.executeWithGroupSharedAccess("t1", () -> groupAccessed.set(true)));
+            //intention shared upgraded to intention exclusive
+            entityLocker.executeWithEntityExclusiveAccess("t1:b", NO_OP);
+        });
+
+        assertFalse(groupAccessed.get());
+    }
+
+    @Test
+    void executeWithGroupExclusiveAccess_waitingGroupAccess_shouldNotBePassedByNewEntityAccesses() throws InterruptedException {
+        CountDownLatch groupWaiting = new CountDownLatch(1);
+        AtomicBoolean groupAccessed = new AtomicBoolean(false);
+        AtomicBoolean newEntityAccessed = new AtomicBoolean(true);
+
+        Thread groupThread = new Thread(() -> {
+            groupWaiting.countDown();
+            entityLocker.executeWithGroupExclusiveAccess("t1", () -> groupAccessed.set(true));
+        });
+
+        entityLocker.executeWithEntityExclusiveAccess("t1:a", () -> {
+            groupThread.start();
+            awaitLatch(groupWaiting);
+            sleep(100);
+            runInOtherThread(() -> newEntityAccessed.set(tryEntityAccess(entityLocker, "t1:b")));
+        });
+        groupThread.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertFalse(newEntityAccessed.get());
+        assertTrue(groupAccessed.get());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_deadLockThroughGroup_shouldBeDetected() throws InterruptedException {
+        /*
+           T1 -----> [t1:a] ------> waiting for group 't2'
+           T2 -----> [t2]   ------> waiting for 't1:a'
+         */
+        CountDownLatch bothHolding = new CountDownLatch(2);
+        AtomicInteger deadLocks = new AtomicInteger(0);
+        AtomicInteger completed = new AtomicInteger(0);
+
+        Thread thread1 = new Thread(() -> countDeadLock(deadLocks, () -> entityLocker.executeWithEntityExclusiveAccess("t1:a", () -> {
+            bothHolding.countDown();
+            awaitLatch(bothHolding);
+            entityLocker.executeWithEntityExclusiveAccess("t2:a", completed::incrementAndGet);
+        })));
+        Thread thread2 = new Thread(() -> countDeadLock(deadLocks, () -> entityLocker.executeWithGroupExclusiveAccess("t2", () -> {
+            bothHolding.countDown();
+            awaitLatch(bothHolding);
+            entityLocker.executeWithEntityExclusiveAccess("t1:a", completed::incrementAndGet);
+        })));
+        thread1.start();
+        thread2.start();
+
+        thread1.join(TimeUnit.SECONDS.toMillis(10));
+        thread2.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(thread1.isAlive());
+        assertFalse(thread2.isAlive());
+        assertEquals(1, deadLocks.get());
+        assertEquals(1, completed.get());
+    }
+
+    @Test
+    void executeWithOptimisticRead_groupExclusivelyHeld_shouldFallBackToSharedAccess() throws InterruptedException {
+        AtomicInteger reads = new AtomicInteger(0);
+        AtomicBoolean readCompleted = new AtomicBoolean(true);
+
+        entityLocker.executeWithGroupExclusiveAccess("t1", () -> runInOtherThread(() -> {
+            Thread reader = new Thread(() -> entityLocker.executeWithOptimisticRead("t1:a", reads::incrementAndGet));
+            reader.start();
+            join(reader, 100);
+            readCompleted.set(!reader.isAlive());
+        }));
+
+        //the optimistic attempt ran, its result was discarded and the shared access waited for the group
+        assertFalse(readCompleted.get());
+    }
+
+    @Test
+    void lockMode_intentionModes_shouldFollowCompatibilityMatrix() {
+        assertFalse(LockMode.INTENTION_SHARED.conflictsWith(LockMode.INTENTION_EXCLUSIVE));
+        assertFalse(LockMode.INTENTION_SHARED.conflictsWith(LockMode.SHARED));
+        assertTrue(LockMode.INTENTION_SHARED.conflictsWith(LockMode.EXCLUSIVE));
+        assertFalse(LockMode.INTENTION_EXCLUSIVE.conflictsWith(LockMode.INTENTION_EXCLUSIVE));
+        assertTrue(LockMode.INTENTION_EXCLUSIVE.conflictsWith(LockMode.SHARED));
+        assertTrue(LockMode.SHARED.conflictsWith(LockMode.INTENTION_EXCLUSIVE));
+        assertFalse(LockMode.SHARED.conflictsWith(LockMode.SHARED));
+    }
+}
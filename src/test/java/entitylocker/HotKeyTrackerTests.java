@@ -0,0 +1,127 @@
+package entitylocker;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.sleep;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HotKeyTrackerTests {
+    private static final long HOLD_MILLIS = 50;
+
+    @Test
+    void spaceSavingSummary_heavyHittersAmongManyKeys_shouldBeMonitoredWithBoundedError() {
+        SpaceSavingSummary summary = new SpaceSavingSummary(10);
+        //keys 0 and 1 take a third and a sixth of the stream, 10000 other keys appear once each
+        for (int i = 0; i < 10_000; i++) {
+            summary.add("cold-" + i, 1);
+            if (i % 2 == 0) {
+                summary.add("hot-0", 1);
+                summary.add("hot-0", 1);
+                summary.add("hot-1", 1);
+            }
+        }
+
+        List<SpaceSavingSummary.Estimate> top = summary.top(2);
+        assertEquals("hot-0", top.get(0).key);
+        assertEquals("hot-1", top.get(1).key);
+        assertTrue(top.get(0).count >= 10_000 && top.get(0).count - top.get(0).error <= 10_000);
+        assertTrue(top.get(1).count >= 5_000 && top.get(1).count - top.get(1).error <= 5_000);
+    }
+
+    @Test
+    void hotKeyTracker_contendedEntity_shouldRankFirstByWaitCountAndTime() throws InterruptedException {
+        ReentrantEntityLockerImpl<String> entityLocker = new ReentrantEntityLockerImpl<>();
+        HotKeyTracker hotKeyTracker = HotKeyTracker.create(16, 1);
+        entityLocker.setHotKeyTracker(hotKeyTracker);
+
+        contend(3, held -> holdFor(entityLocker, "hot", held), () -> entityLocker.executeWithEntityExclusiveAccess("hot", () -> {
+        }));
+        contend(1, held -> holdFor(entityLocker, "warm", held), () -> entityLocker.executeWithEntitySharedAccess("warm", () -> {
+        }));
+        //uncontended acquisitions are not tracked
+        entityLocker.executeWithEntityExclusiveAccess("cold", () -> {
+        });
+
+        List<HotKeyTracker.HotKey> byWaitCount = hotKeyTracker.getTopByWaitCount(10);
+        assertEquals(2, byWaitCount.size());
+        assertEquals("hot", byWaitCount.get(0).getEntityId());
+        assertEquals(3, byWaitCount.get(0).getWaitCount());
+        assertEquals(0, byWaitCount.get(0).getError());
+        assertEquals("warm", byWaitCount.get(1).getEntityId());
+
+        HotKeyTracker.HotKey hottest = hotKeyTracker.getTopByWaitTime(1).get(0);
+        assertEquals("hot", hottest.getEntityId());
+        assertTrue(hottest.getWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(3 * 10));
+
+        hotKeyTracker.reset();
+        assertTrue(hotKeyTracker.getTopByWaitCount(10).isEmpty());
+    }
+
+    @Test
+    void hotKeyTracker_longLocker_shouldReportBoxedIds() throws InterruptedException {
+        ReentrantLongEntityLockerImpl entityLocker = new ReentrantLongEntityLockerImpl();
+        HotKeyTracker hotKeyTracker = HotKeyTracker.create(4, 1);
+        entityLocker.setHotKeyTracker(hotKeyTracker);
+
+        contend(2, held -> entityLocker.executeWithEntityExclusiveAccess(1_000_000L, () -> {
+            held.countDown();
+            sleep(HOLD_MILLIS);
+        }), () -> entityLocker.executeWithEntityExclusiveAccess(1_000_000L, () -> {
+        }));
+
+        HotKeyTracker.HotKey hottest = hotKeyTracker.getTopByWaitCount(1).get(0);
+        assertEquals(1_000_000L, hottest.getEntityId());
+        assertEquals(2, hottest.getWaitCount());
+    }
+
+    @Test
+    void create_invalidArguments_shouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> HotKeyTracker.create(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> HotKeyTracker.create(1, 0));
+    }
+
+    @Test
+    void setHotKeyTracker_trackerOfAnotherLocker_shouldThrow() {
+        ReentrantEntityLockerImpl<String> entityLocker = new ReentrantEntityLockerImpl<>();
+        HotKeyTracker hotKeyTracker = HotKeyTracker.create(4, 1);
+        entityLocker.setHotKeyTracker(hotKeyTracker);
+        entityLocker.setHotKeyTracker(hotKeyTracker);
+
+        assertThrows(IllegalStateException.class, () -> new ReentrantEntityLockerImpl<String>().setHotKeyTracker(hotKeyTracker));
+        assertSame(hotKeyTracker, entityLocker.getHotKeyTracker());
+    }
+
+    /*
+     * Runs the holder, then the waiters once the holder counted down the latch from its protected code
+     */
+    private static void contend(int waiters, Consumer<CountDownLatch> holder, Runnable waiter) throws InterruptedException {
+        CountDownLatch held = new CountDownLatch(1);
+        Thread holderThread = new Thread(() -> holder.accept(held));
+        holderThread.start();
+        held.await();
+
+        Thread[] waiterThreads = new Thread[waiters];
+        for (int i = 0; i < waiters; i++) {
+            waiterThreads[i] = new Thread(waiter);
+            waiterThreads[i].start();
+        }
+        holderThread.join();
+        for (Thread waiterThread : waiterThreads) {
+            waiterThread.join();
+        }
+    }
+
+    private static void holdFor(EntityLocker<String> entityLocker, String entityId, CountDownLatch held) {
+        entityLocker.executeWithEntityExclusiveAccess(entityId, () -> {
+            held.countDown();
+            sleep(HOLD_MILLIS);
+        });
+    }
+}
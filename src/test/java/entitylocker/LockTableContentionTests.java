@@ -0,0 +1,104 @@
+package entitylocker;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.awaitLatch;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LockTableContentionTests {
+    //"Aa" and "BB" have the same hash code, so both entities fall into the same hash bin of the lock table
+    private static final String HOT_ENTITY = "Aa";
+    private static final String COLLIDING_ENTITY = "BB";
+
+    private static final int DISJOINT_OPERATIONS = 10_000;
+    private static final int HOT_ENTITY_WAITERS = 4;
+
+    @Test
+    void executeWithEntityExclusiveAccess_hotEntityWithWaiters_disjointEntitiesShouldNotBeBlocked() throws InterruptedException {
+        EntityLocker<String> entityLocker = new ReentrantEntityLockerImpl<>();
+        CountDownLatch hotEntityLocked = new CountDownLatch(1);
+        CountDownLatch releaseHotEntity = new CountDownLatch(1);
+        AtomicInteger hotEntityExecutions = new AtomicInteger(0);
+
+        Thread holder = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(HOT_ENTITY, () -> {
+            hotEntityLocked.countDown();
+            awaitLatch(releaseHotEntity);
+            hotEntityExecutions.incrementAndGet();
+        }));
+        holder.start();
+        hotEntityLocked.await();
+
+        Thread[] waiters = new Thread[HOT_ENTITY_WAITERS];
+        for (int i = 0; i < waiters.length; i++) {
+            waiters[i] = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(HOT_ENTITY, hotEntityExecutions::incrementAndGet));
+            waiters[i].start();
+        }
+
+        //give the waiters time to queue on the hot entity
+        Thread.sleep(100);
+
+        AtomicInteger disjointExecutions = new AtomicInteger(0);
+        try {
+            //the hot entity is still locked, disjoint entities (even the ones in the same hash bin) must make progress
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                for (int i = 0; i < DISJOINT_OPERATIONS; i++) {
+                    String entityId = i % 2 == 0 ? COLLIDING_ENTITY : "entity-" + i;
+                    assertTrue(entityLocker.executeWithEntityExclusiveAccess(entityId, disjointExecutions::incrementAndGet, 1, TimeUnit.SECONDS));
+                }
+            });
+        } finally {
+            releaseHotEntity.countDown();
+            holder.join();
+            for (Thread waiter : waiters) {
+                waiter.join();
+            }
+        }
+
+        assertEquals(DISJOINT_OPERATIONS, disjointExecutions.get());
+        assertEquals(HOT_ENTITY_WAITERS + 1, hotEntityExecutions.get());
+    }
+
+    @Test
+    void retainAndReleaseEntry_withWaitersAndTimeouts_entriesShouldBeReclaimed() throws InterruptedException {
+        ReentrantEntityLock<String> entityLock = new ReentrantEntityLock<>();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> {
+            EntityLockEntry entry = entityLock.retainEntry(HOT_ENTITY);
+            entry.lock();
+            locked.countDown();
+            awaitLatch(release);
+            entry.unlock();
+            entityLock.releaseEntry(HOT_ENTITY);
+        });
+        holder.start();
+        locked.await();
+
+        //timed out waiter must not leak its reference
+        EntityLockEntry entry = entityLock.retainEntry(HOT_ENTITY);
+        assertFalse(entry.tryLock(10, TimeUnit.MILLISECONDS));
+        entityLock.releaseEntry(HOT_ENTITY);
+
+        Thread waiter = new Thread(() -> {
+            EntityLockEntry waiterEntry = entityLock.retainEntry(HOT_ENTITY);
+            waiterEntry.lock();
+            waiterEntry.unlock();
+            entityLock.releaseEntry(HOT_ENTITY);
+        });
+        waiter.start();
+
+        release.countDown();
+        holder.join();
+        waiter.join();
+
+        assertEquals(0, entityLock.size());
+    }
+}
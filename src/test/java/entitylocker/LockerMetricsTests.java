@@ -0,0 +1,161 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.awaitLatch;
+import static entitylocker.TestSupport.sleep;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LockerMetricsTests {
+
+    @Test
+    void metrics_disabledByDefault_shouldRecordNothing() throws InterruptedException {
+        ReentrantEntityLockerImpl<Integer> entityLocker = new ReentrantEntityLockerImpl<>();
+
+        entityLocker.executeWithEntityExclusiveAccess(1, () -> {
+        });
+        entityLocker.executeWithGlobalExclusiveAccess(() -> {
+        });
+
+        LockerMetrics.Snapshot snapshot = entityLocker.getMetrics().snapshot();
+        assertFalse(entityLocker.getMetrics().isEnabled());
+        assertEquals(0, snapshot.getAcquisitions());
+        assertEquals(0, snapshot.getHoldTimes().getCount());
+        assertEquals(0, snapshot.getGlobalHoldTimes().getCount());
+    }
+
+    @Test
+    void metrics_contendedAccess_shouldRecordWaitAndHoldTimes() throws InterruptedException {
+        ReentrantEntityLockerImpl<Integer> entityLocker = new ReentrantEntityLockerImpl<>();
+        entityLocker.getMetrics().enable();
+        CountDownLatch holding = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(1, () -> {
+            holding.countDown();
+            sleep(50);
+        }));
+        holder.start();
+        holding.await();
+        entityLocker.executeWithEntityExclusiveAccess(1, () -> {
+        });
+        holder.join();
+
+        LockerMetrics.Snapshot snapshot = entityLocker.getMetrics().snapshot();
+        assertEquals(2, snapshot.getAcquisitions());
+        assertEquals(1, snapshot.getContendedAcquisitions());
+        assertEquals(1, snapshot.getWaitTimes().getCount());
+        assertTrue(snapshot.getWaitTimes().getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(2, snapshot.getHoldTimes().getCount());
+        assertTrue(snapshot.getHoldTimes().getPercentileNanos(100) >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    void metrics_timeoutsAbortsAndEscalations_shouldBeCounted() throws InterruptedException {
+        ReentrantEntityLockerImpl<Integer> entityLocker = new ReentrantEntityLockerImpl<>(2);
+        entityLocker.getMetrics().enable();
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(1, () -> {
+            holding.countDown();
+            awaitLatch(release);
+        }));
+        holder.start();
+        holding.await();
+        assertFalse(entityLocker.executeWithEntityExclusiveAccess(1, () -> {
+        }, 10, TimeUnit.MILLISECONDS));
+        release.countDown();
+        holder.join();
+
+        assertThrows(DeadLockPreventionException.class, () -> entityLocker.executeWithEntitySharedAccess(2,
+                () -> entityLocker.executeWithEntityExclusiveAccess(2, () -> {
+                })));
+        entityLocker.executeWithEntitiesExclusiveAccess(Arrays.asList(3, 4, 5), () -> {
+        });
+
+        LockerMetrics.Snapshot snapshot = entityLocker.getMetrics().snapshot();
+        assertEquals(1, snapshot.getTimeouts());
+        assertEquals(1, snapshot.getDeadLockAborts());
+        assertEquals(1, snapshot.getEscalations());
+    }
+
+    @Test
+    void metrics_escalationTimeout_shouldBeCounted() throws InterruptedException {
+        ReentrantEntityLockerImpl<Integer> entityLocker = new ReentrantEntityLockerImpl<>(2);
+        entityLocker.getMetrics().enable();
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(-1, () -> {
+            holding.countDown();
+            awaitLatch(release);
+        }));
+        holder.start();
+        holding.await();
+        //the global read lock of the holder makes the escalation of the batch time out
+        assertFalse(entityLocker.executeWithEntitiesExclusiveAccess(Arrays.asList(1, 2, 3), () -> {
+        }, 50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        holder.join();
+
+        LockerMetrics.Snapshot snapshot = entityLocker.getMetrics().snapshot();
+        assertEquals(1, snapshot.getTimeouts());
+        assertEquals(0, snapshot.getEscalations());
+    }
+
+    @Test
+    void metrics_globalAccessWaitingForAnEntity_shouldRecordGlobalWaitAndHoldTimes() throws InterruptedException {
+        ReentrantEntityLockerImpl<Integer> entityLocker = new ReentrantEntityLockerImpl<>();
+        entityLocker.getMetrics().enable();
+        CountDownLatch holding = new CountDownLatch(1);
+        AtomicBoolean globalRan = new AtomicBoolean(false);
+
+        Thread holder = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(1, () -> {
+            holding.countDown();
+            sleep(30);
+        }));
+        holder.start();
+        holding.await();
+        entityLocker.executeWithGlobalExclusiveAccess(() -> {
+            globalRan.set(true);
+            sleep(20);
+        });
+        holder.join();
+
+        LockerMetrics.Snapshot snapshot = entityLocker.getMetrics().snapshot();
+        assertTrue(globalRan.get());
+        assertEquals(1, snapshot.getGlobalWaitTimes().getCount());
+        assertTrue(snapshot.getGlobalWaitTimes().getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(snapshot.getGlobalHoldTimes().getMaxNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+
+        entityLocker.getMetrics().reset();
+        assertEquals(0, entityLocker.getMetrics().snapshot().getGlobalHoldTimes().getCount());
+    }
+
+    @Test
+    void histogram_percentiles_shouldBeWithinTheBucketPrecision() {
+        LogHistogram histogram = new LogHistogram();
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value);
+        }
+
+        LockerMetrics.HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(100_000, snapshot.getCount());
+        assertEquals(100_000, snapshot.getMaxNanos());
+        assertEquals(50_000.5, snapshot.getMeanNanos(), 0.001);
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long expected = (long) (percentile * 1000);
+            long actual = snapshot.getPercentileNanos(percentile);
+            assertTrue(actual >= expected && actual <= expected * 1.125, percentile + ": " + actual);
+        }
+        assertEquals(100_000, snapshot.getPercentileNanos(100));
+    }
+}
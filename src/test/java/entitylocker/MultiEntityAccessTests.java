@@ -0,0 +1,145 @@
+package entitylocker;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.NO_OP;
+import static entitylocker.TestSupport.awaitLatch;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MultiEntityAccessTests {
+    private EntityLocker<Integer> entityLocker;
+
+    @BeforeEach
+    void setup() {
+        entityLocker = new ReentrantEntityLockerImpl<>();
+    }
+
+    @Test
+    void executeWithEntitiesExclusiveAccess_crossedOrders_shouldNotDeadlock() throws InterruptedException {
+        int iterations = 10_000;
+        int[] balances = new int[2];
+        AtomicBoolean failed = new AtomicBoolean(false);
+
+        Thread transfer1 = new Thread(() -> transfer(iterations, Arrays.asList(0, 1), balances, failed));
+        Thread transfer2 = new Thread(() -> transfer(iterations, Arrays.asList(1, 0), balances, failed));
+
+        transfer1.start();
+        transfer2.start();
+        transfer1.join(TimeUnit.SECONDS.toMillis(30));
+        transfer2.join(TimeUnit.SECONDS.toMillis(30));
+
+        assertFalse(transfer1.isAlive() || transfer2.isAlive(), "transfers deadlocked");
+        assertFalse(failed.get());
+        assertEquals(2 * iterations, balances[0]);
+        assertEquals(-2 * iterations, balances[1]);
+    }
+
+    @Test
+    void executeWithEntitiesExclusiveAccess_heldBatch_shouldExcludeSingleEntityAccess() throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> entityLocker.executeWithEntitiesExclusiveAccess(Arrays.asList(1, 2, 2), () -> {
+            locked.countDown();
+            awaitLatch(release);
+        }));
+        holder.start();
+        locked.await();
+
+        assertFalse(entityLocker.executeWithEntityExclusiveAccess(2, NO_OP, 10, TimeUnit.MILLISECONDS));
+        assertTrue(entityLocker.executeWithEntityExclusiveAccess(3, NO_OP, 10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        holder.join();
+
+        assertTrue(entityLocker.executeWithEntityExclusiveAccess(2, NO_OP, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void executeWithEntitiesExclusiveAccess_nestedAccesses_shouldBeReentrant() {
+        AtomicInteger atomicInteger = new AtomicInteger(0);
+
+        entityLocker.executeWithEntityExclusiveAccess(3, () ->
+                entityLocker.executeWithEntitiesExclusiveAccess(Arrays.asList(1, 2, 3), () -> {
+                    entityLocker.executeWithEntityExclusiveAccess(2, atomicInteger::incrementAndGet);
+                    entityLocker.executeWithEntitiesExclusiveAccess(Arrays.asList(2, 1), atomicInteger::incrementAndGet);
+                    entityLocker.executeWithEntitiesExclusiveAccess(Collections.emptyList(), atomicInteger::incrementAndGet);
+                })
+        );
+
+        assertEquals(3, atomicInteger.get());
+    }
+
+    @Test
+    void executeWithEntitiesExclusiveAccess_withTimeoutSetting_shouldTimeoutAndReleaseAcquiredEntities() throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(3, () -> {
+            locked.countDown();
+            awaitLatch(release);
+        }));
+        holder.start();
+        locked.await();
+
+        assertFalse(entityLocker.executeWithEntitiesExclusiveAccess(Arrays.asList(1, 2, 3), NO_OP, 10, TimeUnit.MILLISECONDS));
+
+        //entities locked before the timeout must have been released
+        Thread other = new Thread(() -> entityLocker.executeWithEntitiesExclusiveAccess(Arrays.asList(1, 2), NO_OP));
+        other.start();
+        other.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(other.isAlive());
+
+        release.countDown();
+        holder.join();
+
+        assertTrue(entityLocker.executeWithEntitiesExclusiveAccess(Arrays.asList(1, 2, 3), NO_OP, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void executeWithEntitiesExclusiveAccess_batchAboveThreshold_shouldEscalateInOneStep() throws InterruptedException {
+        EntityLocker<Integer> escalatingLocker = new ReentrantEntityLockerImpl<>(2);
+        CountDownLatch escalated = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> escalatingLocker.executeWithEntitiesExclusiveAccess(Arrays.asList(1, 2, 3), () -> {
+            escalatingLocker.executeWithEntityExclusiveAccess(1, NO_OP);
+            escalatingLocker.executeWithEntitiesExclusiveAccess(Arrays.asList(1, 2), NO_OP);
+            escalated.countDown();
+            awaitLatch(release);
+        }));
+        holder.start();
+        escalated.await();
+
+        assertFalse(escalatingLocker.executeWithEntityExclusiveAccess(4, NO_OP, 10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        holder.join();
+
+        assertTrue(escalatingLocker.executeWithEntityExclusiveAccess(4, NO_OP, 10, TimeUnit.MILLISECONDS));
+        assertTrue(escalatingLocker.executeWithEntitiesExclusiveAccess(Arrays.asList(1, 2), NO_OP, 10, TimeUnit.MILLISECONDS));
+    }
+
+    private void transfer(int iterations, List<Integer> accounts, int[] balances, AtomicBoolean failed) {
+        try {
+            for (int i = 0; i < iterations; i++) {
+                entityLocker.executeWithEntitiesExclusiveAccess(accounts, () -> {
+                    balances[0]++;
+                    balances[1]--;
+                });
+            }
+        } catch (RuntimeException e) {
+            failed.set(true);
+        }
+    }
+}
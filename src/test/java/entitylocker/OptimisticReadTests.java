@@ -0,0 +1,152 @@
+package entitylocker;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.awaitLatch;
+import static entitylocker.TestSupport.runInOtherThread;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class OptimisticReadTests {
+    private EntityLocker<String> entityLocker;
+
+    @BeforeEach
+    void setup() {
+        entityLocker = new ReentrantEntityLockerImpl<>();
+    }
+
+    @Test
+    void executeWithOptimisticRead_withoutWriters_shouldReadOnce() {
+        AtomicInteger reads = new AtomicInteger(0);
+
+        String value = entityLocker.executeWithOptimisticRead("id", () -> {
+            reads.incrementAndGet();
+            return "value";
+        });
+
+        assertEquals("value", value);
+        assertEquals(1, reads.get());
+    }
+
+    @Test
+    void executeWithOptimisticRead_writerInterleaved_shouldReadAgainWithLock() throws InterruptedException {
+        AtomicInteger reads = new AtomicInteger(0);
+        AtomicReference<String> entity = new AtomicReference<>("old");
+
+        String value = entityLocker.executeWithOptimisticRead("id", () -> {
+            if (reads.incrementAndGet() == 1) {
+                runInOtherThread(() -> entityLocker.executeWithEntityExclusiveAccess("id", () -> entity.set("new")));
+            }
+            return entity.get();
+        });
+
+        assertEquals("new", value);
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    void executeWithOptimisticRead_globalWriterInterleaved_shouldReadAgainWithLock() throws InterruptedException {
+        AtomicInteger reads = new AtomicInteger(0);
+
+        entityLocker.executeWithOptimisticRead("id", () -> {
+            if (reads.incrementAndGet() == 1) {
+                runInOtherThread(() -> {
+                    try {
+                        entityLocker.executeWithGlobalExclusiveAccess(() -> {
+                        });
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            return null;
+        });
+
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    void executeWithOptimisticRead_whileWriterHoldsEntity_shouldWaitForWriter() throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> entity = new AtomicReference<>("old");
+
+        Thread writer = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess("id", () -> {
+            entity.set("intermediate");
+            locked.countDown();
+            awaitLatch(release);
+            entity.set("new");
+        }));
+        writer.start();
+        locked.await();
+
+        AtomicReference<String> readValue = new AtomicReference<>();
+        Thread reader = new Thread(() -> readValue.set(entityLocker.executeWithOptimisticRead("id", entity::get)));
+        reader.start();
+
+        Thread.sleep(50);
+        release.countDown();
+        writer.join();
+        reader.join();
+
+        assertEquals("new", readValue.get());
+    }
+
+    @Test
+    void executeWithOptimisticRead_failingInconsistentRead_shouldReadAgainWithLock() throws InterruptedException {
+        AtomicInteger reads = new AtomicInteger(0);
+
+        int value = entityLocker.executeWithOptimisticRead("id", () -> {
+            if (reads.incrementAndGet() == 1) {
+                runInOtherThread(() -> entityLocker.executeWithEntityExclusiveAccess("id", () -> {
+                }));
+                throw new IllegalStateException("inconsistent state");
+            }
+            return 1;
+        });
+
+        assertEquals(1, value);
+    }
+
+    @Test
+    void executeWithOptimisticRead_concurrentWriters_shouldNeverReturnInconsistentValues() throws InterruptedException {
+        int[] pair = new int[2];
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicBoolean inconsistent = new AtomicBoolean(false);
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 50_000; i++) {
+                entityLocker.executeWithEntityExclusiveAccess("pair", () -> {
+                    pair[0]++;
+                    pair[1]++;
+                });
+            }
+            running.set(false);
+        });
+
+        Runnable readerTask = () -> {
+            while (running.get()) {
+                boolean equal = entityLocker.executeWithOptimisticRead("pair", () -> pair[0] == pair[1]);
+                if (!equal) {
+                    inconsistent.set(true);
+                }
+            }
+        };
+        Thread reader1 = new Thread(readerTask);
+        Thread reader2 = new Thread(readerTask);
+
+        writer.start();
+        reader1.start();
+        reader2.start();
+        writer.join();
+        reader1.join();
+        reader2.join();
+
+        assertFalse(inconsistent.get());
+    }
+}
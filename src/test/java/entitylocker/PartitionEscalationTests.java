@@ -0,0 +1,116 @@
+package entitylocker;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.countDeadLock;
+import static entitylocker.TestSupport.lockBoth;
+import static entitylocker.TestSupport.runInOtherThread;
+import static entitylocker.TestSupport.tryEntityAccess;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionEscalationTests {
+    @Test
+    void executeWithEntityExclusiveAccess_thresholdExceeded_shouldOnlyBlockThePartition() throws InterruptedException {
+        GroupedEntityLocker<String, String> entityLocker = partitionedByPrefix(2, 1);
+        AtomicBoolean samePartitionAccessed = new AtomicBoolean(true);
+        AtomicBoolean otherPartitionAccessed = new AtomicBoolean(false);
+
+        //the partition and 'p1:a' reach the threshold, 'p1:b' escalates to the partition
+        entityLocker.executeWithEntityExclusiveAccess("p1:a", () -> entityLocker.executeWithEntityExclusiveAccess("p1:b",
+                () -> runInOtherThread(() -> {
+                    samePartitionAccessed.set(tryEntityAccess(entityLocker, "p1:z"));
+                    otherPartitionAccessed.set(tryEntityAccess(entityLocker, "p2:z"));
+                })));
+
+        assertFalse(samePartitionAccessed.get());
+        assertTrue(otherPartitionAccessed.get());
+        assertTrue(tryEntityAccess(entityLocker, "p1:z"));
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_tooManyPartitions_shouldEscalateToGlobalLock() {
+        GroupedEntityLocker<String, String> entityLocker = partitionedByPrefix(2, 1);
+        AtomicBoolean otherPartitionAccessed = new AtomicBoolean(true);
+
+        //'p2:a' would make the thread hold two partitions
+        entityLocker.executeWithEntityExclusiveAccess("p1:a", () -> entityLocker.executeWithEntityExclusiveAccess("p2:a",
+                () -> runInOtherThread(() -> otherPartitionAccessed.set(tryEntityAccess(entityLocker, "p3:z")))));
+
+        assertFalse(otherPartitionAccessed.get());
+        assertTrue(tryEntityAccess(entityLocker, "p3:z"));
+    }
+
+    @Test
+    void executeWithEntitiesExclusiveAccess_batchExceedingThreshold_shouldEscalateToItsPartitions() {
+        GroupedEntityLocker<String, String> entityLocker = partitionedByPrefix(3, 2);
+        AtomicBoolean escalatedPartitionAccessed = new AtomicBoolean(true);
+        AtomicBoolean otherPartitionAccessed = new AtomicBoolean(false);
+        AtomicInteger completed = new AtomicInteger(0);
+
+        entityLocker.executeWithEntitiesExclusiveAccess(Arrays.asList("p1:a", "p1:b", "p2:a", "p2:b"), () -> {
+            runInOtherThread(() -> {
+                escalatedPartitionAccessed.set(tryEntityAccess(entityLocker, "p2:z"));
+                otherPartitionAccessed.set(tryEntityAccess(entityLocker, "p3:z"));
+            });
+            entityLocker.executeWithEntityExclusiveAccess("p1:c", completed::incrementAndGet);
+        });
+
+        assertFalse(escalatedPartitionAccessed.get());
+        assertTrue(otherPartitionAccessed.get());
+        assertEquals(1, completed.get());
+    }
+
+    @Test
+    void hashPartitioned_thresholdExceeded_shouldOnlyBlockThePartition() {
+        GroupedEntityLocker<Integer, Integer> entityLocker = ReentrantEntityLockerImpl.hashPartitioned(4, 2, 1);
+        AtomicBoolean samePartitionAccessed = new AtomicBoolean(true);
+        AtomicBoolean otherPartitionAccessed = new AtomicBoolean(false);
+
+        //0, 4, 8 and 12 share a partition, 1 does not
+        entityLocker.executeWithEntityExclusiveAccess(0, () -> entityLocker.executeWithEntityExclusiveAccess(4,
+                () -> entityLocker.executeWithEntityExclusiveAccess(8, () -> runInOtherThread(() -> {
+                    samePartitionAccessed.set(tryEntityAccess(entityLocker, 12));
+                    otherPartitionAccessed.set(tryEntityAccess(entityLocker, 1));
+                }))));
+
+        assertFalse(samePartitionAccessed.get());
+        assertTrue(otherPartitionAccessed.get());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_concurrentPartitionEscalations_shouldAbortOne() throws InterruptedException {
+        GroupedEntityLocker<String, String> entityLocker = partitionedByPrefix(2, 1);
+        CountDownLatch bothHolding = new CountDownLatch(2);
+        AtomicInteger deadLocks = new AtomicInteger(0);
+        AtomicInteger completed = new AtomicInteger(0);
+
+        /*
+           thread1 -----> [p1:a] ------> escalating to 'p1', waiting for thread2
+           thread2 -----> [p1:c] ------> escalating to 'p1', waiting for thread1
+         */
+        Thread thread1 = new Thread(() -> countDeadLock(deadLocks, () -> lockBoth(entityLocker, "p1:a", "p1:b", bothHolding, completed)));
+        Thread thread2 = new Thread(() -> countDeadLock(deadLocks, () -> lockBoth(entityLocker, "p1:c", "p1:d", bothHolding, completed)));
+        thread1.start();
+        thread2.start();
+
+        thread1.join(TimeUnit.SECONDS.toMillis(10));
+        thread2.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(thread1.isAlive());
+        assertFalse(thread2.isAlive());
+        assertEquals(1, deadLocks.get());
+        assertEquals(1, completed.get());
+    }
+
+    private GroupedEntityLocker<String, String> partitionedByPrefix(int escalationThreshold, int maxEscalatedGroups) {
+        //entity ids are "partition:key"
+        return new ReentrantGroupedEntityLockerImpl<>(entityId -> entityId.substring(0, entityId.indexOf(':')),
+                escalationThreshold, maxEscalatedGroups, SpinPolicy.park(), DeadLockPolicy.abortRequester());
+    }
+}
@@ -0,0 +1,165 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.NO_OP;
+import static entitylocker.TestSupport.awaitLatch;
+import static entitylocker.TestSupport.sleep;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrimitiveEntityLockerTests {
+    @Test
+    void executeWithEntityExclusiveAccess_longIdsWithConcurrency_valueShouldBeConsistent() throws InterruptedException {
+        LongEntityLocker entityLocker = new ReentrantLongEntityLockerImpl();
+        int numberOfThreads = 4;
+        int increments = 10_000;
+        int[] counter = new int[1];
+        ExecutorService service = Executors.newFixedThreadPool(numberOfThreads);
+        CountDownLatch latch = new CountDownLatch(numberOfThreads);
+
+        for (int i = 0; i < numberOfThreads; i++) {
+            service.submit(() -> {
+                for (int j = 0; j < increments; j++) {
+                    entityLocker.executeWithEntityExclusiveAccess(Long.MAX_VALUE, () -> counter[0]++);
+                }
+                latch.countDown();
+            });
+        }
+
+        latch.await();
+        service.shutdown();
+        assertEquals(numberOfThreads * increments, counter[0]);
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_nestedIntIds_shouldBeReentrant() throws InterruptedException {
+        IntEntityLocker entityLocker = new ReentrantIntEntityLockerImpl();
+        AtomicInteger atomicInteger = new AtomicInteger(0);
+
+        entityLocker.executeWithEntityExclusiveAccess(1, () -> {
+            entityLocker.executeWithEntityExclusiveAccess(1, atomicInteger::incrementAndGet);
+            try {
+                entityLocker.executeWithGlobalExclusiveAccess(atomicInteger::incrementAndGet);
+                entityLocker.executeWithEntityExclusiveAccess(1, atomicInteger::incrementAndGet, 1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertEquals(3, atomicInteger.get());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_withTimeoutSetting_shouldTimeout() throws InterruptedException {
+        LongEntityLocker entityLocker = new ReentrantLongEntityLockerImpl();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(-1L, () -> {
+            locked.countDown();
+            awaitLatch(release);
+        }));
+        holder.start();
+        locked.await();
+
+        assertFalse(entityLocker.executeWithEntityExclusiveAccess(-1L, NO_OP, 10, TimeUnit.MILLISECONDS));
+        assertTrue(entityLocker.executeWithEntityExclusiveAccess(-2L, NO_OP, 10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        holder.join();
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_crossedLongIds_shouldPreventDeadLock() throws InterruptedException {
+        LongEntityLocker entityLocker = new ReentrantLongEntityLockerImpl();
+        CountDownLatch bothLocked = new CountDownLatch(2);
+        AtomicBoolean deadLockDetected = new AtomicBoolean(false);
+
+        Thread thread1 = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(1L, () -> {
+            bothLocked.countDown();
+            awaitLatch(bothLocked);
+            sleep(100);
+            try {
+                entityLocker.executeWithEntityExclusiveAccess(2L, NO_OP);
+            } catch (DeadLockPreventionException e) {
+                deadLockDetected.set(true);
+            }
+        }));
+        Thread thread2 = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(2L, () -> {
+            bothLocked.countDown();
+            awaitLatch(bothLocked);
+            try {
+                entityLocker.executeWithEntityExclusiveAccess(1L, NO_OP);
+            } catch (DeadLockPreventionException e) {
+                deadLockDetected.set(true);
+            }
+        }));
+
+        thread1.start();
+        thread2.start();
+        thread1.join();
+        thread2.join();
+
+        assertTrue(deadLockDetected.get());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_multipleDistinctLongIds_shouldEscalate() throws InterruptedException {
+        LongEntityLocker entityLocker = new ReentrantLongEntityLockerImpl(2);
+        CountDownLatch escalated = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread thread1 = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(1L,
+                () -> entityLocker.executeWithEntityExclusiveAccess(2L,
+                        () -> entityLocker.executeWithEntityExclusiveAccess(3L, () -> {
+                            escalated.countDown();
+                            awaitLatch(release);
+                        })
+                )
+        ));
+        thread1.start();
+        escalated.await();
+
+        assertFalse(entityLocker.executeWithEntityExclusiveAccess(4L, NO_OP, 10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        thread1.join();
+
+        assertTrue(entityLocker.executeWithEntityExclusiveAccess(4L, NO_OP, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void retainAndReleaseEntry_manyLongIds_tableShouldGrowAndShrinkConsistently() {
+        LongEntityLockTable table = new LongEntityLockTable();
+        int entities = 10_000;
+        EntityLockEntry[] entries = new EntityLockEntry[entities];
+
+        for (int i = 0; i < entities; i++) {
+            entries[i] = table.retainEntry(i * 31L);
+        }
+        assertEquals(entities, table.size());
+
+        //release every other entity, the remaining ones must still be found after the backward shift deletions
+        for (int i = 0; i < entities; i += 2) {
+            table.releaseEntry(i * 31L);
+        }
+        assertEquals(entities / 2, table.size());
+
+        for (int i = 1; i < entities; i += 2) {
+            assertSame(entries[i], table.retainEntry(i * 31L));
+            table.releaseEntry(i * 31L);
+            table.releaseEntry(i * 31L);
+        }
+        assertEquals(0, table.size());
+    }
+}
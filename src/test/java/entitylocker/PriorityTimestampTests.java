@@ -0,0 +1,194 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.awaitLatch;
+import static entitylocker.TestSupport.join;
+import static entitylocker.TestSupport.lockBoth;
+import static entitylocker.TestSupport.sleep;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PriorityTimestampTests {
+
+    @Test
+    void executeWithEntityExclusiveAccess_waitDieYoungerWaiter_shouldDie() throws InterruptedException {
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.withDeadLockPolicy(DeadLockPolicy.waitDie());
+        CountDownLatch olderHolding = new CountDownLatch(1);
+        CountDownLatch youngerDone = new CountDownLatch(1);
+
+        Thread older = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess("A", () -> {
+            olderHolding.countDown();
+            awaitLatch(youngerDone);
+        }));
+        older.start();
+        olderHolding.await();
+
+        try {
+            assertThrows(DeadLockPreventionException.class, () -> entityLocker.executeWithEntityExclusiveAccess("A", () -> {
+            }));
+        } finally {
+            youngerDone.countDown();
+        }
+        older.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(older.isAlive());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_waitDieOlderWaiter_shouldWaitForYounger() throws InterruptedException {
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.withDeadLockPolicy(DeadLockPolicy.waitDie());
+        CountDownLatch olderStarted = new CountDownLatch(1);
+        CountDownLatch youngerHolding = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger(0);
+
+        //the older thread takes its timestamp with 'X' before the younger one locks 'A'
+        Thread older = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess("X", () -> {
+            olderStarted.countDown();
+            awaitLatch(youngerHolding);
+            entityLocker.executeWithEntityExclusiveAccess("A", completed::incrementAndGet);
+        }));
+        Thread younger = new Thread(() -> {
+            awaitLatch(olderStarted);
+            entityLocker.executeWithEntityExclusiveAccess("A", () -> {
+                youngerHolding.countDown();
+                sleep(100);
+                completed.incrementAndGet();
+            });
+        });
+        older.start();
+        younger.start();
+
+        older.join(TimeUnit.SECONDS.toMillis(10));
+        younger.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(older.isAlive());
+        assertFalse(younger.isAlive());
+        assertEquals(2, completed.get());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_woundWaitDeadLock_shouldAbortYoungerThread() throws InterruptedException {
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.withDeadLockPolicy(DeadLockPolicy.woundWait());
+        CountDownLatch olderHolding = new CountDownLatch(1);
+        CountDownLatch youngerHolding = new CountDownLatch(1);
+        AtomicInteger deadLocks = new AtomicInteger(0);
+        AtomicInteger completed = new AtomicInteger(0);
+
+        /*
+           older   -----> [A] ------> waiting for 'B', wounds younger
+           younger -----> [B] ------> waiting for 'A'
+         */
+        Thread older = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess("A", () -> {
+            olderHolding.countDown();
+            awaitLatch(youngerHolding);
+            sleep(100);
+            entityLocker.executeWithEntityExclusiveAccess("B", completed::incrementAndGet);
+        }));
+        Thread younger = new Thread(() -> {
+            awaitLatch(olderHolding);
+            try {
+                entityLocker.executeWithEntityExclusiveAccess("B", () -> {
+                    youngerHolding.countDown();
+                    entityLocker.executeWithEntityExclusiveAccess("A", completed::incrementAndGet);
+                });
+            } catch (DeadLockPreventionException e) {
+                deadLocks.incrementAndGet();
+            }
+        });
+        older.start();
+        younger.start();
+
+        older.join(TimeUnit.SECONDS.toMillis(10));
+        younger.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(older.isAlive());
+        assertFalse(younger.isAlive());
+        assertEquals(1, deadLocks.get());
+        assertEquals(1, completed.get());
+    }
+
+    @Test
+    void executeWithDeadLockRetry_waitDieOppositeLockOrders_shouldCompleteEveryInvocation() throws InterruptedException {
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.withDeadLockPolicy(DeadLockPolicy.waitDie());
+        int invocations = 200;
+        AtomicInteger completed = new AtomicInteger(0);
+
+        Thread thread1 = new Thread(() -> lockBothWithRetry(entityLocker, "A", "B", invocations, completed));
+        Thread thread2 = new Thread(() -> lockBothWithRetry(entityLocker, "B", "A", invocations, completed));
+        thread1.start();
+        thread2.start();
+
+        thread1.join(TimeUnit.SECONDS.toMillis(30));
+        thread2.join(TimeUnit.SECONDS.toMillis(30));
+        assertFalse(thread1.isAlive());
+        assertFalse(thread2.isAlive());
+        assertEquals(2 * invocations, completed.get());
+    }
+
+    @Test
+    void executeWithDeadLockRetry_detectedDeadLock_shouldRunAbortedInvocationAgain() throws InterruptedException {
+        EntityLocker<String> entityLocker = new ReentrantEntityLockerImpl<>();
+        CountDownLatch bothHolding = new CountDownLatch(2);
+        AtomicInteger attempts = new AtomicInteger(0);
+        AtomicInteger completed = new AtomicInteger(0);
+
+        Thread thread1 = new Thread(() -> entityLocker.executeWithDeadLockRetry(() -> {
+            attempts.incrementAndGet();
+            lockBoth(entityLocker, "A", "B", bothHolding, completed);
+        }));
+        Thread thread2 = new Thread(() -> entityLocker.executeWithDeadLockRetry(() -> {
+            attempts.incrementAndGet();
+            lockBoth(entityLocker, "B", "A", bothHolding, completed);
+        }));
+        thread1.start();
+        thread2.start();
+
+        thread1.join(TimeUnit.SECONDS.toMillis(10));
+        thread2.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(thread1.isAlive());
+        assertFalse(thread2.isAlive());
+        assertEquals(2, completed.get());
+        assertTrue(attempts.get() > 2);
+    }
+
+    @Test
+    void executeWithDeadLockRetry_lockUpgrade_shouldNotBeRetried() {
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.withDeadLockPolicy(DeadLockPolicy.woundWait());
+        AtomicInteger attempts = new AtomicInteger(0);
+
+        assertThrows(DeadLockPreventionException.class, () -> entityLocker.executeWithDeadLockRetry(() -> {
+            attempts.incrementAndGet();
+            entityLocker.executeWithEntitySharedAccess("A", () -> entityLocker.executeWithEntityExclusiveAccess("A", () -> {
+            }));
+        }));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void executeWithEntitySharedAccess_waitDieSharedHolders_shouldNotConflict() {
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.withDeadLockPolicy(DeadLockPolicy.waitDie());
+        AtomicInteger completed = new AtomicInteger(0);
+
+        entityLocker.executeWithEntitySharedAccess("A", () -> {
+            Thread reader = new Thread(() -> entityLocker.executeWithEntitySharedAccess("A", completed::incrementAndGet));
+            reader.start();
+            join(reader);
+        });
+        entityLocker.executeWithEntityExclusiveAccess("A", completed::incrementAndGet);
+
+        assertEquals(2, completed.get());
+    }
+
+    private void lockBothWithRetry(EntityLocker<String> entityLocker, String first, String second, int invocations, AtomicInteger completed) {
+        for (int i = 0; i < invocations; i++) {
+            entityLocker.executeWithDeadLockRetry(() -> entityLocker.executeWithEntityExclusiveAccess(first, () -> {
+                Thread.yield();
+                entityLocker.executeWithEntityExclusiveAccess(second, completed::incrementAndGet);
+            }));
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.NO_OP;
+import static entitylocker.TestSupport.awaitLatch;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SharedAccessTests {
+    private EntityLocker<String> entityLocker;
+
+    @BeforeEach
+    void setup() {
+        entityLocker = new ReentrantEntityLockerImpl<>();
+    }
+
+    @Test
+    void executeWithEntitySharedAccess_multipleThreads_shouldRunConcurrently() throws InterruptedException {
+        int numberOfThreads = 3;
+        CountDownLatch allInside = new CountDownLatch(numberOfThreads);
+        AtomicBoolean allRanConcurrently = new AtomicBoolean(true);
+
+        Runnable reader = () -> entityLocker.executeWithEntitySharedAccess("id", () -> {
+            allInside.countDown();
+            try {
+                //only completes if every reader holds the entity at the same time
+                allRanConcurrently.compareAndSet(true, allInside.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        Thread[] threads = new Thread[numberOfThreads];
+        for (int i = 0; i < numberOfThreads; i++) {
+            threads[i] = new Thread(reader);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(allRanConcurrently.get());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_whileSharedByOtherThread_shouldTimeout() throws InterruptedException {
+        CountDownLatch shared = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread reader = new Thread(() -> entityLocker.executeWithEntitySharedAccess("id", () -> {
+            shared.countDown();
+            awaitLatch(release);
+        }));
+        reader.start();
+        shared.await();
+
+        assertFalse(entityLocker.executeWithEntityExclusiveAccess("id", NO_OP, 10, TimeUnit.MILLISECONDS));
+        assertTrue(entityLocker.executeWithEntitySharedAccess("id", NO_OP, 10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        reader.join();
+
+        assertTrue(entityLocker.executeWithEntityExclusiveAccess("id", NO_OP, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void executeWithEntitySharedAccess_whileExclusiveByOtherThread_shouldTimeout() throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread writer = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess("id", () -> {
+            locked.countDown();
+            awaitLatch(release);
+        }));
+        writer.start();
+        locked.await();
+
+        assertFalse(entityLocker.executeWithEntitySharedAccess("id", NO_OP, 10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        writer.join();
+    }
+
+    @Test
+    void executeWithEntitySharedAccess_nestedInExclusiveAccess_shouldDowngrade() {
+        AtomicInteger atomicInteger = new AtomicInteger(0);
+
+        entityLocker.executeWithEntityExclusiveAccess("id", () -> {
+            entityLocker.executeWithEntitySharedAccess("id", () -> {
+                entityLocker.executeWithEntitySharedAccess("id", atomicInteger::incrementAndGet);
+                entityLocker.executeWithEntityExclusiveAccess("id", atomicInteger::incrementAndGet);
+            });
+            atomicInteger.incrementAndGet();
+        });
+
+        assertEquals(3, atomicInteger.get());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_nestedInSharedAccess_upgradeShouldBePrevented() {
+        AtomicBoolean upgraded = new AtomicBoolean(false);
+
+        entityLocker.executeWithEntitySharedAccess("id", () -> {
+            assertThrows(DeadLockPreventionException.class,
+                    () -> entityLocker.executeWithEntityExclusiveAccess("id", () -> upgraded.set(true)));
+            assertThrows(DeadLockPreventionException.class,
+                    () -> entityLocker.executeWithEntityExclusiveAccess("id", () -> upgraded.set(true), 1, TimeUnit.SECONDS));
+        });
+
+        assertFalse(upgraded.get());
+        //the failed upgrades must not leave the entity locked
+        entityLocker.executeWithEntityExclusiveAccess("id", () -> upgraded.set(true));
+        assertTrue(upgraded.get());
+    }
+
+    @Test
+    void executeWithEntitySharedAccess_crossedSharedAccess_shouldNotPreventDeadLock() throws InterruptedException {
+        CountDownLatch bothShared = new CountDownLatch(2);
+        AtomicBoolean deadLockDetected = new AtomicBoolean(false);
+
+        Thread thread1 = new Thread(() -> crossedSharedAccess("E1", "E2", bothShared, deadLockDetected));
+        Thread thread2 = new Thread(() -> crossedSharedAccess("E2", "E1", bothShared, deadLockDetected));
+
+        thread1.start();
+        thread2.start();
+        thread1.join();
+        thread2.join();
+
+        assertFalse(deadLockDetected.get());
+    }
+
+    @Test
+    void executeWithEntitySharedAccess_multipleDistinctEntities_shouldEscalate() throws InterruptedException {
+        EntityLocker<Integer> escalatingLocker = new ReentrantEntityLockerImpl<>(2);
+        CountDownLatch escalated = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread thread1 = new Thread(() -> escalatingLocker.executeWithEntitySharedAccess(1,
+                () -> escalatingLocker.executeWithEntitySharedAccess(2,
+                        () -> escalatingLocker.executeWithEntitySharedAccess(3, () -> {
+                            escalated.countDown();
+                            awaitLatch(release);
+                        })
+                )
+        ));
+        thread1.start();
+        escalated.await();
+
+        assertFalse(escalatingLocker.executeWithEntitySharedAccess(4, NO_OP, 10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        thread1.join();
+
+        assertTrue(escalatingLocker.executeWithEntityExclusiveAccess(1, NO_OP, 10, TimeUnit.MILLISECONDS));
+    }
+
+    private void crossedSharedAccess(String first, String second, CountDownLatch bothShared, AtomicBoolean deadLockDetected) {
+        entityLocker.executeWithEntitySharedAccess(first, () -> {
+            bothShared.countDown();
+            awaitLatch(bothShared);
+            try {
+                entityLocker.executeWithEntitySharedAccess(second, NO_OP);
+            } catch (DeadLockPreventionException e) {
+                deadLockDetected.set(true);
+            }
+        });
+    }
+}
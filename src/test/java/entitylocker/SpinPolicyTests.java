@@ -0,0 +1,123 @@
+package entitylocker;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.NO_OP;
+import static entitylocker.TestSupport.awaitLatch;
+import static entitylocker.TestSupport.sleep;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpinPolicyTests {
+    @Test
+    void executeWithEntityExclusiveAccess_adaptiveSpinning_valuesShouldBeConsistent() throws InterruptedException {
+        EntityLocker<Integer> entityLocker = ReentrantEntityLockerImpl.withSpinPolicy(new SpinPolicy(TimeUnit.MICROSECONDS.toNanos(20)));
+        int numberOfThreads = 4;
+        int increments = 50_000;
+        int[] counters = new int[2];
+        ExecutorService service = Executors.newFixedThreadPool(numberOfThreads);
+        CountDownLatch latch = new CountDownLatch(numberOfThreads);
+
+        for (int i = 0; i < numberOfThreads; i++) {
+            service.submit(() -> {
+                for (int j = 0; j < increments; j++) {
+                    int entityId = j % counters.length;
+                    entityLocker.executeWithEntityExclusiveAccess(entityId, () -> counters[entityId]++);
+                }
+                latch.countDown();
+            });
+        }
+
+        latch.await();
+        service.shutdown();
+
+        assertEquals(numberOfThreads * increments, counters[0] + counters[1]);
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_adaptiveSpinning_shouldKeepReentrancyAndTimeouts() throws InterruptedException {
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.withSpinPolicy(new SpinPolicy(TimeUnit.MICROSECONDS.toNanos(20)));
+        AtomicInteger atomicInteger = new AtomicInteger(0);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        entityLocker.executeWithEntityExclusiveAccess("id",
+                () -> entityLocker.executeWithEntityExclusiveAccess("id", atomicInteger::incrementAndGet));
+
+        Thread holder = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess("id", () -> {
+            locked.countDown();
+            awaitLatch(release);
+        }));
+        holder.start();
+        locked.await();
+
+        assertFalse(entityLocker.executeWithEntityExclusiveAccess("id", NO_OP, 10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        holder.join();
+
+        assertTrue(entityLocker.executeWithEntityExclusiveAccess("id", atomicInteger::incrementAndGet, 10, TimeUnit.MILLISECONDS));
+        assertEquals(2, atomicInteger.get());
+    }
+
+    @Test
+    void spinLock_entryHeldLongerThanMaxSpin_shouldParkWithoutSpinning() throws InterruptedException {
+        //created directly, the factories return the parking policy on a single processor
+        SpinPolicy spinPolicy = new SpinPolicy(TimeUnit.MICROSECONDS.toNanos(10));
+        EntityLockEntry entry = new EntityLockEntry();
+
+        for (int i = 0; i < 20; i++) {
+            entry.lock();
+            spinPolicy.onLocked(entry, LockMode.EXCLUSIVE);
+            Thread.sleep(1);
+            spinPolicy.onUnlocking(entry, LockMode.EXCLUSIVE);
+            entry.unlock();
+        }
+        assertTrue(entry.getHoldNanosEstimate() > TimeUnit.MICROSECONDS.toNanos(10));
+
+        Thread holder = new Thread(entry::lock);
+        holder.start();
+        holder.join();
+
+        assertFalse(spinPolicy.spinLock(entry, LockMode.EXCLUSIVE));
+    }
+
+    @Test
+    void spinLock_entryReleasedWithinEstimatedHoldTime_shouldAcquireWithoutParking() throws InterruptedException {
+        SpinPolicy spinPolicy = new SpinPolicy(TimeUnit.SECONDS.toNanos(1));
+        EntityLockEntry entry = new EntityLockEntry();
+
+        for (int i = 0; i < 10; i++) {
+            entry.lock();
+            spinPolicy.onLocked(entry, LockMode.EXCLUSIVE);
+            sleep(20);
+            spinPolicy.onUnlocking(entry, LockMode.EXCLUSIVE);
+            entry.unlock();
+        }
+
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            entry.lock();
+            locked.countDown();
+            sleep(1);
+            entry.unlock();
+        });
+        holder.start();
+        locked.await();
+
+        //spins about twice the usual hold time, longer than the current hold
+        assertTrue(spinPolicy.spinLock(entry, LockMode.EXCLUSIVE));
+        entry.unlock();
+        holder.join();
+
+        assertFalse(SpinPolicy.park().spinLock(new EntityLockEntry(), LockMode.EXCLUSIVE));
+        assertThrows(IllegalArgumentException.class, () -> SpinPolicy.adaptive(0, TimeUnit.MICROSECONDS));
+    }
+}
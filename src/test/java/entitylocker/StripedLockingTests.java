@@ -0,0 +1,155 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+import static entitylocker.TestSupport.NO_OP;
+import static entitylocker.TestSupport.awaitLatch;
+import static entitylocker.TestSupport.sleep;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripedLockingTests {
+    @Test
+    void executeWithEntityExclusiveAccess_incrementCountersWithConcurrency_valuesShouldBeConsistent() throws InterruptedException {
+        EntityLocker<Integer> entityLocker = ReentrantEntityLockerImpl.striped(4);
+        int numberOfThreads = 4;
+        int increments = 10_000;
+        int[] counters = new int[16];
+        ExecutorService service = Executors.newFixedThreadPool(numberOfThreads);
+        CountDownLatch latch = new CountDownLatch(numberOfThreads);
+
+        for (int i = 0; i < numberOfThreads; i++) {
+            service.submit(() -> {
+                for (int j = 0; j < increments; j++) {
+                    int entityId = j % counters.length;
+                    entityLocker.executeWithEntityExclusiveAccess(entityId, () -> counters[entityId]++);
+                }
+                latch.countDown();
+            });
+        }
+
+        latch.await();
+        service.shutdown();
+
+        int total = 0;
+        for (int counter : counters) {
+            total += counter;
+        }
+        assertEquals(numberOfThreads * increments, total);
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_nestedCollidingIds_shouldBeReentrant() {
+        //a single stripe makes every id collide
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.striped(1);
+        AtomicInteger atomicInteger = new AtomicInteger(0);
+
+        entityLocker.executeWithEntityExclusiveAccess("A", () -> {
+            entityLocker.executeWithEntityExclusiveAccess("B", atomicInteger::incrementAndGet);
+            entityLocker.executeWithEntityExclusiveAccess("A", atomicInteger::incrementAndGet);
+            atomicInteger.incrementAndGet();
+        });
+
+        assertEquals(3, atomicInteger.get());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_collidingIdSharedByCurrentThread_shouldReenterStripe() {
+        //a single stripe makes every id collide, the stripe shared for 'A' is held exclusively
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.striped(1);
+        AtomicBoolean executed = new AtomicBoolean(false);
+
+        entityLocker.executeWithEntitySharedAccess("A",
+                () -> entityLocker.executeWithEntityExclusiveAccess("B", () -> executed.set(true)));
+
+        assertTrue(executed.get());
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_collidingIdsOnDifferentThreads_shouldExcludeEachOther() throws InterruptedException {
+        EntityLocker<String> entityLocker = ReentrantEntityLockerImpl.striped(1);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread holder = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess("A", () -> {
+            locked.countDown();
+            awaitLatch(release);
+        }));
+        holder.start();
+        locked.await();
+
+        assertFalse(entityLocker.executeWithEntityExclusiveAccess("B", NO_OP, 10, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        holder.join();
+
+        assertTrue(entityLocker.executeWithEntityExclusiveAccess("B", NO_OP, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void executeWithEntityExclusiveAccess_crossedStripes_shouldPreventDeadLock() throws InterruptedException {
+        StripedEntityLock<Integer> stripes = new StripedEntityLock<>(64);
+        int firstEntity = 0;
+        int secondEntity = 1;
+        while (stripes.retainEntry(secondEntity) == stripes.retainEntry(firstEntity)) {
+            secondEntity++;
+        }
+        int entity1 = firstEntity;
+        int entity2 = secondEntity;
+
+        EntityLocker<Integer> entityLocker = ReentrantEntityLockerImpl.striped(64);
+        CountDownLatch bothLocked = new CountDownLatch(2);
+        AtomicBoolean deadLockDetected = new AtomicBoolean(false);
+
+        Thread thread1 = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(entity1, () -> {
+            bothLocked.countDown();
+            awaitLatch(bothLocked);
+            sleep(100);
+            try {
+                entityLocker.executeWithEntityExclusiveAccess(entity2, NO_OP);
+            } catch (DeadLockPreventionException e) {
+                deadLockDetected.set(true);
+            }
+        }));
+        Thread thread2 = new Thread(() -> entityLocker.executeWithEntityExclusiveAccess(entity2, () -> {
+            bothLocked.countDown();
+            awaitLatch(bothLocked);
+            try {
+                entityLocker.executeWithEntityExclusiveAccess(entity1, NO_OP);
+            } catch (DeadLockPreventionException e) {
+                deadLockDetected.set(true);
+            }
+        }));
+
+        thread1.start();
+        thread2.start();
+        thread1.join();
+        thread2.join();
+
+        assertTrue(deadLockDetected.get());
+    }
+
+    @Test
+    void stripedEntityLock_stripeCount_shouldBeRoundedToPowerOfTwoAndConstant() {
+        StripedEntityLock<Long> stripes = new StripedEntityLock<>(100);
+
+        for (long i = 0; i < 100_000; i++) {
+            stripes.retainEntry(i);
+        }
+
+        assertEquals(128, stripes.size());
+        assertSame(stripes.retainEntry(42L), stripes.retainEntry(42L));
+        assertEquals(1, new StripedEntityLock<Long>(1).size());
+        assertThrows(IllegalArgumentException.class, () -> new StripedEntityLock<Long>(0));
+    }
+}
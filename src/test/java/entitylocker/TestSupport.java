@@ -0,0 +1,96 @@
+package entitylocker;
+
+import entitylocker.exceptions.DeadLockPreventionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Helpers shared by the locker tests, restoring the interrupt flag instead of throwing from protected codes
+ */
+final class TestSupport {
+    static final ProtectedCode NO_OP = () -> {
+    };
+
+    private static final long JOIN_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private TestSupport() {
+    }
+
+    static void awaitLatch(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits 10 seconds at most, so a deadlocked thread fails the test rather than hanging it
+     */
+    static void join(Thread thread) {
+        join(thread, JOIN_TIMEOUT_MILLIS);
+    }
+
+    static void join(Thread thread, long millis) {
+        try {
+            thread.join(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static void runInOtherThread(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.start();
+        join(thread);
+    }
+
+    static void executeWithGlobalExclusiveAccess(EntityLocker<?> entityLocker, ProtectedCode protectedCode) {
+        try {
+            entityLocker.executeWithGlobalExclusiveAccess(protectedCode);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if the entity could be accessed exclusively within 100 milliseconds
+     */
+    static <T> boolean tryEntityAccess(EntityLocker<T> entityLocker, T entityId) {
+        try {
+            return entityLocker.executeWithEntityExclusiveAccess(entityId, NO_OP, 100, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Locks first then, once every thread of the latch holds its first entity, second: threads calling it with crossed
+     * entities deadlock
+     */
+    static <T> void lockBoth(EntityLocker<T> entityLocker, T first, T second, CountDownLatch bothHolding, AtomicInteger completed) {
+        entityLocker.executeWithEntityExclusiveAccess(first, () -> {
+            bothHolding.countDown();
+            awaitLatch(bothHolding);
+            entityLocker.executeWithEntityExclusiveAccess(second, completed::incrementAndGet);
+        });
+    }
+
+    static void countDeadLock(AtomicInteger deadLocks, ProtectedCode protectedCode) {
+        try {
+            protectedCode.run();
+        } catch (DeadLockPreventionException e) {
+            deadLocks.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package entitylocker;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThreadHoldSlotsTests {
+
+    @Test
+    void tryHold_slotTakenByCurrentThread_shouldOnlyAcceptReentrantHoldsOfTheSameEntry() {
+        ThreadHoldSlots holdSlots = new ThreadHoldSlots(4);
+        EntityLockEntry held = new EntityLockEntry();
+        EntityLockEntry other = new EntityLockEntry();
+        long threadId = Thread.currentThread().getId();
+
+        assertTrue(holdSlots.tryHold(threadId, held, LockMode.SHARED));
+        assertFalse(holdSlots.tryHold(threadId, other, LockMode.SHARED));
+        assertFalse(holdSlots.tryHoldAgain(threadId, other, LockMode.SHARED));
+        assertTrue(holdSlots.tryHoldAgain(threadId, held, LockMode.EXCLUSIVE));
+        assertSame(held, holdSlots.getEntry(threadId));
+        assertEquals(LockMode.EXCLUSIVE, holdSlots.getMode(threadId));
+        assertEquals(1, holdSlots.getHolderCount());
+
+        assertFalse(holdSlots.release(threadId, other));
+        assertTrue(holdSlots.release(threadId, held));
+        assertNull(holdSlots.getEntry(threadId));
+        assertEquals(0, holdSlots.getHolderCount());
+    }
+
+    @Test
+    void tryHold_slotTakenByAnotherThread_shouldRefuseTheHold() {
+        //two slots shared by every thread id
+        ThreadHoldSlots holdSlots = new ThreadHoldSlots(2);
+        long threadId = Thread.currentThread().getId();
+        assertTrue(holdSlots.tryHold(threadId, new EntityLockEntry(), LockMode.EXCLUSIVE));
+
+        int accepted = 0;
+        for (long otherThreadId = threadId + 1; otherThreadId <= threadId + 64; otherThreadId++) {
+            if (holdSlots.tryHold(otherThreadId, new EntityLockEntry(), LockMode.EXCLUSIVE)) {
+                accepted++;
+            }
+        }
+        assertEquals(1, accepted);
+        assertEquals(2, holdSlots.getHolderCount());
+    }
+}
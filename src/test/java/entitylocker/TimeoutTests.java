@@ -8,6 +8,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static entitylocker.TestSupport.executeWithGlobalExclusiveAccess;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 
@@ -110,10 +111,10 @@ class TimeoutTests {
             }
         };
 
-        Runnable globalTask = () -> {
+        Runnable globalTask = () -> executeWithGlobalExclusiveAccess(entityLocker, () -> {
             latch.countDown();
-            executeWithGlobalExclusiveAccess(protectedSleepyCode);
-        };
+            protectedSleepyCode.run();
+        });
 
         Runnable entityTask = () -> {
             try {
@@ -136,12 +137,4 @@ class TimeoutTests {
         assertFalse(acquiredLock.get());
     }
 
-    private void executeWithGlobalExclusiveAccess(ProtectedCode protectedCode) {
-        try {
-            entityLocker.executeWithGlobalExclusiveAccess(protectedCode);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-        }
-    }
-
 }